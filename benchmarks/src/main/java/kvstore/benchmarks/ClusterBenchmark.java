@@ -0,0 +1,116 @@
+package kvstore.benchmarks;
+
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+import kvstore.network.ConnectionPool;
+import kvstore.server.LocalCluster;
+import kvstore.server.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede PUT e GET de ponta a ponta em um cluster executando no mesmo processo, na interface de
+ * loopback. Cada requisição vai para um servidor sorteado, como faz o Client: PUTs recebidos por
+ * secundários são encaminhados ao líder e só são respondidos depois da replicação.
+ *
+ * O modo SampleTime informa os percentis p50, p99 e p999 da latência e o modo Throughput a vazão.
+ * A concorrência dos clientes é o número de threads do JMH (opção -t); ClusterBenchmarkRunner
+ * executa o benchmark para vários níveis de concorrência.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ClusterBenchmark {
+
+    @Param({"1", "3", "5"})
+    public int clusterSize;
+
+    @Param({"binary"})
+    public String protocol;
+
+    @Param({"10000"})
+    public int keys;
+
+    @Param({"100"})
+    public int valueSize;
+
+    private PrintStream stdout;
+    private LocalCluster cluster;
+    private ConnectionPool connectionPool;
+    private List<String> addresses;
+    private String value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Os servidores registram cada requisição na saída padrão, o que dominaria a medição.
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        cluster = LocalCluster.start(clusterSize, ServerConfig.fromSystemProperties());
+        addresses = cluster.getAddresses();
+        connectionPool = new ConnectionPool(ConnectionPool.DEFAULT_CONNECTIONS_PER_ADDRESS,
+                ConnectionPool.DEFAULT_REQUEST_TIMEOUT_MILLIS, MessageCodec.forName(protocol));
+
+        value = "v".repeat(valueSize);
+        for (int i = 0; i < keys; i++) {
+            send(cluster.getLeaderAddress(), new Message("PUT", "key-" + i, value, 0L));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionPool.close();
+        cluster.close();
+        System.setOut(stdout);
+    }
+
+    private Message send(String address, Message request) throws Exception {
+        Message response = connectionPool.send(address, request).get();
+        if (response.getCommand().startsWith("Erro") || response.getCommand().equals("PUT_ERROR")) {
+            throw new IllegalStateException("Requisição falhou: " + response.getCommand());
+        }
+        return response;
+    }
+
+    private String randomServer() {
+        return addresses.get(ThreadLocalRandom.current().nextInt(addresses.size()));
+    }
+
+    private String randomKey() {
+        return "key-" + ThreadLocalRandom.current().nextInt(keys);
+    }
+
+    @Benchmark
+    public Message put() throws Exception {
+        return send(randomServer(), new Message("PUT", randomKey(), value, 0L));
+    }
+
+    @Benchmark
+    public Message get() throws Exception {
+        return send(randomServer(), new Message("GET", randomKey(), null, 0L));
+    }
+}
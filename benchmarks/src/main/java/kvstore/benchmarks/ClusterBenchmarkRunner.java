@@ -0,0 +1,37 @@
+package kvstore.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Executa o ClusterBenchmark para vários níveis de concorrência dos clientes, já que o número de
+ * threads do JMH não pode ser um parâmetro do benchmark. Os níveis são lidos da propriedade
+ * kvstore.bench.clients (padrão "1,8,32,128"); os demais argumentos são repassados ao JMH, por
+ * exemplo -p clusterSize=3. Os resultados de cada nível ficam em cluster-&lt;clientes&gt;-clients.json.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class ClusterBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (String clients : System.getProperty("kvstore.bench.clients", "1,8,32,128").split(",")) {
+            int threads = Integer.parseInt(clients.trim());
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(ClusterBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .result("cluster-" + threads + "-clients.json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
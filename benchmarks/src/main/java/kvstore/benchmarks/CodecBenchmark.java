@@ -0,0 +1,100 @@
+package kvstore.benchmarks;
+
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede a codificação e a decodificação de mensagens nos protocolos binário e JSON, tanto de uma
+ * requisição PUT simples quanto de uma mensagem REPLICATION com um lote de escritas.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"binary", "json"})
+    public String protocol;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    @Param({"64"})
+    public int batchSize;
+
+    private MessageCodec codec;
+    private Message put;
+    private Message batch;
+    private ByteBuffer buffer;
+    private ByteBuffer encodedPut;
+    private ByteBuffer encodedBatch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = MessageCodec.forName(protocol);
+        String value = "v".repeat(valueSize);
+        put = new Message("PUT", "key-42", value, System.currentTimeMillis());
+
+        List<Message> entries = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            entries.add(new Message("REPLICATION", "key-" + i, value, System.currentTimeMillis()));
+        }
+        batch = new Message("REPLICATION", null, null, 0L);
+        batch.setEntries(entries);
+
+        buffer = ByteBuffer.allocate(256);
+        encodedPut = copy(codec.encode(put, 1, ByteBuffer.allocate(256)));
+        encodedBatch = copy(codec.encode(batch, 2, ByteBuffer.allocate(256)));
+    }
+
+    private static ByteBuffer copy(ByteBuffer encoded) {
+        ByteBuffer copy = ByteBuffer.allocate(encoded.remaining());
+        copy.put(encoded).flip();
+        return copy;
+    }
+
+    @Benchmark
+    public ByteBuffer encodePut() {
+        buffer = codec.encode(put, 1, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public Message decodePut() {
+        return codec.decode(encodedPut.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBatch() {
+        buffer = codec.encode(batch, 2, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public Message decodeBatch() {
+        return codec.decode(encodedBatch.duplicate());
+    }
+}
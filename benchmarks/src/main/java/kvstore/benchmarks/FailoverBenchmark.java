@@ -0,0 +1,96 @@
+package kvstore.benchmarks;
+
+import kvstore.client.ClientConfig;
+import kvstore.client.KVClient;
+import kvstore.client.Response;
+import kvstore.server.AckPolicy;
+import kvstore.server.LocalCluster;
+import kvstore.server.ServerConfig;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mede a indisponibilidade de escrita causada pela queda do líder. Em cada rodada, um cluster local
+ * com confirmação pela maioria recebe escritas contínuas de um cliente; o líder é parado e são
+ * medidos o tempo até a eleição do novo líder, o maior intervalo entre duas escritas confirmadas e
+ * as escritas que falharam. Não usa o JMH, pois mede um evento e não o tempo de uma operação.
+ *
+ * Os parâmetros são propriedades de sistema: kvstore.bench.servers (padrão 3), kvstore.bench.rounds
+ * (padrão 5), kvstore.bench.writers (escritas simultâneas; padrão 8), além de
+ * kvstore.electionTimeoutMillis e kvstore.heartbeatIntervalMillis da configuração do servidor:
+ * java -cp benchmarks/target/benchmarks.jar kvstore.benchmarks.FailoverBenchmark
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class FailoverBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int servers = Integer.getInteger("kvstore.bench.servers", 3);
+        int rounds = Integer.getInteger("kvstore.bench.rounds", 5);
+        int writers = Integer.getInteger("kvstore.bench.writers", 8);
+
+        for (int round = 1; round <= rounds; round++) {
+            run(round, servers, writers);
+        }
+    }
+
+    private static void run(int round, int servers, int writers) throws IOException, InterruptedException {
+        // Com a confirmação de todos os secundários, nenhuma escrita seria confirmada após a queda.
+        ServerConfig config = ServerConfig.fromSystemProperties().setAckPolicy(AckPolicy.MAJORITY);
+        try (LocalCluster cluster = LocalCluster.start(servers, config);
+             KVClient client = new KVClient(ClientConfig.fromSystemProperties().setServers(cluster.getAddresses()))) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong lastSuccess = new AtomicLong(System.nanoTime());
+            AtomicLong longestGap = new AtomicLong();
+            LongAdder succeeded = new LongAdder();
+            LongAdder failed = new LongAdder();
+            AtomicLong sequence = new AtomicLong();
+
+            Thread[] threads = new Thread[writers];
+            for (int t = 0; t < writers; t++) {
+                threads[t] = new Thread(() -> {
+                    while (running.get()) {
+                        long i = sequence.incrementAndGet();
+                        try {
+                            Response response = client.put("key-" + (i % 1000), "value-" + i).get();
+                            if ("PUT_OK".equals(response.getCommand())) {
+                                long now = System.nanoTime();
+                                long previous = lastSuccess.getAndSet(now);
+                                longestGap.accumulateAndGet(now - previous, Math::max);
+                                succeeded.increment();
+                            } else {
+                                failed.increment();
+                            }
+                        } catch (Exception e) {
+                            failed.increment();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+
+            // Aquece o cluster antes da queda, para que o intervalo medido seja o da troca de líder.
+            Thread.sleep(1000);
+            longestGap.set(0);
+            int leader = cluster.leaderIndex();
+            long crash = System.nanoTime();
+            cluster.stop(leader);
+            String newLeader = cluster.awaitLeader(TimeUnit.SECONDS.toMillis(30));
+            long electionMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - crash);
+            Thread.sleep(2000);
+
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            System.out.printf("rodada %d: novo líder %s eleito em %d ms; maior intervalo sem escritas %d ms; %d escritas confirmadas, %d falharam%n",
+                    round, newLeader, electionMillis, TimeUnit.NANOSECONDS.toMillis(longestGap.get()), succeeded.sum(), failed.sum());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package kvstore.benchmarks;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import kvstore.storage.ConcurrentStorage;
+import kvstore.storage.OffHeapStorage;
+import kvstore.storage.Storage;
+import kvstore.storage.VersionedStorage;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compara os motores de armazenamento em memória quanto aos bytes ocupados por entrada, no heap e
+ * fora dele, e às pausas do coletor de lixo durante uma carga de leituras e escritas. Não usa o JMH,
+ * pois mede o estado da JVM e não o tempo de uma operação.
+ *
+ * Os motores são concurrent (sem versões), versioned (o padrão do servidor) e offheap. Os parâmetros
+ * são propriedades de sistema: kvstore.bench.engines (padrão "concurrent,versioned,offheap"),
+ * kvstore.bench.keys (padrão 2000000), kvstore.bench.valueSize (padrão 100) e
+ * kvstore.bench.seconds (padrão 20). Para resultados independentes, execute um motor por JVM:
+ * java -Xmx8g -Dkvstore.bench.engines=offheap -cp benchmarks/target/benchmarks.jar kvstore.benchmarks.FootprintBenchmark
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class FootprintBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int keys = Integer.getInteger("kvstore.bench.keys", 2_000_000);
+        int valueSize = Integer.getInteger("kvstore.bench.valueSize", 100);
+        int seconds = Integer.getInteger("kvstore.bench.seconds", 20);
+
+        GcPauses pauses = new GcPauses();
+        for (String engine : System.getProperty("kvstore.bench.engines", "concurrent,versioned,offheap").split(",")) {
+            run(engine.trim(), keys, valueSize, seconds, pauses);
+        }
+    }
+
+    private static Storage createStorage(String engine) {
+        switch (engine) {
+            case "concurrent":
+                return new ConcurrentStorage();
+            case "versioned":
+                return new VersionedStorage();
+            case "offheap":
+                return new OffHeapStorage();
+            default:
+                throw new IllegalArgumentException("Motor desconhecido: " + engine);
+        }
+    }
+
+    private static void run(String engine, int keys, int valueSize, int seconds, GcPauses pauses) throws InterruptedException {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+
+        Storage store = createStorage(engine);
+        // Cada escrita recebe a sua própria String, como os valores recebidos pela rede.
+        char[] value = "v".repeat(valueSize).toCharArray();
+        long fillStart = System.nanoTime();
+        for (int i = 0; i < keys; i++) {
+            store.put("key-" + i, new String(value), i);
+        }
+        long fillMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fillStart);
+
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%s: %d chaves carregadas em %d ms; heap %.1f bytes/entrada, fora do heap %.1f bytes/entrada, total %.1f bytes/entrada%n",
+                engine, keys, fillMillis, (double) heap / keys, (double) direct / keys, (double) (heap + direct) / keys);
+
+        // Carga de 90% leituras e 10% escritas com todas as threads, medindo as pausas do coletor.
+        pauses.reset();
+        LongAdder operations = new LongAdder();
+        AtomicLong clock = new AtomicLong(keys);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < Runtime.getRuntime().availableProcessors(); t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1000; i++) {
+                        String key = "key-" + random.nextInt(keys);
+                        if (random.nextInt(10) == 0) {
+                            store.put(key, new String(value), clock.incrementAndGet());
+                        } else {
+                            store.get(key);
+                        }
+                    }
+                    operations.add(1000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("%s: %.0f operações/s; %d pausas do coletor, total %d ms, maior %d ms%n",
+                engine, operations.sum() / (double) seconds, pauses.count.get(), pauses.totalMillis.get(), pauses.maxMillis.get());
+
+        // Mantém o armazenamento vivo até o fim das medições.
+        if (store.size() != keys) {
+            throw new IllegalStateException("Número de chaves inesperado: " + store.size());
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Registra a duração de cada coleta informada pelas notificações dos coletores da JVM. Os ciclos
+     * concorrentes (como "G1 Concurrent GC" ou "ZGC Cycles") não param a aplicação e são ignorados.
+     */
+    private static class GcPauses {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        private GcPauses() {
+            NotificationListener listener = (notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    long duration = info.getGcInfo().getDuration();
+                    count.incrementAndGet();
+                    totalMillis.addAndGet(duration);
+                    maxMillis.accumulateAndGet(duration, Math::max);
+                }
+            };
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector.getName().contains("Concurrent") || collector.getName().contains("Cycles")) {
+                    continue;
+                }
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+
+        private void reset() {
+            count.set(0);
+            totalMillis.set(0);
+            maxMillis.set(0);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package kvstore.benchmarks;
+
+import kvstore.storage.CachedStorage;
+import kvstore.storage.ConcurrentStorage;
+import kvstore.storage.DurableStorage;
+import kvstore.storage.Entry;
+import kvstore.storage.LogStructuredStorage;
+import kvstore.storage.OffHeapStorage;
+import kvstore.storage.Storage;
+import kvstore.storage.VersionedStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Mede as operações de armazenamento usadas por handleGet e handlePut: leitura, escrita
+ * individual com última escrita vencendo e escrita de um lote como a feita pelo WriteBatcher.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    /**
+     * Motor de armazenamento: em memória, em memória com versões, fora do heap, com log em disco ou
+     * com os valores em disco atrás de um cache (todos sem fsync).
+     */
+    @Param({"concurrent", "versioned", "offheap", "durable", "disk"})
+    public String storage;
+
+    /** Tamanho do cache do armazenamento em disco; o padrão cabe cerca de um décimo das chaves. */
+    @Param({"2097152"})
+    public long cacheBytes;
+
+    @Param({"100000"})
+    public int keys;
+
+    @Param({"100"})
+    public int valueSize;
+
+    @Param({"64"})
+    public int batchSize;
+
+    private Storage store;
+    private Path directory;
+    private String[] keyNames;
+    private String value;
+    private final AtomicLong clock = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (storage.equals("durable")) {
+            directory = Files.createTempDirectory("kvstore-bench");
+            store = new DurableStorage(new ConcurrentStorage(), directory, false, 64L * 1024 * 1024, 60000);
+        } else if (storage.equals("disk")) {
+            directory = Files.createTempDirectory("kvstore-bench");
+            store = new CachedStorage(new LogStructuredStorage(directory, false, 64L * 1024 * 1024), cacheBytes);
+        } else if (storage.equals("offheap")) {
+            store = new OffHeapStorage();
+        } else if (storage.equals("versioned")) {
+            store = new VersionedStorage();
+        } else {
+            store = new ConcurrentStorage();
+        }
+
+        value = "v".repeat(valueSize);
+        keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "key-" + i;
+            store.put(keyNames[i], value, clock.incrementAndGet());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (store instanceof CachedStorage) {
+            System.out.println(store);
+        }
+        if (store instanceof Closeable) {
+            ((Closeable) store).close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private String randomKey() {
+        return keyNames[ThreadLocalRandom.current().nextInt(keys)];
+    }
+
+    @Benchmark
+    public Entry get() {
+        return store.get(randomKey());
+    }
+
+    @Benchmark
+    public boolean put() {
+        return store.put(randomKey(), value, clock.incrementAndGet());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int putBatch() {
+        List<Map.Entry<String, Entry>> writes = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            writes.add(Map.entry(randomKey(), new Entry(value, clock.incrementAndGet())));
+        }
+        return store.putAll(writes);
+    }
+}
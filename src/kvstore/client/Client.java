@@ -1,17 +1,17 @@
 package kvstore.client;
 
-import com.google.gson.Gson;
+import kvstore.config.ConfigLoader;
 import kvstore.message.Message;
 
-import java.io.*;
-import java.net.*;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Classe do Cliente responsável por enviar solicitações aos servidores e exibir as respostas recebidas.
+ * Classe do Cliente responsável por ler os comandos do usuário, enviá-los aos servidores pelo KVClient
+ * e exibir as respostas recebidas.
  * 
  * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
  * 
@@ -19,9 +19,6 @@ import java.util.Scanner;
  */
 public class Client {
 
-	private static final Gson gson = new Gson();
-	private static Map<String, Long> timestampStore = new HashMap<>(); // Mapa para armazenar pares chave-timestamp
-
 	/**
 	 * Método principal para executar o cliente.
 	 * @param args Argumentos da linha de comando.
@@ -29,13 +26,32 @@ public class Client {
 	public static void main(String[] args) {
 		Scanner scanner = new Scanner(System.in);
 
+		// A configuração pode vir de um arquivo e dos argumentos --nome=valor, além das propriedades -D.
+		try {
+			ConfigLoader.apply(args, "kvstore.client.");
+		} catch (IOException e) {
+			System.out.println("Não foi possível ler o arquivo de configuração: " + e);
+			return;
+		}
+		ClientConfig configured = ClientConfig.fromSystemProperties();
+		if (!configured.getServers().isEmpty()) {
+			// Servidores configurados (kvstore.client.servers): dispensa o INIT e a leitura dos endereços.
+			try (KVClient client = new KVClient(configured)) {
+				startClient(scanner, client);
+			}
+			return;
+		}
+
 		System.out.print("Digite o comando (INIT) para iniciar o cliente: ");
 		String initCommand = scanner.nextLine();
 
 		if (initCommand.equalsIgnoreCase("INIT")) {
 			// Inicializa os servidores a partir da entrada do usuário.
 			String[] serverAddresses = initializeServers(scanner);
-			startClient(scanner,serverAddresses);
+			ClientConfig config = ClientConfig.fromSystemProperties().setServers(Arrays.asList(serverAddresses));
+			try (KVClient client = new KVClient(config)) {
+				startClient(scanner, client);
+			}
 		} else {
 			System.out.println("Comando inválido. Falha na inicialiazação do cliente.");
 		}
@@ -64,15 +80,15 @@ public class Client {
 	/**
 	 * Inicia o loop do cliente para solicitar comandos e interagir com os servidores.
 	 * @param scanner O objeto Scanner para ler a entrada do usuário.
-	 * @param serverAddresses Os endereços IP e portas dos servidores disponíveis.
+	 * @param client O cliente conectado aos servidores disponíveis.
 	 */
-	private static void startClient(Scanner scanner, String[] serverAddresses) {
+	private static void startClient(Scanner scanner, KVClient client) {
 		boolean exit = false;
 
 		do {
 
 			// Trata as solicitações do usuário (PUT ou GET) e exibe as respostas recebidas dos servidores.
-			System.out.print("Digite o comando (PUT, GET ou exit): ");
+			System.out.print("Digite o comando (PUT, GET, DELETE, CAS, SCAN ou exit): ");
 			String command = scanner.nextLine();
 
 			if (command.equalsIgnoreCase("exit")) {
@@ -85,25 +101,52 @@ public class Client {
 				System.out.print("Digite o value: ");
 				String value = scanner.nextLine();
 
-				long timestamp = System.currentTimeMillis(); // Armazena o timestamp atual
+				printResponse(client.put(key, value), 0L);
+
+			} else if (command.equalsIgnoreCase("GET")) {
 
-				Message message = new Message(command, key, value, timestamp);
-				Message responseJson = sendRequest(serverAddresses, message);
+				System.out.print("Digite a chave: ");
+				String key = scanner.nextLine();
 
-				timestampStore.put(responseJson.getKey(), responseJson.getTimestamp());
+				// Caso a chave não tenha um timestamp atrelado, o cliente envia 0
+				long timestamp = client.lastTimestamp(key);
+				printResponse(client.get(key), timestamp);
 
-			} else if (command.equalsIgnoreCase("GET")) {
+			} else if (command.equalsIgnoreCase("DELETE")) {
 
 				System.out.print("Digite a chave: ");
 				String key = scanner.nextLine();
 
-				// Caso a chave não tenha um timestamp atrelado, retorna 0
-				long timestamp = timestampStore.getOrDefault(key, 0L);
+				printResponse(client.delete(key), 0L);
 
-				Message message = new Message(command, key, null, timestamp); 
-				Message responseJson = sendRequest(serverAddresses, message);
+			} else if (command.equalsIgnoreCase("CAS")) {
 
-				timestampStore.put(responseJson.getKey(), responseJson.getTimestamp());
+				System.out.print("Digite a key: ");
+				String key = scanner.nextLine();
+
+				// A versão é o timestamp da última escrita da chave, exibido no GET; 0 para uma chave inexistente.
+				System.out.print("Digite a versão esperada: ");
+				long version = Long.parseLong(scanner.nextLine().trim());
+
+				System.out.print("Digite o novo value (vazio para apagar): ");
+				String value = scanner.nextLine();
+
+				printResponse(client.compareAndSet(key, version, value.isEmpty() ? null : value), 0L);
+
+			} else if (command.equalsIgnoreCase("SCAN")) {
+
+				System.out.print("Digite o prefixo: ");
+				String prefix = scanner.nextLine();
+
+				// As entradas são exibidas à medida que os blocos chegam, todas no mesmo instante.
+				try {
+					long snapshot = client.scan(prefix, entry -> System.out.println("key: ["+entry.getKey()+"] value ["+entry.getValue()+"] timestamp ["+entry.getTimestamp()+"]")).get();
+					System.out.println("SCAN concluído no instante ["+snapshot+"]");
+				} catch (ExecutionException e) {
+					System.out.println("Error: " + e.getCause().getMessage());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
 
 			} else {
 				System.out.println("Comando inválido");
@@ -113,51 +156,32 @@ public class Client {
 	}
 
 	/**
-	 * Método para enviar uma solicitação ao servidor selecionado aleatoriamente.
-	 * @param serverAddresses Os endereços IP e portas dos servidores disponíveis.
-	 * @param message A mensagem de solicitação a ser enviada ao servidor.
-	 * @return A resposta recebida do servidor ou uma mensagem de erro, caso não seja possível conectar ao servidor.
+	 * Aguarda a resposta de uma requisição e a exibe.
+	 * @param pending O futuro da resposta.
+	 * @param timestamp O timestamp enviado pelo cliente em um GET.
 	 */
-	private static Message sendRequest(String[] serverAddresses, Message message) {
-		// Seleciona aleatoriamente um servidor para enviar a solicitação.
-		Random random = new Random();
-		String randomServerAddress = serverAddresses[random.nextInt(serverAddresses.length)];
-
-		Message responseJson = new Message("Error: Server não disponível", "", "", 0L);
-
-		String[] parts = randomServerAddress.split(":");
-		String ipAddress = parts[0];
-		int port = Integer.parseInt(parts[1]);
-
-		// Envia a solicitação ao servidor selecionado e aguarda a resposta.
-		try (
-				Socket socket = new Socket(ipAddress, port);
-				PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-				) {
-			String jsonMessage = gson.toJson(message);
-			writer.println(jsonMessage);
-
-			// Retorna a resposta recebida do servidor.
-			String response = reader.readLine();
-			responseJson = gson.fromJson(response, Message.class);
-			
-			if (responseJson.getCommand().equals("PUT_OK")) {
-				System.out.println(responseJson.getCommand() +" key: ["+ responseJson.getKey()+"] value ["+responseJson.getValue()+"] timestamp ["+ responseJson.getTimestamp() +"] realizada no servidor ["+ipAddress+":"+port+"]");
-			} else if (responseJson.getCommand().equals("GET")) { 
-				System.out.println(responseJson.getCommand() +" key: ["+ responseJson.getKey()+"] value ["+responseJson.getValue()+"] obtido do servidor ["+ipAddress+":"+port+"], meu timestamp ["+message.getTimestamp()+"] e timestamp do servidor ["+responseJson.getTimestamp()+"]");
+	private static void printResponse(CompletableFuture<Response> pending, long timestamp) {
+		try {
+			Response response = pending.get();
+			Message message = response.getMessage();
+
+			if (message.getCommand().equals("PUT_OK") || message.getCommand().equals("DELETE_OK") || message.getCommand().equals("CAS_OK")) {
+				System.out.println(message.getCommand() +" key: ["+ message.getKey()+"] value ["+message.getValue()+"] timestamp ["+ message.getTimestamp() +"] realizada no servidor ["+response.getServer()+"]");
+			} else if (message.getCommand().equals("GET")) { 
+				System.out.println(message.getCommand() +" key: ["+ message.getKey()+"] value ["+message.getValue()+"] obtido do servidor ["+response.getServer()+"], meu timestamp ["+timestamp+"] e timestamp do servidor ["+message.getTimestamp()+"]");
+			} else if (message.getCommand().equals("CAS_FAILED")) {
+				System.out.println(message.getCommand() +" key: ["+ message.getKey()+"] value atual ["+message.getValue()+"] versão atual ["+message.getTimestamp()+"]");
+			} else if (message.getCommand().endsWith("_INVALID")) {
+				System.out.println(message.getCommand() +" key: ["+ message.getKey()+"] motivo ["+message.getValue()+"]");
 			} else {
-				System.out.println(responseJson.getCommand());
+				System.out.println(message.getCommand());
 			}
-			return responseJson;
-			
-		} catch (IOException e) {
-			// Servidor não disponível
+		} catch (ExecutionException e) {
+			// Nenhum servidor disponível após as novas tentativas.
+			System.out.println("Error: Server não disponível");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
-
-		// Ou uma mensagem de erro, caso não seja possível conectar ao servidor.
-		System.out.println(responseJson.getCommand());
-		return responseJson;
 	}
 
 }
@@ -0,0 +1,275 @@
+package kvstore.client;
+
+import kvstore.message.MessageCodec;
+import kvstore.network.ConnectionPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Configuração do cliente: servidores, conexões, tempos limite e novas tentativas.
+ * Os valores podem ser definidos por propriedades de sistema (por exemplo -Dkvstore.client.maxRetries=3).
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class ClientConfig {
+
+    /**
+     * Políticas de escolha do servidor de cada requisição.
+     */
+    public enum Routing {
+        /** Sorteia um servidor para cada requisição. */
+        RANDOM,
+        /** Escritas no líder e leituras na réplica atualizada de menor latência. */
+        SMART
+    }
+
+    /**
+     * Consistência das leituras.
+     */
+    public enum ReadConsistency {
+        /** A leitura vê as escritas e leituras anteriores deste cliente. */
+        SESSION,
+        /** A leitura vê o estado de no máximo maxStalenessMillis atrás. */
+        BOUNDED,
+        /** A leitura vê todas as escritas confirmadas antes dela, de qualquer cliente. */
+        LINEARIZABLE
+    }
+
+    private List<String> servers = new ArrayList<>();
+    private int connectionsPerServer = ConnectionPool.DEFAULT_CONNECTIONS_PER_ADDRESS;
+    private long requestTimeoutMillis = ConnectionPool.DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    private int maxRetries = 2;
+    private long retryBackoffMillis = 50;
+    private long failoverTimeoutMillis = 5000;
+    private int maxInFlightRequests = 1024;
+    private MessageCodec codec = MessageCodec.fromSystemProperties();
+    private Routing routing = Routing.SMART;
+    private ReadConsistency readConsistency = ReadConsistency.SESSION;
+    private long maxStalenessMillis = 1000;
+
+    /**
+     * Cria uma configuração a partir das propriedades de sistema, usando os valores padrão
+     * para as propriedades ausentes.
+     * @return A configuração lida.
+     */
+    public static ClientConfig fromSystemProperties() {
+        ClientConfig config = new ClientConfig();
+        String servers = System.getProperty("kvstore.client.servers");
+        if (servers != null) {
+            config.servers = new ArrayList<>(Arrays.asList(servers.split(",")));
+        }
+        config.connectionsPerServer = Integer.getInteger("kvstore.client.connectionsPerServer", config.connectionsPerServer);
+        config.requestTimeoutMillis = Long.getLong("kvstore.client.requestTimeoutMillis", config.requestTimeoutMillis);
+        config.maxRetries = Integer.getInteger("kvstore.client.maxRetries", config.maxRetries);
+        config.retryBackoffMillis = Long.getLong("kvstore.client.retryBackoffMillis", config.retryBackoffMillis);
+        config.failoverTimeoutMillis = Long.getLong("kvstore.client.failoverTimeoutMillis", config.failoverTimeoutMillis);
+        config.maxInFlightRequests = Integer.getInteger("kvstore.client.maxInFlightRequests", config.maxInFlightRequests);
+        config.routing = Routing.valueOf(System.getProperty("kvstore.client.routing", config.routing.name()).toUpperCase());
+        config.readConsistency = ReadConsistency.valueOf(
+                System.getProperty("kvstore.client.readConsistency", config.readConsistency.name()).toUpperCase());
+        config.maxStalenessMillis = Long.getLong("kvstore.client.maxStalenessMillis", config.maxStalenessMillis);
+        return config;
+    }
+
+    /**
+     * Obtém os endereços dos servidores.
+     * @return Os endereços IP:porta dos servidores.
+     */
+    public List<String> getServers() {
+        return servers;
+    }
+
+    /**
+     * Define os endereços dos servidores.
+     * @param servers Os endereços IP:porta dos servidores.
+     * @return Esta configuração.
+     */
+    public ClientConfig setServers(List<String> servers) {
+        this.servers = new ArrayList<>(servers);
+        return this;
+    }
+
+    /**
+     * Obtém o número de conexões persistentes abertas com cada servidor.
+     * @return O número de conexões por servidor.
+     */
+    public int getConnectionsPerServer() {
+        return connectionsPerServer;
+    }
+
+    /**
+     * Define o número de conexões persistentes abertas com cada servidor.
+     * @param connectionsPerServer O número de conexões por servidor.
+     * @return Esta configuração.
+     */
+    public ClientConfig setConnectionsPerServer(int connectionsPerServer) {
+        this.connectionsPerServer = connectionsPerServer;
+        return this;
+    }
+
+    /**
+     * Obtém o tempo limite de cada tentativa de uma requisição.
+     * @return O tempo limite em milissegundos.
+     */
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Define o tempo limite de cada tentativa de uma requisição.
+     * @param requestTimeoutMillis O tempo limite em milissegundos.
+     * @return Esta configuração.
+     */
+    public ClientConfig setRequestTimeoutMillis(long requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o número máximo de novas tentativas de uma requisição que falhou ou foi recusada.
+     * @return O número de novas tentativas.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Define o número máximo de novas tentativas de uma requisição que falhou ou foi recusada.
+     * @param maxRetries O número de novas tentativas, ou 0 para não tentar novamente.
+     * @return Esta configuração.
+     */
+    public ClientConfig setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Obtém a espera antes da primeira nova tentativa; a espera dobra a cada tentativa.
+     * @return A espera em milissegundos.
+     */
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * Define a espera antes da primeira nova tentativa; a espera dobra a cada tentativa.
+     * @param retryBackoffMillis A espera em milissegundos.
+     * @return Esta configuração.
+     */
+    public ClientConfig setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Obtém por quanto tempo uma escrita respondida com NO_LEADER é repetida enquanto o novo líder é eleito.
+     * @return O tempo limite em milissegundos.
+     */
+    public long getFailoverTimeoutMillis() {
+        return failoverTimeoutMillis;
+    }
+
+    /**
+     * Define por quanto tempo uma escrita respondida com NO_LEADER é repetida enquanto o novo líder é eleito.
+     * @param failoverTimeoutMillis O tempo limite em milissegundos.
+     * @return Esta configuração.
+     */
+    public ClientConfig setFailoverTimeoutMillis(long failoverTimeoutMillis) {
+        this.failoverTimeoutMillis = failoverTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o número máximo de requisições enviadas e ainda sem resposta. As demais aguardam na fila do cliente.
+     * @return O número máximo de requisições em andamento.
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Define o número máximo de requisições enviadas e ainda sem resposta.
+     * @param maxInFlightRequests O número máximo de requisições em andamento.
+     * @return Esta configuração.
+     */
+    public ClientConfig setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+        return this;
+    }
+
+    /**
+     * Obtém o protocolo usado nas conexões.
+     * @return O codificador de mensagens.
+     */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Define o protocolo usado nas conexões.
+     * @param codec O codificador de mensagens.
+     * @return Esta configuração.
+     */
+    public ClientConfig setCodec(MessageCodec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Obtém a política de escolha do servidor de cada requisição.
+     * @return A política de roteamento.
+     */
+    public Routing getRouting() {
+        return routing;
+    }
+
+    /**
+     * Define a política de escolha do servidor de cada requisição.
+     * @param routing A política de roteamento.
+     * @return Esta configuração.
+     */
+    public ClientConfig setRouting(Routing routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    /**
+     * Obtém a consistência das leituras.
+     * @return A consistência.
+     */
+    public ReadConsistency getReadConsistency() {
+        return readConsistency;
+    }
+
+    /**
+     * Define a consistência das leituras.
+     * @param readConsistency A consistência.
+     * @return Esta configuração.
+     */
+    public ClientConfig setReadConsistency(ReadConsistency readConsistency) {
+        this.readConsistency = readConsistency;
+        return this;
+    }
+
+    /**
+     * Obtém o atraso máximo aceito nas leituras com consistência BOUNDED.
+     * @return O atraso em milissegundos.
+     */
+    public long getMaxStalenessMillis() {
+        return maxStalenessMillis;
+    }
+
+    /**
+     * Define o atraso máximo aceito nas leituras com consistência BOUNDED.
+     * @param maxStalenessMillis O atraso em milissegundos.
+     * @return Esta configuração.
+     */
+    public ClientConfig setMaxStalenessMillis(long maxStalenessMillis) {
+        this.maxStalenessMillis = maxStalenessMillis;
+        return this;
+    }
+}
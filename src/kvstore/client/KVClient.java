@@ -0,0 +1,536 @@
+package kvstore.client;
+
+import kvstore.cluster.Shard;
+import kvstore.cluster.Topology;
+import kvstore.message.Message;
+import kvstore.network.ConnectionPool;
+
+import java.io.Closeable;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Cliente assíncrono do sistema KV. As requisições são enviadas sem bloquear quem chama, muitas
+ * podem estar em andamento ao mesmo tempo em cada conexão, e cada uma é repetida em outro servidor
+ * quando falha ou é recusada (SERVER_BUSY, TRY_OTHER_SERVER_OR_LATER ou erro de encaminhamento).
+ * O servidor de cada tentativa é escolhido pelo Router: no roteamento inteligente, o cliente descobre
+ * o líder e envia as escritas diretamente a ele, e uma leitura desatualizada é repetida em outra
+ * réplica sem espera.
+ *
+ * Durante a troca de líder, os servidores respondem NO_LEADER às escritas. O cliente esquece o
+ * líder, descobre o novo e repete a escrita, sem consumir tentativas, até o tempo limite de failover.
+ *
+ * Em um cluster particionado, o cliente obtém a topologia de um dos servidores e envia cada chave
+ * ao grupo da sua partição, com um Router por partição. Uma resposta WRONG_SHARD indica que a
+ * topologia mudou: o cliente a obtém novamente e repete a requisição.
+ *
+ * Leituras em um instante passado (getAt) e leituras por prefixo (scan) usam as versões recentes
+ * guardadas pelos servidores: a leitura por prefixo é feita em blocos, todos no mesmo instante, e
+ * devolve um estado consistente mesmo com escritas concorrentes. Em um cluster particionado, as
+ * partições são lidas uma após a outra, com as chaves em ordem dentro de cada partição.
+ *
+ * Na consistência de sessão, o cliente guarda o maior timestamp visto para cada chave e o envia nos
+ * GETs, com a posição da sua última escrita da chave, de modo que uma leitura nunca devolve um valor
+ * mais antigo do que uma escrita ou leitura anterior da mesma chave. Nas leituras lineares e com
+ * atraso limitado, o cliente não guarda nada: os secundários respondem com base nas concessões de
+ * leitura do líder e na posição do líder que conhecem.
+ *
+ * As escritas condicionais (compareAndSet) comparam a versão atual da chave, o timestamp da sua
+ * última escrita, com a versão esperada, e são resolvidas pelo líder na ordem das escritas. Uma
+ * chave apagada continua como lápide nos servidores por um tempo, e uma chave escrita com prazo
+ * deixa de ser lida ao expirar e é apagada pelo líder em segundo plano.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class KVClient implements Closeable {
+    private final ClientConfig config;
+    private final List<String> servers;
+    private final ConnectionPool connectionPool;
+    private final Router router;
+    private final Set<Router> discoveringLeader = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<CompletableFuture<Void>> topologyRefresh = new AtomicReference<>();
+    private volatile Topology topology; // null enquanto o cluster não for conhecido como particionado
+    private volatile Map<String, Router> shardRouters = new HashMap<>();
+    private final Map<String, Long> timestamps = new ConcurrentHashMap<>(); // Maior timestamp visto por chave
+    private final Semaphore inFlight;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    /**
+     * Construtor da classe KVClient.
+     * @param config A configuração do cliente, com ao menos um servidor.
+     */
+    public KVClient(ClientConfig config) {
+        if (config.getServers().isEmpty()) {
+            throw new IllegalArgumentException("Nenhum servidor configurado");
+        }
+        this.config = config;
+        this.servers = new ArrayList<>(config.getServers());
+        this.connectionPool = new ConnectionPool(config.getConnectionsPerServer(), config.getRequestTimeoutMillis(), config.getCodec());
+        this.inFlight = new Semaphore(config.getMaxInFlightRequests());
+        this.router = new Router(servers, config.getRouting(), config.getRequestTimeoutMillis());
+        refreshTopology();
+    }
+
+    /**
+     * Obtém a topologia de um dos servidores, caso nenhuma consulta esteja em andamento.
+     * @return Um futuro completado quando a consulta terminar, tenha ou não encontrado uma topologia.
+     */
+    private CompletableFuture<Void> refreshTopology() {
+        CompletableFuture<Void> refresh = new CompletableFuture<>();
+        CompletableFuture<Void> pending = topologyRefresh.compareAndExchange(null, refresh);
+        if (pending != null) {
+            return pending;
+        }
+
+        Topology current = topology;
+        List<String> known = new ArrayList<>(servers);
+        if (current != null) {
+            for (Shard shard : current.getShards()) {
+                known.addAll(shard.getAddresses());
+            }
+        }
+        String server = known.get(ThreadLocalRandom.current().nextInt(known.size()));
+        submit(server, new Message("TOPOLOGY", null, null, 0L)).whenComplete((response, error) -> {
+            if (error == null && "TOPOLOGY_OK".equals(response.getCommand()) && response.getValue() != null) {
+                installTopology(Topology.parse(response.getValue()));
+            } else if (topology == null && config.getRouting() == ClientConfig.Routing.SMART) {
+                discoverLeader(router); // Cluster com um único grupo de replicação
+            }
+            topologyRefresh.set(null);
+            refresh.complete(null);
+        });
+        return refresh;
+    }
+
+    /**
+     * Instala uma topologia mais nova que a atual, criando o Router de cada partição.
+     */
+    private synchronized void installTopology(Topology next) {
+        Topology current = topology;
+        if (current != null && next.getVersion() <= current.getVersion()) {
+            return;
+        }
+        Map<String, Router> routers = new HashMap<>();
+        for (Shard shard : next.getShards()) {
+            Router shardRouter = new Router(shard.getAddresses(), config.getRouting(), config.getRequestTimeoutMillis());
+            shardRouter.setLeader(shard.getLeader());
+            routers.put(shard.getId(), shardRouter);
+        }
+        shardRouters = routers;
+        topology = next;
+    }
+
+    /**
+     * Obtém o Router do grupo responsável por uma chave.
+     */
+    private Router routerFor(String key) {
+        Topology current = topology;
+        if (current == null || key == null) {
+            return router;
+        }
+        Router shardRouter = shardRouters.get(current.shardFor(key).getId());
+        return shardRouter != null ? shardRouter : router;
+    }
+
+    /**
+     * Pergunta a um servidor do grupo qual é o líder, caso nenhuma descoberta esteja em andamento
+     * no grupo. Enquanto o líder não é conhecido, as escritas vão a servidores sorteados e são encaminhadas.
+     * @param group O Router do grupo de replicação.
+     */
+    private void discoverLeader(Router group) {
+        if (!discoveringLeader.add(group)) {
+            return;
+        }
+        Message request = new Message("LEADER", null, null, 0L);
+        submit(group.choose(request, Set.of()), request).whenComplete((response, error) -> {
+            // Durante uma eleição o líder ainda não é conhecido e a resposta não traz endereço.
+            if (error == null && "LEADER_OK".equals(response.getCommand()) && response.getValue() != null) {
+                group.setLeader(response.getValue());
+            }
+            discoveringLeader.remove(group);
+        });
+    }
+
+    /**
+     * Lê o valor de uma chave.
+     * @param key A chave.
+     * @return Um futuro completado com a resposta GET, ou NULL caso a chave não exista.
+     */
+    public CompletableFuture<Response> get(String key) {
+        ClientConfig.ReadConsistency consistency = config.getReadConsistency();
+        if (consistency != ClientConfig.ReadConsistency.SESSION) {
+            // O atraso máximo vai no campo timestamp, que nas leituras de sessão leva o timestamp visto.
+            long maxStaleness = consistency == ClientConfig.ReadConsistency.BOUNDED ? config.getMaxStalenessMillis() : 0L;
+            return send(new Message("GET", key, consistency.name(), maxStaleness));
+        }
+
+        Message request = new Message("GET", key, null, timestamps.getOrDefault(key, 0L));
+        request.setLogIndex(routerFor(key).writeIndex(key));
+        return send(request).thenApply(response -> {
+            // Uma chave apagada responde NULL com o timestamp da remoção.
+            if ("GET".equals(response.getCommand()) || "NULL".equals(response.getCommand())) {
+                timestamps.merge(key, response.getTimestamp(), Math::max);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Lê o valor que uma chave tinha em um instante passado, em qualquer réplica.
+     * @param key A chave.
+     * @param timestamp O instante da leitura.
+     * @return Um futuro completado com a resposta GET com a versão visível no instante, NULL caso a
+     * chave não existisse nele, ou SNAPSHOT_TOO_OLD caso a versão já tenha sido descartada.
+     */
+    public CompletableFuture<Response> getAt(String key, long timestamp) {
+        return send(new Message("GET_AT", key, null, timestamp));
+    }
+
+    /**
+     * Lê, no instante atual, todas as chaves que começam com um prefixo.
+     * @param prefix O prefixo, ou uma string vazia para todas as chaves.
+     * @param action Recebe cada entrada, como uma mensagem GET com chave, valor e timestamp.
+     * @return Um futuro completado com o instante da leitura quando todas as entradas tiverem sido entregues.
+     */
+    public CompletableFuture<Long> scan(String prefix, Consumer<Message> action) {
+        return scan(prefix, 0L, action);
+    }
+
+    /**
+     * Lê as chaves que começam com um prefixo, com os valores que tinham em um instante. As entradas
+     * são obtidas em blocos, e o bloco seguinte só é pedido depois que as do anterior forem entregues.
+     * @param prefix O prefixo, ou uma string vazia para todas as chaves.
+     * @param timestamp O instante da leitura, ou 0 para o instante atual, escolhido pelo servidor.
+     * @param action Recebe cada entrada, como uma mensagem GET com chave, valor e timestamp.
+     * @return Um futuro completado com o instante da leitura quando todas as entradas tiverem sido
+     * entregues, ou com a falha caso um bloco não possa ser lido.
+     */
+    public CompletableFuture<Long> scan(String prefix, long timestamp, Consumer<Message> action) {
+        List<Router> groups = new ArrayList<>();
+        Topology current = topology;
+        if (current == null) {
+            groups.add(router);
+        } else {
+            Map<String, Router> routers = shardRouters;
+            for (Shard shard : current.getShards()) {
+                groups.add(routers.get(shard.getId()));
+            }
+        }
+
+        CompletableFuture<Long> result = CompletableFuture.completedFuture(timestamp);
+        for (Router group : groups) {
+            result = result.thenCompose(snapshot -> scanChunk(group, prefix, null, snapshot, action, 1));
+        }
+        return result;
+    }
+
+    /**
+     * Lê um bloco de uma leitura por prefixo em um grupo de replicação e, em seguida, os blocos restantes.
+     */
+    private CompletableFuture<Long> scanChunk(Router group, String prefix, String afterKey, long timestamp,
+                                              Consumer<Message> action, int attempt) {
+        Message request = new Message("SCAN", prefix, afterKey, timestamp);
+        String server = group.choose(request, Set.of());
+        return submit(server, request).handle((response, error) -> {
+            if (error != null) {
+                group.recordFailure(server);
+            }
+            if (error != null || isRetryable(response)) {
+                if (attempt > config.getMaxRetries()) {
+                    return CompletableFuture.<Long>failedFuture(error != null ? error
+                            : new IllegalStateException("SCAN recusado: " + response.getCommand()));
+                }
+                // O mesmo bloco, no mesmo instante, pode ser lido em outra réplica.
+                long backoff = config.getRetryBackoffMillis() << (attempt - 1);
+                return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                        .thenCompose(ignored -> scanChunk(group, prefix, afterKey, timestamp, action, attempt + 1));
+            }
+            if (!"SCAN_OK".equals(response.getCommand())) {
+                return CompletableFuture.<Long>failedFuture(new IllegalStateException("SCAN recusado: " + response.getCommand()));
+            }
+            for (Message entry : response.getEntries()) {
+                action.accept(entry);
+            }
+            if (response.getValue() == null) {
+                return CompletableFuture.completedFuture(response.getTimestamp());
+            }
+            return scanChunk(group, prefix, response.getValue(), response.getTimestamp(), action, 1);
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Escreve o valor de uma chave com o timestamp atual.
+     * @param key A chave.
+     * @param value O valor.
+     * @return Um futuro completado com a resposta PUT_OK, PUT_ERROR ou PUT_INVALID, com o motivo da
+     * recusa no valor.
+     */
+    public CompletableFuture<Response> put(String key, String value) {
+        return put(key, value, 0L);
+    }
+
+    /**
+     * Escreve o valor de uma chave com o timestamp atual e um prazo de validade.
+     * @param key A chave.
+     * @param value O valor.
+     * @param ttlMillis O tempo até a chave expirar, em milissegundos, ou 0 para não expirar.
+     * @return Um futuro completado com a resposta PUT_OK, PUT_ERROR ou PUT_INVALID.
+     */
+    public CompletableFuture<Response> put(String key, String value, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        Message request = new Message("PUT", key, value, now);
+        request.setExpiresAt(ttlMillis > 0 ? now + ttlMillis : 0L);
+        return sendWrite(request, "PUT_OK");
+    }
+
+    /**
+     * Apaga uma chave com o timestamp atual. A remoção é replicada como uma lápide, que vence as
+     * escritas mais antigas da chave.
+     * @param key A chave.
+     * @return Um futuro completado com a resposta DELETE_OK, PUT_ERROR ou DELETE_INVALID.
+     */
+    public CompletableFuture<Response> delete(String key) {
+        return sendWrite(new Message("DELETE", key, null, System.currentTimeMillis()), "DELETE_OK");
+    }
+
+    /**
+     * Escreve o valor de uma chave caso a sua versão atual seja a esperada.
+     * @param key A chave.
+     * @param expectedVersion A versão esperada: o timestamp da última escrita, lido em um GET ou
+     * devolvido pelo último compareAndSet, ou 0 caso a chave não deva existir.
+     * @param value O novo valor, ou null para apagar a chave.
+     * @return Um futuro completado com CAS_OK e a nova versão no timestamp, ou com CAS_FAILED e o valor e
+     * a versão atuais, ou com CAS_INVALID caso a versão esperada seja negativa. Uma escrita repetida
+     * depois de uma falha pode responder CAS_FAILED mesmo tendo sido aplicada na primeira tentativa.
+     */
+    public CompletableFuture<Response> compareAndSet(String key, long expectedVersion, String value) {
+        return compareAndSet(key, expectedVersion, value, 0L);
+    }
+
+    /**
+     * Escreve o valor de uma chave, com um prazo de validade, caso a sua versão atual seja a esperada.
+     * @param key A chave.
+     * @param expectedVersion A versão esperada, ou 0 caso a chave não deva existir.
+     * @param value O novo valor, ou null para apagar a chave.
+     * @param ttlMillis O tempo até a chave expirar, em milissegundos, ou 0 para não expirar.
+     * @return Um futuro completado com CAS_OK, CAS_FAILED ou CAS_INVALID.
+     */
+    public CompletableFuture<Response> compareAndSet(String key, long expectedVersion, String value, long ttlMillis) {
+        Message request = new Message("CAS", key, value, expectedVersion);
+        request.setExpiresAt(ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0L);
+        return sendWrite(request, "CAS_OK");
+    }
+
+    /**
+     * Envia uma escrita e, caso confirmada, guarda o seu timestamp para as leituras seguintes da chave.
+     */
+    private CompletableFuture<Response> sendWrite(Message request, String confirmation) {
+        String key = request.getKey();
+        return send(request).thenApply(response -> {
+            if (confirmation.equals(response.getCommand())) {
+                timestamps.merge(key, response.getTimestamp(), Math::max);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Obtém o maior timestamp visto por este cliente para uma chave, enviado nos GETs seguintes.
+     * @param key A chave.
+     * @return O timestamp, ou 0 caso a chave ainda não tenha sido lida nem escrita.
+     */
+    public long lastTimestamp(String key) {
+        return timestamps.getOrDefault(key, 0L);
+    }
+
+    /**
+     * Lê várias chaves. As leituras são enviadas juntas e respondidas de forma independente.
+     * @param keys As chaves.
+     * @return Um futuro completado com as respostas de cada chave, na ordem das chaves, ou com a falha
+     * da primeira leitura que não pôde ser feita.
+     */
+    public CompletableFuture<Map<String, Response>> getAll(Collection<String> keys) {
+        Map<String, CompletableFuture<Response>> futures = new LinkedHashMap<>();
+        for (String key : keys) {
+            futures.put(key, get(key));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * Escreve várias chaves. As escritas são enviadas juntas e, no líder, são agrupadas nos mesmos lotes
+     * de replicação.
+     * @param values Os pares chave-valor.
+     * @return Um futuro completado com as respostas de cada chave, na ordem dos pares, ou com a falha
+     * da primeira escrita que não pôde ser feita.
+     */
+    public CompletableFuture<Map<String, Response>> putAll(Map<String, String> values) {
+        Map<String, CompletableFuture<Response>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            futures.put(entry.getKey(), put(entry.getKey(), entry.getValue()));
+        }
+        return collect(futures);
+    }
+
+    private static CompletableFuture<Map<String, Response>> collect(Map<String, CompletableFuture<Response>> futures) {
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, Response> responses = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<Response>> entry : futures.entrySet()) {
+                responses.put(entry.getKey(), entry.getValue().join());
+            }
+            return responses;
+        });
+    }
+
+    /**
+     * Envia uma requisição a um servidor sorteado, repetindo-a em outro servidor quando necessário.
+     * @param request A mensagem de requisição.
+     * @return Um futuro completado com a última resposta recebida, ou com a falha da última tentativa.
+     */
+    public CompletableFuture<Response> send(Message request) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getFailoverTimeoutMillis());
+        attempt(request, 1, new HashSet<>(), result, deadline);
+        return result;
+    }
+
+    /**
+     * Faz uma tentativa de uma requisição. As tentativas de uma mesma requisição são sequenciais,
+     * de modo que o conjunto de servidores tentados não é acessado concorrentemente.
+     * @param deadline O instante, em System.nanoTime(), até o qual as respostas NO_LEADER são repetidas.
+     */
+    private void attempt(Message request, int attempt, Set<String> tried, CompletableFuture<Response> result, long deadline) {
+        Router group = routerFor(request.getKey());
+        String server = group.choose(request, tried);
+        tried.add(server);
+        if (config.getRouting() == ClientConfig.Routing.SMART && group.getLeader() == null) {
+            discoverLeader(group);
+        }
+
+        long start = System.nanoTime();
+        submit(server, request).whenComplete((response, error) -> {
+            if (error != null) {
+                group.recordFailure(server);
+            } else {
+                group.recordResponse(server, System.nanoTime() - start, response);
+            }
+
+            boolean retryable = error != null || isRetryable(response);
+            if (error == null && "WRONG_SHARD".equals(response.getCommand()) && attempt <= config.getMaxRetries()) {
+                // A chave mudou de partição: obtém a topologia atual e repete no grupo correto.
+                refreshTopology().thenRun(() -> attempt(request, attempt + 1, new HashSet<>(), result, deadline));
+            } else if (error == null && "NO_LEADER".equals(response.getCommand()) && System.nanoTime() - deadline < 0) {
+                // Eleição em andamento: esquece o líder antigo e repete quando o novo for conhecido.
+                if (server.equals(group.getLeader())) {
+                    group.setLeader(null);
+                }
+                CompletableFuture.delayedExecutor(config.getRetryBackoffMillis(), TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(request, attempt, new HashSet<>(), result, deadline));
+            } else if (isUnreachable(error) && System.nanoTime() - deadline < 0) {
+                // Servidor fora do ar, possivelmente o líder que caiu: a requisição não chegou a ser
+                // recebida e é repetida em outro servidor sem consumir tentativas.
+                CompletableFuture.delayedExecutor(config.getRetryBackoffMillis(), TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(request, attempt, tried, result, deadline));
+            } else if (error == null && "TRY_OTHER_SERVER_OR_LATER".equals(response.getCommand()) && group.hasUntried(tried)) {
+                // Leitura desatualizada: outra réplica pode já ter a escrita, então tenta imediatamente.
+                attempt(request, attempt, tried, result, deadline);
+            } else if (retryable && attempt <= config.getMaxRetries()) {
+                long backoff = config.getRetryBackoffMillis() << (attempt - 1);
+                CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(request, attempt + 1, tried, result, deadline));
+            } else if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(new Response(response, server, attempt));
+            }
+        });
+    }
+
+    /**
+     * Indica se uma resposta recusou a requisição e ela pode ser repetida em outro servidor. Apenas
+     * as recusas transitórias são repetidas; os demais erros dependem da própria requisição e são
+     * devolvidos imediatamente.
+     */
+    private static boolean isRetryable(Message response) {
+        String command = response.getCommand();
+        return "SERVER_BUSY".equals(command) || "TRY_OTHER_SERVER_OR_LATER".equals(command)
+                || "Erro ao encaminhar mensagem".equals(command);
+    }
+
+    /**
+     * Indica se uma falha foi a recusa da conexão, caso em que o servidor certamente não recebeu a requisição.
+     */
+    private static boolean isUnreachable(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof ConnectException;
+    }
+
+    /**
+     * Envia a requisição assim que o limite de requisições em andamento permitir.
+     */
+    private CompletableFuture<Message> submit(String server, Message request) {
+        CompletableFuture<Message> result = new CompletableFuture<>();
+        waiting.add(() -> connectionPool.send(server, request).whenComplete((response, error) -> {
+            inFlight.release();
+            drain();
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        }));
+        drain();
+        return result;
+    }
+
+    /**
+     * Envia as requisições da fila enquanto houver vagas. Apenas uma thread esvazia a fila por vez; uma
+     * chamada feita durante o esvaziamento, inclusive de dentro dele, apenas pede mais uma passada.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    inFlight.release();
+                    break;
+                }
+                next.run();
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Fecha as conexões com os servidores. As requisições em andamento falham.
+     */
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+}
@@ -0,0 +1,70 @@
+package kvstore.client;
+
+import kvstore.message.Message;
+
+/**
+ * Resposta de uma requisição do cliente, com o servidor que a respondeu.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class Response {
+    private final Message message;
+    private final String server;
+    private final int attempts;
+
+    Response(Message message, String server, int attempts) {
+        this.message = message;
+        this.server = server;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Obtém a mensagem de resposta do servidor.
+     * @return A mensagem de resposta.
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Obtém o comando da resposta, por exemplo PUT_OK, GET ou NULL.
+     * @return O comando da resposta.
+     */
+    public String getCommand() {
+        return message.getCommand();
+    }
+
+    /**
+     * Obtém o valor da resposta.
+     * @return O valor, ou null caso a resposta não tenha valor.
+     */
+    public String getValue() {
+        return message.getValue();
+    }
+
+    /**
+     * Obtém o timestamp da resposta.
+     * @return O timestamp.
+     */
+    public long getTimestamp() {
+        return message.getTimestamp();
+    }
+
+    /**
+     * Obtém o servidor que respondeu.
+     * @return O endereço IP:porta do servidor.
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Obtém o número de tentativas feitas até a resposta.
+     * @return O número de tentativas, 1 caso a primeira tenha sido respondida.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
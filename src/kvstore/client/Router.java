@@ -0,0 +1,205 @@
+package kvstore.client;
+
+import kvstore.message.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escolhe o servidor de cada requisição do cliente. No roteamento inteligente, as escritas vão
+ * diretamente ao líder, quando conhecido, e as leituras vão à réplica de menor latência entre as que
+ * já aplicaram a última escrita da chave feita por este cliente. A latência de cada servidor é uma
+ * média móvel exponencial das respostas, e a posição aplicada é a informada pelo servidor nas
+ * respostas de leitura.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class Router {
+    /** Fração das leituras enviadas a uma réplica sorteada, para manter as medições de todas atualizadas. */
+    private static final double EXPLORATION_RATE = 0.05;
+
+    private final List<String> servers;
+    private final ClientConfig.Routing routing;
+    private final long failurePenaltyNanos;
+    private final Map<String, ServerStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, Long> writeIndexes = new ConcurrentHashMap<>(); // Posição da última escrita por chave
+    private volatile String leader;
+
+    /**
+     * Construtor da classe Router.
+     * @param servers Os endereços dos servidores.
+     * @param routing A política de roteamento.
+     * @param failurePenaltyMillis A latência atribuída a um servidor que não respondeu.
+     */
+    Router(List<String> servers, ClientConfig.Routing routing, long failurePenaltyMillis) {
+        this.servers = new ArrayList<>(servers);
+        this.routing = routing;
+        this.failurePenaltyNanos = failurePenaltyMillis * 1_000_000;
+        for (String server : servers) {
+            stats.put(server, new ServerStats());
+        }
+    }
+
+    /**
+     * Escolhe o servidor de uma tentativa.
+     * @param request A requisição.
+     * @param tried Os servidores já tentados para esta requisição.
+     * @return O endereço do servidor escolhido.
+     */
+    String choose(Message request, Set<String> tried) {
+        if (routing == ClientConfig.Routing.RANDOM) {
+            return random(tried);
+        }
+        if ("GET".equals(request.getCommand())) {
+            return chooseReplica(writeIndexes.getOrDefault(request.getKey(), 0L), tried);
+        }
+        if ("GET_AT".equals(request.getCommand())) {
+            // A leitura em um instante passado não exige a última escrita: a réplica mais rápida serve.
+            return chooseReplica(0L, tried);
+        }
+        String currentLeader = leader;
+        if (currentLeader != null && !tried.contains(currentLeader)) {
+            return currentLeader;
+        }
+        return random(tried);
+    }
+
+    /**
+     * Escolhe a réplica de menor latência que já aplicou a posição exigida. Caso nenhuma réplica não
+     * tentada tenha informado essa posição, escolhe a de menor latência entre as não tentadas.
+     */
+    private String chooseReplica(long requiredIndex, Set<String> tried) {
+        List<String> candidates = untried(tried);
+        if (ThreadLocalRandom.current().nextDouble() < EXPLORATION_RATE) {
+            return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+        }
+
+        String best = null;
+        String bestUpToDate = null;
+        for (String server : candidates) {
+            ServerStats serverStats = stats(server);
+            if (best == null || serverStats.latencyNanos.get() < stats(best).latencyNanos.get()) {
+                best = server;
+            }
+            if (serverStats.appliedIndex.get() >= requiredIndex
+                    && (bestUpToDate == null || serverStats.latencyNanos.get() < stats(bestUpToDate).latencyNanos.get())) {
+                bestUpToDate = server;
+            }
+        }
+        return bestUpToDate != null ? bestUpToDate : best;
+    }
+
+    private String random(Set<String> tried) {
+        List<String> candidates = untried(tried);
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    /**
+     * Obtém os servidores ainda não tentados, ou todos caso já tenham sido tentados.
+     */
+    private List<String> untried(Set<String> tried) {
+        List<String> candidates = new ArrayList<>(servers.size());
+        for (String server : servers) {
+            if (!tried.contains(server)) {
+                candidates.add(server);
+            }
+        }
+        return candidates.isEmpty() ? servers : candidates;
+    }
+
+    /**
+     * Indica se ainda há servidor não tentado para uma requisição.
+     * @param tried Os servidores já tentados.
+     * @return true caso algum servidor ainda não tenha sido tentado.
+     */
+    boolean hasUntried(Set<String> tried) {
+        for (String server : servers) {
+            if (!tried.contains(server)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registra a resposta de um servidor: sua latência e, em leituras, a posição que ele aplicou.
+     * @param server O servidor que respondeu.
+     * @param latencyNanos O tempo até a resposta.
+     * @param response A resposta.
+     */
+    void recordResponse(String server, long latencyNanos, Message response) {
+        ServerStats serverStats = stats(server);
+        serverStats.recordLatency(latencyNanos);
+
+        String command = response.getCommand();
+        if ("GET".equals(command) || "NULL".equals(command) || "TRY_OTHER_SERVER_OR_LATER".equals(command)) {
+            serverStats.appliedIndex.accumulateAndGet(response.getLogIndex(), Math::max);
+        } else if ("PUT_OK".equals(command) || "DELETE_OK".equals(command) || "CAS_OK".equals(command)) {
+            writeIndexes.merge(response.getKey(), response.getLogIndex(), Math::max);
+            if (server.equals(leader)) {
+                serverStats.appliedIndex.accumulateAndGet(response.getLogIndex(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Obtém a posição da última escrita de uma chave confirmada a este cliente.
+     * @param key A chave.
+     * @return A posição no log de replicação, ou 0 caso o cliente não tenha escrito a chave.
+     */
+    long writeIndex(String key) {
+        return writeIndexes.getOrDefault(key, 0L);
+    }
+
+    /**
+     * Registra que um servidor não respondeu. Caso seja o líder, ele precisa ser descoberto novamente.
+     * @param server O servidor.
+     */
+    void recordFailure(String server) {
+        stats(server).recordLatency(failurePenaltyNanos);
+        if (server.equals(leader)) {
+            leader = null;
+        }
+    }
+
+    /**
+     * Obtém o líder conhecido.
+     * @return O endereço do líder, ou null caso ainda não seja conhecido.
+     */
+    String getLeader() {
+        return leader;
+    }
+
+    /**
+     * Define o líder informado por um servidor.
+     * @param leader O endereço do líder.
+     */
+    void setLeader(String leader) {
+        this.leader = leader;
+    }
+
+    private ServerStats stats(String server) {
+        return stats.computeIfAbsent(server, address -> new ServerStats());
+    }
+
+    /**
+     * Medições de um servidor.
+     */
+    private static class ServerStats {
+        /** Média móvel exponencial da latência; 0 enquanto não houver medição, o que favorece o servidor. */
+        private final AtomicLong latencyNanos = new AtomicLong();
+        /** Maior posição do log de replicação que o servidor informou ter aplicado. */
+        private final AtomicLong appliedIndex = new AtomicLong();
+
+        private void recordLatency(long sampleNanos) {
+            latencyNanos.updateAndGet(current -> current == 0 ? sampleNanos : current + (sampleNanos - current) / 5);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package kvstore.cluster;
+
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+import kvstore.network.ConnectionPool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ferramenta de linha de comando que retira um servidor do grupo de replicação em execução, ou o
+ * acrescenta. O pedido é enviado a um servidor do grupo, que o encaminha ao líder. Na saída, o pedido
+ * vai por padrão ao próprio servidor retirado, que assim deixa também de participar das eleições e
+ * pode ser encerrado em seguida.
+ *
+ * Um novo servidor normalmente pede a própria entrada ao iniciar com --join=&lt;servidor do grupo&gt;;
+ * o comando join serve para registrar um servidor já iniciado como secundário desse líder.
+ *
+ * Uso: java kvstore.cluster.MembershipUpdate join|leave &lt;endereço&gt; [servidor do grupo]
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class MembershipUpdate {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * Método principal da ferramenta.
+     * @param args A operação, o endereço do servidor e, opcionalmente, o servidor que recebe o pedido.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3 || !("join".equals(args[0]) || "leave".equals(args[0]))) {
+            System.out.println("Uso: java kvstore.cluster.MembershipUpdate join|leave <IP:porta> [IP:porta de um servidor do grupo]");
+            return;
+        }
+        String command = args[0].toUpperCase();
+        String address = args[1];
+        String target = args.length == 3 ? args[2] : address;
+
+        ConnectionPool connectionPool = new ConnectionPool(1, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS), MessageCodec.fromSystemProperties());
+        try {
+            Message response = connectionPool.send(target, new Message(command, address, null, 0L)).get();
+            System.out.println(command + " [" + address + "]: " + response.getCommand()
+                    + (response.getValue() != null ? " líder [" + response.getKey() + "] grupo [" + response.getValue() + "]" : ""));
+        } catch (Exception e) {
+            System.out.println(command + " [" + address + "] em [" + target + "]: falha " + e.getCause());
+        } finally {
+            connectionPool.close();
+        }
+    }
+}
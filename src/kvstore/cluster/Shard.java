@@ -0,0 +1,67 @@
+package kvstore.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Partição do espaço de chaves, atendida por um grupo de replicação: um líder e seus secundários.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class Shard {
+    private final String id;
+    private final List<String> addresses;
+
+    /**
+     * Construtor da classe Shard.
+     * @param id O identificador da partição.
+     * @param addresses Os endereços IP:porta dos servidores do grupo; o primeiro é o líder.
+     */
+    public Shard(String id, List<String> addresses) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("Partição sem servidores: " + id);
+        }
+        this.id = id;
+        this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+    }
+
+    /**
+     * Obtém o identificador da partição.
+     * @return O identificador.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Obtém os endereços de todos os servidores do grupo, começando pelo líder.
+     * @return Os endereços IP:porta.
+     */
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Obtém o endereço do líder do grupo.
+     * @return O endereço IP:porta do líder.
+     */
+    public String getLeader() {
+        return addresses.get(0);
+    }
+
+    /**
+     * Obtém os endereços dos secundários do grupo.
+     * @return Os endereços IP:porta, sem o líder.
+     */
+    public List<String> getSecondaries() {
+        return addresses.subList(1, addresses.size());
+    }
+
+    @Override
+    public String toString() {
+        return id + "=" + String.join(",", addresses);
+    }
+}
@@ -0,0 +1,171 @@
+package kvstore.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Topologia do cluster: as partições (shards) e a distribuição das chaves entre elas por hashing
+ * consistente. Cada partição ocupa vários pontos virtuais de um anel de 64 bits, e uma chave pertence
+ * à partição do primeiro ponto a partir do hash da chave. Ao acrescentar uma partição, apenas as
+ * chaves que passam a pertencer a ela mudam de lugar.
+ *
+ * A topologia é escrita como texto, por exemplo "2;s1=localhost:9000,localhost:9001;s2=localhost:9100":
+ * a versão, seguida de cada partição com seus servidores, o primeiro sendo o líder. Versões maiores
+ * substituem as menores.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class Topology {
+    private static final int VIRTUAL_NODES = 160;
+
+    private final long version;
+    private final List<Shard> shards;
+    private final long[] ringPoints;
+    private final Shard[] ringShards;
+
+    /**
+     * Construtor da classe Topology.
+     * @param version A versão da topologia.
+     * @param shards As partições.
+     */
+    public Topology(long version, List<Shard> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Topologia sem partições");
+        }
+        Set<String> ids = new HashSet<>();
+        for (Shard shard : shards) {
+            if (!ids.add(shard.getId())) {
+                throw new IllegalArgumentException("Partição repetida: " + shard.getId());
+            }
+        }
+        this.version = version;
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+
+        // Monta o anel ordenado de pontos virtuais.
+        int points = shards.size() * VIRTUAL_NODES;
+        long[][] ring = new long[points][2];
+        int next = 0;
+        for (int s = 0; s < shards.size(); s++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                ring[next][0] = hash(shards.get(s).getId() + "#" + v);
+                ring[next][1] = s;
+                next++;
+            }
+        }
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+        ringPoints = new long[points];
+        ringShards = new Shard[points];
+        for (int i = 0; i < points; i++) {
+            ringPoints[i] = ring[i][0];
+            ringShards[i] = shards.get((int) ring[i][1]);
+        }
+    }
+
+    /**
+     * Lê uma topologia escrita como texto.
+     * @param text O texto da topologia.
+     * @return A topologia.
+     */
+    public static Topology parse(String text) {
+        String[] parts = text.trim().split(";");
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Topologia inválida: " + text);
+        }
+        long version = Long.parseLong(parts[0].trim());
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            String[] shard = parts[i].split("=");
+            if (shard.length != 2) {
+                throw new IllegalArgumentException("Partição inválida: " + parts[i]);
+            }
+            List<String> addresses = new ArrayList<>();
+            for (String address : shard[1].split(",")) {
+                addresses.add(address.trim());
+            }
+            shards.add(new Shard(shard[0].trim(), addresses));
+        }
+        return new Topology(version, shards);
+    }
+
+    /**
+     * Escreve a topologia como texto, no formato aceito por {@link #parse(String)}.
+     * @return O texto da topologia.
+     */
+    public String encode() {
+        StringBuilder text = new StringBuilder().append(version);
+        for (Shard shard : shards) {
+            text.append(';').append(shard);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Obtém a partição responsável por uma chave.
+     * @param key A chave.
+     * @return A partição.
+     */
+    public Shard shardFor(String key) {
+        int index = Arrays.binarySearch(ringPoints, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return ringShards[index == ringPoints.length ? 0 : index];
+    }
+
+    /**
+     * Obtém a partição de que um servidor faz parte.
+     * @param address O endereço IP:porta do servidor.
+     * @return A partição, ou null caso o servidor não pertença à topologia.
+     */
+    public Shard shardOf(String address) {
+        for (Shard shard : shards) {
+            if (shard.getAddresses().contains(address)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtém a versão da topologia.
+     * @return A versão.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Obtém as partições.
+     * @return As partições.
+     */
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Calcula o hash de 64 bits de um texto (FNV-1a seguido de uma mistura final dos bits).
+     */
+    private static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,59 @@
+package kvstore.cluster;
+
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+import kvstore.network.ConnectionPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ferramenta de linha de comando que instala uma nova topologia em um cluster em execução.
+ * Para acrescentar uma partição, os servidores do novo grupo são iniciados já com a nova topologia
+ * (versão maior) e em seguida esta ferramenta a envia aos líderes de todas as partições. Cada líder
+ * move aos novos donos as chaves que deixaram a sua partição e avisa os seus secundários.
+ *
+ * Uso: java kvstore.cluster.TopologyUpdate "2;s1=localhost:9000,localhost:9001;s2=localhost:9100"
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class TopologyUpdate {
+    private static final long TIMEOUT_MINUTES = 30;
+
+    /**
+     * Método principal da ferramenta.
+     * @param args A nova topologia, em texto.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.out.println("Uso: java kvstore.cluster.TopologyUpdate \"<versão>;<partição>=<líder>,<secundários>;...\"");
+            return;
+        }
+        Topology topology = Topology.parse(args[0]);
+
+        ConnectionPool connectionPool = new ConnectionPool(1, TimeUnit.MINUTES.toMillis(TIMEOUT_MINUTES), MessageCodec.fromSystemProperties());
+        try {
+            List<CompletableFuture<Message>> responses = new ArrayList<>();
+            for (Shard shard : topology.getShards()) {
+                Message update = new Message("TOPOLOGY_UPDATE", null, topology.encode(), topology.getVersion());
+                responses.add(connectionPool.send(shard.getLeader(), update));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                Shard shard = topology.getShards().get(i);
+                try {
+                    Message response = responses.get(i).get();
+                    System.out.println("Partição [" + shard.getId() + "] líder [" + shard.getLeader() + "]: "
+                            + response.getCommand() + " versão " + response.getTimestamp());
+                } catch (Exception e) {
+                    System.out.println("Partição [" + shard.getId() + "] líder [" + shard.getLeader() + "]: falha " + e.getCause());
+                }
+            }
+        } finally {
+            connectionPool.close();
+        }
+    }
+}
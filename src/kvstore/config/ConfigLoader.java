@@ -0,0 +1,77 @@
+package kvstore.config;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Carrega a configuração de um arquivo e dos argumentos da linha de comando para as propriedades de
+ * sistema, onde os servidores, o cliente e as ferramentas já a procuram. Assim, um servidor pode ser
+ * iniciado sem responder às perguntas da entrada padrão.
+ *
+ * O arquivo, indicado por --config=&lt;arquivo&gt; ou por -Dkvstore.config, segue o formato .properties
+ * com os mesmos nomes das propriedades de sistema (por exemplo kvstore.readLeaseMillis=500). Cada
+ * argumento --nome=valor define a propriedade com o prefixo do programa (por exemplo
+ * --address=localhost:9000 define kvstore.address no servidor). Os argumentos têm precedência sobre as propriedades -D, que têm
+ * precedência sobre o arquivo.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public final class ConfigLoader {
+    /** Propriedade com o caminho do arquivo de configuração. */
+    public static final String CONFIG_FILE_PROPERTY = "kvstore.config";
+    private static final String CONFIG_OPTION = "config";
+
+    private ConfigLoader() {
+    }
+
+    /**
+     * Aplica o arquivo de configuração e os argumentos às propriedades de sistema.
+     * @param args Os argumentos da linha de comando.
+     * @param prefix O prefixo das propriedades definidas pelos argumentos, como "kvstore." ou "kvstore.client.".
+     * @return Os argumentos que não são opções --nome=valor, na ordem recebida.
+     * @throws IOException Caso o arquivo de configuração não possa ser lido.
+     */
+    public static List<String> apply(String[] args, String prefix) throws IOException {
+        List<String> positional = new ArrayList<>();
+        List<String[]> options = new ArrayList<>();
+        String file = System.getProperty(CONFIG_FILE_PROPERTY);
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.length() == 2) {
+                positional.add(arg);
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+            String value = separator < 0 ? "true" : arg.substring(separator + 1); // --nome equivale a --nome=true
+            if (name.equals(CONFIG_OPTION)) {
+                file = value;
+            } else {
+                options.add(new String[]{prefix + name, value});
+            }
+        }
+
+        if (file != null) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            for (String name : properties.stringPropertyNames()) {
+                if (System.getProperty(name) == null) {
+                    System.setProperty(name, properties.getProperty(name).trim());
+                }
+            }
+        }
+        for (String[] option : options) {
+            System.setProperty(option[0], option[1]);
+        }
+        return positional;
+    }
+}
@@ -0,0 +1,187 @@
+package kvstore.log;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de mensagens assíncrono, com níveis e amostragem das mensagens por requisição. As
+ * mensagens entram em uma fila limitada e são escritas na saída padrão por uma thread própria, de
+ * modo que quem registra nunca espera pelo console; quando a fila está cheia, a mensagem é
+ * descartada e contada. As mensagens por requisição devem ser montadas apenas quando
+ * {@link #sampleRequest()} devolve true, evitando concatenar chaves e valores que não serão escritos.
+ *
+ * Configuração por propriedades de sistema: kvstore.log.level (ERROR, WARN, INFO ou DEBUG; padrão
+ * INFO), kvstore.log.requestSampleRate (fração das requisições registradas; padrão 1) e
+ * kvstore.log.queueCapacity (padrão 65536).
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public final class Log {
+
+    /**
+     * Níveis das mensagens, do mais grave ao mais detalhado.
+     */
+    public enum Level {
+        ERROR,
+        WARN,
+        INFO,
+        DEBUG
+    }
+
+    private static final BlockingQueue<String> QUEUE =
+            new ArrayBlockingQueue<>(Integer.getInteger("kvstore.log.queueCapacity", 65536));
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private static volatile Level level = Level.valueOf(System.getProperty("kvstore.log.level", "INFO").toUpperCase());
+    private static volatile double requestSampleRate = Double.parseDouble(System.getProperty("kvstore.log.requestSampleRate", "1"));
+
+    static {
+        Thread writer = new Thread(Log::write, "kvstore-log");
+        writer.setDaemon(true);
+        writer.start();
+        // Escreve o que ainda estiver na fila quando a JVM terminar.
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "kvstore-log-flush"));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Define o nível mínimo das mensagens escritas.
+     * @param level O nível.
+     */
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    /**
+     * Define a fração das requisições cujas mensagens são escritas.
+     * @param rate A fração, entre 0 e 1.
+     */
+    public static void setRequestSampleRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Taxa de amostragem inválida: " + rate);
+        }
+        requestSampleRate = rate;
+    }
+
+    /**
+     * Indica se as mensagens de um nível são escritas.
+     * @param messageLevel O nível.
+     * @return true caso o nível esteja ativo.
+     */
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.ordinal() <= level.ordinal();
+    }
+
+    /**
+     * Sorteia se a requisição atual deve ser registrada, conforme o nível INFO e a taxa de amostragem.
+     * @return true caso a mensagem da requisição deva ser montada e registrada com {@link #info(String)}.
+     */
+    public static boolean sampleRequest() {
+        double rate = requestSampleRate;
+        return isEnabled(Level.INFO) && (rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate));
+    }
+
+    /**
+     * Registra uma mensagem de erro.
+     * @param message A mensagem.
+     */
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    /**
+     * Registra uma mensagem de erro com a pilha da exceção que a causou.
+     * @param message A mensagem.
+     * @param error A exceção.
+     */
+    public static void error(String message, Throwable error) {
+        if (isEnabled(Level.ERROR)) {
+            StringWriter trace = new StringWriter();
+            error.printStackTrace(new PrintWriter(trace));
+            log(Level.ERROR, message + "\n" + trace.toString().trim());
+        }
+    }
+
+    /**
+     * Registra um aviso.
+     * @param message A mensagem.
+     */
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    /**
+     * Registra uma mensagem informativa.
+     * @param message A mensagem.
+     */
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    /**
+     * Registra uma mensagem de depuração.
+     * @param message A mensagem.
+     */
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    /**
+     * Obtém o número de mensagens descartadas por falta de espaço na fila.
+     * @return O número de mensagens descartadas.
+     */
+    public static long getDropped() {
+        return DROPPED.sum();
+    }
+
+    private static void log(Level messageLevel, String message) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        String line = messageLevel == Level.INFO ? message : "[" + messageLevel + "] " + message;
+        if (!QUEUE.offer(line)) {
+            DROPPED.increment();
+        }
+    }
+
+    /**
+     * Escreve as mensagens da fila em blocos, com um único flush por bloco.
+     */
+    private static void write() {
+        List<String> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(QUEUE.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            QUEUE.drainTo(batch);
+            for (String line : batch) {
+                text.append(line).append(System.lineSeparator());
+            }
+            System.out.print(text);
+            System.out.flush();
+            batch.clear();
+            text.setLength(0);
+        }
+    }
+
+    private static void drain() {
+        List<String> remaining = new ArrayList<>();
+        QUEUE.drainTo(remaining);
+        for (String line : remaining) {
+            System.out.println(line);
+        }
+        System.out.flush();
+    }
+}
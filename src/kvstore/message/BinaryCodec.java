@@ -0,0 +1,559 @@
+package kvstore.message;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec do protocolo binário. Cada mensagem é precedida pelo seu tamanho em 4 bytes, e o comando
+ * é transmitido como um código de 1 byte de uma tabela fixa; comandos fora da tabela usam o código 0
+ * seguido do texto. Chaves e valores são gravados em UTF-8 diretamente no buffer, sem cópias
+ * intermediárias, e os valores recebidos são mantidos como bytes até serem lidos como texto.
+ * 
+ * Formato: tamanho, id (8 bytes), código do comando, chave, valor, timestamp (8 bytes),
+ * posição no log de replicação (8 bytes), o instante de expiração (8 bytes, apenas quando o bit mais
+ * alto do código do comando está ligado) e
+ * o lote de mensagens (quantidade seguida das mensagens, sem o tamanho), onde -1 indica ausência.
+ * 
+ * Mensagens maiores que {@link #CHUNK_SIZE} são enviadas em fragmentos: o tamanho com o bit mais
+ * alto ligado, o identificador do fluxo (8 bytes), o tamanho total da mensagem (4 bytes) e uma parte
+ * dela. Fragmentos de mensagens diferentes podem ser intercalados, de modo que um valor grande não
+ * atrasa as respostas menores da mesma conexão, e os valores grandes são transmitidos a partir do
+ * próprio vetor da mensagem, sem serem copiados para o buffer. Na instância {@link #COMPRESSED}, os
+ * valores a partir de {@link #COMPRESSION_THRESHOLD} bytes são comprimidos com Deflate quando isso
+ * reduz o tamanho em pelo menos um oitavo (tamanho -2, seguido do tamanho original e do comprimido);
+ * qualquer instância decodifica valores comprimidos.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public final class BinaryCodec implements MessageCodec {
+    public static final BinaryCodec INSTANCE = new BinaryCodec(false);
+    /** Protocolo binário com compressão dos valores grandes. */
+    public static final BinaryCodec COMPRESSED = new BinaryCodec(true);
+
+    /** Primeiro byte enviado pelo cliente para selecionar este protocolo. */
+    public static final byte PREFACE = (byte) 0xB1;
+    /** Primeiro byte enviado pelo cliente para selecionar este protocolo com compressão. */
+    public static final byte PREFACE_COMPRESSED = (byte) 0xB2;
+
+    public static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+    /** Tamanho máximo do conteúdo de cada fragmento de uma mensagem grande. */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+    /** Tamanho máximo de uma mensagem enviada em fragmentos. */
+    public static final int MAX_MESSAGE_SIZE = 1024 * 1024 * 1024;
+    /** Valores a partir deste tamanho são transmitidos sem cópia para o buffer da mensagem. */
+    public static final int LARGE_VALUE_SIZE = 64 * 1024;
+    /** Tamanho mínimo dos valores comprimidos pela instância {@link #COMPRESSED}. */
+    public static final int COMPRESSION_THRESHOLD = 8 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    private static final int FRAGMENT_FLAG = 0x80000000;
+    private static final int FRAGMENT_HEADER_SIZE = 16;
+    private static final int COMPRESSED_VALUE = -2;
+    private static final byte[] INCOMPRESSIBLE = new byte[0];
+    private static final byte CUSTOM_COMMAND = 0;
+    private static final int EXPIRES_FLAG = 0x80;
+
+    /** Tabela de comandos; a posição na tabela é o código transmitido. */
+    private static final String[] COMMANDS = {
+            null, "GET", "PUT", "REPLICATION", "PUT_OK", "PUT_ERROR", "REPLICATION_OK", "NULL",
+            "TRY_OTHER_SERVER_OR_LATER", "SERVER_BUSY", "Erro", "SYNC_REQUEST", "SYNC_OK", "DIGEST", "DIGEST_OK",
+            "LEADER", "LEADER_OK", "WRONG_SHARD", "TOPOLOGY", "TOPOLOGY_OK", "TOPOLOGY_UPDATE", "MIGRATE", "MIGRATE_OK",
+            "HEARTBEAT", "HEARTBEAT_OK", "VOTE_REQUEST", "VOTE_GRANTED", "VOTE_DENIED", "REPLICATION_STALE", "NO_LEADER",
+            "GET_AT", "SCAN", "SCAN_OK", "SNAPSHOT_TOO_OLD",
+            "LEASE", "LEASE_OK", "LEASE_DENIED", "JOIN", "JOIN_OK", "LEAVE", "LEAVE_OK",
+            "DELETE", "DELETE_OK", "CAS", "CAS_OK", "CAS_FAILED",
+            "PUT_INVALID", "DELETE_INVALID", "CAS_INVALID", "REPLICATION_INVALID"
+    };
+    private static final Map<String, Byte> OPCODES = new HashMap<>();
+
+    static {
+        for (int i = 1; i < COMMANDS.length; i++) {
+            OPCODES.put(COMMANDS[i], (byte) i);
+        }
+    }
+
+    private final boolean compress;
+
+    private BinaryCodec(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Obtém o primeiro byte que seleciona este protocolo no servidor.
+     * @return {@link #PREFACE} ou {@link #PREFACE_COMPRESSED}.
+     */
+    public byte getPreface() {
+        return compress ? PREFACE_COMPRESSED : PREFACE;
+    }
+
+    @Override
+    public ByteBuffer encode(Message message, long id, ByteBuffer buffer) {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+        while (true) {
+            try {
+                buffer.clear();
+                buffer.position(4);
+                writeMessage(buffer, message, id, null);
+                buffer.putInt(0, buffer.position() - 4);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                // Mensagem maior que o buffer: dobra a capacidade e codifica novamente.
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Codifica em fragmentos as mensagens maiores que {@link #CHUNK_SIZE}. O identificador transmitido
+     * também identifica o fluxo dos fragmentos, e por isso não pode se repetir entre mensagens grandes
+     * enviadas ao mesmo tempo na mesma conexão.
+     */
+    @Override
+    public List<ByteBuffer[]> encodeFrames(Message message, long id) {
+        if (estimateSize(message) <= CHUNK_SIZE) {
+            return null;
+        }
+
+        // Cabeçalhos e valores pequenos vão para o buffer; os valores grandes ficam nos seus vetores.
+        List<Detached> detached = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        while (true) {
+            try {
+                buffer.clear();
+                detached.clear();
+                writeMessage(buffer, message, id, detached);
+                buffer.flip();
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+
+        List<ByteBuffer> parts = new ArrayList<>(2 * detached.size() + 1);
+        long total = buffer.limit();
+        int from = 0;
+        for (Detached value : detached) {
+            parts.add(slice(buffer, from, value.position));
+            parts.add(ByteBuffer.wrap(value.bytes));
+            total += value.bytes.length;
+            from = value.position;
+        }
+        parts.add(slice(buffer, from, buffer.limit()));
+        if (total > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Mensagem maior que o limite de " + MAX_MESSAGE_SIZE + " bytes");
+        }
+
+        List<ByteBuffer[]> frames = new ArrayList<>((int) (total / CHUNK_SIZE) + 1);
+        List<ByteBuffer> frame = new ArrayList<>();
+        int frameSize = 0;
+        for (ByteBuffer part : parts) {
+            while (part.hasRemaining()) {
+                int length = Math.min(part.remaining(), CHUNK_SIZE - frameSize);
+                frame.add(slice(part, part.position(), part.position() + length));
+                part.position(part.position() + length);
+                frameSize += length;
+                if (frameSize == CHUNK_SIZE) {
+                    frames.add(frame(id, (int) total, frame, frameSize));
+                    frame.clear();
+                    frameSize = 0;
+                }
+            }
+        }
+        if (frameSize > 0) {
+            frames.add(frame(id, (int) total, frame, frameSize));
+        }
+        return frames;
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int start = buffer.position();
+        int size = buffer.getInt(start);
+        if (size < 0 || size > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Tamanho de mensagem inválido: " + size);
+        }
+        if (buffer.remaining() < 4 + size) {
+            return null;
+        }
+
+        int limit = buffer.limit();
+        buffer.position(start + 4);
+        buffer.limit(start + 4 + size);
+        try {
+            return readPayload(buffer);
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * Cria um decodificador que também monta as mensagens enviadas em fragmentos.
+     */
+    @Override
+    public MessageDecoder newDecoder() {
+        return new FragmentDecoder();
+    }
+
+    /**
+     * Decodifica o conteúdo de uma mensagem, que ocupa todo o espaço restante do buffer.
+     */
+    private static Message readPayload(ByteBuffer buffer) {
+        try {
+            Message message = readMessage(buffer);
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Mensagem binária inconsistente");
+            }
+            return message;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Mensagem binária inconsistente", e);
+        }
+    }
+
+    /**
+     * Obtém o tamanho do enquadramento que começa na posição atual do buffer.
+     * @param buffer O buffer com os bytes recebidos.
+     * @return O tamanho total da mensagem com o cabeçalho, ou -1 caso o cabeçalho ainda não tenha chegado.
+     */
+    public static int frameSize(ByteBuffer buffer) {
+        return buffer.remaining() < 4 ? -1 : 4 + buffer.getInt(buffer.position());
+    }
+
+    /**
+     * Estima, por excesso, o tamanho codificado de uma mensagem sem compressão.
+     */
+    private static long estimateSize(Message message) {
+        long size = 8 + 1 + 4 + 4 + 8 + 8 + 8 + 4;
+        if (message.getCommand() != null && !OPCODES.containsKey(message.getCommand())) {
+            size += 4 + 3L * message.getCommand().length();
+        }
+        if (message.getKey() != null) {
+            size += 3L * message.getKey().length();
+        }
+        byte[] value = message.getValueBytes();
+        if (value != null) {
+            size += value.length;
+        }
+        if (message.getEntries() != null) {
+            for (Message entry : message.getEntries()) {
+                size += estimateSize(entry);
+            }
+        }
+        return size;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice.slice();
+    }
+
+    private static ByteBuffer[] frame(long id, int total, List<ByteBuffer> parts, int size) {
+        ByteBuffer[] frame = new ByteBuffer[parts.size() + 1];
+        ByteBuffer header = ByteBuffer.allocate(FRAGMENT_HEADER_SIZE);
+        header.putInt(FRAGMENT_FLAG | (FRAGMENT_HEADER_SIZE - 4 + size));
+        header.putLong(id);
+        header.putInt(total);
+        header.flip();
+        frame[0] = header;
+        for (int i = 0; i < parts.size(); i++) {
+            frame[i + 1] = parts.get(i);
+        }
+        return frame;
+    }
+
+    /**
+     * Grava uma mensagem no buffer. Com a lista de valores destacados, os valores grandes não são
+     * copiados: apenas o seu tamanho é gravado, e o valor é registrado com a posição em que deve ser
+     * inserido entre os bytes do buffer.
+     */
+    private void writeMessage(ByteBuffer buffer, Message message, long id, List<Detached> detached) {
+        buffer.putLong(id);
+
+        Byte opcode = message.getCommand() == null ? null : OPCODES.get(message.getCommand());
+        int expires = message.getExpiresAt() != 0 ? EXPIRES_FLAG : 0;
+        if (opcode != null) {
+            buffer.put((byte) (opcode | expires));
+        } else {
+            buffer.put((byte) (CUSTOM_COMMAND | expires));
+            writeString(buffer, message.getCommand());
+        }
+
+        writeString(buffer, message.getKey());
+        byte[] value = message.getValueBytes();
+        byte[] compressed = value != null && compress ? compress(message, value) : null;
+        if (value == null) {
+            buffer.putInt(-1);
+        } else if (compressed != null) {
+            buffer.putInt(COMPRESSED_VALUE);
+            buffer.putInt(value.length);
+            writeBytes(buffer, compressed, detached);
+        } else {
+            writeBytes(buffer, value, detached);
+        }
+        buffer.putLong(message.getTimestamp());
+        buffer.putLong(message.getLogIndex());
+        if (expires != 0) {
+            buffer.putLong(message.getExpiresAt());
+        }
+
+        List<Message> entries = message.getEntries();
+        if (entries == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(entries.size());
+            for (Message entry : entries) {
+                writeMessage(buffer, entry, entry.getId(), detached);
+            }
+        }
+    }
+
+    private static Message readMessage(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        int code = buffer.get() & 0xFF;
+        boolean expires = (code & EXPIRES_FLAG) != 0;
+        int opcode = code & ~EXPIRES_FLAG;
+        String command;
+        if (opcode == CUSTOM_COMMAND) {
+            command = readString(buffer);
+        } else if (opcode > 0 && opcode < COMMANDS.length) {
+            command = COMMANDS[opcode];
+        } else {
+            throw new IllegalArgumentException("Código de comando desconhecido: " + opcode);
+        }
+
+        String key = readString(buffer);
+        byte[] value = null;
+        byte[] compressed = null;
+        int valueSize = buffer.getInt();
+        if (valueSize == COMPRESSED_VALUE) {
+            int rawSize = buffer.getInt();
+            compressed = new byte[buffer.getInt()];
+            buffer.get(compressed);
+            value = decompress(compressed, rawSize);
+        } else if (valueSize >= 0) {
+            value = new byte[valueSize];
+            buffer.get(value);
+        }
+        long timestamp = buffer.getLong();
+        long logIndex = buffer.getLong();
+        long expiresAt = expires ? buffer.getLong() : 0;
+
+        Message message = Message.withBytes(command, key, value, timestamp);
+        message.setCompressedValue(compressed);
+        message.setId(id);
+        message.setLogIndex(logIndex);
+        message.setExpiresAt(expiresAt);
+
+        int entryCount = buffer.getInt();
+        if (entryCount >= 0) {
+            List<Message> entries = new ArrayList<>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                entries.add(readMessage(buffer));
+            }
+            message.setEntries(entries);
+        }
+        return message;
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes, List<Detached> detached) {
+        buffer.putInt(bytes.length);
+        if (detached != null && bytes.length >= LARGE_VALUE_SIZE) {
+            detached.add(new Detached(buffer.position(), bytes));
+        } else {
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Comprime um valor, guardando o resultado na mensagem para os próximos envios.
+     * @return Os bytes comprimidos, ou null caso o valor seja pequeno ou a compressão não compense.
+     */
+    private static byte[] compress(Message message, byte[] value) {
+        if (value.length < COMPRESSION_THRESHOLD) {
+            return null;
+        }
+        byte[] compressed = message.getCompressedValue();
+        if (compressed == null) {
+            compressed = deflate(value, value.length - value.length / 8);
+            message.setCompressedValue(compressed);
+        }
+        return compressed.length > 0 ? compressed : null;
+    }
+
+    /**
+     * Comprime os bytes com Deflate na compressão mais rápida.
+     * @return Os bytes comprimidos, ou {@link #INCOMPRESSIBLE} caso passem do tamanho máximo.
+     */
+    private static byte[] deflate(byte[] value, int maxSize) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(value);
+            deflater.finish();
+            byte[] output = new byte[maxSize];
+            int size = 0;
+            while (!deflater.finished() && size < maxSize) {
+                size += deflater.deflate(output, size, maxSize - size);
+            }
+            return deflater.finished() ? Arrays.copyOf(output, size) : INCOMPRESSIBLE;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed, int rawSize) {
+        if (rawSize < 0 || rawSize > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Tamanho de valor comprimido inválido: " + rawSize);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] value = new byte[rawSize];
+            int size = 0;
+            while (size < rawSize) {
+                int inflated = inflater.inflate(value, size, rawSize - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != rawSize) {
+                throw new IllegalArgumentException("Valor comprimido inconsistente");
+            }
+            return value;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Valor comprimido inválido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Grava um texto como tamanho seguido dos bytes UTF-8, codificando diretamente no buffer.
+     */
+    private static void writeString(ByteBuffer buffer, String text) {
+        if (text == null) {
+            buffer.putInt(-1);
+            return;
+        }
+
+        int sizePosition = buffer.position();
+        buffer.putInt(0);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // Surrogate isolado, como em String.getBytes
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(sizePosition, buffer.position() - sizePosition - 4);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size < 0) {
+            return null;
+        }
+        String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), size, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + size);
+        return text;
+    }
+
+    /**
+     * Valor grande transmitido a partir do seu próprio vetor, inserido na posição indicada do buffer.
+     */
+    private static final class Detached {
+        private final int position;
+        private final byte[] bytes;
+
+        private Detached(int position, byte[] bytes) {
+            this.position = position;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Decodificador de uma conexão. Guarda as mensagens em montagem a partir dos seus fragmentos,
+     * por identificador do fluxo, e entrega cada uma assim que o último fragmento chega.
+     */
+    private final class FragmentDecoder implements MessageDecoder {
+        private final Map<Long, ByteBuffer> streams = new HashMap<>();
+        private long pending; // Bytes reservados pelas mensagens em montagem
+
+        @Override
+        public Message decode(ByteBuffer buffer) {
+            while (buffer.remaining() >= 4) {
+                int start = buffer.position();
+                int header = buffer.getInt(start);
+                if ((header & FRAGMENT_FLAG) == 0) {
+                    return BinaryCodec.this.decode(buffer);
+                }
+                int size = header & ~FRAGMENT_FLAG;
+                if (size < FRAGMENT_HEADER_SIZE - 4 || size > FRAGMENT_HEADER_SIZE - 4 + CHUNK_SIZE) {
+                    throw new IllegalArgumentException("Tamanho de fragmento inválido: " + size);
+                }
+                if (buffer.remaining() < 4 + size) {
+                    return null;
+                }
+
+                long id = buffer.getLong(start + 4);
+                int total = buffer.getInt(start + 12);
+                ByteBuffer stream = streams.get(id);
+                if (stream == null) {
+                    if (total <= 0 || total > MAX_MESSAGE_SIZE || pending + total > MAX_MESSAGE_SIZE) {
+                        throw new IllegalArgumentException("Tamanho de mensagem inválido: " + total);
+                    }
+                    stream = ByteBuffer.allocate(total);
+                    streams.put(id, stream);
+                    pending += total;
+                }
+                int length = size - (FRAGMENT_HEADER_SIZE - 4);
+                if (stream.capacity() != total || length > stream.remaining()) {
+                    throw new IllegalArgumentException("Fragmento inconsistente da mensagem " + id);
+                }
+                stream.put(slice(buffer, start + FRAGMENT_HEADER_SIZE, start + FRAGMENT_HEADER_SIZE + length));
+                buffer.position(start + FRAGMENT_HEADER_SIZE + length);
+
+                if (!stream.hasRemaining()) {
+                    streams.remove(id);
+                    pending -= total;
+                    stream.flip();
+                    return readPayload(stream);
+                }
+            }
+            return null;
+        }
+    }
+}
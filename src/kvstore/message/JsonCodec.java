@@ -0,0 +1,80 @@
+package kvstore.message;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec do protocolo original: cada mensagem é uma linha JSON terminada por '\n'.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public final class JsonCodec implements MessageCodec {
+    public static final JsonCodec INSTANCE = new JsonCodec();
+    private static final Gson gson = new Gson();
+
+    private JsonCodec() {
+    }
+
+    @Override
+    public ByteBuffer encode(Message message, long id, ByteBuffer buffer) {
+        materializeValues(message);
+        JsonObject json = gson.toJsonTree(message).getAsJsonObject();
+        json.addProperty("id", id);
+        byte[] line = (gson.toJson(json) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        if (buffer == null || buffer.capacity() < line.length) {
+            buffer = ByteBuffer.allocate(Math.max(line.length, buffer == null ? 0 : buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.put(line);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Converte para texto os valores guardados apenas em bytes, na mensagem e nas mensagens do seu
+     * lote, pois a serialização só considera o valor em texto.
+     */
+    private static void materializeValues(Message message) {
+        message.getValue();
+        if (message.getEntries() != null) {
+            for (Message entry : message.getEntries()) {
+                materializeValues(entry);
+            }
+        }
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) {
+        while (true) {
+            int start = buffer.position();
+            int end = -1;
+            for (int i = start; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (end < 0) {
+                return null;
+            }
+            buffer.position(end + 1);
+
+            String line = new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                return gson.fromJson(line, Message.class);
+            } catch (JsonParseException e) {
+                throw new IllegalArgumentException("Mensagem JSON inválida", e);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package kvstore.message;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 /**
  * Representa uma mensagem enviada entre o cliente e o servidor contendo informações relevantes
  * para realizar as operações PUT e GET no armazenamento chave-valor distribuído.
@@ -9,10 +12,16 @@ package kvstore.message;
  * @author Lucas Henrique Gois de Campos
  */
 public class Message {
+    private long id;
     private String command;
     private String key;
     private String value;
+    private transient byte[] valueBytes;
+    private transient byte[] compressedValue; // Reutilizado ao reenviar a mensagem; vazio caso não compense
     private long timestamp;
+    private long logIndex;
+    private long expiresAt;
+    private List<Message> entries;
 
     /**
      * Construtor da classe Message.
@@ -27,7 +36,54 @@ public class Message {
         this.value = value;
         this.timestamp = timestamp;
     }
+
+    /**
+     * Cria uma mensagem cujo valor é uma sequência de bytes. No protocolo binário os bytes são
+     * transmitidos sem conversão; no protocolo JSON são convertidos para texto UTF-8.
+     * @param command O comando da mensagem
+     * @param key A chave associada à mensagem
+     * @param value Os bytes do valor associado à mensagem
+     * @param timestamp O timestamp da mensagem
+     * @return A mensagem criada.
+     */
+    public static Message withBytes(String command, String key, byte[] value, long timestamp) {
+        Message message = new Message(command, key, null, timestamp);
+        message.valueBytes = value;
+        return message;
+    }
+
+    /**
+     * Cria uma mensagem com outro comando e a mesma chave, valor, timestamp e expiração. O valor é compartilhado
+     * na forma em que já estiver, como texto, como os bytes recebidos ou comprimido, sem ser convertido
+     * novamente, o que evita cópias ao replicar ou ecoar valores grandes.
+     * @param command O comando da nova mensagem.
+     * @return A mensagem criada, sem identificador, posição no log ou lote.
+     */
+    public Message withCommand(String command) {
+        Message message = new Message(command, key, value, timestamp);
+        message.valueBytes = valueBytes;
+        message.compressedValue = compressedValue;
+        message.expiresAt = expiresAt;
+        return message;
+    }
     
+    /**
+     * Obtém o identificador da requisição, usado para associar respostas fora de ordem
+     * às requisições enviadas na mesma conexão.
+     * @return O identificador da mensagem.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Define o identificador da requisição.
+     * @param id O identificador da mensagem.
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
     /**
      * Obtém o comando da mensagem.
      * @return O comando da mensagem.
@@ -49,9 +105,41 @@ public class Message {
      * @return O valor da mensagem.
      */
     public String getValue() {
+        // Mensagens recebidas pelo protocolo binário só convertem o valor para texto quando necessário.
+        if (value == null && valueBytes != null) {
+            value = new String(valueBytes, StandardCharsets.UTF_8);
+        }
         return value;
     }
 
+    /**
+     * Obtém o valor associado à mensagem como bytes UTF-8.
+     * @return Os bytes do valor, ou null caso a mensagem não tenha valor.
+     */
+    public byte[] getValueBytes() {
+        if (valueBytes == null && value != null) {
+            valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        }
+        return valueBytes;
+    }
+
+    /**
+     * Obtém o valor comprimido guardado pelo protocolo binário.
+     * @return Os bytes comprimidos, um vetor vazio caso o valor não compense ser comprimido, ou null
+     * caso ainda não tenha sido comprimido.
+     */
+    byte[] getCompressedValue() {
+        return compressedValue;
+    }
+
+    /**
+     * Guarda o valor comprimido, para que a mensagem seja reenviada sem comprimir o valor novamente.
+     * @param compressedValue Os bytes comprimidos, ou um vetor vazio caso o valor não compense ser comprimido.
+     */
+    void setCompressedValue(byte[] compressedValue) {
+        this.compressedValue = compressedValue;
+    }
+
     /**
      * Obtém o timestamp da mensagem.
      * @return O timestamp da mensagem.
@@ -59,4 +147,52 @@ public class Message {
     public long getTimestamp() {
         return timestamp;
     }
+
+    /**
+     * Obtém a posição da escrita no log de replicação do líder.
+     * @return A posição no log, ou 0 caso a mensagem não venha do log.
+     */
+    public long getLogIndex() {
+        return logIndex;
+    }
+
+    /**
+     * Define a posição da escrita no log de replicação do líder.
+     * @param logIndex A posição no log.
+     */
+    public void setLogIndex(long logIndex) {
+        this.logIndex = logIndex;
+    }
+
+    /**
+     * Obtém o instante em que o valor da escrita expira.
+     * @return O instante em milissegundos, ou 0 caso o valor não expire.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Define o instante em que o valor da escrita expira.
+     * @param expiresAt O instante em milissegundos, ou 0 caso o valor não expire.
+     */
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Obtém as mensagens agrupadas nesta mensagem, quando ela transporta um lote de operações.
+     * @return As mensagens do lote, ou null caso a mensagem represente uma única operação.
+     */
+    public List<Message> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Define as mensagens agrupadas nesta mensagem.
+     * @param entries As mensagens do lote.
+     */
+    public void setEntries(List<Message> entries) {
+        this.entries = entries;
+    }
 }
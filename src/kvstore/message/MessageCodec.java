@@ -0,0 +1,92 @@
+package kvstore.message;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Codificação das mensagens trocadas em uma conexão. Cada conexão usa um único codec, escolhido
+ * pelo primeiro byte enviado pelo cliente: o byte {@link BinaryCodec#PREFACE} seleciona o protocolo
+ * binário, {@link BinaryCodec#PREFACE_COMPRESSED} o protocolo binário com compressão dos valores
+ * grandes, e qualquer outro byte indica linhas JSON, mantidas para depuração e compatibilidade.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public interface MessageCodec {
+
+    /**
+     * Codifica uma mensagem completa, com seu enquadramento, em um buffer reutilizável.
+     * @param message A mensagem.
+     * @param id O identificador a ser transmitido no lugar do identificador da mensagem.
+     * @param buffer O buffer a ser reutilizado; é substituído por um maior caso não comporte a mensagem.
+     * @return O buffer com a mensagem codificada, pronto para leitura.
+     */
+    ByteBuffer encode(Message message, long id, ByteBuffer buffer);
+
+    /**
+     * Decodifica a próxima mensagem completa do buffer, avançando sua posição.
+     * @param buffer O buffer com os bytes recebidos, pronto para leitura.
+     * @return A mensagem, ou null caso o buffer ainda não contenha uma mensagem completa.
+     * @throws IllegalArgumentException Caso os bytes não formem uma mensagem válida.
+     */
+    Message decode(ByteBuffer buffer);
+
+    /**
+     * Codifica uma mensagem grande em quadros, que podem ser intercalados com outras mensagens da
+     * mesma conexão, em vez de um único buffer com a mensagem inteira.
+     * @param message A mensagem.
+     * @param id O identificador a ser transmitido no lugar do identificador da mensagem.
+     * @return Os quadros em ordem, cada um como os buffers a serem escritos por inteiro, ou null caso a
+     * mensagem deva ser codificada com {@link #encode}. Por padrão, null.
+     */
+    default List<ByteBuffer[]> encodeFrames(Message message, long id) {
+        return null;
+    }
+
+    /**
+     * Cria o decodificador das mensagens recebidas em uma conexão.
+     * @return O decodificador; por padrão, o próprio {@link #decode}, que não guarda estado.
+     */
+    default MessageDecoder newDecoder() {
+        return this::decode;
+    }
+
+    /**
+     * Obtém o codec do protocolo indicado.
+     * @param protocol "binary" ou "json".
+     * @return O codec correspondente.
+     */
+    static MessageCodec forName(String protocol) {
+        if (protocol.equalsIgnoreCase("json")) {
+            return JsonCodec.INSTANCE;
+        } else if (protocol.equalsIgnoreCase("binary")) {
+            return BinaryCodec.INSTANCE;
+        }
+        throw new IllegalArgumentException("Protocolo desconhecido: " + protocol);
+    }
+
+    /**
+     * Obtém o codec definido pela propriedade de sistema kvstore.protocol (binário por padrão). Com
+     * kvstore.compression=true, o protocolo binário comprime os valores grandes.
+     * @return O codec configurado.
+     */
+    static MessageCodec fromSystemProperties() {
+        MessageCodec codec = forName(System.getProperty("kvstore.protocol", "binary"));
+        return codec == BinaryCodec.INSTANCE && Boolean.getBoolean("kvstore.compression") ? BinaryCodec.COMPRESSED : codec;
+    }
+
+    /**
+     * Obtém o codec escolhido pelo primeiro byte de uma conexão.
+     * @param firstByte O primeiro byte recebido.
+     * @return O codec binário, com ou sem compressão, ou o codec JSON.
+     */
+    static MessageCodec negotiate(int firstByte) {
+        if ((byte) firstByte == BinaryCodec.PREFACE) {
+            return BinaryCodec.INSTANCE;
+        } else if ((byte) firstByte == BinaryCodec.PREFACE_COMPRESSED) {
+            return BinaryCodec.COMPRESSED;
+        }
+        return JsonCodec.INSTANCE;
+    }
+}
@@ -0,0 +1,22 @@
+package kvstore.message;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodificador das mensagens recebidas em uma conexão. Diferente do codec, pode guardar estado entre
+ * as leituras, como as mensagens grandes ainda em montagem a partir dos seus fragmentos.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public interface MessageDecoder {
+
+    /**
+     * Decodifica a próxima mensagem completa do buffer, avançando sua posição.
+     * @param buffer O buffer com os bytes recebidos, pronto para leitura.
+     * @return A mensagem, ou null caso o buffer ainda não contenha uma mensagem completa.
+     * @throws IllegalArgumentException Caso os bytes não formem uma mensagem válida.
+     */
+    Message decode(ByteBuffer buffer);
+}
@@ -0,0 +1,108 @@
+package kvstore.message;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Lê mensagens de um fluxo de entrada bloqueante usando um codec e um buffer reutilizável.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class MessageReader {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final InputStream input;
+    private MessageCodec codec;
+    private MessageDecoder decoder;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean endOfStream;
+
+    /**
+     * Construtor da classe MessageReader para um codec conhecido.
+     * @param input O fluxo de entrada.
+     * @param codec O codec das mensagens.
+     */
+    public MessageReader(InputStream input, MessageCodec codec) {
+        this.input = input;
+        this.codec = codec;
+        this.decoder = codec.newDecoder();
+        buffer.flip();
+    }
+
+    /**
+     * Cria um leitor que escolhe o codec pelo primeiro byte recebido, como faz o servidor.
+     * @param input O fluxo de entrada.
+     * @return O leitor, ou null caso a conexão tenha sido encerrada antes do primeiro byte.
+     * @throws IOException Caso ocorra um erro de leitura.
+     */
+    public static MessageReader negotiate(InputStream input) throws IOException {
+        int firstByte = input.read();
+        if (firstByte < 0) {
+            return null;
+        }
+        MessageReader reader = new MessageReader(input, MessageCodec.negotiate(firstByte));
+        if (reader.codec == JsonCodec.INSTANCE) {
+            // No protocolo JSON o primeiro byte já faz parte da primeira mensagem.
+            reader.buffer.clear();
+            reader.buffer.put((byte) firstByte);
+            reader.buffer.flip();
+        }
+        return reader;
+    }
+
+    /**
+     * Obtém o codec usado por este leitor.
+     * @return O codec.
+     */
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Lê a próxima mensagem, bloqueando até que ela chegue por completo.
+     * @return A mensagem, ou null caso a conexão tenha sido encerrada.
+     * @throws IOException Caso ocorra um erro de leitura ou a mensagem seja inválida.
+     */
+    public Message read() throws IOException {
+        while (true) {
+            try {
+                Message message = decoder.decode(buffer);
+                if (message != null) {
+                    return message;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (endOfStream) {
+                return null;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Lê mais bytes do fluxo, compactando o buffer e aumentando-o caso esteja cheio.
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            if (buffer.capacity() >= BinaryCodec.MAX_FRAME_SIZE) {
+                throw new IOException("Mensagem maior que o limite de " + BinaryCodec.MAX_FRAME_SIZE + " bytes");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        int read = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            buffer.position(buffer.position() + read);
+        }
+        buffer.flip();
+    }
+}
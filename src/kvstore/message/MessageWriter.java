@@ -0,0 +1,77 @@
+package kvstore.message;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Escreve mensagens em um fluxo de saída bloqueante usando um codec e um buffer reutilizável.
+ * Pode ser usado por várias threads: cada mensagem é escrita por inteiro antes da próxima, exceto as
+ * mensagens grandes, escritas um fragmento por vez para que as demais não esperem por elas.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class MessageWriter {
+    private final OutputStream output;
+    private final MessageCodec codec;
+    private ByteBuffer buffer;
+
+    /**
+     * Construtor da classe MessageWriter.
+     * @param output O fluxo de saída.
+     * @param codec O codec das mensagens.
+     */
+    public MessageWriter(OutputStream output, MessageCodec codec) {
+        this.output = output;
+        this.codec = codec;
+    }
+
+    /**
+     * Envia o byte que seleciona o protocolo no servidor. Deve ser chamado uma única vez, antes de
+     * qualquer mensagem, e apenas pelo lado que abre a conexão.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    public synchronized void writePreface() throws IOException {
+        if (codec instanceof BinaryCodec) {
+            output.write(((BinaryCodec) codec).getPreface());
+            output.flush();
+        }
+    }
+
+    /**
+     * Escreve uma mensagem com o seu próprio identificador.
+     * @param message A mensagem.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    public void write(Message message) throws IOException {
+        write(message, message.getId());
+    }
+
+    /**
+     * Escreve uma mensagem com o identificador indicado, sem alterar a mensagem.
+     * @param message A mensagem.
+     * @param id O identificador transmitido.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    public void write(Message message, long id) throws IOException {
+        List<ByteBuffer[]> frames = codec.encodeFrames(message, id);
+        if (frames == null) {
+            synchronized (this) {
+                buffer = codec.encode(message, id, buffer);
+                output.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+                output.flush();
+            }
+            return;
+        }
+        for (ByteBuffer[] frame : frames) {
+            synchronized (this) {
+                for (ByteBuffer part : frame) {
+                    output.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+                }
+                output.flush();
+            }
+        }
+    }
+}
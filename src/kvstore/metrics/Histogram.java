@@ -0,0 +1,143 @@
+package kvstore.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências com faixas log-lineares, no estilo do HdrHistogram: cada potência de dois
+ * é dividida em 32 faixas, de modo que qualquer percentil é obtido com erro de no máximo ~3%, para
+ * valores de nanossegundos a horas, em um vetor de tamanho fixo. O registro de um valor não cria
+ * objetos nem usa locks, e pode ser feito por várias threads ao mesmo tempo.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Registra um valor.
+     * @param value O valor, normalmente uma duração em nanossegundos. Valores negativos contam como 0.
+     */
+    public void record(long value) {
+        long sample = Math.max(0, value);
+        counts.incrementAndGet(index(sample));
+        count.increment();
+        sum.add(sample);
+        long currentMax = max.get();
+        while (sample > currentMax && !max.compareAndSet(currentMax, sample)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Obtém uma cópia do estado atual do histograma, usada para calcular os percentis.
+     * @return A cópia.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.sum(), max.get());
+    }
+
+    /**
+     * Obtém a faixa de um valor: os valores menores que 32 têm uma faixa cada; os demais são
+     * agrupados pelos 5 bits seguintes ao bit mais significativo.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Obtém o maior valor contido em uma faixa.
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Estado de um histograma em um instante.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long total = 0;
+            for (long bucket : counts) {
+                total += bucket;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Obtém o número de valores registrados.
+         * @return O número de valores.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Obtém a soma dos valores registrados.
+         * @return A soma.
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Obtém o maior valor registrado.
+         * @return O maior valor.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Obtém o valor de um quantil.
+         * @param quantile O quantil, entre 0 e 1 (por exemplo 0.99).
+         * @return O valor abaixo do qual está a fração indicada dos valores, ou 0 caso não haja valores.
+         */
+        public long getValue(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package kvstore.metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publica as métricas de um registro por JMX, como atributos somente leitura de um MBean dinâmico,
+ * para serem consultadas pelo JConsole ou pelo VisualVM. O conjunto de atributos acompanha as
+ * métricas registradas, inclusive as criadas depois do registro do MBean (como as de um novo secundário).
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class MetricsMBean implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    private MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registra as métricas no servidor de MBeans da plataforma.
+     * @param registry As métricas.
+     * @param address O endereço IP:porta do servidor, que identifica o MBean.
+     * @return O nome do MBean registrado, usado em {@link #unregister(ObjectName)}.
+     * @throws JMException Caso o MBean não possa ser registrado.
+     */
+    public static ObjectName register(MetricsRegistry registry, String address) throws JMException {
+        ObjectName name = new ObjectName("kvstore:type=Server,address=" + ObjectName.quote(address));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new MetricsMBean(registry), name);
+        return name;
+    }
+
+    /**
+     * Remove um MBean registrado por {@link #register(MetricsRegistry, String)}.
+     * @param name O nome do MBean.
+     */
+    public static void unregister(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // Já removido.
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.values().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = registry.values();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("As métricas são somente leitura: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Number> value : registry.values().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                    value.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Métricas do servidor KVStore",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
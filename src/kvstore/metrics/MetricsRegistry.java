@@ -0,0 +1,183 @@
+package kvstore.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Conjunto de métricas de um servidor: contadores, medidores e histogramas de latência, agrupados
+ * em famílias pelo nome e diferenciados por rótulos (por exemplo command="GET"). As métricas são
+ * criadas uma vez e guardadas por quem as atualiza, de modo que atualizar uma métrica não passa
+ * pelo registro. O registro gera o formato de texto do Prometheus e os valores expostos por JMX.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class MetricsRegistry {
+    /** Quantis publicados para cada histograma. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Obtém ou cria um contador.
+     * @param name O nome da métrica, terminado em _total.
+     * @param help A descrição da métrica.
+     * @param labels Os pares de nome e valor dos rótulos.
+     * @return O contador.
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, "counter").metrics.computeIfAbsent(labels(labels), ignored -> new LongAdder());
+    }
+
+    /**
+     * Registra um contador cujo valor é mantido por outro objeto, como os acertos de um cache.
+     * @param name O nome da métrica, terminado em _total.
+     * @param help A descrição da métrica.
+     * @param value A função que lê o valor acumulado.
+     * @param labels Os pares de nome e valor dos rótulos.
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter").metrics.put(labels(labels), value);
+    }
+
+    /**
+     * Registra um medidor, cujo valor é lido no momento da coleta.
+     * @param name O nome da métrica.
+     * @param help A descrição da métrica.
+     * @param value A função que lê o valor atual.
+     * @param labels Os pares de nome e valor dos rótulos.
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "gauge").metrics.put(labels(labels), value);
+    }
+
+    /**
+     * Obtém ou cria um histograma de durações em nanossegundos, publicado em segundos.
+     * @param name O nome da métrica, terminado em _seconds.
+     * @param help A descrição da métrica.
+     * @param labels Os pares de nome e valor dos rótulos.
+     * @return O histograma.
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "summary").metrics.computeIfAbsent(labels(labels), ignored -> new Histogram());
+    }
+
+    private synchronized Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, ignored -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("A métrica " + name + " já foi registrada como " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Gera o texto de todas as métricas no formato de exposição do Prometheus (versão 0.0.4).
+     * @return O texto das métricas.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Family> entry : snapshotFamilies().entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            text.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+                if (value instanceof Histogram) {
+                    Histogram.Snapshot snapshot = ((Histogram) value).snapshot();
+                    for (double quantile : QUANTILES) {
+                        text.append(name).append(withLabel(labels, "quantile", String.valueOf(quantile))).append(' ')
+                                .append(snapshot.getValue(quantile) / NANOS_PER_SECOND).append('\n');
+                    }
+                    text.append(name).append("_sum").append(labels).append(' ').append(snapshot.getSum() / NANOS_PER_SECOND).append('\n');
+                    text.append(name).append("_count").append(labels).append(' ').append(snapshot.getCount()).append('\n');
+                } else {
+                    text.append(name).append(labels).append(' ').append(longValue(value)).append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Obtém os valores atuais de todas as métricas como números, no formato usado pelo JMX: cada
+     * histograma é desdobrado em contagem, percentis e máximo, em milissegundos.
+     * @return Os valores por nome, como "kvstore_requests_total{command="GET"}" ou
+     * "kvstore_request_duration_seconds{command="GET"}.p99_ms".
+     */
+    public Map<String, Number> values() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Family> entry : snapshotFamilies().entrySet()) {
+            for (Map.Entry<String, Object> metric : entry.getValue().metrics.entrySet()) {
+                String name = entry.getKey() + metric.getKey();
+                Object value = metric.getValue();
+                if (value instanceof Histogram) {
+                    Histogram.Snapshot snapshot = ((Histogram) value).snapshot();
+                    values.put(name + ".count", snapshot.getCount());
+                    values.put(name + ".p50_ms", snapshot.getValue(0.5) / 1e6);
+                    values.put(name + ".p99_ms", snapshot.getValue(0.99) / 1e6);
+                    values.put(name + ".p999_ms", snapshot.getValue(0.999) / 1e6);
+                    values.put(name + ".max_ms", snapshot.getMax() / 1e6);
+                } else {
+                    values.put(name, longValue(value));
+                }
+            }
+        }
+        return values;
+    }
+
+    private synchronized Map<String, Family> snapshotFamilies() {
+        return new LinkedHashMap<>(families);
+    }
+
+    private static long longValue(Object metric) {
+        return metric instanceof LongAdder ? ((LongAdder) metric).sum() : ((LongSupplier) metric).getAsLong();
+    }
+
+    /**
+     * Formata os rótulos como {nome="valor",...}, escapando os valores.
+     */
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Rótulos devem ser pares de nome e valor");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return text.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    /**
+     * Métricas com o mesmo nome, uma por combinação de rótulos.
+     */
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package kvstore.network;
+
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+import kvstore.message.MessageReader;
+import kvstore.message.MessageWriter;
+
+import java.io.*;
+import java.net.*;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conexão TCP persistente com um servidor, capaz de transportar várias requisições simultâneas.
+ * Cada requisição recebe um identificador próprio, e as respostas são associadas às requisições
+ * pelo identificador, podendo chegar fora de ordem.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class Connection implements Closeable {
+    private final String address;
+    private final Socket socket;
+    private final MessageWriter writer;
+    private final MessageReader reader;
+    private final long requestTimeoutMillis;
+    private final Map<Long, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private volatile boolean closed;
+
+    /**
+     * Construtor da classe Connection. Abre o socket e inicia a thread leitora de respostas.
+     * @param address O endereço IP:porta do servidor.
+     * @param requestTimeoutMillis O tempo máximo de espera por cada resposta, em milissegundos.
+     * @param codec O protocolo usado na conexão.
+     * @throws IOException Caso não seja possível conectar ao servidor.
+     */
+    public Connection(String address, long requestTimeoutMillis, MessageCodec codec) throws IOException {
+        String[] parts = address.split(":");
+        this.address = address;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.socket = new Socket(parts[0], Integer.parseInt(parts[1]));
+        this.socket.setTcpNoDelay(true);
+        this.writer = new MessageWriter(new BufferedOutputStream(socket.getOutputStream()), codec);
+        this.reader = new MessageReader(socket.getInputStream(), codec);
+        this.writer.writePreface();
+
+        Thread readerThread = new Thread(this::readResponses, "kvstore-connection-" + address);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Envia uma requisição pela conexão sem bloquear à espera da resposta.
+     * A mensagem original não é alterada: o identificador é atribuído apenas na mensagem codificada.
+     * @param message A mensagem de requisição.
+     * @return Um futuro completado com a resposta do servidor, ou com erro caso a conexão falhe
+     * ou o tempo limite seja atingido.
+     */
+    public CompletableFuture<Message> send(Message message) {
+        long id = nextId.getAndIncrement();
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        pending.put(id, future);
+
+        try {
+            if (closed) {
+                throw new IOException("Conexão com " + address + " encerrada");
+            }
+            writer.write(message, id);
+        } catch (IOException e) {
+            pending.remove(id);
+            close();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        return future.orTimeout(requestTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> pending.remove(id));
+    }
+
+    /**
+     * Lê continuamente as respostas do servidor e completa as requisições pendentes correspondentes.
+     */
+    private void readResponses() {
+        try {
+            Message response;
+            while ((response = reader.read()) != null) {
+                CompletableFuture<Message> future = pending.remove(response.getId());
+                if (future != null) {
+                    future.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            // Conexão encerrada pelo servidor ou pelo próprio cliente.
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Indica se a conexão ainda pode ser usada.
+     * @return true caso a conexão esteja aberta.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Obtém o endereço do servidor desta conexão.
+     * @return O endereço IP:porta do servidor.
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Encerra a conexão e falha todas as requisições que ainda aguardam resposta.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignora erros ao fechar o socket.
+        }
+
+        IOException error = new IOException("Conexão com " + address + " encerrada");
+        for (Long id : pending.keySet()) {
+            CompletableFuture<Message> future = pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
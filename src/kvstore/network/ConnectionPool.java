@@ -0,0 +1,108 @@
+package kvstore.network;
+
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conjunto de conexões persistentes compartilhadas, indexadas pelo endereço do servidor.
+ * É usado pelo cliente, pelo encaminhamento de requisições ao líder e pela replicação
+ * do líder para os servidores secundários.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class ConnectionPool implements Closeable {
+    public static final int DEFAULT_CONNECTIONS_PER_ADDRESS = 2;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+
+    private final int connectionsPerAddress;
+    private final long requestTimeoutMillis;
+    private final MessageCodec codec;
+    private final Map<String, Connection[]> connections = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    /**
+     * Construtor da classe ConnectionPool com os valores padrão e o protocolo definido em kvstore.protocol.
+     */
+    public ConnectionPool() {
+        this(DEFAULT_CONNECTIONS_PER_ADDRESS, DEFAULT_REQUEST_TIMEOUT_MILLIS, MessageCodec.fromSystemProperties());
+    }
+
+    /**
+     * Construtor da classe ConnectionPool.
+     * @param connectionsPerAddress O número de conexões mantidas para cada servidor.
+     * @param requestTimeoutMillis O tempo máximo de espera por cada resposta, em milissegundos.
+     * @param codec O protocolo usado nas conexões.
+     */
+    public ConnectionPool(int connectionsPerAddress, long requestTimeoutMillis, MessageCodec codec) {
+        this.connectionsPerAddress = connectionsPerAddress;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.codec = codec;
+    }
+
+    /**
+     * Envia uma requisição ao servidor, reutilizando uma conexão aberta ou abrindo uma nova se necessário.
+     * @param address O endereço IP:porta do servidor.
+     * @param message A mensagem de requisição.
+     * @return Um futuro completado com a resposta do servidor.
+     */
+    public CompletableFuture<Message> send(String address, Message message) {
+        try {
+            return acquire(address).send(message);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Obtém o tempo limite aplicado a cada requisição enviada pelas conexões.
+     * @return O tempo limite em milissegundos.
+     */
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Obtém uma conexão aberta com o servidor, distribuindo as requisições entre as conexões disponíveis.
+     * @param address O endereço IP:porta do servidor.
+     * @return Uma conexão aberta.
+     * @throws IOException Caso não seja possível conectar ao servidor.
+     */
+    public Connection acquire(String address) throws IOException {
+        Connection[] slots = connections.computeIfAbsent(address, a -> new Connection[connectionsPerAddress]);
+        int slot = Math.floorMod(nextSlot.getAndIncrement(), slots.length);
+
+        synchronized (slots) {
+            Connection connection = slots[slot];
+            if (connection == null || !connection.isOpen()) {
+                connection = new Connection(address, requestTimeoutMillis, codec);
+                slots[slot] = connection;
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Encerra todas as conexões do conjunto.
+     */
+    @Override
+    public void close() {
+        for (Connection[] slots : connections.values()) {
+            synchronized (slots) {
+                for (Connection connection : slots) {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+        connections.clear();
+    }
+}
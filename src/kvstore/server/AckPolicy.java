@@ -0,0 +1,83 @@
+package kvstore.server;
+
+/**
+ * Política de confirmação da replicação: define quantos servidores secundários precisam confirmar
+ * uma escrita antes que o líder responda PUT_OK ao cliente.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class AckPolicy {
+
+    /**
+     * Tipos de política de confirmação.
+     */
+    public enum Type {
+        /** Todos os secundários confirmam. */
+        ALL,
+        /** A maioria do cluster (contando o líder) possui a escrita. */
+        MAJORITY,
+        /** Um número fixo de secundários confirma. */
+        COUNT
+    }
+
+    public static final AckPolicy ALL = new AckPolicy(Type.ALL, 0);
+    public static final AckPolicy MAJORITY = new AckPolicy(Type.MAJORITY, 0);
+
+    private final Type type;
+    private final int count;
+
+    private AckPolicy(Type type, int count) {
+        this.type = type;
+        this.count = count;
+    }
+
+    /**
+     * Cria uma política que exige um número fixo de confirmações.
+     * @param count O número de secundários que precisam confirmar.
+     * @return A política.
+     */
+    public static AckPolicy count(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Número de confirmações inválido: " + count);
+        }
+        return new AckPolicy(Type.COUNT, count);
+    }
+
+    /**
+     * Lê uma política a partir do texto "all", "majority" ou de um número.
+     * @param text O texto da política.
+     * @return A política correspondente.
+     */
+    public static AckPolicy parse(String text) {
+        if (text.equalsIgnoreCase("all")) {
+            return ALL;
+        } else if (text.equalsIgnoreCase("majority")) {
+            return MAJORITY;
+        }
+        return count(Integer.parseInt(text.trim()));
+    }
+
+    /**
+     * Calcula o número de confirmações de secundários necessárias.
+     * @param secondaries O número de servidores secundários.
+     * @return O número de confirmações exigido, nunca maior que o número de secundários.
+     */
+    public int requiredAcks(int secondaries) {
+        switch (type) {
+            case ALL:
+                return secondaries;
+            case MAJORITY:
+                // Maioria de (secundários + líder), descontando o próprio líder.
+                return (secondaries + 1) / 2;
+            default:
+                return Math.min(count, secondaries);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.COUNT ? String.valueOf(count) : type.name().toLowerCase();
+    }
+}
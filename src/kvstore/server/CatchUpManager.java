@@ -0,0 +1,315 @@
+package kvstore.server;
+
+import kvstore.log.Log;
+import kvstore.message.Message;
+import kvstore.network.ConnectionPool;
+import kvstore.storage.RangeDigest;
+import kvstore.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Mantém os servidores secundários em dia com o líder. Um secundário que perdeu replicações, seja
+ * por estar fora do ar ou por ter reiniciado, é marcado como atrasado e recebe novamente as escritas
+ * a partir da posição em que parou, lidas do log de replicação; se essa posição já foi descartada
+ * do log, recebe um snapshot completo em blocos. Periodicamente, uma rodada de anti-entropia compara
+ * os resumos por faixa de chaves de cada secundário com o do líder e reenvia apenas as faixas divergentes.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+class CatchUpManager {
+    private final Storage storage;
+    private final ReplicationLog replicationLog;
+    private final ConnectionPool connectionPool;
+    private final ServerConfig config;
+    private final Supplier<List<String>> secondaries;
+    private final Function<List<Message>, Message> replicationMessage;
+    private final ServerMetrics metrics;
+    private final Map<String, FollowerState> followers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Construtor da classe CatchUpManager. Inicia as tarefas periódicas de recuperação e de anti-entropia.
+     * @param storage O armazenamento do líder.
+     * @param replicationLog O log de replicação do líder.
+     * @param connectionPool As conexões com os secundários.
+     * @param config A configuração do servidor.
+     * @param secondaries Os endereços atuais dos servidores secundários.
+     * @param replicationMessage Cria a mensagem REPLICATION de um bloco de escritas, com o termo do líder.
+     * @param metrics As métricas do servidor, atualizadas com a posição alcançada por cada secundário recuperado.
+     */
+    CatchUpManager(Storage storage, ReplicationLog replicationLog, ConnectionPool connectionPool, ServerConfig config,
+                   Supplier<List<String>> secondaries, Function<List<Message>, Message> replicationMessage, ServerMetrics metrics) {
+        this.storage = storage;
+        this.replicationLog = replicationLog;
+        this.connectionPool = connectionPool;
+        this.config = config;
+        this.secondaries = secondaries;
+        this.replicationMessage = replicationMessage;
+        this.metrics = metrics;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kvstore-catch-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::catchUpAll, config.getCatchUpIntervalMillis(),
+                config.getCatchUpIntervalMillis(), TimeUnit.MILLISECONDS);
+        if (config.getAntiEntropyIntervalMillis() > 0) {
+            scheduler.scheduleWithFixedDelay(this::antiEntropy, config.getAntiEntropyIntervalMillis(),
+                    config.getAntiEntropyIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Marca um secundário como atrasado a partir de uma posição do log.
+     * @param follower O endereço do secundário.
+     * @param fromIndex A primeira posição que o secundário pode não ter recebido.
+     */
+    void markLagging(String follower, long fromIndex) {
+        followers.computeIfAbsent(follower, address -> new FollowerState()).markLagging(fromIndex);
+    }
+
+    /**
+     * Indica se um secundário está atrasado.
+     * @param follower O endereço do secundário.
+     * @return true caso o secundário esteja sendo recuperado.
+     */
+    boolean isLagging(String follower) {
+        FollowerState state = followers.get(follower);
+        return state != null && state.isLagging();
+    }
+
+    /**
+     * Esquece um secundário que deixou o grupo.
+     * @param follower O endereço do secundário.
+     */
+    void remove(String follower) {
+        followers.remove(follower);
+    }
+
+    /**
+     * Esquece os secundários atrasados, quando este servidor deixa de ser o líder.
+     */
+    void clear() {
+        followers.clear();
+    }
+
+    /**
+     * Encerra as tarefas periódicas de recuperação e de anti-entropia.
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void catchUpAll() {
+        for (Map.Entry<String, FollowerState> follower : followers.entrySet()) {
+            catchUp(follower.getKey(), follower.getValue());
+        }
+    }
+
+    /**
+     * Reenvia a um secundário atrasado as escritas a partir da posição em que ele parou.
+     * @param follower O endereço do secundário.
+     * @param state O estado de recuperação do secundário.
+     */
+    private void catchUp(String follower, FollowerState state) {
+        long from = state.begin();
+        if (from < 0) {
+            return;
+        }
+
+        long sent = 0;
+        try {
+            while (true) {
+                List<Message> entries = replicationLog.read(from, config.getCatchUpChunkSize());
+                if (entries == null) {
+                    // A posição já saiu do log: envia um snapshot e continua do ponto em que o snapshot começou.
+                    long snapshotIndex = replicationLog.lastIndex();
+                    sent += streamSnapshot(follower);
+                    from = snapshotIndex + 1;
+                    continue;
+                }
+                if (entries.isEmpty()) {
+                    break;
+                }
+                sendBatch(follower, entries);
+                sent += entries.size();
+                from = entries.get(entries.size() - 1).getLogIndex() + 1;
+            }
+            state.finish(true, from);
+            metrics.recordFollowerIndex(follower, from - 1);
+            Log.info("Secundário [" + follower + "] recuperado com " + sent + " escritas reenviadas");
+        } catch (Exception e) {
+            // O secundário continua inacessível; tenta novamente na próxima rodada.
+            state.finish(false, from);
+        }
+    }
+
+    /**
+     * Envia todas as entradas do armazenamento a um secundário, em blocos.
+     * @param follower O endereço do secundário.
+     * @return O número de entradas enviadas.
+     */
+    private long streamSnapshot(String follower) throws Exception {
+        return sendMatching(follower, null);
+    }
+
+    /**
+     * Rodada de anti-entropia: compara o resumo de cada secundário em dia com o do líder e reenvia
+     * as entradas das faixas divergentes.
+     */
+    private void antiEntropy() {
+        int ranges = config.getAntiEntropyRanges();
+        long[] local = null;
+
+        for (String follower : secondaries.get()) {
+            if (isLagging(follower)) {
+                continue;
+            }
+            try {
+                Message request = new Message("DIGEST", null, null, ranges);
+                Message response = send(follower, request)
+                        .get(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS);
+                if (!"DIGEST_OK".equals(response.getCommand())) {
+                    continue;
+                }
+                if (local == null) {
+                    local = RangeDigest.compute(storage, ranges);
+                }
+
+                long[] remote = RangeDigest.fromBytes(response.getValueBytes());
+                boolean[] divergent = new boolean[ranges];
+                int divergentRanges = 0;
+                for (int i = 0; i < ranges && i < remote.length; i++) {
+                    if (local[i] != remote[i]) {
+                        divergent[i] = true;
+                        divergentRanges++;
+                    }
+                }
+
+                if (divergentRanges > 0) {
+                    long sent = sendMatching(follower, divergent);
+                    Log.info("Anti-entropia com [" + follower + "]: " + divergentRanges + " de " + ranges
+                            + " faixas divergentes, " + sent + " entradas reenviadas");
+                }
+            } catch (Exception e) {
+                // Secundário inacessível; a próxima rodada tenta novamente.
+            }
+        }
+    }
+
+    /**
+     * Envia a um secundário as entradas das faixas indicadas, em blocos.
+     * @param follower O endereço do secundário.
+     * @param ranges As faixas a enviar, ou null para enviar todas as entradas.
+     * @return O número de entradas enviadas.
+     */
+    private long sendMatching(String follower, boolean[] ranges) throws Exception {
+        List<Message> chunk = new ArrayList<>();
+        long[] sent = {0};
+        Exception[] failure = {null};
+
+        storage.forEach((key, entry) -> {
+            if (failure[0] != null || (ranges != null && !ranges[RangeDigest.range(key, ranges.length)])) {
+                return;
+            }
+            Message write = new Message(entry.isTombstone() ? "DELETE" : "REPLICATION", key, entry.getValue(), entry.getTimestamp());
+            write.setExpiresAt(entry.getExpiresAt());
+            chunk.add(write);
+            if (chunk.size() >= config.getCatchUpChunkSize()) {
+                try {
+                    sendBatch(follower, chunk);
+                    sent[0] += chunk.size();
+                    chunk.clear();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        if (!chunk.isEmpty()) {
+            sendBatch(follower, chunk);
+            sent[0] += chunk.size();
+        }
+        return sent[0];
+    }
+
+    /**
+     * Envia um bloco de escritas a um secundário e aguarda a confirmação, limitando o fluxo da recuperação.
+     */
+    private void sendBatch(String follower, List<Message> entries) throws Exception {
+        Message response = send(follower, replicationMessage.apply(new ArrayList<>(entries)))
+                .get(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS);
+        if (!"REPLICATION_OK".equals(response.getCommand())) {
+            throw new IllegalStateException("Replicação recusada por " + follower + ": " + response.getCommand());
+        }
+    }
+
+    /**
+     * Envia uma mensagem a um secundário aplicando as falhas configuradas para o caminho REPLICATION.
+     */
+    private CompletableFuture<Message> send(String follower, Message message) {
+        return config.getFaultInjector()
+                .inject(FaultInjector.Path.REPLICATION, follower, () -> connectionPool.send(follower, message));
+    }
+
+    /**
+     * Estado de recuperação de um secundário.
+     */
+    private static class FollowerState {
+        private boolean lagging;
+        private long resyncFrom = Long.MAX_VALUE;
+
+        synchronized void markLagging(long fromIndex) {
+            lagging = true;
+            resyncFrom = Math.min(resyncFrom, Math.max(fromIndex, 1));
+        }
+
+        synchronized boolean isLagging() {
+            return lagging;
+        }
+
+        /**
+         * Inicia uma rodada de recuperação.
+         * @return A posição inicial, ou -1 caso o secundário não esteja atrasado.
+         */
+        synchronized long begin() {
+            if (!lagging) {
+                return -1;
+            }
+            long from = resyncFrom;
+            resyncFrom = Long.MAX_VALUE;
+            return from;
+        }
+
+        /**
+         * Conclui uma rodada de recuperação. O secundário só volta a ficar em dia se nenhuma
+         * replicação tiver falhado durante a rodada.
+         * @param success Indica se todas as escritas foram confirmadas.
+         * @param next A próxima posição a ser enviada.
+         */
+        synchronized void finish(boolean success, long next) {
+            if (success) {
+                if (resyncFrom == Long.MAX_VALUE) {
+                    lagging = false;
+                }
+            } else {
+                resyncFrom = Math.min(resyncFrom, next);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package kvstore.server;
+
+import kvstore.log.Log;
+import kvstore.message.Message;
+import kvstore.storage.Entry;
+import kvstore.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Remove as chaves expiradas e descarta as lápides antigas sem percorrer o armazenamento. Cada
+ * escrita aplicada com expiração, e cada lápide, agenda um temporizador em uma roda de tempo: um
+ * vetor circular de posições, uma por intervalo de verificação, em que cada temporizador fica na
+ * posição do seu prazo e conta as voltas que ainda faltam. A cada intervalo apenas a posição atual
+ * é visitada, de modo que o custo é proporcional às chaves que vencem, e não ao total de chaves.
+ *
+ * Um temporizador vencido confere a entrada atual da chave, pois ela pode ter sido reescrita:
+ * <ul>
+ * <li>uma lápide mais antiga que a retenção configurada é descartada localmente, em cada servidor;</li>
+ * <li>uma chave expirada é apagada pelo líder com um EXPIRE, uma escrita condicional que passa pelo
+ * lote de escritas e é replicada como uma remoção. Nos secundários, a chave expirada já não é vista
+ * pelas leituras, e o temporizador é verificado novamente até a remoção chegar do líder.</li>
+ * </ul>
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class ExpirySweeper {
+    /** Número de posições da roda; os prazos além de uma volta aguardam as voltas restantes. */
+    private static final int WHEEL_SIZE = 512;
+
+    private final Storage storage;
+    private final BooleanSupplier isLeader;
+    private final Function<Message, CompletableFuture<Message>> submit;
+    private final long tickMillis;
+    private final long tombstoneRetentionMillis;
+    private final List<List<Timer>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long tick; // Posição atual da roda, protegida pelo monitor desta instância
+    private final AtomicLong timers = new AtomicLong();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder collected = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Construtor da classe ExpirySweeper. Inicia a roda de tempo e agenda, em segundo plano, as
+     * chaves com expiração e as lápides já presentes no armazenamento.
+     * @param storage O armazenamento do servidor.
+     * @param config A configuração do servidor, com o intervalo de verificação e a retenção das lápides.
+     * @param isLeader Indica se este servidor é o líder, o único que apaga as chaves expiradas.
+     * @param submit Enfileira uma escrita no próximo lote do líder.
+     */
+    ExpirySweeper(Storage storage, ServerConfig config, BooleanSupplier isLeader,
+                  Function<Message, CompletableFuture<Message>> submit) {
+        this.storage = storage;
+        this.isLeader = isLeader;
+        this.submit = submit;
+        this.tickMillis = Math.max(1, config.getExpirySweepIntervalMillis());
+        this.tombstoneRetentionMillis = config.getTombstoneRetentionMillis();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kvstore-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> storage.forEach(this::track));
+        scheduler.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Agenda o temporizador de uma escrita aplicada, caso ela seja uma lápide ou tenha expiração.
+     * @param key A chave.
+     * @param entry A entrada escrita.
+     */
+    void track(String key, Entry entry) {
+        if (entry.isTombstone()) {
+            schedule(key, entry.getTimestamp(), entry.getTimestamp() + tombstoneRetentionMillis);
+        } else if (entry.getExpiresAt() != 0) {
+            schedule(key, entry.getTimestamp(), entry.getExpiresAt());
+        }
+    }
+
+    /**
+     * Obtém o número de chaves expiradas apagadas por este servidor como líder.
+     * @return O número de chaves.
+     */
+    long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * Obtém o número de lápides descartadas por este servidor.
+     * @return O número de lápides.
+     */
+    long getCollected() {
+        return collected.sum();
+    }
+
+    /**
+     * Obtém o número de temporizadores agendados.
+     * @return O número de temporizadores.
+     */
+    long getTimers() {
+        return timers.get();
+    }
+
+    /**
+     * Encerra a roda de tempo. Os temporizadores pendentes são agendados novamente quando o
+     * armazenamento for recuperado.
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void schedule(String key, long timestamp, long deadline) {
+        long ticks = Math.max(1, (deadline - System.currentTimeMillis() + tickMillis - 1) / tickMillis);
+        Timer timer = new Timer(key, timestamp, (ticks - 1) / WHEEL_SIZE);
+        wheel.get((int) ((tick + ticks) % WHEEL_SIZE)).add(timer);
+        timers.incrementAndGet();
+    }
+
+    /**
+     * Avança a roda uma posição e trata os temporizadores vencidos, fora do monitor.
+     */
+    private void advance() {
+        List<Timer> due = new ArrayList<>();
+        synchronized (this) {
+            tick++;
+            Iterator<Timer> slot = wheel.get((int) (tick % WHEEL_SIZE)).iterator();
+            while (slot.hasNext()) {
+                Timer timer = slot.next();
+                if (timer.rounds-- == 0) {
+                    slot.remove();
+                    due.add(timer);
+                }
+            }
+        }
+        timers.addAndGet(-due.size());
+        for (Timer timer : due) {
+            try {
+                fire(timer);
+            } catch (RuntimeException e) {
+                Log.warn("Falha ao tratar a expiração da key:[" + timer.key + "]: " + e);
+            }
+        }
+    }
+
+    private void fire(Timer timer) {
+        Entry entry = storage.get(timer.key);
+        if (entry == null || entry.getTimestamp() != timer.timestamp) {
+            return; // Chave reescrita, com o seu próprio temporizador, ou já descartada
+        }
+        long now = System.currentTimeMillis();
+        if (entry.isTombstone()) {
+            if (now < entry.getTimestamp() + tombstoneRetentionMillis) {
+                track(timer.key, entry);
+            } else if (storage.remove(timer.key, entry.getTimestamp())) {
+                collected.increment();
+            }
+            return;
+        }
+        if (entry.getExpiresAt() == 0) {
+            return;
+        }
+        if (now < entry.getExpiresAt()) {
+            track(timer.key, entry);
+            return;
+        }
+        if (!isLeader.getAsBoolean()) {
+            // A remoção vem do líder; caso este servidor seja eleito antes disso, ele mesmo a faz.
+            schedule(timer.key, timer.timestamp, now + WHEEL_SIZE * tickMillis);
+            return;
+        }
+
+        // A condição é verificada novamente no lote: uma escrita concorrente mantém a chave.
+        Message expire = new Message("EXPIRE", timer.key, null, entry.getTimestamp());
+        submit.apply(expire).whenComplete((response, error) -> {
+            if (error == null && "EXPIRE_OK".equals(response.getCommand())) {
+                expired.increment();
+            } else if (error != null || "PUT_ERROR".equals(response.getCommand())) {
+                schedule(timer.key, timer.timestamp, System.currentTimeMillis() + WHEEL_SIZE * tickMillis);
+            }
+        });
+    }
+
+    /**
+     * Temporizador de uma escrita: a chave, o timestamp que identifica a escrita e as voltas restantes.
+     */
+    private static class Timer {
+        private final String key;
+        private final long timestamp;
+        private long rounds;
+
+        Timer(String key, long timestamp, long rounds) {
+            this.key = key;
+            this.timestamp = timestamp;
+            this.rounds = rounds;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package kvstore.server;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Injeção de latência e de falhas nos caminhos de comunicação do servidor, usada para reproduzir
+ * cenários como um líder lento, perda de mensagens ou partições de rede. Por padrão nenhuma regra
+ * está ativa e as requisições seguem diretamente, sem custo adicional.
+ *
+ * As regras podem ser definidas por propriedades de sistema, uma por caminho, por exemplo:
+ * -Dkvstore.faults.client.latency=uniform:5000-15000 (líder lento),
+ * -Dkvstore.faults.replication.dropRate=0.05 ou
+ * -Dkvstore.faults.forward.partition=localhost:9000.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class FaultInjector {
+
+    /**
+     * Caminhos de comunicação em que as falhas podem ser injetadas.
+     */
+    public enum Path {
+        /** Requisições GET e PUT recebidas pelo servidor. */
+        CLIENT,
+        /** Encaminhamento de PUTs de um secundário para o líder. */
+        FORWARD,
+        /** Replicação e recuperação do líder para os secundários. */
+        REPLICATION
+    }
+
+    /** Injeção desativada. */
+    public static final FaultInjector NONE = new FaultInjector();
+
+    private final Map<Path, Rule> rules = new EnumMap<>(Path.class);
+
+    /**
+     * Cria uma injeção de falhas a partir das propriedades de sistema kvstore.faults.&lt;caminho&gt;.latency,
+     * .dropRate e .partition.
+     * @return A injeção configurada, ou NONE caso nenhuma propriedade esteja definida.
+     */
+    public static FaultInjector fromSystemProperties() {
+        FaultInjector injector = new FaultInjector();
+        for (Path path : Path.values()) {
+            String prefix = "kvstore.faults." + path.name().toLowerCase() + ".";
+            String latency = System.getProperty(prefix + "latency");
+            String dropRate = System.getProperty(prefix + "dropRate");
+            String partition = System.getProperty(prefix + "partition");
+            if (latency == null && dropRate == null && partition == null) {
+                continue;
+            }
+            injector.rule(path,
+                    latency != null ? LatencyDistribution.parse(latency) : LatencyDistribution.NONE,
+                    dropRate != null ? Double.parseDouble(dropRate) : 0,
+                    partition != null ? partition.split(",") : new String[0]);
+        }
+        return injector.rules.isEmpty() ? NONE : injector;
+    }
+
+    /**
+     * Define a regra de um caminho.
+     * @param path O caminho.
+     * @param latency A latência adicionada a cada mensagem.
+     * @param dropRate A fração de mensagens descartadas, entre 0 e 1. Uma mensagem descartada nunca é
+     * respondida, e quem a enviou percebe a falha pelo seu tempo limite.
+     * @param partitioned Os endereços inacessíveis por este caminho, ou "*" para todos. As mensagens
+     * para esses endereços falham imediatamente, como uma conexão recusada.
+     * @return Esta injeção de falhas.
+     */
+    public FaultInjector rule(Path path, LatencyDistribution latency, double dropRate, String... partitioned) {
+        if (this == NONE) {
+            throw new IllegalStateException("A injeção desativada não pode receber regras");
+        }
+        if (dropRate < 0 || dropRate > 1) {
+            throw new IllegalArgumentException("Taxa de descarte inválida: " + dropRate);
+        }
+        Set<String> targets = new HashSet<>();
+        for (String target : partitioned) {
+            if (!target.trim().isEmpty()) {
+                targets.add(target.trim());
+            }
+        }
+        rules.put(path, new Rule(latency, dropRate, Collections.unmodifiableSet(targets)));
+        return this;
+    }
+
+    /**
+     * Verifica se há regra ativa para um caminho.
+     * @param path O caminho.
+     * @return true caso alguma falha seja injetada no caminho.
+     */
+    public boolean isActive(Path path) {
+        return rules.containsKey(path);
+    }
+
+    /**
+     * Executa uma ação de comunicação aplicando a regra do caminho: a ação pode falhar por partição,
+     * ser descartada ou ser atrasada pela latência sorteada. O atraso não ocupa a thread que chama.
+     * @param path O caminho.
+     * @param target O endereço de destino ou a origem da mensagem.
+     * @param action A ação, executada apenas se a mensagem não for descartada.
+     * @return O futuro da ação, ou um futuro que falha ou nunca completa, conforme a falha injetada.
+     */
+    public <T> CompletableFuture<T> inject(Path path, String target, Supplier<CompletableFuture<T>> action) {
+        Rule rule = rules.get(path);
+        if (rule == null) {
+            return action.get();
+        }
+
+        if (rule.partitioned.contains("*") || rule.partitioned.contains(target)) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ConnectException("Partição simulada com [" + target + "]"));
+            return failed;
+        }
+        if (rule.dropRate > 0 && ThreadLocalRandom.current().nextDouble() < rule.dropRate) {
+            return new CompletableFuture<>();
+        }
+
+        long delay = rule.latency.sample();
+        if (delay == 0) {
+            return action.get();
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> action.get());
+    }
+
+    @Override
+    public String toString() {
+        if (rules.isEmpty()) {
+            return "none";
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Path, Rule> entry : rules.entrySet()) {
+            Rule rule = entry.getValue();
+            if (text.length() > 0) {
+                text.append("; ");
+            }
+            text.append(entry.getKey().name().toLowerCase())
+                    .append(" latency=").append(rule.latency)
+                    .append(" dropRate=").append(rule.dropRate)
+                    .append(" partition=").append(Arrays.toString(rule.partitioned.toArray()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Regra de falhas de um caminho.
+     */
+    private static class Rule {
+        private final LatencyDistribution latency;
+        private final double dropRate;
+        private final Set<String> partitioned;
+
+        private Rule(LatencyDistribution latency, double dropRate, Set<String> partitioned) {
+            this.latency = latency;
+            this.dropRate = dropRate;
+            this.partitioned = partitioned;
+        }
+    }
+}
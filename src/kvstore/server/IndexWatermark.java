@@ -0,0 +1,111 @@
+package kvstore.server;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Última posição do log de replicação aplicada por um servidor, com a espera pelo seu avanço.
+ * Uma leitura que exige uma posição ainda não aplicada aguarda, sem ocupar um worker, até que a
+ * replicação a alcance ou até o tempo limite, em vez de ser recusada imediatamente.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class IndexWatermark {
+    private final AtomicLong index = new AtomicLong();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private volatile int waiting; // Permite que advance não use o lock quando ninguém espera
+
+    /**
+     * Obtém a última posição aplicada.
+     * @return A posição.
+     */
+    long get() {
+        return index.get();
+    }
+
+    /**
+     * Registra que as escritas até a posição foram aplicadas, liberando as esperas alcançadas.
+     * @param applied A última posição aplicada; posições menores que a atual são ignoradas.
+     */
+    void advance(long applied) {
+        long current = index.accumulateAndGet(applied, Math::max);
+        if (waiting > 0) {
+            release(current);
+        }
+    }
+
+    /**
+     * Redefine a posição, inclusive para trás, como ao seguir um novo líder cujo log é mais curto.
+     * @param applied A nova posição.
+     */
+    void set(long applied) {
+        index.set(applied);
+        if (waiting > 0) {
+            release(applied);
+        }
+    }
+
+    /**
+     * Aguarda até que a posição seja aplicada.
+     * @param target A posição exigida.
+     * @param timeoutMillis O tempo máximo de espera em milissegundos.
+     * @return Um futuro completado com true quando a posição for aplicada, ou com false no tempo limite.
+     */
+    CompletableFuture<Boolean> await(long target, long timeoutMillis) {
+        if (index.get() >= target) {
+            return CompletableFuture.completedFuture(true);
+        }
+        if (timeoutMillis <= 0) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Waiter waiter = new Waiter(target);
+        synchronized (waiters) {
+            waiters.add(waiter);
+            waiting = waiters.size();
+        }
+        // A posição pode ter avançado antes do registro da espera.
+        release(index.get());
+        waiter.future.completeOnTimeout(false, timeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((reached, error) -> {
+                    if (!reached) {
+                        synchronized (waiters) {
+                            waiters.remove(waiter);
+                            waiting = waiters.size();
+                        }
+                    }
+                });
+        return waiter.future;
+    }
+
+    private void release(long current) {
+        synchronized (waiters) {
+            Waiter next;
+            while ((next = waiters.peek()) != null && next.target <= current) {
+                waiters.poll();
+                next.future.complete(true);
+            }
+            waiting = waiters.size();
+        }
+    }
+
+    /**
+     * Espera por uma posição, ordenada pela posição exigida.
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        private final long target;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private Waiter(long target) {
+            this.target = target;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            return Long.compare(target, other.target);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package kvstore.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribuição de latência usada pela injeção de falhas. Pode ser fixa, uniforme em um intervalo ou
+ * definida por percentis, caso em que os valores entre dois percentis informados são interpolados.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class LatencyDistribution {
+
+    /** Distribuição sem atraso. */
+    public static final LatencyDistribution NONE = fixed(0);
+
+    private final String description;
+    private final double[] percentiles;
+    private final long[] millis;
+
+    private LatencyDistribution(String description, double[] percentiles, long[] millis) {
+        this.description = description;
+        this.percentiles = percentiles;
+        this.millis = millis;
+    }
+
+    /**
+     * Cria uma distribuição com latência constante.
+     * @param millis A latência em milissegundos.
+     * @return A distribuição.
+     */
+    public static LatencyDistribution fixed(long millis) {
+        checkLatency(millis);
+        return new LatencyDistribution("fixed:" + millis, new double[] {0, 100}, new long[] {millis, millis});
+    }
+
+    /**
+     * Cria uma distribuição com latência uniforme em um intervalo.
+     * @param minMillis A menor latência em milissegundos.
+     * @param maxMillis A maior latência em milissegundos.
+     * @return A distribuição.
+     */
+    public static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        checkLatency(minMillis);
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("Intervalo de latência inválido: " + minMillis + "-" + maxMillis);
+        }
+        return new LatencyDistribution("uniform:" + minMillis + "-" + maxMillis,
+                new double[] {0, 100}, new long[] {minMillis, maxMillis});
+    }
+
+    /**
+     * Lê uma distribuição a partir do texto "fixed:100", "uniform:5000-15000" ou
+     * "percentiles:50=2,99=40,100=250". Na forma por percentis, a latência do percentil 0 é 0
+     * a menos que seja informada.
+     * @param text O texto da distribuição.
+     * @return A distribuição correspondente.
+     */
+    public static LatencyDistribution parse(String text) {
+        String spec = text.trim();
+        int separator = spec.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Distribuição de latência inválida: " + text);
+        }
+        String type = spec.substring(0, separator).toLowerCase();
+        String arguments = spec.substring(separator + 1).trim();
+
+        if (type.equals("fixed")) {
+            return fixed(Long.parseLong(arguments));
+        } else if (type.equals("uniform")) {
+            String[] bounds = arguments.split("-");
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("Distribuição de latência inválida: " + text);
+            }
+            return uniform(Long.parseLong(bounds[0].trim()), Long.parseLong(bounds[1].trim()));
+        } else if (type.equals("percentiles")) {
+            return parsePercentiles(text, arguments);
+        }
+        throw new IllegalArgumentException("Distribuição de latência inválida: " + text);
+    }
+
+    private static LatencyDistribution parsePercentiles(String text, String arguments) {
+        List<double[]> points = new ArrayList<>();
+        points.add(new double[] {0, 0});
+        for (String point : arguments.split(",")) {
+            String[] parts = point.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Distribuição de latência inválida: " + text);
+            }
+            double percentile = Double.parseDouble(parts[0].trim());
+            long latency = Long.parseLong(parts[1].trim());
+            checkLatency(latency);
+            double[] last = points.get(points.size() - 1);
+            if (percentile == 0 && points.size() == 1) {
+                last[1] = latency;
+                continue;
+            }
+            if (percentile <= last[0] || percentile > 100 || latency < last[1]) {
+                throw new IllegalArgumentException("Percentis devem ser crescentes e até 100: " + text);
+            }
+            points.add(new double[] {percentile, latency});
+        }
+
+        // O último percentil informado vale até o percentil 100.
+        double[] last = points.get(points.size() - 1);
+        if (last[0] < 100) {
+            points.add(new double[] {100, last[1]});
+        }
+
+        double[] percentiles = new double[points.size()];
+        long[] millis = new long[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            percentiles[i] = points.get(i)[0];
+            millis[i] = (long) points.get(i)[1];
+        }
+        return new LatencyDistribution("percentiles:" + arguments, percentiles, millis);
+    }
+
+    private static void checkLatency(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Latência inválida: " + millis);
+        }
+    }
+
+    /**
+     * Sorteia uma latência desta distribuição.
+     * @return A latência em milissegundos.
+     */
+    public long sample() {
+        if (millis[millis.length - 1] == 0) {
+            return 0;
+        }
+        double percentile = ThreadLocalRandom.current().nextDouble(100);
+        int segment = 1;
+        while (segment < percentiles.length - 1 && percentile > percentiles[segment]) {
+            segment++;
+        }
+        double start = percentiles[segment - 1];
+        double fraction = (percentile - start) / (percentiles[segment] - start);
+        return millis[segment - 1] + Math.round(fraction * (millis[segment] - millis[segment - 1]));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,596 @@
+package kvstore.server;
+
+import kvstore.log.Log;
+import kvstore.message.Message;
+import kvstore.network.ConnectionPool;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Eleição de líder por termos, no estilo do Raft, entre os servidores de um grupo de replicação.
+ * O líder envia HEARTBEATs periódicos; um servidor que fica sem notícias do líder por um tempo
+ * sorteado entre o tempo de eleição e o seu dobro inicia um novo termo e pede votos com
+ * VOTE_REQUEST. Cada servidor vota em no máximo um candidato por termo, e apenas em candidatos cujo
+ * log esteja pelo menos tão atualizado quanto o seu; quem recebe votos da maioria do grupo se torna
+ * o líder do termo. Qualquer mensagem com um termo maior faz o servidor adotá-lo e voltar a ser
+ * secundário, e um líder que deixa de ouvir a maioria do grupo renuncia.
+ *
+ * O termo e o voto são gravados no diretório de dados, quando configurado, para que um servidor
+ * reiniciado não vote duas vezes no mesmo termo.
+ *
+ * Um secundário que respondeu a um HEARTBEAT ignora candidatos por pelo menos um tempo de eleição
+ * a partir do envio desse HEARTBEAT. Enquanto a maioria do grupo estiver nessa situação, nenhum outro
+ * líder pode ser eleito, e o líder atual tem uma concessão que lhe permite atender leituras lineares
+ * sem consultar o grupo.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class LeaderElection {
+    private static final String STATE_FILE = "election.dat";
+    private static final String STATE_TEMP_FILE = "election.tmp";
+
+    /**
+     * Papéis de um servidor em um termo.
+     */
+    enum Role {
+        FOLLOWER,
+        CANDIDATE,
+        LEADER
+    }
+
+    /**
+     * Estado do servidor consultado e avisado pela eleição.
+     */
+    interface Listener {
+        /**
+         * Obtém a última posição do log de replicação que o servidor possui.
+         * @return A última posição.
+         */
+        long lastLogIndex();
+
+        /**
+         * Obtém o termo do líder que produziu a última posição que o servidor possui.
+         * @return O termo.
+         */
+        long lastLogTerm();
+
+        /**
+         * Avisa que o servidor se tornou o líder de um termo.
+         * @param term O termo.
+         */
+        void onLeader(long term);
+
+        /**
+         * Avisa que o servidor passou a seguir outro líder, ou que o líder deixou de ser conhecido.
+         * @param term O termo atual.
+         * @param leader O endereço do líder, ou null durante uma eleição.
+         * @param leaderLastIndex A última posição do log do líder, ou -1 caso não seja conhecida.
+         */
+        void onFollower(long term, String leader, long leaderLastIndex);
+
+        /**
+         * Avisa a última posição que um secundário informou possuir ao responder um HEARTBEAT.
+         * @param follower O endereço do secundário.
+         * @param index A última posição.
+         */
+        void onFollowerIndex(String follower, long index);
+    }
+
+    private final String self;
+    private final ServerConfig config;
+    private final ConnectionPool connectionPool;
+    private final Listener listener;
+    private final Path stateFile;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder elections = new LongAdder();
+
+    private volatile List<String> members;
+    private volatile Role role = Role.FOLLOWER;
+    private volatile long currentTerm;
+    private volatile String leader;
+    private String votedFor;
+    private long electionDeadline;
+    private long lastLeaderContact;
+    private final Map<String, Long> lastAck = new HashMap<>();
+    private final Map<String, Long> ackedSend = new HashMap<>(); // Envio do último HEARTBEAT respondido por secundário
+
+    /**
+     * Construtor da classe LeaderElection. A eleição só começa em {@link #start(boolean)}.
+     * @param self O endereço IP:porta deste servidor.
+     * @param members Os endereços de todos os servidores do grupo, incluindo este.
+     * @param config A configuração do servidor, com os tempos de eleição e o diretório de dados.
+     * @param connectionPool As conexões com os outros servidores.
+     * @param listener O estado do servidor.
+     * @throws IOException Caso o estado gravado não possa ser lido.
+     */
+    LeaderElection(String self, Collection<String> members, ServerConfig config, ConnectionPool connectionPool,
+                   Listener listener) throws IOException {
+        this.self = self;
+        this.config = config;
+        this.connectionPool = connectionPool;
+        this.listener = listener;
+        this.members = normalize(members);
+        this.stateFile = config.getDataDir() != null ? Paths.get(config.getDataDir(), STATE_FILE) : null;
+        loadState();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kvstore-election");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Inicia os HEARTBEATs e as eleições.
+     * @param candidate Indica se o servidor deve pedir votos imediatamente, como o líder indicado na
+     * inicialização do cluster. Os demais aguardam um tempo de eleição antes de se candidatar.
+     */
+    void start(boolean candidate) {
+        synchronized (this) {
+            lastLeaderContact = System.nanoTime();
+            if (candidate) {
+                electionDeadline = System.nanoTime();
+            } else {
+                resetElectionDeadline();
+            }
+        }
+        long interval = config.getHeartbeatIntervalMillis();
+        scheduler.scheduleWithFixedDelay(this::tick, candidate ? 0 : interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Encerra os HEARTBEATs e as eleições.
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Tarefa periódica: o líder envia HEARTBEATs e verifica se ainda ouve a maioria; os demais
+     * iniciam uma eleição quando o prazo expira.
+     */
+    private void tick() {
+        try {
+            if (role == Role.LEADER) {
+                checkQuorum();
+                sendHeartbeats();
+            } else {
+                boolean expired;
+                synchronized (this) {
+                    expired = System.nanoTime() - electionDeadline >= 0;
+                }
+                if (expired) {
+                    startElection();
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.error("Falha na eleição de líder", e);
+        }
+    }
+
+    /**
+     * Inicia um novo termo, vota em si mesmo e pede os votos dos outros servidores.
+     */
+    private void startElection() {
+        long term;
+        long lastIndex;
+        long lastTerm;
+        List<String> peers;
+        int[] votes = {1};
+        synchronized (this) {
+            role = Role.CANDIDATE;
+            currentTerm++;
+            votedFor = self;
+            leader = null;
+            saveState();
+            resetElectionDeadline();
+            term = currentTerm;
+            lastIndex = listener.lastLogIndex();
+            lastTerm = listener.lastLogTerm();
+            peers = peers();
+            elections.increment();
+            listener.onFollower(term, null, -1);
+            if (votes[0] >= majority()) {
+                becomeLeader();
+                return;
+            }
+        }
+        Log.info("Eleição do termo " + term + " iniciada");
+
+        Message request = new Message("VOTE_REQUEST", self, String.valueOf(lastTerm), term);
+        request.setLogIndex(lastIndex);
+        for (String peer : peers) {
+            send(peer, request).whenComplete((response, error) -> {
+                if (error != null) {
+                    return;
+                }
+                synchronized (this) {
+                    if (observeTerm(response.getTimestamp())) {
+                        return;
+                    }
+                    if (role == Role.CANDIDATE && currentTerm == term && "VOTE_GRANTED".equals(response.getCommand())
+                            && ++votes[0] >= majority()) {
+                        becomeLeader();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Assume a liderança do termo atual. Chamado com o monitor da eleição.
+     */
+    private void becomeLeader() {
+        role = Role.LEADER;
+        leader = self;
+        long now = System.nanoTime();
+        lastAck.clear();
+        ackedSend.clear();
+        for (String peer : peers()) {
+            lastAck.put(peer, now);
+        }
+        listener.onLeader(currentTerm);
+        Log.info("Líder eleito no termo " + currentTerm + ": " + self);
+        scheduler.execute(this::sendHeartbeats);
+    }
+
+    /**
+     * Envia um HEARTBEAT, com a lista de servidores do grupo, a cada secundário.
+     */
+    private void sendHeartbeats() {
+        long term = currentTerm;
+        Message heartbeat = new Message("HEARTBEAT", self, String.join(",", members), term);
+        heartbeat.setLogIndex(listener.lastLogIndex());
+        long sent = System.nanoTime();
+        for (String peer : peers()) {
+            send(peer, heartbeat).whenComplete((response, error) -> {
+                if (error != null) {
+                    return;
+                }
+                synchronized (this) {
+                    if (!observeTerm(response.getTimestamp()) && role == Role.LEADER && currentTerm == term) {
+                        lastAck.put(peer, System.nanoTime());
+                        ackedSend.merge(peer, sent, Math::max);
+                        listener.onFollowerIndex(peer, response.getLogIndex());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Renuncia à liderança caso a maioria do grupo não tenha respondido dentro do tempo de eleição,
+     * como acontece com um líder isolado por uma partição de rede.
+     */
+    private synchronized void checkQuorum() {
+        if (role != Role.LEADER) {
+            return;
+        }
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(config.getElectionTimeoutMillis());
+        int reachable = 1;
+        for (String peer : peers()) {
+            Long ack = lastAck.get(peer);
+            if (ack != null && now - ack < timeout) {
+                reachable++;
+            }
+        }
+        if (reachable < majority()) {
+            Log.warn("Líder do termo " + currentTerm + " sem contato com a maioria do grupo; renunciando");
+            role = Role.FOLLOWER;
+            leader = null;
+            resetElectionDeadline();
+            listener.onFollower(currentTerm, null, -1);
+        }
+    }
+
+    /**
+     * Obtém por quanto tempo nenhum outro líder pode ser eleito: a partir do envio do HEARTBEAT mais
+     * antigo entre os mais recentes respondidos pela maioria, um tempo de eleição menos uma margem
+     * para a diferença de velocidade dos relógios.
+     * @return O tempo restante em nanossegundos, 0 caso este servidor não seja o líder ou a maioria
+     * ainda não tenha respondido, ou Long.MAX_VALUE em um grupo de um único servidor.
+     */
+    synchronized long leaseRemainingNanos() {
+        if (role != Role.LEADER) {
+            return 0;
+        }
+        int needed = majority() - 1; // O próprio líder conta como um voto
+        if (needed == 0) {
+            return Long.MAX_VALUE;
+        }
+        List<Long> sends = new ArrayList<>();
+        for (String peer : peers()) {
+            Long send = ackedSend.get(peer);
+            if (send != null) {
+                sends.add(send);
+            }
+        }
+        if (sends.size() < needed) {
+            return 0;
+        }
+        sends.sort((a, b) -> Long.compare(b, a));
+        long timeout = TimeUnit.MILLISECONDS.toNanos(config.getElectionTimeoutMillis());
+        long expiry = sends.get(needed - 1) + timeout - timeout / 10;
+        return Math.max(0, expiry - System.nanoTime());
+    }
+
+    /**
+     * Trata um pedido de voto.
+     * @param request O VOTE_REQUEST, com o candidato, o termo e a última posição e o termo do seu log.
+     * @return VOTE_GRANTED ou VOTE_DENIED, com o termo deste servidor.
+     */
+    synchronized Message handleVoteRequest(Message request) {
+        String candidate = request.getKey();
+        long term = request.getTimestamp();
+        // Enquanto ouve um líder ativo, o servidor ignora candidatos, para que um servidor isolado que
+        // volta à rede não derrube o líder atual.
+        boolean leaderActive = role == Role.LEADER || (leader != null
+                && System.nanoTime() - lastLeaderContact < TimeUnit.MILLISECONDS.toNanos(config.getElectionTimeoutMillis()));
+        if (term > currentTerm && !leaderActive) {
+            stepDown(term, null, -1);
+        }
+
+        long lastTerm = Long.parseLong(request.getValue());
+        long myLastTerm = listener.lastLogTerm();
+        boolean upToDate = lastTerm > myLastTerm || (lastTerm == myLastTerm && request.getLogIndex() >= listener.lastLogIndex());
+        boolean granted = term == currentTerm && !leaderActive && upToDate
+                && (votedFor == null || votedFor.equals(candidate));
+        if (granted) {
+            votedFor = candidate;
+            saveState();
+            resetElectionDeadline();
+        }
+        return new Message(granted ? "VOTE_GRANTED" : "VOTE_DENIED", self, null, currentTerm);
+    }
+
+    /**
+     * Trata um HEARTBEAT do líder.
+     * @param request O HEARTBEAT, com o líder, o termo, a lista de servidores e a última posição do log do líder.
+     * @return HEARTBEAT_OK com o termo deste servidor e a última posição que ele possui.
+     */
+    synchronized Message handleHeartbeat(Message request) {
+        if (acceptLeader(request.getKey(), request.getTimestamp(), request.getLogIndex()) && request.getValue() != null) {
+            members = normalize(Arrays.asList(request.getValue().split(",")));
+        }
+        Message response = new Message("HEARTBEAT_OK", self, null, currentTerm);
+        response.setLogIndex(listener.lastLogIndex());
+        return response;
+    }
+
+    /**
+     * Verifica uma replicação recebida de um líder. Uma replicação de um termo antigo vem de um
+     * líder que já foi substituído e deve ser recusada; uma de um termo atual ou maior vale como HEARTBEAT.
+     * @param leaderAddress O endereço do líder que enviou a replicação.
+     * @param term O termo do líder.
+     * @return true caso a replicação deva ser aplicada.
+     */
+    synchronized boolean acceptReplication(String leaderAddress, long term) {
+        return acceptLeader(leaderAddress, term, -1);
+    }
+
+    /**
+     * Reconhece um líder caso o seu termo não seja antigo. Chamado com o monitor da eleição.
+     */
+    private boolean acceptLeader(String leaderAddress, long term, long leaderLastIndex) {
+        if (term < currentTerm) {
+            return false;
+        }
+        if (term > currentTerm || role != Role.FOLLOWER || !leaderAddress.equals(leader)) {
+            if (term > currentTerm) {
+                votedFor = null;
+            }
+            currentTerm = term;
+            saveState();
+            role = Role.FOLLOWER;
+            leader = leaderAddress;
+            Log.info("Seguindo o líder " + leaderAddress + " no termo " + term);
+            listener.onFollower(term, leaderAddress, leaderLastIndex);
+        }
+        lastLeaderContact = System.nanoTime();
+        resetElectionDeadline();
+        return true;
+    }
+
+    /**
+     * Registra o termo de uma resposta recebida; um termo maior faz este servidor voltar a ser secundário.
+     * @param term O termo da resposta.
+     * @return true caso o termo fosse maior que o atual.
+     */
+    synchronized boolean observeTerm(long term) {
+        if (term > currentTerm) {
+            stepDown(term, null, -1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adota um termo maior e volta a ser secundário. Chamado com o monitor da eleição.
+     */
+    private void stepDown(long term, String newLeader, long leaderLastIndex) {
+        boolean wasLeader = role == Role.LEADER;
+        currentTerm = term;
+        votedFor = null;
+        saveState();
+        role = Role.FOLLOWER;
+        leader = newLeader;
+        resetElectionDeadline();
+        if (wasLeader) {
+            Log.info("Termo " + term + " observado; deixando a liderança");
+        }
+        listener.onFollower(term, newLeader, leaderLastIndex);
+    }
+
+    private void resetElectionDeadline() {
+        long timeout = config.getElectionTimeoutMillis();
+        electionDeadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeout + ThreadLocalRandom.current().nextLong(timeout + 1));
+    }
+
+    private List<String> peers() {
+        List<String> peers = new ArrayList<>(members);
+        peers.remove(self);
+        return peers;
+    }
+
+    private int majority() {
+        return members.size() / 2 + 1;
+    }
+
+    /**
+     * Remove duplicatas e garante que este servidor faça parte do grupo.
+     */
+    private List<String> normalize(Collection<String> addresses) {
+        List<String> normalized = new ArrayList<>();
+        for (String address : addresses) {
+            String trimmed = address.trim();
+            if (!trimmed.isEmpty() && !normalized.contains(trimmed)) {
+                normalized.add(trimmed);
+            }
+        }
+        if (!normalized.contains(self)) {
+            normalized.add(self);
+        }
+        return normalized;
+    }
+
+    private CompletableFuture<Message> send(String peer, Message message) {
+        return config.getFaultInjector()
+                .inject(FaultInjector.Path.REPLICATION, peer, () -> connectionPool.send(peer, message))
+                .orTimeout(config.getHeartbeatIntervalMillis() * 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lê o termo e o voto gravados.
+     */
+    private void loadState() throws IOException {
+        if (stateFile == null || !Files.exists(stateFile)) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(stateFile))) {
+            currentTerm = input.readLong();
+            votedFor = input.readBoolean() ? input.readUTF() : null;
+        }
+    }
+
+    /**
+     * Grava o termo e o voto antes de qualquer resposta que dependa deles, substituindo o arquivo
+     * anterior de forma atômica. Chamado com o monitor da eleição.
+     */
+    private void saveState() {
+        if (stateFile == null) {
+            return;
+        }
+        Path temp = stateFile.resolveSibling(STATE_TEMP_FILE);
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+                output.writeLong(currentTerm);
+                output.writeBoolean(votedFor != null);
+                if (votedFor != null) {
+                    output.writeUTF(votedFor);
+                }
+                output.flush();
+                if (config.isFsync()) {
+                    file.getFD().sync();
+                }
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar o estado da eleição em " + stateFile, e);
+        }
+    }
+
+    /**
+     * Obtém o papel atual deste servidor.
+     * @return O papel.
+     */
+    Role getRole() {
+        return role;
+    }
+
+    /**
+     * Obtém o termo atual.
+     * @return O termo.
+     */
+    long getTerm() {
+        return currentTerm;
+    }
+
+    /**
+     * Obtém o líder conhecido.
+     * @return O endereço do líder, ou null durante uma eleição.
+     */
+    String getLeader() {
+        return leader;
+    }
+
+    /**
+     * Obtém os servidores do grupo.
+     * @return Os endereços de todos os servidores, incluindo este.
+     */
+    List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * Adiciona um servidor ao grupo, no líder. A nova lista chega aos secundários no próximo
+     * HEARTBEAT, e o novo servidor conta como acessível até o fim do tempo de eleição, para que a
+     * sua entrada não faça o líder renunciar antes de ele responder.
+     * @param address O endereço IP:porta do servidor.
+     * @return true caso o servidor ainda não fizesse parte do grupo.
+     */
+    synchronized boolean addMember(String address) {
+        if (members.contains(address)) {
+            return false;
+        }
+        List<String> updated = new ArrayList<>(members);
+        updated.add(address);
+        members = normalize(updated);
+        lastAck.put(address, System.nanoTime());
+        Log.info("Servidor " + address + " adicionado ao grupo: " + members);
+        return true;
+    }
+
+    /**
+     * Remove um servidor do grupo, no líder. A maioria passa a ser calculada sem ele.
+     * @param address O endereço IP:porta do servidor.
+     * @return true caso o servidor fizesse parte do grupo.
+     */
+    synchronized boolean removeMember(String address) {
+        if (address.equals(self) || !members.contains(address)) {
+            return false;
+        }
+        List<String> updated = new ArrayList<>(members);
+        updated.remove(address);
+        members = normalize(updated);
+        lastAck.remove(address);
+        ackedSend.remove(address);
+        Log.info("Servidor " + address + " removido do grupo: " + members);
+        return true;
+    }
+
+    /**
+     * Obtém o número de eleições iniciadas por este servidor.
+     * @return O número de eleições.
+     */
+    long getElections() {
+        return elections.sum();
+    }
+}
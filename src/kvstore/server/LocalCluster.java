@@ -0,0 +1,349 @@
+package kvstore.server;
+
+import kvstore.config.ConfigLoader;
+import kvstore.log.Log;
+import kvstore.storage.Storage;
+import kvstore.storage.VersionedStorage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cluster com um líder e seus secundários executando no mesmo processo, na interface de loopback e
+ * em portas livres. Usado em benchmarks e testes que precisam de um cluster real sem iniciar
+ * processos separados. Com a eleição de líder ativa, servidores podem ser parados para simular
+ * falhas e reiniciados depois, e o líder é o eleito no momento da consulta. Servidores também podem
+ * entrar e sair do grupo com o cluster em execução, por JOIN e LEAVE.
+ *
+ * Executado diretamente, inicia um cluster com --size servidores (3 por padrão) e a configuração
+ * lida por {@link ConfigLoader}, e aceita pela entrada padrão os comandos join, leave &lt;posição&gt;,
+ * stop &lt;posição&gt;, restart &lt;posição&gt; e leader, até o fim da entrada.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class LocalCluster implements Closeable {
+    private static final String HOST = "localhost";
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<String> addresses = new ArrayList<>();
+    private final Set<Integer> stopped = new HashSet<>();
+    private final ServerConfig config;
+    private final Supplier<Storage> storageFactory;
+
+    private LocalCluster(ServerConfig config, Supplier<Storage> storageFactory) {
+        this.config = config;
+        this.storageFactory = storageFactory;
+    }
+
+    /**
+     * Inicia um cluster com armazenamento em memória.
+     * @param size O número de servidores, incluindo o líder.
+     * @param config A configuração compartilhada pelos servidores.
+     * @return O cluster iniciado.
+     * @throws IOException Caso não seja possível abrir os sockets dos servidores.
+     */
+    public static LocalCluster start(int size, ServerConfig config) throws IOException {
+        return start(size, config, () -> new VersionedStorage(config.getMaxVersions(), config.getVersionRetentionMillis()));
+    }
+
+    /**
+     * Inicia um cluster. O primeiro servidor é o líder; com a eleição ativa, ele se candidata
+     * primeiro e o método retorna apenas quando algum líder tiver sido eleito.
+     * @param size O número de servidores, incluindo o líder.
+     * @param config A configuração compartilhada pelos servidores.
+     * @param storageFactory Cria o armazenamento de cada servidor.
+     * @return O cluster iniciado.
+     * @throws IOException Caso não seja possível abrir os sockets dos servidores.
+     */
+    public static LocalCluster start(int size, ServerConfig config, Supplier<Storage> storageFactory) throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Tamanho de cluster inválido: " + size);
+        }
+
+        LocalCluster cluster = new LocalCluster(config, storageFactory);
+        try {
+            Server leader = new Server(true, config, storageFactory.get());
+            int leaderPort = leader.bind(HOST, 0, HOST, 0);
+            cluster.add(leader, leaderPort);
+
+            for (int i = 1; i < size; i++) {
+                Server secondary = new Server(false, config, storageFactory.get());
+                cluster.add(secondary, secondary.bind(HOST, 0, HOST, leaderPort));
+            }
+
+            List<String> secondaryAddresses = cluster.addresses.subList(1, size);
+            for (int i = 0; i < size; i++) {
+                cluster.serve(i, secondaryAddresses);
+            }
+            if (config.getElectionTimeoutMillis() > 0) {
+                cluster.awaitLeader(config.getElectionTimeoutMillis() * 10);
+            }
+        } catch (IOException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    private void add(Server server, int port) {
+        servers.add(server);
+        addresses.add(HOST + ":" + port);
+    }
+
+    private void serve(int index, List<String> secondaryAddresses) {
+        Server server = servers.get(index);
+        List<String> secondaries = new ArrayList<>(secondaryAddresses);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve(secondaries);
+            } catch (IOException e) {
+                Log.error("Falha no servidor local " + index, e);
+            }
+        }, "kvstore-local-server-" + index);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Obtém o endereço do líder.
+     * @return O endereço IP:porta do líder, ou null caso nenhum servidor ativo seja o líder no momento.
+     */
+    public synchronized String getLeaderAddress() {
+        int leader = leaderIndex();
+        return leader >= 0 ? addresses.get(leader) : null;
+    }
+
+    /**
+     * Obtém a posição do líder na lista de servidores.
+     * @return A posição do líder, ou -1 caso nenhum servidor ativo seja o líder no momento.
+     */
+    public synchronized int leaderIndex() {
+        for (int i = 0; i < servers.size(); i++) {
+            if (!stopped.contains(i) && servers.get(i).isLeader()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Aguarda até que um servidor ativo seja o líder e todos os ativos o conheçam.
+     * @param timeoutMillis O tempo máximo de espera em milissegundos.
+     * @return O endereço IP:porta do líder.
+     * @throws IllegalStateException Caso nenhum líder seja eleito no tempo indicado.
+     */
+    public String awaitLeader(long timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (System.nanoTime() - deadline < 0) {
+            String leader = agreedLeader();
+            if (leader != null) {
+                return leader;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IllegalStateException("Nenhum líder eleito em " + timeoutMillis + " ms");
+    }
+
+    private synchronized String agreedLeader() {
+        String leader = getLeaderAddress();
+        if (leader == null) {
+            return null;
+        }
+        for (int i = 0; i < servers.size(); i++) {
+            if (!stopped.contains(i) && !leader.equals(servers.get(i).getLeaderAddress())) {
+                return null;
+            }
+        }
+        return leader;
+    }
+
+    /**
+     * Para um servidor, simulando a sua queda: o socket é fechado e ele deixa de responder.
+     * @param index A posição do servidor na lista de servidores.
+     */
+    public synchronized void stop(int index) {
+        if (stopped.add(index)) {
+            try {
+                servers.get(index).close();
+            } catch (IOException e) {
+                Log.error("Falha ao parar o servidor local " + index, e);
+            }
+        }
+    }
+
+    /**
+     * Reinicia um servidor parado no mesmo endereço, simulando a sua volta depois de uma queda. O
+     * servidor volta com um armazenamento novo, como um processo que reinicia sem disco, e como
+     * secundário: ele recebe o líder atual pelos HEARTBEATs e as escritas que perdeu pela
+     * recuperação de secundários atrasados.
+     * @param index A posição do servidor na lista de servidores.
+     * @throws IOException Caso não seja possível abrir o socket no endereço anterior.
+     * @throws IllegalStateException Caso o servidor não esteja parado ou nenhum outro esteja ativo.
+     */
+    public synchronized void restart(int index) throws IOException {
+        if (!stopped.contains(index)) {
+            throw new IllegalStateException("O servidor " + addresses.get(index) + " não está parado");
+        }
+        String seed = getLeaderAddress();
+        for (int i = 0; seed == null && i < servers.size(); i++) {
+            if (!stopped.contains(i)) {
+                seed = addresses.get(i);
+            }
+        }
+        if (seed == null) {
+            throw new IllegalStateException("Nenhum servidor ativo no cluster");
+        }
+
+        String address = addresses.get(index);
+        Server server = new Server(false, config, storageFactory.get());
+        try {
+            server.bind(HOST, Integer.parseInt(address.substring(address.lastIndexOf(':') + 1)),
+                    HOST, Integer.parseInt(seed.substring(seed.lastIndexOf(':') + 1)));
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+        servers.set(index, server);
+        stopped.remove(index);
+        List<String> members = new ArrayList<>(addresses);
+        members.remove(seed);
+        serve(index, members);
+    }
+
+    /**
+     * Adiciona um novo secundário ao grupo em execução. O pedido de entrada é enviado ao líder, ou a
+     * um servidor ativo qualquer durante uma eleição, e as escritas existentes chegam ao novo servidor
+     * pela recuperação de secundários atrasados.
+     * @return O endereço IP:porta do novo servidor.
+     * @throws IOException Caso não seja possível abrir o socket ou o grupo não aceite a entrada.
+     */
+    public synchronized String join() throws IOException {
+        String seed = getLeaderAddress();
+        for (int i = 0; seed == null && i < servers.size(); i++) {
+            if (!stopped.contains(i)) {
+                seed = addresses.get(i);
+            }
+        }
+        if (seed == null) {
+            throw new IllegalStateException("Nenhum servidor ativo no cluster");
+        }
+
+        Server server = new Server(false, config, storageFactory.get());
+        List<String> members;
+        try {
+            server.bind(HOST, 0, HOST, Integer.parseInt(seed.substring(seed.lastIndexOf(':') + 1)));
+            members = server.requestJoin(seed);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+        add(server, server.getPort());
+        serve(servers.size() - 1, members);
+        return addresses.get(addresses.size() - 1);
+    }
+
+    /**
+     * Retira um secundário do grupo e o para. Diferente de {@link #stop(int)}, o líder deixa de
+     * replicar para o servidor e de contá-lo na maioria.
+     * @param index A posição do servidor na lista de servidores.
+     * @throws IllegalStateException Caso a saída não seja confirmada, como ao retirar o líder.
+     */
+    public synchronized void leave(int index) {
+        if (stopped.contains(index)) {
+            return;
+        }
+        if (!servers.get(index).leave()) {
+            throw new IllegalStateException("Saída do servidor " + addresses.get(index) + " não confirmada pelo líder");
+        }
+        stop(index);
+    }
+
+    /**
+     * Obtém os endereços de todos os servidores, começando pelo líder inicial.
+     * @return Os endereços IP:porta dos servidores.
+     */
+    public List<String> getAddresses() {
+        return Collections.unmodifiableList(addresses);
+    }
+
+    /**
+     * Inicia um cluster local e o controla pela entrada padrão.
+     * @param args Argumentos --nome=valor da configuração dos servidores, além de --size.
+     * @throws IOException Caso não seja possível ler a configuração ou iniciar os servidores.
+     */
+    public static void main(String[] args) throws IOException {
+        ConfigLoader.apply(args, "kvstore.");
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        int size = Integer.getInteger("kvstore.size", 3);
+
+        try (LocalCluster cluster = start(size, config)) {
+            System.out.println("Cluster local iniciado: " + cluster.getAddresses());
+            System.out.println("Comandos: join, leave <posição>, stop <posição>, restart <posição>, leader");
+            BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = input.readLine()) != null) {
+                String[] command = line.trim().split("\\s+");
+                try {
+                    switch (command[0]) {
+                        case "join":
+                            System.out.println("Servidor adicionado: " + cluster.join());
+                            break;
+                        case "leave":
+                            cluster.leave(Integer.parseInt(command[1]));
+                            System.out.println("Servidor retirado: " + cluster.getAddresses().get(Integer.parseInt(command[1])));
+                            break;
+                        case "stop":
+                            cluster.stop(Integer.parseInt(command[1]));
+                            System.out.println("Servidor parado: " + cluster.getAddresses().get(Integer.parseInt(command[1])));
+                            break;
+                        case "restart":
+                            cluster.restart(Integer.parseInt(command[1]));
+                            System.out.println("Servidor reiniciado: " + cluster.getAddresses().get(Integer.parseInt(command[1])));
+                            break;
+                        case "leader":
+                            System.out.println("Líder: " + cluster.getLeaderAddress());
+                            break;
+                        case "":
+                            break;
+                        default:
+                            System.out.println("Comando desconhecido: " + command[0]);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Falha: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Fecha todos os servidores do cluster.
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < servers.size(); i++) {
+            if (stopped.add(i)) {
+                try {
+                    servers.get(i).close();
+                } catch (IOException e) {
+                    Log.error("Falha ao fechar o servidor local", e);
+                }
+            }
+        }
+    }
+}
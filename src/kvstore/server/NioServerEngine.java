@@ -0,0 +1,372 @@
+package kvstore.server;
+
+import kvstore.log.Log;
+import kvstore.message.BinaryCodec;
+import kvstore.message.Message;
+import kvstore.message.MessageCodec;
+import kvstore.message.MessageDecoder;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Motor de rede baseado em seletores NIO. Uma thread aceita as conexões e as distribui entre
+ * um número fixo de laços de eventos, que leem as requisições, as entregam aos workers do
+ * servidor e escrevem as respostas sem bloquear.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+class NioServerEngine implements Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private final Server server;
+    private final ServerConfig config;
+    private ServerSocketChannel acceptChannel;
+    private EventLoop[] loops;
+
+    /**
+     * Construtor da classe NioServerEngine.
+     * @param server O servidor que trata as requisições recebidas.
+     * @param config A configuração do motor.
+     */
+    NioServerEngine(Server server, ServerConfig config) {
+        this.server = server;
+        this.config = config;
+    }
+
+    /**
+     * Abre o socket de escuta e inicia os laços de eventos.
+     * @param address O endereço em que o servidor irá escutar as conexões.
+     * @return A porta em que o socket está escutando.
+     * @throws IOException Caso não seja possível abrir o socket.
+     */
+    int bind(InetSocketAddress address) throws IOException {
+        acceptChannel = ServerSocketChannel.open();
+        acceptChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        acceptChannel.bind(address, config.getBacklog());
+
+        loops = new EventLoop[config.getSelectorThreads()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "kvstore-nio-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return acceptChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Aceita conexões até o socket de escuta ser fechado, distribuindo-as entre os laços de eventos.
+     * @throws IOException Caso ocorra um erro no socket de escuta.
+     */
+    void run() throws IOException {
+        int next = 0;
+        while (acceptChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = acceptChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (Log.sampleRequest()) {
+                Log.info("Nova conexão de " + channel.getRemoteAddress());
+            }
+
+            loops[next].register(channel);
+            next = (next + 1) % loops.length;
+        }
+    }
+
+    /**
+     * Fecha o socket de escuta, os seletores e as conexões abertas, para que os clientes percebam
+     * o fechamento imediatamente em vez de aguardar o tempo limite das requisições.
+     */
+    @Override
+    public void close() throws IOException {
+        acceptChannel.close();
+        for (EventLoop loop : loops) {
+            loop.selector.close();
+            for (ClientConnection connection : loop.connections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Laço de eventos que atende um subconjunto das conexões.
+     */
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final List<ClientConnection> paused = new ArrayList<>();
+        private final Set<ClientConnection> connections = ConcurrentHashMap.newKeySet();
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Registra uma nova conexão neste laço.
+         * @param channel O canal da conexão aceita.
+         */
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new ClientConnection(channel, key, this));
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        /**
+         * Agenda uma tarefa para ser executada na thread deste laço.
+         * @param task A tarefa.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    // Com conexões pausadas, acorda periodicamente para tentar entregá-las aos workers.
+                    selector.select(paused.isEmpty() ? 0 : 1);
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    paused.removeIf(ClientConnection::resume);
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ClientConnection connection = (ClientConnection) key.attachment();
+                        if (!key.isValid() || connection == null) {
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // Motor encerrado.
+            } catch (IOException e) {
+                Log.error("Falha no laço de eventos", e);
+            }
+        }
+    }
+
+    /**
+     * Estado de uma conexão de cliente: buffer de leitura, fila de respostas e requisições
+     * aguardando um worker livre. As respostas grandes ficam em uma fila à parte e são escritas um
+     * fragmento por vez, alternando entre elas e dando preferência às respostas pequenas.
+     */
+    private class ClientConnection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final EventLoop loop;
+        private final String origin;
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        private final Queue<Queue<ByteBuffer[]>> streams = new ConcurrentLinkedQueue<>();
+        private ByteBuffer[] partialFrame; // Fragmento de uma resposta grande escrito em parte
+        private final Queue<Message> parked = new ArrayDeque<>();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private MessageCodec codec;
+        private MessageDecoder decoder;
+        private boolean closed;
+
+        ClientConnection(SocketChannel channel, SelectionKey key, EventLoop loop) throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.loop = loop;
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            this.origin = "[" + remote.getAddress() + "]:[" + remote.getPort() + "]";
+            loop.connections.add(this);
+            server.metrics().connectionOpened();
+        }
+
+        /**
+         * Lê os bytes disponíveis e entrega cada mensagem completa como uma requisição.
+         */
+        void read() {
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            if (codec == null) {
+                if (!readBuffer.hasRemaining()) {
+                    readBuffer.compact();
+                    return;
+                }
+                // O primeiro byte da conexão escolhe o protocolo; o byte de seleção do binário é descartado.
+                codec = MessageCodec.negotiate(readBuffer.get(readBuffer.position()));
+                if (codec instanceof BinaryCodec) {
+                    readBuffer.get();
+                }
+                decoder = codec.newDecoder();
+            }
+
+            try {
+                Message request;
+                while ((request = decoder.decode(readBuffer)) != null) {
+                    accept(request);
+                }
+            } catch (IllegalArgumentException e) {
+                close();
+                return;
+            }
+            readBuffer.compact();
+
+            // Uma requisição maior que o buffer atual faz o buffer crescer até o limite.
+            if (!readBuffer.hasRemaining()) {
+                if (readBuffer.capacity() >= BinaryCodec.MAX_FRAME_SIZE) {
+                    close();
+                    return;
+                }
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, BinaryCodec.MAX_FRAME_SIZE));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        /**
+         * Entrega uma requisição aos workers, pausando a leitura se estiverem saturados.
+         * @param request A requisição recebida.
+         */
+        private void accept(Message request) {
+            if (!parked.isEmpty() || !server.dispatch(request, origin, this::reply)) {
+                if (parked.isEmpty()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    loop.paused.add(this);
+                }
+                parked.add(request);
+            }
+        }
+
+        /**
+         * Tenta entregar aos workers as requisições pausadas.
+         * @return true caso todas tenham sido entregues e a leitura tenha sido retomada.
+         */
+        boolean resume() {
+            if (!key.isValid()) {
+                return true;
+            }
+            while (!parked.isEmpty()) {
+                if (!server.dispatch(parked.peek(), origin, this::reply)) {
+                    return false;
+                }
+                parked.poll();
+            }
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            return true;
+        }
+
+        /**
+         * Enfileira uma resposta; pode ser chamado por qualquer worker.
+         * @param response A mensagem de resposta.
+         */
+        void reply(Message response) {
+            List<ByteBuffer[]> frames = codec.encodeFrames(response, response.getId());
+            if (frames == null) {
+                writeQueue.add(codec.encode(response, response.getId(), null));
+            } else {
+                streams.add(new ArrayDeque<>(frames));
+            }
+            loop.execute(this::flush);
+        }
+
+        /**
+         * Escreve as respostas pendentes até o socket não aceitar mais bytes.
+         */
+        void flush() {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                while (true) {
+                    if (partialFrame != null) {
+                        channel.write(partialFrame);
+                        if (partialFrame[partialFrame.length - 1].hasRemaining()) {
+                            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        partialFrame = null;
+                    }
+                    ByteBuffer buffer = writeQueue.peek();
+                    if (buffer != null) {
+                        channel.write(buffer);
+                        if (buffer.hasRemaining()) {
+                            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        writeQueue.poll();
+                        continue;
+                    }
+                    Queue<ByteBuffer[]> stream = streams.poll();
+                    if (stream == null) {
+                        break;
+                    }
+                    partialFrame = stream.poll();
+                    if (!stream.isEmpty()) {
+                        streams.add(stream); // Alterna entre as respostas grandes, um fragmento por vez
+                    }
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            loop.connections.remove(this);
+            server.metrics().connectionClosed();
+            key.cancel();
+            closeQuietly(channel);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignora erros ao fechar o canal.
+        }
+    }
+}
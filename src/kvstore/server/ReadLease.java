@@ -0,0 +1,285 @@
+package kvstore.server;
+
+import kvstore.log.Log;
+import kvstore.message.Message;
+import kvstore.network.ConnectionPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Concessões de leitura dadas pelo líder aos secundários. Um secundário pede a concessão com LEASE
+ * e a renova a cada terço da sua duração; o líder a concede com a última posição do seu log e passa a
+ * aguardar, antes de confirmar cada escrita, a replicação para o secundário ou o fim da concessão.
+ * Assim, enquanto a concessão vale, o secundário já aplicou todas as escritas confirmadas a partir
+ * da posição recebida e pode atender leituras lineares sem consultar o líder.
+ *
+ * A concessão nunca dura mais que a garantia do próprio líder de que nenhum outro foi eleito, e o
+ * secundário conta a sua duração a partir do envio do pedido, descontando uma margem para a diferença
+ * de velocidade dos relógios, de modo que ela termina no secundário antes de terminar no líder. Uma
+ * mudança de termo ou de líder revoga as concessões.
+ *
+ * O secundário também registra a última posição do líder informada nos HEARTBEATs e nas concessões,
+ * com o instante em que era a última, o que limita o atraso das leituras feitas sem concessão.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class ReadLease {
+    private final ServerConfig config;
+    private final ConnectionPool connectionPool;
+    private final IndexWatermark appliedIndex;
+    private final Supplier<String> self;
+    private final Supplier<String> leader;
+    private final LongSupplier term;
+    private final ScheduledExecutorService scheduler;
+
+    // Lado do líder: fim da concessão de cada secundário, em System.nanoTime().
+    private final Map<String, Long> holders = new ConcurrentHashMap<>();
+
+    // Lado do secundário.
+    private final AtomicLong epoch = new AtomicLong(); // Incrementado a cada revogação
+    private volatile long expiryNanos = System.nanoTime();
+    private volatile long leaseIndex;
+    private volatile LeaderIndex known = LeaderIndex.unknown();
+
+    /**
+     * Construtor da classe ReadLease. Os pedidos de concessão só começam em {@link #start()}.
+     * @param config A configuração do servidor, com a duração das concessões.
+     * @param connectionPool As conexões com os outros servidores.
+     * @param appliedIndex A última posição aplicada por este servidor.
+     * @param self O endereço IP:porta deste servidor.
+     * @param leader O endereço do líder conhecido, ou null durante uma eleição.
+     * @param term O termo atual.
+     */
+    ReadLease(ServerConfig config, ConnectionPool connectionPool, IndexWatermark appliedIndex, Supplier<String> self,
+              Supplier<String> leader, LongSupplier term) {
+        this.config = config;
+        this.connectionPool = connectionPool;
+        this.appliedIndex = appliedIndex;
+        this.self = self;
+        this.leader = leader;
+        this.term = term;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kvstore-read-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Inicia os pedidos periódicos de concessão ao líder, caso as concessões estejam ativas.
+     */
+    void start() {
+        long lease = config.getReadLeaseMillis();
+        if (lease > 0) {
+            scheduler.scheduleWithFixedDelay(this::renew, 0, Math.max(1, lease / 3), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Encerra os pedidos de concessão.
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Pede ao líder uma nova concessão. A duração é contada a partir deste momento.
+     */
+    private void renew() {
+        String currentLeader = leader.get();
+        String address = self.get();
+        if (currentLeader == null || currentLeader.equals(address)) {
+            return;
+        }
+        long requestEpoch = epoch.get();
+        long requested = System.nanoTime();
+        Message request = new Message("LEASE", address, null, term.getAsLong());
+        config.getFaultInjector()
+                .inject(FaultInjector.Path.REPLICATION, currentLeader, () -> connectionPool.send(currentLeader, request))
+                .orTimeout(config.getReadLeaseMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> {
+                    if (error != null || !"LEASE_OK".equals(response.getCommand())) {
+                        return; // A concessão atual apenas expira
+                    }
+                    observeLeaderIndex(response.getLogIndex(), requested);
+                    long granted = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(response.getValue()));
+                    synchronized (this) {
+                        if (epoch.get() == requestEpoch && currentLeader.equals(leader.get())) {
+                            leaseIndex = Math.max(leaseIndex, response.getLogIndex());
+                            long expiry = requested + granted - granted / 10;
+                            if (expiry - expiryNanos > 0) {
+                                expiryNanos = expiry;
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Concede, no líder, uma concessão a um secundário. O secundário é registrado antes de a última
+     * posição ser lida, de modo que toda escrita confirmada depois do registro aguarda o secundário e
+     * toda escrita confirmada antes dele está incluída na posição.
+     * @param follower O endereço do secundário.
+     * @param leaderLeaseNanos Por quanto tempo nenhum outro líder pode ser eleito.
+     * @param lastIndex Fornece a última posição do log de replicação do líder.
+     * @param currentTerm O termo do líder.
+     * @return LEASE_OK com a duração concedida em milissegundos e a última posição, ou LEASE_DENIED
+     * caso a garantia do líder já tenha terminado.
+     */
+    Message grant(String follower, long leaderLeaseNanos, LongSupplier lastIndex, long currentTerm) {
+        long millis = Math.min(config.getReadLeaseMillis(), TimeUnit.NANOSECONDS.toMillis(leaderLeaseNanos));
+        if (millis <= 0) {
+            return new Message("LEASE_DENIED", follower, null, currentTerm);
+        }
+        long expiry = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        holders.merge(follower, expiry, (a, b) -> b - a > 0 ? b : a);
+        Message response = new Message("LEASE_OK", follower, String.valueOf(millis), currentTerm);
+        response.setLogIndex(lastIndex.getAsLong());
+        return response;
+    }
+
+    /**
+     * Aguarda, no líder, que cada secundário com concessão confirme uma escrita, ou que a sua
+     * concessão termine caso ele não a confirme.
+     * @param acks A confirmação da replicação da escrita por secundário.
+     * @return Um futuro completado quando nenhum secundário com concessão puder deixar de ver a escrita.
+     */
+    CompletableFuture<Void> awaitHolders(Map<String, CompletableFuture<Boolean>> acks) {
+        if (holders.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long now = System.nanoTime();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        holders.forEach((holder, expiry) -> {
+            long remaining = expiry - now;
+            if (remaining <= 0) {
+                holders.remove(holder, expiry);
+                return;
+            }
+            CompletableFuture<Boolean> ack = acks.get(holder);
+            if (ack != null && ack.getNow(false)) {
+                return;
+            }
+            CompletableFuture<Void> released = new CompletableFuture<>();
+            if (ack != null) {
+                ack.thenAccept(replicated -> {
+                    if (replicated) {
+                        released.complete(null);
+                    }
+                });
+            }
+            pending.add(released.completeOnTimeout(null, remaining, TimeUnit.NANOSECONDS));
+        });
+        return pending.isEmpty() ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Revoga as concessões deste servidor, como secundário e como líder, após uma mudança de termo ou de líder.
+     */
+    synchronized void revoke() {
+        epoch.incrementAndGet();
+        expiryNanos = System.nanoTime();
+        leaseIndex = 0;
+        known = LeaderIndex.unknown();
+        if (!holders.isEmpty()) {
+            Log.info("Concessões de leitura revogadas");
+            holders.clear();
+        }
+    }
+
+    /**
+     * Indica se este secundário tem uma concessão válida.
+     * @return true enquanto a concessão vale.
+     */
+    boolean isValid() {
+        return System.nanoTime() - expiryNanos < 0;
+    }
+
+    /**
+     * Obtém a posição que uma leitura linear neste secundário precisa ter aplicado.
+     * @return A última posição do líder recebida com a concessão.
+     */
+    long getLeaseIndex() {
+        return leaseIndex;
+    }
+
+    /**
+     * Registra a última posição do log do líder.
+     * @param index A posição.
+     * @param atNanos O instante, em System.nanoTime(), em que ela era a última posição do líder.
+     */
+    void observeLeaderIndex(long index, long atNanos) {
+        synchronized (this) {
+            LeaderIndex current = known;
+            if (atNanos - current.atNanos > 0) {
+                known = new LeaderIndex(index, atNanos);
+            }
+        }
+    }
+
+    /**
+     * Obtém a última posição do log do líder conhecida por este secundário.
+     * @return A posição.
+     */
+    long getLeaderIndex() {
+        return known.index;
+    }
+
+    /**
+     * Obtém um limite para o atraso do estado local: o tempo desde o último instante em que a posição
+     * do líder é conhecida e já foi aplicada por este servidor.
+     * @return O atraso em nanossegundos, ou Long.MAX_VALUE caso a posição ainda não tenha sido aplicada.
+     */
+    long stalenessNanos() {
+        LeaderIndex current = known;
+        return appliedIndex.get() >= current.index ? System.nanoTime() - current.atNanos : Long.MAX_VALUE;
+    }
+
+    /**
+     * Obtém o número de secundários com concessão válida.
+     * @return O número de secundários.
+     */
+    int holders() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (long expiry : holders.values()) {
+            if (expiry - now > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Posição do log do líder e o instante em que era a última.
+     */
+    private static final class LeaderIndex {
+        private final long index;
+        private final long atNanos;
+
+        private LeaderIndex(long index, long atNanos) {
+            this.index = index;
+            this.atNanos = atNanos;
+        }
+
+        /**
+         * Posição ainda não informada pelo líder, conhecida há um tempo indefinido.
+         */
+        private static LeaderIndex unknown() {
+            return new LeaderIndex(0, System.nanoTime() - Long.MAX_VALUE / 2);
+        }
+    }
+}
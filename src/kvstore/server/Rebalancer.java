@@ -0,0 +1,122 @@
+package kvstore.server;
+
+import kvstore.cluster.Shard;
+import kvstore.cluster.Topology;
+import kvstore.message.Message;
+import kvstore.network.ConnectionPool;
+import kvstore.storage.Entry;
+import kvstore.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Move as chaves de uma partição quando a topologia muda. As chaves que passam a pertencer a outra
+ * partição são enviadas, em blocos e com seus timestamps originais, ao líder da nova partição, que as
+ * confirma e replica como escritas comuns. Como as escritas seguem a regra "última escrita vence",
+ * enviar uma chave mais de uma vez não altera o resultado.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class Rebalancer {
+    private final Storage storage;
+    private final ConnectionPool connectionPool;
+    private final ServerConfig config;
+
+    /**
+     * Construtor da classe Rebalancer.
+     * @param storage O armazenamento local.
+     * @param connectionPool As conexões com os outros servidores.
+     * @param config A configuração do servidor.
+     */
+    Rebalancer(Storage storage, ConnectionPool connectionPool, ServerConfig config) {
+        this.storage = storage;
+        this.connectionPool = connectionPool;
+        this.config = config;
+    }
+
+    /**
+     * Envia aos novos donos as chaves locais que não pertencem mais à partição.
+     * @param topology A nova topologia.
+     * @param shardId A partição deste servidor.
+     * @return O número de chaves enviadas.
+     * @throws Exception Caso algum bloco não seja confirmado pelo novo dono.
+     */
+    long migrate(Topology topology, String shardId) throws Exception {
+        Map<String, List<Message>> chunks = new HashMap<>();
+        long[] sent = {0};
+        Exception[] failure = {null};
+
+        storage.forEach((key, entry) -> {
+            Shard owner = topology.shardFor(key);
+            if (failure[0] != null || owner.getId().equals(shardId)) {
+                return;
+            }
+            List<Message> chunk = chunks.computeIfAbsent(owner.getLeader(), leader -> new ArrayList<>());
+            Message write = new Message(entry.isTombstone() ? "DELETE" : "PUT", key, entry.getValue(), entry.getTimestamp());
+            write.setExpiresAt(entry.getExpiresAt());
+            chunk.add(write);
+            if (chunk.size() >= config.getCatchUpChunkSize()) {
+                try {
+                    sendChunk(owner.getLeader(), chunk);
+                    sent[0] += chunk.size();
+                    chunk.clear();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        for (Map.Entry<String, List<Message>> chunk : chunks.entrySet()) {
+            if (!chunk.getValue().isEmpty()) {
+                sendChunk(chunk.getKey(), chunk.getValue());
+                sent[0] += chunk.getValue().size();
+            }
+        }
+        return sent[0];
+    }
+
+    /**
+     * Descarta as chaves locais que não pertencem mais à partição.
+     * @param topology A nova topologia.
+     * @param shardId A partição deste servidor.
+     * @return O número de chaves descartadas.
+     */
+    long evict(Topology topology, String shardId) {
+        List<Map.Entry<String, Entry>> moved = new ArrayList<>();
+        storage.forEach((key, entry) -> {
+            if (!topology.shardFor(key).getId().equals(shardId)) {
+                moved.add(Map.entry(key, entry));
+            }
+        });
+
+        long removed = 0;
+        for (Map.Entry<String, Entry> entry : moved) {
+            if (storage.remove(entry.getKey(), entry.getValue().getTimestamp())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Envia um bloco de chaves ao líder da nova partição e aguarda a confirmação da replicação.
+     */
+    private void sendChunk(String leader, List<Message> chunk) throws Exception {
+        Message migration = new Message("MIGRATE", null, null, 0L);
+        migration.setEntries(new ArrayList<>(chunk));
+        Message response = connectionPool.send(leader, migration)
+                .get(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS);
+        if (!"MIGRATE_OK".equals(response.getCommand())) {
+            throw new IllegalStateException("Migração recusada por " + leader + ": " + response.getCommand());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package kvstore.server;
+
+import kvstore.message.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Log de replicação em memória mantido pelo líder. Cada escrita confirmada recebe uma posição
+ * crescente, e as escritas mais recentes ficam guardadas em um buffer circular para que um
+ * servidor secundário atrasado possa recebê-las novamente a partir da última posição que possui.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+class ReplicationLog {
+    private final Message[] ring;
+    private long firstIndex;
+    private long lastIndex;
+
+    /**
+     * Construtor da classe ReplicationLog.
+     * @param capacity O número máximo de escritas guardadas.
+     * @param startIndex A última posição anterior ao log. Um líder que já possui dados ao iniciar
+     * usa 1, de modo que um secundário que peça o histórico desde o início receba um snapshot.
+     */
+    ReplicationLog(int capacity, long startIndex) {
+        this.ring = new Message[capacity];
+        this.lastIndex = startIndex;
+        this.firstIndex = startIndex + 1;
+    }
+
+    /**
+     * Descarta as escritas guardadas e recomeça o log após uma posição, como quando este servidor
+     * é eleito líder e continua a numeração a partir da última posição que possui.
+     * @param startIndex A última posição anterior ao log.
+     */
+    synchronized void restart(long startIndex) {
+        Arrays.fill(ring, null);
+        lastIndex = startIndex;
+        firstIndex = startIndex + 1;
+    }
+
+    /**
+     * Atribui posições às escritas de um lote e as guarda no log. Cada requisição recebe a posição
+     * da sua escrita, devolvida ao cliente no PUT_OK. As remoções continuam como DELETE no log, para
+     * que os secundários as distingam de uma escrita sem valor.
+     * @param requests As escritas PUT e DELETE do lote.
+     * @return As mensagens REPLICATION e DELETE correspondentes, com suas posições no log.
+     */
+    synchronized List<Message> append(List<Message> requests) {
+        List<Message> entries = new ArrayList<>(requests.size());
+        for (Message request : requests) {
+            // Compartilha o valor recebido, sem cópia.
+            Message entry = request.withCommand("DELETE".equals(request.getCommand()) ? "DELETE" : "REPLICATION");
+            entry.setLogIndex(++lastIndex);
+            request.setLogIndex(lastIndex);
+            ring[(int) (lastIndex % ring.length)] = entry;
+            if (lastIndex - firstIndex >= ring.length) {
+                firstIndex = lastIndex - ring.length + 1;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Lê as escritas a partir de uma posição.
+     * @param fromIndex A primeira posição desejada.
+     * @param max O número máximo de escritas.
+     * @return As escritas encontradas (vazia caso não haja escritas novas), ou null caso a posição
+     * já tenha sido descartada do log e seja necessário um snapshot.
+     */
+    synchronized List<Message> read(long fromIndex, int max) {
+        if (fromIndex < firstIndex) {
+            return null;
+        }
+        List<Message> entries = new ArrayList<>();
+        for (long index = fromIndex; index <= lastIndex && entries.size() < max; index++) {
+            entries.add(ring[(int) (index % ring.length)]);
+        }
+        return entries;
+    }
+
+    /**
+     * Obtém a posição da escrita mais recente.
+     * @return A última posição do log.
+     */
+    synchronized long lastIndex() {
+        return lastIndex;
+    }
+}
@@ -1,13 +1,50 @@
 package kvstore.server;
 
-import com.google.gson.Gson;
+import kvstore.cluster.Shard;
+import kvstore.cluster.Topology;
+import kvstore.config.ConfigLoader;
+import kvstore.log.Log;
 import kvstore.message.Message;
+import kvstore.message.MessageReader;
+import kvstore.message.MessageWriter;
+import kvstore.metrics.MetricsEndpoint;
+import kvstore.metrics.MetricsMBean;
+import kvstore.metrics.MetricsRegistry;
+import kvstore.network.ConnectionPool;
+import kvstore.storage.CachedStorage;
+import kvstore.storage.DurableStorage;
+import kvstore.storage.Entry;
+import kvstore.storage.LogStructuredStorage;
+import kvstore.storage.OffHeapStorage;
+import kvstore.storage.RangeDigest;
+import kvstore.storage.SnapshotTooOldException;
+import kvstore.storage.Storage;
+import kvstore.storage.VersionedStorage;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
 import java.net.*;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Classe do Servidor responsável por armazenar os dados em uma estrutura de dados e
@@ -18,26 +55,147 @@ import java.util.Scanner;
  * @author Lucas Henrique Gois de Campos
  */
 public class Server {
+    /** Número de tentativas do pedido de entrada em um grupo, repetido enquanto não houver líder. */
+    private static final int JOIN_ATTEMPTS = 50;
+
     private ServerSocket serverSocket;
-    private Map<String, String> store;
-    private Map<String, Long> timestamps;
-    private Map<String, String> serverAddresses;
-    private boolean isLeader;
-    private static final Gson gson = new Gson();
+    private NioServerEngine nioEngine;
+    private final Storage storage;
+    private final Map<String, String> serverAddresses = new ConcurrentHashMap<>();
+    private volatile boolean isLeader;
+    private final boolean preferredLeader;
+    private String ipAddress;
+    private int port;
+    private String selfAddress;
+    private volatile String leaderAddress; // null enquanto uma eleição estiver em andamento
+    private final ServerConfig config;
+    private final ConnectionPool connectionPool;
+    private final ThreadPoolExecutor workers;
+    private final WriteBatcher writeBatcher;
+    private final ExpirySweeper expirySweeper;
+    private final ReplicationLog replicationLog;
+    private final CatchUpManager catchUpManager;
+    private final IndexWatermark appliedIndex = new IndexWatermark();
+    private final AtomicLong lastLogTerm = new AtomicLong(); // Termo do líder que produziu a última posição aplicada
+    private final AtomicLong syncGeneration = new AtomicLong();
+    private LeaderElection election;
+    private final ReadLease readLease;
+    private final Rebalancer rebalancer;
+    private volatile Topology topology;
+    private String shardId;
+    private final ServerMetrics metrics;
+    private MetricsEndpoint metricsEndpoint;
+    private ObjectName metricsBean;
 
     /**
      * Construtor da classe Server.
      * @param isLeader Indica se este servidor é o líder do sistema.
      */
     public Server(boolean isLeader) {
-        this.isLeader = isLeader;
-        store = new HashMap<>();
-        timestamps = new HashMap<>();
-        serverAddresses = new HashMap<>();
+        this(isLeader, ServerConfig.fromSystemProperties());
+    }
+
+    /**
+     * Construtor da classe Server com uma configuração explícita.
+     * @param isLeader Indica se este servidor é o líder do sistema.
+     * @param config A configuração do motor de rede e do conjunto de workers.
+     */
+    public Server(boolean isLeader, ServerConfig config) {
+        this(isLeader, config, createStorage(config));
+    }
+
+    /**
+     * Cria o motor de armazenamento configurado. Com um diretório de dados, as escritas são
+     * registradas em disco e o estado salvo é recuperado antes de o servidor aceitar conexões.
+     * No armazenamento em disco, apenas um cache limitado dos valores fica no heap.
+     * @param config A configuração do servidor.
+     * @return O motor de armazenamento.
+     */
+    private static Storage createStorage(ServerConfig config) {
+        if (config.getStorageEngine() == ServerConfig.StorageEngine.DISK && config.getDataDir() == null) {
+            throw new IllegalStateException("O armazenamento em disco exige um diretório de dados (kvstore.dataDir)");
+        }
+        Storage memory = config.getStorageEngine() == ServerConfig.StorageEngine.OFFHEAP
+                ? new OffHeapStorage() : new VersionedStorage(config.getMaxVersions(), config.getVersionRetentionMillis());
+        if (config.getDataDir() == null) {
+            return memory;
+        }
+        try {
+            if (config.getStorageEngine() == ServerConfig.StorageEngine.DISK) {
+                return new CachedStorage(new LogStructuredStorage(Paths.get(config.getDataDir()), config.isFsync(),
+                        config.getSegmentBytes()), config.getCacheBytes());
+            }
+            return new DurableStorage(memory, Paths.get(config.getDataDir()), config.isFsync(),
+                    config.getSnapshotLogBytes(), config.getSnapshotIntervalMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao recuperar os dados de " + config.getDataDir(), e);
+        }
+    }
+
+    /**
+     * Construtor da classe Server com um motor de armazenamento explícito.
+     * @param isLeader Indica se este servidor é o líder do sistema. Com a eleição ativa, é o servidor
+     * que se candidata assim que inicia e que normalmente assume a liderança do primeiro termo.
+     * @param config A configuração do motor de rede e do conjunto de workers.
+     * @param storage O motor de armazenamento dos pares chave-valor.
+     */
+    public Server(boolean isLeader, ServerConfig config, Storage storage) {
+        // Com a eleição ativa, nenhum servidor é líder antes de receber os votos da maioria.
+        this.isLeader = isLeader && config.getElectionTimeoutMillis() <= 0;
+        this.preferredLeader = isLeader;
+        this.config = config;
+        this.storage = storage;
+        connectionPool = new ConnectionPool();
+        // Conjunto limitado de workers: quando a fila enche, a política de contrapressão decide o que fazer.
+        workers = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(), 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getWorkerQueueCapacity()), new ThreadPoolExecutor.AbortPolicy());
+        writeBatcher = new WriteBatcher(this::commitBatch, this::resolveCondition, config.getBatchMaxSize(), config.getBatchWindowMicros());
+        expirySweeper = new ExpirySweeper(storage, config, () -> isLeader, writeBatcher::submit);
+        // Um líder que já possui dados recuperados não tem o histórico deles no log de replicação.
+        replicationLog = new ReplicationLog(config.getReplicationLogCapacity(), storage.size() > 0 ? 1 : 0);
+        metrics = new ServerMetrics(replicationLog::lastIndex);
+        readLease = new ReadLease(config, connectionPool, appliedIndex, () -> selfAddress, () -> leaderAddress,
+                () -> election != null ? election.getTerm() : 0L);
+        registerGauges();
+        // Qualquer servidor pode vir a ser eleito; o CatchUpManager só tem trabalho enquanto ele for o líder.
+        catchUpManager = new CatchUpManager(storage, replicationLog, connectionPool, config, this::secondaryAddresses,
+                this::createReplicationMessage, metrics);
+        rebalancer = new Rebalancer(storage, connectionPool, config);
+        topology = config.getTopology();
+    }
+
+    /**
+     * Registra os medidores lidos no momento da coleta: filas, armazenamento, posições do log e,
+     * conforme o motor de armazenamento, o cache ou a memória fora do heap.
+     */
+    private void registerGauges() {
+        MetricsRegistry registry = metrics.getRegistry();
+        registry.gauge("kvstore_worker_queue_depth", "Requisições aguardando um worker livre.", () -> workers.getQueue().size());
+        registry.gauge("kvstore_workers_active", "Workers atendendo uma requisição.", workers::getActiveCount);
+        registry.gauge("kvstore_write_batch_pending", "Escritas aguardando a formação de um lote.", writeBatcher::pending);
+        registry.gauge("kvstore_storage_entries", "Entradas no armazenamento.", storage::size);
+        registry.gauge("kvstore_replication_log_last_index", "Última posição do log de replicação do líder.", replicationLog::lastIndex);
+        registry.gauge("kvstore_applied_index", "Última posição do log de replicação aplicada por este secundário.", appliedIndex::get);
+        registry.gauge("kvstore_read_lease_holders", "Secundários com concessão de leitura válida dada por este líder.", readLease::holders);
+        registry.gauge("kvstore_read_lease_valid", "1 enquanto este secundário tiver uma concessão de leitura válida.",
+                () -> readLease.isValid() ? 1 : 0);
+        registry.gauge("kvstore_expiry_timers", "Chaves com expiração e lápides aguardando o seu prazo.", expirySweeper::getTimers);
+        registry.counter("kvstore_expired_keys_total", "Chaves expiradas apagadas por este servidor como líder.", expirySweeper::getExpired);
+        registry.counter("kvstore_tombstones_collected_total", "Lápides descartadas depois da retenção.", expirySweeper::getCollected);
+        if (storage instanceof CachedStorage) {
+            CachedStorage cache = (CachedStorage) storage;
+            registry.counter("kvstore_cache_hits_total", "Leituras atendidas pelo cache.", cache::getHits);
+            registry.counter("kvstore_cache_misses_total", "Leituras que precisaram ir ao disco.", cache::getMisses);
+            registry.counter("kvstore_cache_evictions_total", "Entradas removidas do cache para liberar espaço.", cache::getEvictions);
+            registry.gauge("kvstore_cache_bytes", "Bytes ocupados pelos valores em cache.", cache::getCachedBytes);
+        } else if (storage instanceof OffHeapStorage) {
+            registry.gauge("kvstore_offheap_bytes", "Bytes reservados fora do heap.", ((OffHeapStorage) storage)::getOffHeapBytes);
+        }
     }
     
     /**
-     * Inicia o servidor para receber as conexões dos clientes.
+     * Inicia o servidor para receber as conexões dos clientes. O líder lê da entrada padrão os
+     * endereços dos servidores secundários.
      * @param ipAddress O endereço IP do servidor.
      * @param port A porta em que o servidor irá escutar as conexões.
      * @param leaderIp O endereço IP do líder do sistema.
@@ -45,14 +203,10 @@ public class Server {
      */
     public void start(String ipAddress, int port, String leaderIp, int leaderPort) {
         try {
-        	// Inicia o servidor socket
-            serverSocket = new ServerSocket(port, 10, InetAddress.getByName(ipAddress));
-            System.out.println("Seridor começou em " + ipAddress + ":" + port);
-
-            if (isLeader) {
-                // Adiciona o líder na tabela
-                serverAddresses.put(ipAddress + ":" + port, "Leader");
+            bind(ipAddress, port, leaderIp, leaderPort);
 
+            List<String> secondaryAddresses = new ArrayList<>();
+            if (preferredLeader) {
                 //Lê os endereços e portas dos servidores secundários
                 Scanner scanner = new Scanner(System.in);
                 System.out.print("Digite o número de servidores secundários: ");
@@ -61,23 +215,396 @@ public class Server {
 
                 for (int i = 0; i < numSecondaryServers; i++) {
                     System.out.print("Digite o endereço IP:porta dos servidores secundários " + (i + 1) + " (e.g., localhost:8001): ");
-                    String secondaryServerAddress = scanner.nextLine();
-                    serverAddresses.put(secondaryServerAddress, "Secondary");
+                    secondaryAddresses.add(scanner.nextLine());
                 }
             }
 
-            while (true) {
-            	// Aguarda conexões de clientes.
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("Nova conexão de " + clientSocket.getInetAddress() + ":" + clientSocket.getPort());
+            serve(secondaryAddresses);
+        } catch (IOException e) {
+            Log.error("Falha ao iniciar o servidor", e);
+        }
+    }
 
-                // Cria uma thread para cada cliente conectado para tratar suas requisições.
-                ClientHandler clientHandler = new ClientHandler(clientSocket, leaderIp, leaderPort);
-                clientHandler.start();
-            }
+    /**
+     * Inicia o servidor com os endereços dos secundários já conhecidos, sem ler a entrada padrão.
+     * O método bloqueia enquanto o servidor estiver aberto.
+     * @param ipAddress O endereço IP do servidor.
+     * @param port A porta em que o servidor irá escutar as conexões.
+     * @param leaderIp O endereço IP do líder do sistema.
+     * @param leaderPort A porta do líder do sistema.
+     * @param secondaryAddresses Os endereços IP:porta dos servidores secundários, usados apenas pelo líder.
+     */
+    public void start(String ipAddress, int port, String leaderIp, int leaderPort, List<String> secondaryAddresses) {
+        try {
+            bind(ipAddress, port, leaderIp, leaderPort);
+            serve(secondaryAddresses);
+        } catch (IOException e) {
+            Log.error("Falha ao iniciar o servidor", e);
+        }
+    }
+
+    /**
+     * Inicia o servidor como um novo secundário de um grupo em execução. O pedido de entrada pode ser
+     * enviado a qualquer servidor do grupo, que o encaminha ao líder; a resposta informa o líder e os
+     * servidores do grupo, e as escritas existentes chegam pela recuperação de secundários atrasados.
+     * O método bloqueia enquanto o servidor estiver aberto.
+     * @param ipAddress O endereço IP do servidor.
+     * @param port A porta em que o servidor irá escutar as conexões.
+     * @param seed O endereço IP:porta de um servidor do grupo.
+     */
+    public void join(String ipAddress, int port, String seed) {
+        try {
+            String[] seedAddress = seed.split(":");
+            bind(ipAddress, port, seedAddress[0], Integer.parseInt(seedAddress[1]));
+            serve(requestJoin(seed));
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.error("Falha ao entrar no grupo por " + seed, e);
+        }
+    }
+
+    /**
+     * Pede a entrada deste servidor no grupo, repetindo o pedido enquanto não houver líder. Deve ser
+     * chamado depois de {@link #bind}, e o líder informado na resposta passa a ser o líder conhecido.
+     * @param seed O endereço IP:porta de um servidor do grupo.
+     * @return Os endereços dos servidores do grupo, incluindo este.
+     * @throws IOException Caso o grupo não aceite o pedido.
+     */
+    List<String> requestJoin(String seed) throws IOException {
+        Message request = new Message("JOIN", selfAddress, null, 0L);
+        String refusal = null;
+        for (int attempt = 0; attempt < JOIN_ATTEMPTS; attempt++) {
+            try {
+                Message response = connectionPool.send(seed, request)
+                        .get(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS);
+                if ("JOIN_OK".equals(response.getCommand())) {
+                    leaderAddress = response.getKey();
+                    Log.info("Entrada no grupo aceita pelo líder " + leaderAddress + ": " + response.getValue());
+                    return new ArrayList<>(Arrays.asList(response.getValue().split(",")));
+                }
+                refusal = response.getCommand();
+            } catch (ExecutionException | TimeoutException e) {
+                refusal = e.toString(); // Servidor indisponível ou eleição em andamento
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Entrada no grupo interrompida");
+            }
+            try {
+                Thread.sleep(config.getCatchUpIntervalMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Entrada no grupo interrompida");
+            }
+        }
+        throw new IOException("Entrada no grupo recusada por " + seed + ": " + refusal);
+    }
+
+    /**
+     * Pede a saída deste servidor do grupo. Depois da confirmação do líder, o servidor deixa de
+     * receber escritas e pode ser encerrado com {@link #close()}. O líder não pode deixar o grupo.
+     * @return true caso o líder tenha confirmado a saída.
+     */
+    public boolean leave() {
+        Message response = handleMembership(new Message("LEAVE", selfAddress, null, 0L)).join();
+        return "LEAVE_OK".equals(response.getCommand());
+    }
+
+    /**
+     * Abre o socket de escuta do servidor e, se configurado, o endpoint de métricas. As métricas
+     * também são registradas por JMX.
+     * @param ipAddress O endereço IP do servidor.
+     * @param port A porta em que o servidor irá escutar as conexões, ou 0 para uma porta livre qualquer.
+     * @param leaderIp O endereço IP do líder do sistema.
+     * @param leaderPort A porta do líder do sistema.
+     * @return A porta em que o servidor está escutando.
+     * @throws IOException Caso não seja possível abrir o socket.
+     */
+    int bind(String ipAddress, int port, String leaderIp, int leaderPort) throws IOException {
+        this.ipAddress = ipAddress;
+
+        // Inicia o servidor socket de acordo com o motor configurado
+        if (config.getEngine() == ServerConfig.Engine.NIO) {
+            NioServerEngine engine = new NioServerEngine(this, config);
+            this.port = engine.bind(new InetSocketAddress(InetAddress.getByName(ipAddress), port));
+            nioEngine = engine;
+        } else {
+            serverSocket = new ServerSocket(port, config.getBacklog(), InetAddress.getByName(ipAddress));
+            this.port = serverSocket.getLocalPort();
+        }
+        selfAddress = ipAddress + ":" + this.port;
+        // O líder é este próprio servidor, inclusive quando escuta em uma porta livre qualquer.
+        leaderAddress = isLeader ? selfAddress : preferredLeader ? null : leaderIp + ":" + leaderPort;
+        Log.info("Seridor começou em " + ipAddress + ":" + this.port + " (motor " + config.getEngine() + ")");
+        if (config.getFaultInjector() != FaultInjector.NONE) {
+            Log.info("Injeção de falhas ativa: " + config.getFaultInjector());
+        }
+        if (config.getMetricsPort() > 0) {
+            metricsEndpoint = new MetricsEndpoint(metrics.getRegistry(), config.getMetricsPort());
+            Log.info("Métricas em http://localhost:" + metricsEndpoint.getPort() + "/metrics");
+        }
+        try {
+            metricsBean = MetricsMBean.register(metrics.getRegistry(), ipAddress + ":" + this.port);
+        } catch (JMException e) {
+            Log.warn("Não foi possível registrar as métricas por JMX: " + e);
+        }
+        return this.port;
+    }
+
+    /**
+     * Atende as conexões até o servidor ser fechado.
+     * @param secondaryAddresses Os endereços IP:porta dos servidores secundários, usados apenas pelo líder.
+     * @throws IOException Caso ocorra um erro no socket de escuta.
+     */
+    void serve(List<String> secondaryAddresses) throws IOException {
+        if (topology != null) {
+            // Com o cluster particionado, este servidor atende apenas as chaves da sua partição.
+            Shard shard = topology.shardOf(ipAddress + ":" + port);
+            if (shard == null) {
+                throw new IllegalStateException("O servidor " + ipAddress + ":" + port + " não pertence à topologia " + topology);
+            }
+            shardId = shard.getId();
+            Log.info("Partição [" + shardId + "] da topologia versão " + topology.getVersion());
+        }
+
+        // Adiciona o líder e os secundários na tabela. Um secundário iniciado sem a lista conhece
+        // apenas o líder e a recebe nos HEARTBEATs.
+        serverAddresses.put(preferredLeader ? selfAddress : leaderAddress, "Leader");
+        for (String secondaryServerAddress : secondaryAddresses) {
+            serverAddresses.putIfAbsent(secondaryServerAddress, "Secondary");
+        }
+        serverAddresses.putIfAbsent(selfAddress, "Secondary");
+
+        if (config.getElectionTimeoutMillis() > 0) {
+            leaderAddress = null;
+            election = new LeaderElection(selfAddress, serverAddresses.keySet(), config, connectionPool, new ElectionListener());
+            MetricsRegistry registry = metrics.getRegistry();
+            registry.gauge("kvstore_term", "Termo atual da eleição de líder.", election::getTerm);
+            registry.gauge("kvstore_leader", "1 enquanto este servidor for o líder.", () -> isLeader ? 1 : 0);
+            registry.counter("kvstore_elections_total", "Eleições iniciadas por este servidor.", election::getElections);
+            // O líder indicado se candidata imediatamente; os demais aguardam o seu HEARTBEAT.
+            election.start(preferredLeader);
+        } else if (!isLeader) {
+            // Um secundário que (re)inicia pede ao líder as escritas que perdeu enquanto estava fora.
+            requestCatchUp();
+        }
+        readLease.start();
+
+        if (nioEngine != null) {
+            // O motor NIO atende todas as conexões com um número fixo de threads de eventos.
+            nioEngine.run();
+            return;
+        }
+
+        while (!serverSocket.isClosed()) {
+            // Aguarda conexões de clientes.
+            Socket clientSocket;
+            try {
+                clientSocket = serverSocket.accept();
+            } catch (SocketException e) {
+                return; // Socket fechado por close()
+            }
+            if (Log.sampleRequest()) {
+                Log.info("Nova conexão de " + clientSocket.getInetAddress() + ":" + clientSocket.getPort());
+            }
+
+            // Cria uma thread de leitura para cada cliente conectado; as requisições são tratadas pelos workers.
+            ClientHandler clientHandler = new ClientHandler(clientSocket);
+            clientHandler.start();
+        }
+    }
+
+    /**
+     * Fecha o socket de escuta e libera os recursos do servidor: workers, conexões com os outros
+     * servidores e o armazenamento.
+     * @throws IOException Caso ocorra um erro ao fechar o armazenamento.
+     */
+    public void close() throws IOException {
+        if (nioEngine != null) {
+            nioEngine.close();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.close();
+        }
+        if (metricsBean != null) {
+            MetricsMBean.unregister(metricsBean);
+        }
+        if (election != null) {
+            election.close();
+        }
+        readLease.close();
+        catchUpManager.close();
+        expirySweeper.close();
+        writeBatcher.close();
+        workers.shutdownNow();
+        connectionPool.close();
+        if (storage instanceof Closeable) {
+            ((Closeable) storage).close();
+        }
+    }
+
+    /**
+     * Obtém a porta em que o servidor está escutando.
+     * @return A porta, ou 0 caso o servidor ainda não tenha sido iniciado.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Indica se este servidor é o líder do seu grupo de replicação.
+     * @return true caso seja o líder.
+     */
+    boolean isLeader() {
+        return isLeader;
+    }
+
+    /**
+     * Obtém o endereço do líder conhecido por este servidor.
+     * @return O endereço IP:porta do líder, ou null durante uma eleição.
+     */
+    String getLeaderAddress() {
+        return leaderAddress;
+    }
+
+    /**
+     * Obtém as métricas do servidor, as mesmas publicadas no endpoint HTTP e por JMX.
+     * @return O registro de métricas.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics.getRegistry();
+    }
+
+    /**
+     * Obtém as métricas atualizadas pelos motores de rede.
+     * @return As métricas do servidor.
+     */
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Pede ao líder, em segundo plano, que reenvie as escritas posteriores à última posição aplicada.
+     * O pedido é repetido até o líder responder, e é abandonado quando um novo pedido o substitui,
+     * como ao seguir um novo líder.
+     */
+    private void requestCatchUp() {
+        long generation = syncGeneration.incrementAndGet();
+        Thread thread = new Thread(() -> {
+            while (syncGeneration.get() == generation) {
+                String leader = leaderAddress;
+                Message syncRequest = new Message("SYNC_REQUEST", selfAddress, null, 0L);
+                syncRequest.setLogIndex(appliedIndex.get());
+                try {
+                    if (leader != null && !isLeader) {
+                        Message response = connectionPool.send(leader, syncRequest)
+                                .get(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS);
+                        if ("SYNC_OK".equals(response.getCommand())) {
+                            return;
+                        }
+                    }
+                } catch (Exception e) {
+                    // Líder ainda indisponível.
+                }
+                try {
+                    Thread.sleep(config.getCatchUpIntervalMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "kvstore-sync-request");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Entrega uma requisição ao conjunto de workers e envia a resposta pelo callback quando pronta.
+     * Se o conjunto estiver saturado, aplica a política de contrapressão configurada. O tempo
+     * registrado nas métricas vai da entrega até a resposta, incluindo a espera na fila dos workers.
+     * @param request A mensagem de requisição.
+     * @param origin A descrição da origem da requisição, usada nos registros.
+     * @param reply O callback que envia a resposta pela conexão de origem.
+     * @return false caso a requisição não tenha sido aceita e a conexão deva pausar a leitura e tentar novamente.
+     */
+    boolean dispatch(Message request, String origin, Consumer<Message> reply) {
+        long start = System.nanoTime();
+        if (election != null && ("HEARTBEAT".equals(request.getCommand()) || "VOTE_REQUEST".equals(request.getCommand()))) {
+            // Tratadas na própria thread de rede, para que workers saturados não atrasem os HEARTBEATs
+            // e provoquem eleições desnecessárias.
+            Message response = "HEARTBEAT".equals(request.getCommand())
+                    ? election.handleHeartbeat(request) : election.handleVoteRequest(request);
+            if ("HEARTBEAT".equals(request.getCommand()) && response.getTimestamp() == request.getTimestamp()) {
+                // A posição do líder no envio limita o atraso das leituras feitas sem concessão.
+                readLease.observeLeaderIndex(request.getLogIndex(), start);
+            }
+            response.setId(request.getId());
+            reply.accept(response);
+            metrics.recordRequest(request.getCommand(), System.nanoTime() - start, false);
+            return true;
+        }
+        try {
+            // A cadeia parte de um futuro já completado, para que uma exceção lançada antes de o
+            // tratamento devolver o seu futuro também seja respondida com Erro.
+            workers.execute(() -> CompletableFuture.completedFuture(request)
+                    .thenCompose(received -> handleClientRequest(received, origin)).whenComplete((response, error) -> {
+                if (error != null) {
+                    Log.warn("Falha ao tratar o " + request.getCommand() + " de " + origin + ": " + error);
+                    response = new Message("Erro", request.getKey(), request.getValue(), request.getTimestamp());
+                }
+                response.setId(request.getId());
+                reply.accept(response);
+                metrics.recordRequest(request.getCommand(), System.nanoTime() - start, isError(response));
+            }));
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (config.getBackpressure() == ServerConfig.Backpressure.PAUSE && !workers.isShutdown()) {
+                return false;
+            }
+
+            Message busy = new Message("SERVER_BUSY", request.getKey(), request.getValue(), request.getTimestamp());
+            busy.setId(request.getId());
+            reply.accept(busy);
+            metrics.recordRejected();
+            return true;
+        }
+    }
+
+    /**
+     * Indica se uma resposta é um erro.
+     * @param response A mensagem de resposta.
+     * @return true para as respostas Erro, PUT_ERROR, para as escritas recusadas por serem inválidas e
+     * para falhas no encaminhamento ao líder.
+     */
+    private static boolean isError(Message response) {
+        String command = response.getCommand();
+        return command.startsWith("Erro") || "PUT_ERROR".equals(command) || command.endsWith("_INVALID");
+    }
+
+    /**
+     * Verifica os campos de uma escrita PUT, DELETE ou CAS recebida de um cliente. Uma chave é apagada
+     * apenas por DELETE, de modo que um PUT sem valor é inválido.
+     * @param request A requisição.
+     * @return O motivo da recusa, ou null caso a requisição seja válida ou não seja uma escrita.
+     */
+    private static String validateWrite(Message request) {
+        String command = request.getCommand();
+        if (!"PUT".equals(command) && !"DELETE".equals(command) && !"CAS".equals(command)) {
+            return null;
+        }
+        if (request.getKey() == null) {
+            return "escrita sem chave";
+        }
+        if (request.getTimestamp() < 0) {
+            return "CAS".equals(command) ? "versão esperada inválida" : "timestamp inválido";
         }
+        if (request.getExpiresAt() < 0) {
+            return "expiração inválida";
+        }
+        if ("PUT".equals(command) && request.getValue() == null) {
+            return "PUT sem valor";
+        }
+        return null;
     }
 
     /**
@@ -85,19 +612,54 @@ public class Server {
      * @param args Argumentos da linha de comando.
      */
     public static void main(String[] args) {
-    	// Lê o endereço IP e a porta do servidor a partir da entrada do usuário.
+        // A configuração pode vir de um arquivo e dos argumentos --nome=valor, além das propriedades -D.
+        try {
+            ConfigLoader.apply(args, "kvstore.");
+        } catch (IOException e) {
+            System.out.println("Não foi possível ler o arquivo de configuração: " + e);
+            return;
+        }
+        ServerConfig config = ServerConfig.fromSystemProperties();
+
+    	// Lê o endereço IP e a porta do servidor a partir da entrada do usuário, caso não estejam configurados.
         Scanner scanner = new Scanner(System.in);
+        String ipAddress;
+        int port;
+        if (config.getAddress() != null) {
+            String[] address = config.getAddress().split(":");
+            ipAddress = address[0];
+            port = Integer.parseInt(address[1]);
+        } else {
+            System.out.print("Digite o endereço IP: ");
+            ipAddress = scanner.nextLine();
+            System.out.print("Digite a porta: ");
+            port = scanner.nextInt();
+            scanner.nextLine();
+        }
 
-        System.out.print("Digite o endereço IP: ");
-        String ipAddress = scanner.nextLine();
-        System.out.print("Digite a porta: ");
-        int port = scanner.nextInt();
-        scanner.nextLine(); 
+        if (config.getTopology() != null) {
+            // O líder e os secundários vêm da topologia configurada em -Dkvstore.topology.
+            startInTopology(config, ipAddress, port);
+            return;
+        }
+        if (config.getJoin() != null) {
+            // Entrada em um grupo em execução por qualquer um dos seus servidores.
+            new Server(false, config).join(ipAddress, port, config.getJoin());
+            return;
+        }
 
-        System.out.print("Digite o endereço IP do líder: ");
-        String leaderIp = scanner.nextLine();
-        System.out.print("Digite a porta do líder: ");
-        int leaderPort = scanner.nextInt();
+        String leaderIp;
+        int leaderPort;
+        if (config.getLeader() != null) {
+            String[] leader = config.getLeader().split(":");
+            leaderIp = leader[0];
+            leaderPort = Integer.parseInt(leader[1]);
+        } else {
+            System.out.print("Digite o endereço IP do líder: ");
+            leaderIp = scanner.nextLine();
+            System.out.print("Digite a porta do líder: ");
+            leaderPort = scanner.nextInt();
+        }
 
         boolean isLeader = false;
 
@@ -106,236 +668,892 @@ public class Server {
             System.out.print("Este servidor é o líder! \n");
         }
 
-        // Inicia o servidor com as informações lidas.
-        Server server = new Server(isLeader);
-        server.start(ipAddress, port, leaderIp, leaderPort);
+        // Inicia o servidor com as informações lidas. Com o líder configurado, os secundários também
+        // vêm da configuração (kvstore.secondaries) em vez da entrada padrão.
+        Server server = new Server(isLeader, config);
+        if (config.getLeader() != null) {
+            server.start(ipAddress, port, leaderIp, leaderPort, config.getSecondaries());
+        } else {
+            server.start(ipAddress, port, leaderIp, leaderPort);
+        }
     }
 
     /**
-     * Classe aninhada ClientHandler para tratar as requisições de cada cliente conectado ao servidor.
+     * Inicia um servidor de um cluster particionado. O líder e os secundários vêm da partição
+     * de que o servidor faz parte na topologia configurada.
+     * @param config A configuração do servidor, com a topologia.
+     * @param ipAddress O endereço IP do servidor.
+     * @param port A porta do servidor.
      */
-    private class ClientHandler extends Thread {
-        private Socket clientSocket;
-        private String leaderIp;
-        private int leaderPort;
+    private static void startInTopology(ServerConfig config, String ipAddress, int port) {
+        Shard shard = config.getTopology().shardOf(ipAddress + ":" + port);
+        if (shard == null) {
+            System.out.println("O servidor " + ipAddress + ":" + port + " não pertence à topologia " + config.getTopology());
+            return;
+        }
 
-        /**
-         * Construtor da classe ClientHandler.
-         * @param clientSocket O socket referente a conexão com o cliente.
-         * @param leaderIp O endereço IP do líder do sistema.
-         * @param leaderPort A porta usada pelo líder do sistema.
-         */
-        public ClientHandler(Socket clientSocket, String leaderIp, int leaderPort) {
-            this.clientSocket = clientSocket;
-            this.leaderIp = leaderIp;
-            this.leaderPort = leaderPort;
+        String[] leader = shard.getLeader().split(":");
+        boolean isLeader = shard.getLeader().equals(ipAddress + ":" + port);
+        if (isLeader) {
+            System.out.print("Este servidor é o líder da partição [" + shard.getId() + "]! \n");
         }
+        Server server = new Server(isLeader, config);
+        server.start(ipAddress, port, leader[0], Integer.parseInt(leader[1]), shard.getSecondaries());
+    }
 
-        /**
-         * Método run para tratar as requisições do cliente.
-         */
-        public void run() {
-            try (
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                    PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true)
-            ) {
-            	// Lê a mensagem enviada pelo cliente e a converte para o objeto Message usando Gson.
-            	String jsonRequest = reader.readLine();
-                Message request = gson.fromJson(jsonRequest, Message.class);
-                
-                String command = request.getCommand();
-                String key = request.getKey();
-                String value = request.getValue();
-                Long timestamp = request.getTimestamp();
-                long serverTimestamp = System.currentTimeMillis();
-
-                Message response;
-
-                // Verifica o tipo de comando da mensagem e chama o método apropriado para tratá-la.
-                if ("GET".equals(command)) {
-                    response = handleGet(key,timestamp);
-                    System.out.println("Cliente ["+clientSocket.getInetAddress()+"]:["+clientSocket.getPort()+"] "+command+" key:["+key+"] ts:["+timestamp+"]. Meu ts é ["+response.getTimestamp()+"], portanto devolvendo ["+response.getValue()+"]");
-                    
-                } else if ("PUT".equals(command)) {
-                    if (isLeader) {
-                    	System.out.println("Cliente ["+clientSocket.getInetAddress()+"]:["+clientSocket.getPort()+"] "+command+" key:["+key+"] value:["+value+"]");
-                    	
-                    	ClientHandler.sleep((long)(Math.random() * 10000 + 5000)); // Simulação da latência do servidor
-                    	
-                    	response = handlePut(key, value, timestamp); // Insere na tabela local
-                        Boolean putOk = sendReplication(request); // Replicação
-                        
-                        if (putOk == true) {                    	
-                            System.out.println("Enviando PUT_OK ao Cliente ["+clientSocket.getInetAddress()+"]:["+clientSocket.getPort()+"] da key:["+key+"] ts:["+serverTimestamp+"]");
-                        } else {
-                        	response = new Message("PUT_ERROR",key,value,timestamp);
-                        }                       
-                       
-                    } else {
-                        // Encaminhe a requisição para o líder
-                    	System.out.println("Encaminhando PUT key:["+key+"] value:["+value+"]");
-                        response = forwardRequestToLeader(jsonRequest);
+    /**
+     * Trata uma requisição aplicando, a GETs e PUTs, as falhas configuradas para o caminho CLIENT.
+     * @param request A mensagem de requisição.
+     * @param origin A descrição da origem da requisição, usada nos registros.
+     * @return Um futuro completado com a mensagem de resposta para a requisição.
+     */
+    private CompletableFuture<Message> handleClientRequest(Message request, String origin) {
+        FaultInjector faults = config.getFaultInjector();
+        String command = request.getCommand();
+        if (faults.isActive(FaultInjector.Path.CLIENT) && ("GET".equals(command) || "PUT".equals(command))) {
+            return faults.inject(FaultInjector.Path.CLIENT, origin, () -> handleRequest(request, origin));
+        }
+        return handleRequest(request, origin);
+    }
+
+    /**
+     * Método para tratar uma requisição recebida em uma conexão.
+     * @param request A mensagem de requisição.
+     * @param origin A descrição da origem da requisição, usada nos registros.
+     * @return Um futuro completado com a mensagem de resposta para a requisição. Requisições que
+     * dependem de outros servidores (replicação e encaminhamento) não bloqueiam o worker.
+     */
+    CompletableFuture<Message> handleRequest(Message request, String origin) {
+        String command = request.getCommand();
+        String key = request.getKey();
+        String value = request.getValue();
+        Long timestamp = request.getTimestamp();
+        long serverTimestamp = System.currentTimeMillis();
+
+        Message response;
+
+        String invalid = validateWrite(request);
+        if (invalid != null) {
+            // Uma escrita malformada falharia da mesma forma em qualquer servidor: é recusada antes de
+            // entrar em um lote, com uma resposta que o cliente não repete.
+            Log.warn("Cliente "+origin+" "+command+" key:["+key+"] recusado: "+invalid);
+            return CompletableFuture.completedFuture(new Message(command + "_INVALID", key, invalid, timestamp));
+        }
+
+        if (("GET".equals(command) || "PUT".equals(command) || "GET_AT".equals(command) || "DELETE".equals(command)
+                || "CAS".equals(command)) && !ownsKey(key)) {
+            // A chave pertence a outra partição: o cliente deve atualizar a topologia.
+            Topology current = topology;
+            if (Log.sampleRequest()) {
+                Log.info("Cliente "+origin+" "+command+" key:["+key+"] pertence à partição ["+current.shardFor(key).getId()+"]");
+            }
+            return CompletableFuture.completedFuture(new Message("WRONG_SHARD", key, null, current.getVersion()));
+        }
+
+        // Verifica o tipo de comando da mensagem e chama o método apropriado para tratá-la.
+        if ("GET".equals(command)) {
+            return handleRead(request).thenApply(getResponse -> {
+                // A posição aplicada por este servidor permite ao cliente escolher réplicas atualizadas.
+                getResponse.setLogIndex(isLeader ? replicationLog.lastIndex() : appliedIndex.get());
+                if (Log.sampleRequest()) {
+                    Log.info("Cliente "+origin+" "+command+" key:["+key+"] ts:["+timestamp+"]. Meu ts é ["+getResponse.getTimestamp()+"], portanto devolvendo ["+preview(getResponse.getValue())+"]");
+                }
+                return getResponse;
+            });
+        } else if ("GET_AT".equals(command)) {
+            // Leitura em um instante passado: respondida com a versão local visível nele, sem exigir a
+            // última versão da chave, de modo que qualquer réplica pode atendê-la.
+            response = handleGetAt(key, timestamp);
+            response.setLogIndex(isLeader ? replicationLog.lastIndex() : appliedIndex.get());
+        } else if ("SCAN".equals(command)) {
+            response = handleScan(key, value, timestamp);
+        } else if ("PUT".equals(command) || "DELETE".equals(command) || "CAS".equals(command)) {
+            // DELETE e CAS seguem o caminho das escritas: o CAS é resolvido pelo líder, na ordem do lote.
+            if (isLeader) {
+            	// A mesma amostra decide as duas mensagens da escrita, para que apareçam juntas no registro.
+            	boolean sampled = Log.sampleRequest();
+            	if (sampled) {
+            	    Log.info("Cliente "+origin+" "+command+" key:["+key+"] value:["+preview(value)+"]");
+            	}
+            	
+            	// A escrita entra no próximo lote, que é inserido na tabela local e replicado como uma unidade.
+                return writeBatcher.submit(request).thenApply(putResponse -> {
+                    if ("PUT_ERROR".equals(putResponse.getCommand()) && !isLeader) {
+                        // O servidor deixou a liderança durante a escrita: o cliente a repete no novo líder,
+                        // o que é seguro, pois a repetição tem o mesmo timestamp.
+                        return new Message("NO_LEADER", key, value, timestamp);
                     }
-                } else if ("REPLICATION".equals(command)) {
-                	System.out.println("REPLICATION key:["+key+"] value:["+value+"] ts:["+timestamp+"]");
-                    response = handleReplication(key, value, timestamp); 
+                    if (sampled) {
+                        Log.info("Enviando "+putResponse.getCommand()+" ao Cliente "+origin+" da key:["+key+"] ts:["+serverTimestamp+"]");
+                    }
+                    return putResponse;
+                });
+               
+            } else if (leaderAddress == null) {
+                // Eleição em andamento: o cliente repete a escrita quando houver um novo líder.
+                return CompletableFuture.completedFuture(new Message("NO_LEADER", key, value, timestamp));
+            } else {
+                // Encaminhe a requisição para o líder
+            	if (Log.sampleRequest()) {
+            	    Log.info("Encaminhando "+command+" key:["+key+"] value:["+preview(value)+"]");
+            	}
+                return forwardRequestToLeader(request);
+            }
+        } else if ("REPLICATION".equals(command)) {
+            if (Log.sampleRequest()) {
+                if (request.getEntries() != null) {
+                    Log.info("REPLICATION lote com ["+request.getEntries().size()+"] escritas");
                 } else {
-                    response =  new Message("Erro",key, value, timestamp);
+                    Log.info("REPLICATION key:["+key+"] value:["+preview(value)+"] ts:["+timestamp+"]");
+                }
+            }
+            if (!acceptReplication(request)) {
+                // Replicação de um líder já substituído: o termo atual na resposta o faz renunciar.
+                return CompletableFuture.completedFuture(new Message("REPLICATION_STALE", null, null, election.getTerm()));
+            }
+            response = handleReplication(request); 
+        } else if ("SYNC_REQUEST".equals(command) && isLeader) {
+            // Um secundário reiniciou ou ficou para trás: a recuperação parte da posição seguinte à que ele possui.
+            Log.info("SYNC_REQUEST de ["+key+"] a partir da posição ["+(request.getLogIndex() + 1)+"]");
+            catchUpManager.markLagging(key, request.getLogIndex() + 1);
+            response = new Message("SYNC_OK", key, null, replicationLog.lastIndex());
+        } else if ("TOPOLOGY".equals(command)) {
+            Topology current = topology;
+            response = new Message("TOPOLOGY_OK", null, current != null ? current.encode() : null, current != null ? current.getVersion() : 0L);
+        } else if ("TOPOLOGY_UPDATE".equals(command)) {
+            return updateTopology(Topology.parse(value));
+        } else if ("MIGRATE".equals(command) && isLeader) {
+            // Chaves recebidas de outra partição: confirmadas e replicadas como um lote de escritas.
+            Log.info("MIGRATE lote com ["+request.getEntries().size()+"] chaves");
+            return commitBatch(request.getEntries()).thenApply(ok -> new Message(ok ? "MIGRATE_OK" : "PUT_ERROR", null, null, 0L));
+        } else if ("LEASE".equals(command)) {
+            response = handleLease(request);
+        } else if ("JOIN".equals(command) || "LEAVE".equals(command)) {
+            return handleMembership(request);
+        } else if ("LEADER".equals(command)) {
+            // Permite ao cliente enviar as escritas diretamente ao líder.
+            response = new Message("LEADER_OK", null, leaderAddress, election != null ? election.getTerm() : 0L);
+        } else if ("DIGEST".equals(command)) {
+            // Resumo por faixas de chaves para a anti-entropia; o número de faixas vem no campo timestamp.
+            response = Message.withBytes("DIGEST_OK", null, RangeDigest.toBytes(RangeDigest.compute(storage, (int) request.getTimestamp())), 0L);
+        } else {
+            response =  new Message("Erro",key, value, timestamp);
+        }
+
+        return CompletableFuture.completedFuture(response);
+    }        
+
+    /**
+     * Indica se a chave pertence à partição deste servidor.
+     * @param key A chave.
+     * @return true caso o cluster não seja particionado ou a chave pertença a esta partição.
+     */
+    private boolean ownsKey(String key) {
+        Topology current = topology;
+        return current == null || shardId == null || current.shardFor(key).getId().equals(shardId);
+    }
+
+    /**
+     * Instala uma nova topologia. No líder, as chaves que passam a pertencer a outra partição são
+     * copiadas aos novos donos enquanto o servidor continua atendendo; em seguida a topologia é
+     * instalada, os secundários são avisados, as chaves escritas durante a cópia são enviadas
+     * novamente e as chaves movidas são descartadas. Um secundário apenas instala a topologia e
+     * descarta as chaves movidas.
+     * @param next A nova topologia.
+     * @return Um futuro completado com TOPOLOGY_OK quando a topologia estiver instalada.
+     */
+    private CompletableFuture<Message> updateTopology(Topology next) {
+        Topology current = topology;
+        if (current == null || shardId == null || next.getVersion() <= current.getVersion()) {
+            Message unchanged = new Message(current != null ? "TOPOLOGY_OK" : "Erro", null, null, current != null ? current.getVersion() : 0L);
+            return CompletableFuture.completedFuture(unchanged);
+        }
+
+        CompletableFuture<Message> installed = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            // Atualizações concorrentes são aplicadas uma de cada vez, e uma versão já superada é ignorada.
+            synchronized (rebalancer) {
+                if (next.getVersion() <= topology.getVersion()) {
+                    installed.complete(new Message("TOPOLOGY_OK", null, null, topology.getVersion()));
+                    return;
                 }
-                
-                // Prepara a resposta e envia de volta ao cliente.
-                writer.println(gson.toJson(response));
-                
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} finally {
                 try {
-                    clientSocket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    long start = System.nanoTime();
+                    long copied = isLeader ? rebalancer.migrate(next, shardId) : 0;
+                    topology = next;
+                    if (isLeader) {
+                        for (String secondary : secondaryAddresses()) {
+                            Message update = new Message("TOPOLOGY_UPDATE", null, next.encode(), next.getVersion());
+                            try {
+                                connectionPool.send(secondary, update).get(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS);
+                            } catch (Exception e) {
+                                Log.warn("Falha ao enviar a topologia para ["+secondary+"]: " + e);
+                            }
+                        }
+                        copied += rebalancer.migrate(next, shardId);
+                    }
+                    long evicted = rebalancer.evict(next, shardId);
+                    Log.info("Topologia versão " + next.getVersion() + " instalada em "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " + copied
+                            + " chaves enviadas, " + evicted + " descartadas");
+                    installed.complete(new Message("TOPOLOGY_OK", null, null, next.getVersion()));
+                } catch (Exception e) {
+                    Log.error("Falha ao instalar a topologia versão " + next.getVersion() + ": " + e);
+                    installed.complete(new Message("Erro", null, null, current.getVersion()));
                 }
             }
-        }        
+        }, "kvstore-rebalance");
+        thread.setDaemon(true);
+        thread.start();
+        return installed;
+    }
 
-        /**
-         * Método para enviar as mensagens de replicação para os outros servidores secundários.
-         * @param request A mensagem de requisição recebida do cliente que será replicada.
-         */
-        private Boolean sendReplication(Message request) {
-        	// Percorre todos os servidores secundários e envia a mensagem de replicação para cada um deles.
-        	int serverCounter = 0;
-        	
-            for (String serverAddress : serverAddresses.keySet()) {
-                if (serverAddress.equals(leaderIp + ":" + leaderPort)) {
-                    continue; // Pula o líder
-                }
+    /**
+     * Método para confirmar um lote de escritas formado pelo WriteBatcher: insere o lote na tabela
+     * local e o replica para os servidores secundários.
+     * @param requests As escritas PUT e DELETE do lote.
+     * @return Um futuro completado com true caso o lote tenha sido confirmado pelo quórum, ou com
+     * false caso o lote tenha uma escrita inválida, sem que nada tenha sido registrado.
+     */
+    private CompletableFuture<Boolean> commitBatch(List<Message> requests) {
+        if (!isLeader) {
+            // O servidor deixou de ser o líder enquanto o lote se formava.
+            return CompletableFuture.completedFuture(false);
+        }
+        List<Map.Entry<String, Entry>> writes;
+        try {
+            writes = toWrites(requests); // Validadas antes de receberem posições no log
+        } catch (IllegalArgumentException e) {
+            Log.warn("Lote de escritas recusado: " + e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+        if (election != null) {
+            lastLogTerm.set(election.getTerm());
+        }
+        List<Message> entries = replicationLog.append(requests); // Posições no log de replicação
+        handlePut(writes); // Insere na tabela local
+        return sendReplication(entries); // Replicação
+    }
 
-                String[] parts = serverAddress.split(":");
-                String ipAddress = parts[0];
-                int port = Integer.parseInt(parts[1]);
-
-                try (
-                        Socket socket = new Socket(ipAddress, port);
-                		PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-        				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-                ) {
-                    // Cria a mensagem de REPLICATION
-                    Message replicationMessage = new Message("REPLICATION", request.getKey(), request.getValue(),request.getTimestamp());
-                    String jsonMessage = gson.toJson(replicationMessage);
-                    writer.println(jsonMessage);
-                    
-        			// Retorna a resposta recebida do servidor.
-        			String response = reader.readLine();
-        			Message responseJson = gson.fromJson(response, Message.class);
-        			
-        			if (responseJson.getCommand().equals("REPLICATION_OK")) {
-        				serverCounter += 1;       				
-        			}
-        			
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Resolve uma escrita condicional na thread do WriteBatcher, contra o estado local do líder, que
+     * já contém as escritas dos lotes anteriores. A versão de uma chave é o timestamp da sua última
+     * escrita, e uma chave apagada ou expirada tem versão 0.
+     * <ul>
+     * <li>CAS: escreve o valor (ou apaga a chave, sem valor) caso a versão atual seja a informada no
+     * campo timestamp. A nova versão é maior que a atual, mesmo com o relógio atrasado.</li>
+     * <li>EXPIRE: apaga a chave caso ela ainda seja a escrita expirada informada no campo timestamp.
+     * A lápide tem o timestamp da expiração, de modo que uma escrita posterior a ela prevalece.</li>
+     * </ul>
+     * @param request A requisição CAS ou EXPIRE.
+     * @return A escrita PUT ou DELETE a confirmar, CAS_FAILED com o valor e a versão atuais, ou
+     * EXPIRE_SKIPPED caso a chave tenha sido reescrita.
+     */
+    private Message resolveCondition(Message request) {
+        String key = request.getKey();
+        Entry current = storage.get(key);
+        long now = System.currentTimeMillis();
+
+        if ("EXPIRE".equals(request.getCommand())) {
+            if (current == null || current.getTimestamp() != request.getTimestamp() || current.isTombstone() || current.isLive(now)) {
+                return new Message("EXPIRE_SKIPPED", key, null, current != null ? current.getTimestamp() : 0L);
             }
-            
-            if (serverCounter == serverAddresses.size() - 1) {
-            	return true;
-            } else {
-            	 return false;
+            return new Message("DELETE", key, null, Math.max(current.getTimestamp() + 1, current.getExpiresAt()));
+        }
+
+        long version = current != null && current.isLive(now) ? current.getTimestamp() : 0L;
+        if (version != request.getTimestamp()) {
+            return new Message("CAS_FAILED", key, version != 0 ? current.getValue() : null, version);
+        }
+        long timestamp = current != null ? Math.max(now, current.getTimestamp() + 1) : now;
+        byte[] value = request.getValueBytes();
+        Message write = Message.withBytes(value != null ? "PUT" : "DELETE", key, value, timestamp);
+        write.setExpiresAt(value != null ? request.getExpiresAt() : 0);
+        return write;
+    }
+
+    /**
+     * Obtém os endereços dos servidores secundários.
+     * @return Os endereços de todos os servidores, exceto o líder, ou uma lista vazia caso este
+     * servidor não seja o líder.
+     */
+    private List<String> secondaryAddresses() {
+        if (!isLeader) {
+            return List.of();
+        }
+        // Com a eleição ativa, o grupo é o que o líder divulga nos HEARTBEATs.
+        Collection<String> members = election != null ? election.getMembers() : serverAddresses.keySet();
+        return members.stream()
+                .filter(serverAddress -> !serverAddress.equals(selfAddress)) // Pula o líder
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Método para enviar as mensagens de replicação para os outros servidores secundários.
+     * Todos os secundários são contatados em paralelo, cada um com seu próprio tempo limite,
+     * e um lote com várias escritas é enviado em uma única mensagem REPLICATION.
+     * Um secundário que não confirma a replicação é marcado como atrasado e recuperado em segundo plano.
+     * Atingido o quórum, a escrita ainda aguarda os secundários com concessão de leitura, que podem
+     * atender leituras lineares sem consultar o líder: cada um deve confirmar a replicação, ou a sua
+     * concessão deve terminar.
+     * @param entries As escritas do lote, com suas posições no log de replicação.
+     * @return Um futuro completado com true assim que o número de confirmações exigido pela política
+     * for atingido e os secundários com concessão tiverem sido aguardados, ou com false quando o quórum
+     * deixar de ser possível. Os secundários restantes continuam recebendo a replicação em segundo plano.
+     */
+    private CompletableFuture<Boolean> sendReplication(List<Message> entries) {
+        List<String> secondaries = secondaryAddresses();
+
+        int requiredAcks = config.getAckPolicy().requiredAcks(secondaries.size());
+        int tolerableFailures = secondaries.size() - requiredAcks;
+        CompletableFuture<Boolean> quorum = new CompletableFuture<>();
+        if (requiredAcks == 0) {
+            quorum.complete(true);
+        }
+
+        AtomicInteger acks = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        Map<String, CompletableFuture<Boolean>> replicated = new HashMap<>();
+        for (String serverAddress : secondaries) {
+            replicated.put(serverAddress, new CompletableFuture<>());
+        }
+
+        // Cria a mensagem de REPLICATION e a envia a todos os secundários pelas conexões persistentes.
+        Message replicationMessage = createReplicationMessage(entries);
+        String description = entries.size() == 1 ? "key:[" + entries.get(0).getKey() + "]" : "lote de [" + entries.size() + "] escritas";
+        long firstIndex = entries.get(0).getLogIndex();
+        long lastIndex = entries.get(entries.size() - 1).getLogIndex();
+        long start = System.nanoTime();
+
+        for (String serverAddress : secondaries) {
+            config.getFaultInjector()
+                    .inject(FaultInjector.Path.REPLICATION, serverAddress, () -> connectionPool.send(serverAddress, replicationMessage))
+                    .orTimeout(config.getReplicationTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((response, error) -> {
+                        boolean ok = error == null && "REPLICATION_OK".equals(response.getCommand());
+                        metrics.recordReplication(serverAddress, System.nanoTime() - start, lastIndex, ok);
+                        replicated.get(serverAddress).complete(ok);
+                        if (ok) {
+                            if (acks.incrementAndGet() == requiredAcks) {
+                                quorum.complete(true);
+                            }
+                        } else {
+                            if (error == null && "REPLICATION_STALE".equals(response.getCommand())) {
+                                election.observeTerm(response.getTimestamp());
+                            }
+                            Log.warn("Falha na replicação para ["+serverAddress+"] do "+description+": "
+                                    + (error != null ? error : response.getCommand()));
+                            catchUpManager.markLagging(serverAddress, firstIndex);
+                            if (failures.incrementAndGet() > tolerableFailures) {
+                                quorum.complete(false);
+                            }
+                        }
+                    });
+        }
+
+        return quorum.thenCompose(committed -> committed
+                ? readLease.awaitHolders(replicated).thenApply(released -> true)
+                : CompletableFuture.completedFuture(false));
+    }
+
+    /**
+     * Cria a mensagem de replicação de um lote. Com a eleição ativa, o lote leva o endereço e o termo
+     * do líder, para que os secundários recusem replicações de um líder já substituído, e a última
+     * posição do lote. Sem a eleição, um lote com uma única escrita usa o formato simples.
+     * @param entries As escritas do lote, já no formato REPLICATION.
+     * @return A mensagem REPLICATION.
+     */
+    private Message createReplicationMessage(List<Message> entries) {
+        if (election == null && entries.size() == 1 && "REPLICATION".equals(entries.get(0).getCommand())) {
+            return entries.get(0);
+        }
+
+        Message replicationMessage = election != null
+                ? new Message("REPLICATION", selfAddress, null, election.getTerm())
+                : new Message("REPLICATION", null, null, 0L);
+        replicationMessage.setLogIndex(entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getLogIndex());
+        replicationMessage.setEntries(entries);
+        return replicationMessage;
+    }
+
+    /**
+     * Trata a entrada (JOIN) ou a saída (LEAVE) do servidor informado no campo chave. O líder
+     * atualiza a tabela de servidores e o grupo da eleição, que chega aos secundários no próximo
+     * HEARTBEAT; um servidor que entra é recuperado desde a primeira posição do log. Um secundário
+     * encaminha o pedido ao líder. A resposta traz o líder no campo chave, os servidores do grupo,
+     * separados por vírgula, no campo valor e o termo no campo timestamp.
+     * @param request A requisição JOIN ou LEAVE.
+     * @return Um futuro completado com JOIN_OK ou LEAVE_OK, NO_LEADER durante uma eleição, ou uma
+     * mensagem de erro caso o líder peça a própria saída.
+     */
+    private CompletableFuture<Message> handleMembership(Message request) {
+        String command = request.getCommand();
+        String address = request.getKey();
+        if (!isLeader) {
+            if (leaderAddress == null) {
+                return CompletableFuture.completedFuture(new Message("NO_LEADER", address, null, 0L));
             }
+            CompletableFuture<Message> forwarded = forwardRequestToLeader(request);
+            if ("LEAVE".equals(command) && address.equals(selfAddress)) {
+                return forwarded.thenApply(response -> {
+                    if ("LEAVE_OK".equals(response.getCommand()) && election != null) {
+                        // Fora do grupo, este servidor não recebe mais HEARTBEATs e não deve iniciar eleições.
+                        election.close();
+                        Log.info("Servidor removido do grupo; pode ser encerrado");
+                    }
+                    return response;
+                });
+            }
+            return forwarded;
         }
 
-        /**
-         * Método para encaminhar a requisição para o líder do sistema.
-         * @param jsonRequest A requisição em formato JSON recebida do cliente.
-         * @return A mensagem de resposta do líder ou uma mensagem de erro, caso não seja possível enviar a requisição.
-         */
-        private Message forwardRequestToLeader(String jsonRequest) {
-            try (
-                    Socket leaderSocket = new Socket(leaderIp, leaderPort);
-                    PrintWriter writer = new PrintWriter(leaderSocket.getOutputStream(), true);
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(leaderSocket.getInputStream()))
-            ) {
-            	// Encaminha a requisição para o líder e aguarda a resposta.
-                writer.println(jsonRequest);
-                String jsonResponse = reader.readLine();
-                // Retorna a resposta recebida do líder.
-                return gson.fromJson(jsonResponse,Message.class);
-            } catch (IOException e) {
-                e.printStackTrace();
-                Message request = gson.fromJson(jsonRequest, Message.class);
-                String key = request.getKey();
-                String value = request.getValue();
-                Long timestamp = request.getTimestamp();
+        if ("JOIN".equals(command)) {
+            boolean added = serverAddresses.putIfAbsent(address, "Secondary") == null;
+            if (election != null) {
+                added |= election.addMember(address);
+            }
+            if (added) {
+                Log.info("JOIN de [" + address + "]");
+                catchUpManager.markLagging(address, 1);
+            }
+        } else {
+            if (address.equals(selfAddress)) {
+                return CompletableFuture.completedFuture(new Message("Erro: o líder não pode deixar o grupo", address, null, 0L));
+            }
+            boolean removed = serverAddresses.remove(address) != null;
+            if (election != null) {
+                removed |= election.removeMember(address);
+            }
+            if (removed) {
+                Log.info("LEAVE de [" + address + "]");
+            }
+            catchUpManager.remove(address);
+        }
+        Collection<String> members = election != null ? election.getMembers() : serverAddresses.keySet();
+        return CompletableFuture.completedFuture(new Message(command + "_OK", selfAddress, String.join(",", members),
+                election != null ? election.getTerm() : 0L));
+    }
+
+    /**
+     * Método para encaminhar a requisição para o líder do sistema.
+     * @param request A requisição recebida do cliente.
+     * @return Um futuro com a mensagem de resposta do líder ou uma mensagem de erro, caso não seja possível
+     * enviar a requisição. Com a eleição ativa, um líder inacessível provavelmente está sendo substituído,
+     * e a resposta é NO_LEADER.
+     */
+    private CompletableFuture<Message> forwardRequestToLeader(Message request) {
+    	// Encaminha a requisição para o líder pela conexão persistente sem bloquear o worker.
+        String leaderAddress = this.leaderAddress;
+        long start = System.nanoTime();
+        return config.getFaultInjector()
+                .inject(FaultInjector.Path.FORWARD, leaderAddress, () -> connectionPool.send(leaderAddress, request))
+                .orTimeout(connectionPool.getRequestTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> metrics.recordForward(System.nanoTime() - start, error == null))
+                .exceptionally(e -> {
+                    if (election != null) {
+                        Log.warn("Líder [" + leaderAddress + "] inacessível ao encaminhar o " + request.getCommand() + " key:[" + request.getKey() + "]: " + e);
+                        return new Message("NO_LEADER", request.getKey(), request.getValue(), request.getTimestamp());
+                    }
+                    Log.error("Falha ao encaminhar o " + request.getCommand() + " key:[" + request.getKey() + "] ao líder [" + leaderAddress + "]", e);
+                    Message errorMessage = new Message("Erro ao encaminhar mensagem", request.getKey(), request.getValue(), request.getTimestamp());
+                    return errorMessage;
+                });
+    }
+
+    /**
+     * Método para tratar as leituras, conforme a consistência pedida pelo cliente no campo valor do GET:
+     * <ul>
+     * <li>LINEARIZABLE: o líder responde enquanto nenhum outro líder puder ter sido eleito; um
+     * secundário responde enquanto tiver uma concessão de leitura, depois de aplicar a posição
+     * recebida com ela.</li>
+     * <li>BOUNDED: o secundário responde caso o seu estado esteja atrasado em no máximo o tempo
+     * informado no campo timestamp, em milissegundos.</li>
+     * <li>sem valor: o secundário responde depois de aplicar a posição da última escrita do cliente,
+     * informada no campo logIndex, e com um timestamp pelo menos igual ao enviado pelo cliente.</li>
+     * </ul>
+     * Um secundário que ainda não alcançou a posição necessária aguarda a replicação, sem ocupar o
+     * worker, antes de responder TRY_OTHER_SERVER_OR_LATER.
+     * @param request A requisição GET.
+     * @return Um futuro completado com a mensagem de resposta para a requisição GET.
+     */
+    private CompletableFuture<Message> handleRead(Message request) {
+        String key = request.getKey();
+        String consistency = request.getValue();
+        long wait = config.getReadWaitMillis();
+
+        if ("LINEARIZABLE".equals(consistency)) {
+            if (isLeader) {
+                long lease = election != null ? election.leaseRemainingNanos() : Long.MAX_VALUE;
+                return CompletableFuture.completedFuture(lease > 0 ? handleGet(key, 0L) : tryOtherServer(key));
+            }
+            if (!readLease.isValid()) {
+                return CompletableFuture.completedFuture(tryOtherServer(key));
+            }
+            return appliedIndex.await(readLease.getLeaseIndex(), wait)
+                    .thenApply(reached -> reached && readLease.isValid() ? handleGet(key, 0L) : tryOtherServer(key));
+        }
+
+        if ("BOUNDED".equals(consistency)) {
+            long maxStaleness = TimeUnit.MILLISECONDS.toNanos(request.getTimestamp());
+            if (isLeader || (readLease.isValid() && appliedIndex.get() >= readLease.getLeaseIndex())
+                    || readLease.stalenessNanos() <= maxStaleness) {
+                return CompletableFuture.completedFuture(handleGet(key, 0L));
+            }
+            return appliedIndex.await(readLease.getLeaderIndex(), wait)
+                    .thenApply(reached -> readLease.stalenessNanos() <= maxStaleness ? handleGet(key, 0L) : tryOtherServer(key));
+        }
+
+        long clientTimestamp = request.getTimestamp();
+        if (isLeader) {
+            return CompletableFuture.completedFuture(handleGet(key, clientTimestamp));
+        }
+        return appliedIndex.await(request.getLogIndex(), wait).thenCompose(reached -> {
+            Message response = handleGet(key, clientTimestamp);
+            if (!"TRY_OTHER_SERVER_OR_LATER".equals(response.getCommand()) || appliedIndex.get() >= readLease.getLeaderIndex()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            // A escrita vista pelo cliente pode estar entre as que o líder já enviou e ainda não chegaram.
+            return appliedIndex.await(readLease.getLeaderIndex(), wait).thenApply(caughtUp -> handleGet(key, clientTimestamp));
+        });
+    }
+
+    private static Message tryOtherServer(String key) {
+        return new Message("TRY_OTHER_SERVER_OR_LATER", key, "TRY_OTHER_SERVER_OR_LATER", 0L);
+    }
+
+    /**
+     * Resume um valor para os logs, para que valores grandes não sejam copiados para o log.
+     */
+    private static String preview(String value) {
+        if (value == null || value.length() <= 64) {
+            return value;
+        }
+        return value.substring(0, 64) + "... (" + value.length() + " caracteres)";
+    }
+
+    /**
+     * Método para tratar um pedido de concessão de leitura de um secundário. A concessão é recusada
+     * caso este servidor não seja o líder do termo do pedido, caso o líder não tenha a garantia da
+     * maioria ou caso o secundário esteja atrasado e sendo recuperado.
+     * @param request O LEASE, com o endereço do secundário e o termo que ele conhece.
+     * @return LEASE_OK ou LEASE_DENIED.
+     */
+    private Message handleLease(Message request) {
+        String follower = request.getKey();
+        long term = election != null ? election.getTerm() : 0L;
+        if (!isLeader || request.getTimestamp() != term || catchUpManager.isLagging(follower)) {
+            return new Message("LEASE_DENIED", follower, null, term);
+        }
+        long leaderLease = election != null ? election.leaseRemainingNanos() : Long.MAX_VALUE;
+        return readLease.grant(follower, leaderLease, replicationLog::lastIndex, term);
+    }
+
+    /**
+     * Método para tratar as requisições do tipo GET. Uma chave apagada ou expirada é respondida com
+     * NULL e o timestamp da sua última escrita.
+     * @param key A chave da requisição GET.
+     * @param clientTimestamp O timestamp enviado pelo cliente na requisição GET.
+     * @return A mensagem de resposta adequada para a requisição GET.
+     */
+    private Message handleGet(String key, long clientTimestamp) {
+    	
+    	// Obtém o valor e o timestamp armazenados juntos no servidor para a chave especificada.
+        Entry entry = storage.get(key);
+
+        if (entry != null) {
+            String value = entry.getValue();
+            long serverTimestamp = entry.getTimestamp();
+
+        	// Compara o timestamp do cliente com o timestamp armazenado no servidor e responde de acordo.
+            if (serverTimestamp < clientTimestamp) {
+            	
+                Message tryOtherServerOrLaterMessage = new Message("TRY_OTHER_SERVER_OR_LATER", key, "TRY_OTHER_SERVER_OR_LATER", serverTimestamp);
+                return tryOtherServerOrLaterMessage;
                 
-                Message errorMessage = new Message("Erro ao encaminhar mensagem", key, value, timestamp);
-                return errorMessage;
+            } else if (!entry.isLive(System.currentTimeMillis())) {
+
+                return new Message("NULL", key, "", serverTimestamp);
+
+            } else { // (serverTimestamp >= clientTimestamp)
+
+                Message getMessage = new Message("GET", key, value, serverTimestamp);
+                return getMessage;
             }
+        } else if (clientTimestamp > 0 && !isLeader) {
+            // O cliente já viu uma escrita da chave que este secundário não tem, como um servidor
+            // reiniciado que ainda está sendo recuperado. O líder tem todas as escritas confirmadas,
+            // e a sua resposta NULL vale mesmo depois de a lápide da chave ser descartada.
+            return new Message("TRY_OTHER_SERVER_OR_LATER", key, "TRY_OTHER_SERVER_OR_LATER", 0L);
+        } else {
+            Message getMessage = new Message("NULL", key, "", 0L);
+            return getMessage;
         }
+    }
 
-        /**
-         * Método para tratar as requisições do tipo GET.
-         * @param key A chave da requisição GET.
-         * @param clientTimestamp O timestamp enviado pelo cliente na requisição GET.
-         * @return A mensagem de resposta adequada para a requisição GET.
-         */
-        private Message handleGet(String key, long clientTimestamp) {
-        	
-        	// Obtém o valor e o timestamp armazenados no servidor para a chave especificada.
-            String value = store.get(key);
-            // Caso a chave não tenha um timestamp atrelado, retorna 0
-            long serverTimestamp = timestamps.getOrDefault(key, 0L); 
-
-            if (value != null) {
-            	// Compara o timestamp do cliente com o timestamp armazenado no servidor e responde de acordo.
-                if (serverTimestamp < clientTimestamp) {
-                	
-                    Message tryOtherServerOrLaterMessage = new Message("TRY_OTHER_SERVER_OR_LATER", key, "TRY_OTHER_SERVER_OR_LATER", serverTimestamp);
-                    return tryOtherServerOrLaterMessage;
-                    
-                } else { // (serverTimestamp >= clientTimestamp)
-
-                    Message getMessage = new Message("GET", key, value, serverTimestamp);
-                    return getMessage;
-                }
+    /**
+     * Método para tratar as leituras em um instante passado.
+     * @param key A chave.
+     * @param timestamp O instante da leitura.
+     * @return GET com a versão visível no instante, NULL caso a chave não existisse nele, estivesse
+     * apagada ou expirada, ou SNAPSHOT_TOO_OLD caso a versão já tenha sido descartada.
+     */
+    private Message handleGetAt(String key, long timestamp) {
+        try {
+            Entry entry = storage.get(key, timestamp);
+            return entry != null && entry.isLive(timestamp)
+                    ? new Message("GET", key, entry.getValue(), entry.getTimestamp()) : new Message("NULL", key, "", 0L);
+        } catch (SnapshotTooOldException e) {
+            return new Message("SNAPSHOT_TOO_OLD", key, null, timestamp);
+        }
+    }
+
+    /**
+     * Método para tratar um bloco de uma leitura por prefixo. Todos os blocos de uma leitura usam o
+     * mesmo instante, escolhido por este servidor no primeiro bloco, e veem o mesmo estado mesmo com
+     * escritas concorrentes, que não são bloqueadas.
+     * @param prefix O prefixo das chaves, ou null para todas as chaves.
+     * @param afterKey A última chave do bloco anterior, ou null no primeiro bloco.
+     * @param timestamp O instante da leitura, ou 0 para o instante atual.
+     * @return SCAN_OK com as entradas do bloco, o instante e a chave a partir da qual continuar (null
+     * no último bloco), ou SNAPSHOT_TOO_OLD.
+     */
+    private Message handleScan(String prefix, String afterKey, long timestamp) {
+        long snapshot = timestamp > 0 ? timestamp : System.currentTimeMillis();
+        int limit = config.getScanChunkSize();
+        List<Map.Entry<String, Entry>> page;
+        try {
+            page = storage.scan(prefix != null ? prefix : "", afterKey, snapshot, limit);
+        } catch (SnapshotTooOldException e) {
+            return new Message("SNAPSHOT_TOO_OLD", prefix, afterKey, snapshot);
+        }
+
+        List<Message> entries = new ArrayList<>(page.size());
+        for (Map.Entry<String, Entry> entry : page) {
+            // Chaves de outra partição ainda não descartadas depois de uma mudança de topologia, e
+            // chaves apagadas ou expiradas no instante da leitura.
+            if (ownsKey(entry.getKey()) && entry.getValue().isLive(snapshot)) {
+                entries.add(new Message("GET", entry.getKey(), entry.getValue().getValue(), entry.getValue().getTimestamp()));
+            }
+        }
+        String next = page.size() < limit ? null : page.get(page.size() - 1).getKey();
+        Message response = new Message("SCAN_OK", prefix, next, snapshot);
+        response.setEntries(entries);
+        return response;
+    }
+
+    /**
+     * Método para tratar as escritas PUT e DELETE de um lote.
+     * @param writes As escritas do lote.
+     */
+    private void handlePut(List<Map.Entry<String, Entry>> writes) {
+    	// Armazena os valores associados às chaves no servidor junto com os timestamps, como uma unidade.
+        apply(writes);
+    }
+
+    /**
+     * Aplica escritas ao armazenamento e agenda a expiração das chaves com prazo e o descarte das lápides.
+     * @param writes As escritas.
+     */
+    private void apply(List<Map.Entry<String, Entry>> writes) {
+        storage.putAll(writes);
+        for (Map.Entry<String, Entry> write : writes) {
+            expirySweeper.track(write.getKey(), write.getValue());
+        }
+    }
+    
+    /**
+     * Método para tratar as mensagens de replicação recebidas do líder do sistema.
+     * @param request A mensagem de replicação, com uma única escrita ou com um lote de escritas.
+     * @return A mensagem de resposta para a replicação.
+     */
+    private Message handleReplication(Message request) {
+    	// Atualiza os valores e os timestamps no servidor com os dados recebidos na mensagem de replicação.
+        // Uma replicação mais antiga que o valor armazenado é ignorada, pois a versão mais nova já está presente.
+        List<Map.Entry<String, Entry>> writes;
+        try {
+            writes = toWrites(request.getEntries() != null ? request.getEntries() : List.of(request));
+        } catch (IllegalArgumentException e) {
+            // Nada é aplicado; o líder trata a resposta como uma falha na replicação.
+            Log.warn("Replicação recusada: " + e.getMessage());
+            return new Message("REPLICATION_INVALID", request.getKey(), e.getMessage(), request.getTimestamp());
+        }
+        apply(writes);
+        if (request.getEntries() != null) {
+            long applied = 0;
+            for (Message entry : request.getEntries()) {
+                applied = Math.max(applied, entry.getLogIndex());
+            }
+            appliedIndex.advance(applied);
+        } else {
+            appliedIndex.advance(request.getLogIndex());
+        }
+        // Retorna uma mensagem de resposta indicando que a replicação foi bem-sucedida, sem ecoar o valor.
+        Message replicationMessage = new Message("REPLICATION_OK", request.getKey(), null, request.getTimestamp());
+        return replicationMessage;
+    }
+
+    /**
+     * Verifica se uma replicação vem do líder do termo atual. Os lotes enviados com a eleição ativa
+     * levam o endereço e o termo do líder; as replicações sem termo são sempre aceitas.
+     * @param request A mensagem de replicação.
+     * @return true caso a replicação deva ser aplicada.
+     */
+    private boolean acceptReplication(Message request) {
+        if (election == null || request.getEntries() == null || request.getTimestamp() <= 0) {
+            return true;
+        }
+        if (!election.acceptReplication(request.getKey(), request.getTimestamp())) {
+            return false;
+        }
+        lastLogTerm.accumulateAndGet(request.getTimestamp(), Math::max);
+        return true;
+    }
+
+    /**
+     * Converte mensagens em escritas para o motor de armazenamento. Apenas uma mensagem DELETE vira
+     * uma lápide; uma escrita sem valor com outro comando é recusada, para que um valor perdido no
+     * caminho não apague a chave.
+     * @param messages As mensagens com chave, valor, timestamp e expiração.
+     * @return As escritas correspondentes.
+     * @throws IllegalArgumentException Caso alguma escrita que não seja DELETE não tenha valor.
+     */
+    private static List<Map.Entry<String, Entry>> toWrites(List<Message> messages) {
+        List<Map.Entry<String, Entry>> writes = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Entry entry;
+            if ("DELETE".equals(message.getCommand())) {
+                entry = new Entry(null, message.getTimestamp());
+            } else if (message.getValue() == null) {
+                throw new IllegalArgumentException(message.getCommand() + " sem valor para a key:[" + message.getKey() + "]");
             } else {
-                Message getMessage = new Message("NULL", key, "", 0L);
-                return getMessage;
+                entry = new Entry(message.getValue(), message.getTimestamp(), message.getExpiresAt());
+            }
+            writes.add(Map.entry(message.getKey(), entry));
+        }
+        return writes;
+    }
+
+    /**
+     * Classe aninhada ElectionListener que aplica ao servidor as mudanças de papel decididas pela eleição.
+     */
+    private class ElectionListener implements LeaderElection.Listener {
+
+        @Override
+        public long lastLogIndex() {
+            return isLeader ? replicationLog.lastIndex() : appliedIndex.get();
+        }
+
+        @Override
+        public long lastLogTerm() {
+            return lastLogTerm.get();
+        }
+
+        @Override
+        public void onLeader(long term) {
+            // O log do novo líder continua a partir da última posição que ele aplicou; os secundários
+            // atrasados em relação a ela são recuperados pelo CatchUpManager.
+            replicationLog.restart(Math.max(appliedIndex.get(), storage.size() > 0 ? 1 : 0));
+            syncGeneration.incrementAndGet();
+            readLease.revoke();
+            leaderAddress = selfAddress;
+            markLeader(selfAddress);
+            isLeader = true;
+        }
+
+        @Override
+        public void onFollower(long term, String leader, long leaderLastIndex) {
+            if (isLeader) {
+                // As posições já atribuídas como líder continuam valendo como posições aplicadas.
+                appliedIndex.advance(replicationLog.lastIndex());
+                catchUpManager.clear();
+            }
+            readLease.revoke();
+            isLeader = false;
+            leaderAddress = leader;
+            if (leader == null) {
+                return;
             }
+            markLeader(leader);
+            if (leaderLastIndex >= 0 && lastLogTerm.get() < term && appliedIndex.get() > leaderLastIndex) {
+                // Posições de um líder anterior que o novo líder não possui: a recuperação parte do
+                // log do novo líder. As escritas já aplicadas permanecem, pois a última escrita vence.
+                appliedIndex.set(leaderLastIndex);
+            }
+            requestCatchUp();
+        }
+
+        @Override
+        public void onFollowerIndex(String follower, long index) {
+            metrics.recordFollowerIndex(follower, index);
         }
 
+        private void markLeader(String leader) {
+            serverAddresses.putIfAbsent(leader, "Secondary");
+            serverAddresses.replaceAll((address, role) -> address.equals(leader) ? "Leader" : "Secondary");
+        }
+    }
+
+    /**
+     * Classe aninhada ClientHandler para ler as requisições de cada cliente conectado ao servidor
+     * quando o motor de threads por conexão está em uso.
+     */
+    private class ClientHandler extends Thread {
+        private Socket clientSocket;
+
         /**
-         * Método para tratar as requisições do tipo PUT.
-         * @param key A chave da requisição PUT.
-         * @param value O valor associado à chave na requisição PUT.
-         * @param timestamp O timestamp da requisição PUT.
-         * @return A mensagem de resposta para a requisição PUT.
+         * Construtor da classe ClientHandler.
+         * @param clientSocket O socket referente a conexão com o cliente.
          */
-        private Message handlePut(String key, String value, long timestamp) {
-        	// Armazena o valor associado à chave no servidor e atualiza o timestamp.
-            store.put(key, value);
-            timestamps.put(key, timestamp); 
-            // Retorna uma mensagem de resposta indicando que a operação foi bem-sucedida.
-            Message putMessage = new Message("PUT_OK", key, value, timestamp);
-            return putMessage;
-        }
-        
+        public ClientHandler(Socket clientSocket) {
+            this.clientSocket = clientSocket;
+        }
+
         /**
-         * Método para tratar as mensagens de replicação recebidas do líder do sistema.
-         * @param key A chave recebida na mensagem de replicação.
-         * @param value O valor associado à chave na mensagem de replicação.
-         * @param timestamp O timestamp da mensagem de replicação.
-         * @return A mensagem de resposta para a replicação.
+         * Método run para tratar as requisições do cliente.
+         * A conexão permanece aberta e cada linha recebida é uma requisição; as requisições são
+         * atendidas em paralelo e as respostas levam o identificador da requisição correspondente.
          */
-        private Message handleReplication(String key, String value, long timestamp) {
-        	// Atualiza o valor associado à chave e o timestamp no servidor com os dados recebidos na mensagem de replicação.
-            store.put(key, value);
-            timestamps.put(key, timestamp); 
-            // Retorna uma mensagem de resposta indicando que a replicação foi bem-sucedida.
-            Message replicationMessage = new Message("REPLICATION_OK", key, value, timestamp);
-            return replicationMessage;
+        public void run() {
+            String origin = "[" + clientSocket.getInetAddress() + "]:[" + clientSocket.getPort() + "]";
+            metrics.connectionOpened();
+
+            try {
+                // O primeiro byte enviado pelo cliente define o protocolo da conexão (binário ou JSON).
+                InputStream input = new BufferedInputStream(clientSocket.getInputStream());
+                MessageReader reader = MessageReader.negotiate(input);
+                if (reader == null) {
+                    return;
+                }
+                MessageWriter writer = new MessageWriter(new BufferedOutputStream(clientSocket.getOutputStream()), reader.getCodec());
+
+                Message request;
+                while ((request = reader.read()) != null) {
+                    Consumer<Message> reply = response -> {
+                        // Prepara a resposta e envia de volta ao cliente.
+                        try {
+                            writer.write(response);
+                        } catch (IOException e) {
+                            Log.warn("Falha ao responder ao cliente " + origin + ": " + e);
+                        }
+                    };
+
+                    // Enquanto os workers estiverem saturados, deixa de ler a conexão.
+                    while (!dispatch(request, origin, reply)) {
+                        Thread.sleep(1);
+                    }
+                }
+            } catch (IOException e) {
+                Log.warn("Conexão com o cliente " + origin + " encerrada: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                metrics.connectionClosed();
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    // Ignora erros ao fechar o socket.
+                }
+            }
         }
     }
 }
@@ -0,0 +1,833 @@
+package kvstore.server;
+
+import kvstore.cluster.Topology;
+import kvstore.storage.VersionedStorage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Configuração do motor de rede do servidor e do conjunto de workers que atende as requisições.
+ * Os valores podem ser definidos por propriedades de sistema (por exemplo -Dkvstore.engine=nio),
+ * por um arquivo de configuração ou por argumentos da linha de comando (ver {@link kvstore.config.ConfigLoader}).
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class ServerConfig {
+
+    /**
+     * Motores de rede disponíveis.
+     */
+    public enum Engine {
+        /** Seletor NIO com um número fixo de threads de eventos para todas as conexões. */
+        NIO,
+        /** Uma thread de leitura por conexão, como na versão original do servidor. */
+        THREADS
+    }
+
+    /**
+     * Políticas aplicadas quando o conjunto de workers está saturado.
+     */
+    public enum Backpressure {
+        /** Responde imediatamente SERVER_BUSY ao cliente. */
+        REJECT,
+        /** Deixa de ler a conexão de origem até que um worker fique livre. */
+        PAUSE
+    }
+
+    /**
+     * Motores de armazenamento disponíveis.
+     */
+    public enum StorageEngine {
+        /** Todas as entradas no heap, com as versões recentes de cada chave; com um diretório de dados,
+         * registradas também em log e snapshots. */
+        MEMORY,
+        /** Todas as entradas fora do heap, em UTF-8; com um diretório de dados, registradas também em log e snapshots. */
+        OFFHEAP,
+        /** Valores em disco, em um log de registros, com um cache limitado em bytes no heap. */
+        DISK
+    }
+
+    private Engine engine = Engine.NIO;
+    private int backlog = 1024;
+    private int selectorThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 4;
+    private int workerQueueCapacity = 10000;
+    private Backpressure backpressure = Backpressure.PAUSE;
+    private AckPolicy ackPolicy = AckPolicy.ALL;
+    private long replicationTimeoutMillis = 5000;
+    private String dataDir;
+    private boolean fsync = true;
+    private StorageEngine storageEngine = StorageEngine.MEMORY;
+    private long cacheBytes = 64L * 1024 * 1024;
+    private int maxVersions = VersionedStorage.DEFAULT_MAX_VERSIONS;
+    private long versionRetentionMillis = VersionedStorage.DEFAULT_RETENTION_MILLIS;
+    private int scanChunkSize = 1000;
+    private long tombstoneRetentionMillis = 600000;
+    private long expirySweepIntervalMillis = 100;
+    private long segmentBytes = 64L * 1024 * 1024;
+    private long snapshotLogBytes = 64L * 1024 * 1024;
+    private long snapshotIntervalMillis = 60000;
+    private int batchMaxSize = 256;
+    private long batchWindowMicros = 200;
+    private int replicationLogCapacity = 100000;
+    private long catchUpIntervalMillis = 1000;
+    private int catchUpChunkSize = 1000;
+    private long antiEntropyIntervalMillis = 60000;
+    private int antiEntropyRanges = 1024;
+    private FaultInjector faultInjector = FaultInjector.NONE;
+    private Topology topology;
+    private String address;
+    private String leader;
+    private List<String> secondaries = new ArrayList<>();
+    private String join;
+    private int metricsPort;
+    private long electionTimeoutMillis = 1000;
+    private long heartbeatIntervalMillis = 100;
+    private long readLeaseMillis = 500;
+    private long readWaitMillis = 50;
+
+    /**
+     * Cria uma configuração a partir das propriedades de sistema, usando os valores padrão
+     * para as propriedades ausentes.
+     * @return A configuração lida.
+     */
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.engine = Engine.valueOf(System.getProperty("kvstore.engine", config.engine.name()).toUpperCase());
+        config.backlog = Integer.getInteger("kvstore.backlog", config.backlog);
+        config.selectorThreads = Integer.getInteger("kvstore.selectorThreads", config.selectorThreads);
+        config.workerThreads = Integer.getInteger("kvstore.workerThreads", config.workerThreads);
+        config.workerQueueCapacity = Integer.getInteger("kvstore.workerQueueCapacity", config.workerQueueCapacity);
+        config.backpressure = Backpressure.valueOf(System.getProperty("kvstore.backpressure", config.backpressure.name()).toUpperCase());
+        config.ackPolicy = AckPolicy.parse(System.getProperty("kvstore.ackPolicy", config.ackPolicy.toString()));
+        config.replicationTimeoutMillis = Long.getLong("kvstore.replicationTimeoutMillis", config.replicationTimeoutMillis);
+        config.dataDir = System.getProperty("kvstore.dataDir", config.dataDir);
+        config.fsync = Boolean.parseBoolean(System.getProperty("kvstore.fsync", String.valueOf(config.fsync)));
+        config.storageEngine = StorageEngine.valueOf(System.getProperty("kvstore.storage", config.storageEngine.name()).toUpperCase());
+        config.cacheBytes = Long.getLong("kvstore.cacheBytes", config.cacheBytes);
+        config.maxVersions = Integer.getInteger("kvstore.maxVersions", config.maxVersions);
+        config.versionRetentionMillis = Long.getLong("kvstore.versionRetentionMillis", config.versionRetentionMillis);
+        config.scanChunkSize = Integer.getInteger("kvstore.scanChunkSize", config.scanChunkSize);
+        config.tombstoneRetentionMillis = Long.getLong("kvstore.tombstoneRetentionMillis", config.tombstoneRetentionMillis);
+        config.expirySweepIntervalMillis = Long.getLong("kvstore.expirySweepIntervalMillis", config.expirySweepIntervalMillis);
+        config.segmentBytes = Long.getLong("kvstore.segmentBytes", config.segmentBytes);
+        config.snapshotLogBytes = Long.getLong("kvstore.snapshotLogBytes", config.snapshotLogBytes);
+        config.snapshotIntervalMillis = Long.getLong("kvstore.snapshotIntervalMillis", config.snapshotIntervalMillis);
+        config.batchMaxSize = Integer.getInteger("kvstore.batchMaxSize", config.batchMaxSize);
+        config.batchWindowMicros = Long.getLong("kvstore.batchWindowMicros", config.batchWindowMicros);
+        config.replicationLogCapacity = Integer.getInteger("kvstore.replicationLogCapacity", config.replicationLogCapacity);
+        config.catchUpIntervalMillis = Long.getLong("kvstore.catchUpIntervalMillis", config.catchUpIntervalMillis);
+        config.catchUpChunkSize = Integer.getInteger("kvstore.catchUpChunkSize", config.catchUpChunkSize);
+        config.antiEntropyIntervalMillis = Long.getLong("kvstore.antiEntropyIntervalMillis", config.antiEntropyIntervalMillis);
+        config.antiEntropyRanges = Integer.getInteger("kvstore.antiEntropyRanges", config.antiEntropyRanges);
+        config.faultInjector = FaultInjector.fromSystemProperties();
+        String topology = System.getProperty("kvstore.topology");
+        config.topology = topology != null ? Topology.parse(topology) : null;
+        config.address = System.getProperty("kvstore.address", config.address);
+        config.leader = System.getProperty("kvstore.leader", config.leader);
+        String secondaries = System.getProperty("kvstore.secondaries");
+        if (secondaries != null && !secondaries.trim().isEmpty()) {
+            config.secondaries = new ArrayList<>(Arrays.asList(secondaries.trim().split("\\s*,\\s*")));
+        }
+        config.join = System.getProperty("kvstore.join", config.join);
+        config.metricsPort = Integer.getInteger("kvstore.metricsPort", config.metricsPort);
+        config.electionTimeoutMillis = Long.getLong("kvstore.electionTimeoutMillis", config.electionTimeoutMillis);
+        config.heartbeatIntervalMillis = Long.getLong("kvstore.heartbeatIntervalMillis", config.heartbeatIntervalMillis);
+        config.readLeaseMillis = Long.getLong("kvstore.readLeaseMillis", config.readLeaseMillis);
+        config.readWaitMillis = Long.getLong("kvstore.readWaitMillis", config.readWaitMillis);
+        return config;
+    }
+
+    /**
+     * Obtém o motor de rede.
+     * @return O motor de rede.
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Define o motor de rede.
+     * @param engine O motor de rede.
+     * @return Esta configuração.
+     */
+    public ServerConfig setEngine(Engine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * Obtém o tamanho da fila de conexões pendentes do socket de escuta.
+     * @return O backlog de aceitação.
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Define o tamanho da fila de conexões pendentes do socket de escuta.
+     * @param backlog O backlog de aceitação.
+     * @return Esta configuração.
+     */
+    public ServerConfig setBacklog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * Obtém o número de threads de eventos do motor NIO.
+     * @return O número de threads de eventos.
+     */
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    /**
+     * Define o número de threads de eventos do motor NIO.
+     * @param selectorThreads O número de threads de eventos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setSelectorThreads(int selectorThreads) {
+        this.selectorThreads = selectorThreads;
+        return this;
+    }
+
+    /**
+     * Obtém o número de workers que tratam as requisições.
+     * @return O número de workers.
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Define o número de workers que tratam as requisições.
+     * @param workerThreads O número de workers.
+     * @return Esta configuração.
+     */
+    public ServerConfig setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    /**
+     * Obtém a capacidade da fila de requisições aguardando um worker.
+     * @return A capacidade da fila.
+     */
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    /**
+     * Define a capacidade da fila de requisições aguardando um worker.
+     * @param workerQueueCapacity A capacidade da fila.
+     * @return Esta configuração.
+     */
+    public ServerConfig setWorkerQueueCapacity(int workerQueueCapacity) {
+        this.workerQueueCapacity = workerQueueCapacity;
+        return this;
+    }
+
+    /**
+     * Obtém a política de contrapressão.
+     * @return A política aplicada quando os workers estão saturados.
+     */
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * Define a política de contrapressão.
+     * @param backpressure A política aplicada quando os workers estão saturados.
+     * @return Esta configuração.
+     */
+    public ServerConfig setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+        return this;
+    }
+
+    /**
+     * Obtém a política de confirmação da replicação.
+     * @return A política de confirmação.
+     */
+    public AckPolicy getAckPolicy() {
+        return ackPolicy;
+    }
+
+    /**
+     * Define a política de confirmação da replicação.
+     * @param ackPolicy A política de confirmação.
+     * @return Esta configuração.
+     */
+    public ServerConfig setAckPolicy(AckPolicy ackPolicy) {
+        this.ackPolicy = ackPolicy;
+        return this;
+    }
+
+    /**
+     * Obtém o tempo limite de cada replicação para um secundário.
+     * @return O tempo limite em milissegundos.
+     */
+    public long getReplicationTimeoutMillis() {
+        return replicationTimeoutMillis;
+    }
+
+    /**
+     * Define o tempo limite de cada replicação para um secundário.
+     * @param replicationTimeoutMillis O tempo limite em milissegundos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setReplicationTimeoutMillis(long replicationTimeoutMillis) {
+        this.replicationTimeoutMillis = replicationTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o diretório do log de escrita antecipada e dos snapshots.
+     * @return O diretório de dados, ou null caso o servidor mantenha os dados apenas em memória.
+     */
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    /**
+     * Define o diretório do log de escrita antecipada e dos snapshots.
+     * @param dataDir O diretório de dados, ou null para manter os dados apenas em memória.
+     * @return Esta configuração.
+     */
+    public ServerConfig setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+        return this;
+    }
+
+    /**
+     * Indica se as escritas são sincronizadas com o disco antes de serem confirmadas.
+     * @return true caso o fsync esteja ativado.
+     */
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    /**
+     * Define se as escritas são sincronizadas com o disco antes de serem confirmadas.
+     * @param fsync true para ativar o fsync.
+     * @return Esta configuração.
+     */
+    public ServerConfig setFsync(boolean fsync) {
+        this.fsync = fsync;
+        return this;
+    }
+
+    /**
+     * Obtém o motor de armazenamento.
+     * @return O motor de armazenamento.
+     */
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
+    /**
+     * Define o motor de armazenamento. O armazenamento em disco exige um diretório de dados.
+     * @param storageEngine O motor de armazenamento.
+     * @return Esta configuração.
+     */
+    public ServerConfig setStorageEngine(StorageEngine storageEngine) {
+        this.storageEngine = storageEngine;
+        return this;
+    }
+
+    /**
+     * Obtém o tamanho máximo do cache do armazenamento em disco.
+     * @return O tamanho estimado do cache em bytes.
+     */
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    /**
+     * Define o tamanho máximo do cache do armazenamento em disco.
+     * @param cacheBytes O tamanho estimado do cache em bytes.
+     * @return Esta configuração.
+     */
+    public ServerConfig setCacheBytes(long cacheBytes) {
+        this.cacheBytes = cacheBytes;
+        return this;
+    }
+
+    /**
+     * Obtém o número máximo de versões mantidas por chave no armazenamento em memória.
+     * @return O número de versões, incluindo a atual.
+     */
+    public int getMaxVersions() {
+        return maxVersions;
+    }
+
+    /**
+     * Define o número máximo de versões mantidas por chave no armazenamento em memória.
+     * @param maxVersions O número de versões, incluindo a atual; 1 mantém apenas a última versão.
+     * @return Esta configuração.
+     */
+    public ServerConfig setMaxVersions(int maxVersions) {
+        this.maxVersions = maxVersions;
+        return this;
+    }
+
+    /**
+     * Obtém por quanto tempo uma versão substituída continua disponível para leituras em instantes passados.
+     * @return O tempo de retenção em milissegundos.
+     */
+    public long getVersionRetentionMillis() {
+        return versionRetentionMillis;
+    }
+
+    /**
+     * Define por quanto tempo uma versão substituída continua disponível para leituras em instantes passados.
+     * @param versionRetentionMillis O tempo de retenção em milissegundos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setVersionRetentionMillis(long versionRetentionMillis) {
+        this.versionRetentionMillis = versionRetentionMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o número máximo de entradas devolvidas em cada bloco de um SCAN.
+     * @return O tamanho do bloco.
+     */
+    public int getScanChunkSize() {
+        return scanChunkSize;
+    }
+
+    /**
+     * Define o número máximo de entradas devolvidas em cada bloco de um SCAN.
+     * @param scanChunkSize O tamanho do bloco.
+     * @return Esta configuração.
+     */
+    public ServerConfig setScanChunkSize(int scanChunkSize) {
+        this.scanChunkSize = scanChunkSize;
+        return this;
+    }
+
+    /**
+     * Obtém por quanto tempo a lápide de uma chave apagada é mantida antes de ser descartada. Durante
+     * esse tempo, escritas mais antigas que a remoção e ainda em trânsito não recriam a chave.
+     * @return O tempo de retenção em milissegundos.
+     */
+    public long getTombstoneRetentionMillis() {
+        return tombstoneRetentionMillis;
+    }
+
+    /**
+     * Define por quanto tempo a lápide de uma chave apagada é mantida antes de ser descartada.
+     * @param tombstoneRetentionMillis O tempo de retenção em milissegundos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setTombstoneRetentionMillis(long tombstoneRetentionMillis) {
+        this.tombstoneRetentionMillis = tombstoneRetentionMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o intervalo entre as verificações das chaves expiradas e das lápides a descartar.
+     * @return O intervalo em milissegundos.
+     */
+    public long getExpirySweepIntervalMillis() {
+        return expirySweepIntervalMillis;
+    }
+
+    /**
+     * Define o intervalo entre as verificações das chaves expiradas e das lápides a descartar.
+     * @param expirySweepIntervalMillis O intervalo em milissegundos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setExpirySweepIntervalMillis(long expirySweepIntervalMillis) {
+        this.expirySweepIntervalMillis = expirySweepIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o tamanho dos segmentos do armazenamento em disco.
+     * @return O tamanho a partir do qual um segmento é fechado.
+     */
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Define o tamanho dos segmentos do armazenamento em disco.
+     * @param segmentBytes O tamanho a partir do qual um segmento é fechado.
+     * @return Esta configuração.
+     */
+    public ServerConfig setSegmentBytes(long segmentBytes) {
+        this.segmentBytes = segmentBytes;
+        return this;
+    }
+
+    /**
+     * Obtém o tamanho do log que dispara um novo snapshot.
+     * @return O tamanho em bytes.
+     */
+    public long getSnapshotLogBytes() {
+        return snapshotLogBytes;
+    }
+
+    /**
+     * Define o tamanho do log que dispara um novo snapshot.
+     * @param snapshotLogBytes O tamanho em bytes.
+     * @return Esta configuração.
+     */
+    public ServerConfig setSnapshotLogBytes(long snapshotLogBytes) {
+        this.snapshotLogBytes = snapshotLogBytes;
+        return this;
+    }
+
+    /**
+     * Obtém o intervalo entre snapshots periódicos.
+     * @return O intervalo em milissegundos, ou 0 caso estejam desativados.
+     */
+    public long getSnapshotIntervalMillis() {
+        return snapshotIntervalMillis;
+    }
+
+    /**
+     * Define o intervalo entre snapshots periódicos.
+     * @param snapshotIntervalMillis O intervalo em milissegundos, ou 0 para desativá-los.
+     * @return Esta configuração.
+     */
+    public ServerConfig setSnapshotIntervalMillis(long snapshotIntervalMillis) {
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o número máximo de escritas agrupadas em um lote pelo líder.
+     * @return O tamanho máximo do lote.
+     */
+    public int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    /**
+     * Define o número máximo de escritas agrupadas em um lote pelo líder.
+     * @param batchMaxSize O tamanho máximo do lote.
+     * @return Esta configuração.
+     */
+    public ServerConfig setBatchMaxSize(int batchMaxSize) {
+        this.batchMaxSize = batchMaxSize;
+        return this;
+    }
+
+    /**
+     * Obtém o tempo que o líder espera por novas escritas antes de fechar um lote.
+     * @return A janela em microssegundos.
+     */
+    public long getBatchWindowMicros() {
+        return batchWindowMicros;
+    }
+
+    /**
+     * Define o tempo que o líder espera por novas escritas antes de fechar um lote.
+     * @param batchWindowMicros A janela em microssegundos; 0 agrupa apenas as escritas já enfileiradas.
+     * @return Esta configuração.
+     */
+    public ServerConfig setBatchWindowMicros(long batchWindowMicros) {
+        this.batchWindowMicros = batchWindowMicros;
+        return this;
+    }
+
+    /**
+     * Obtém o número de escritas recentes guardadas no log de replicação do líder.
+     * @return O número de escritas guardadas.
+     */
+    public int getReplicationLogCapacity() {
+        return replicationLogCapacity;
+    }
+
+    /**
+     * Define o número de escritas recentes guardadas no log de replicação do líder.
+     * @param replicationLogCapacity O número de escritas guardadas.
+     * @return Esta configuração.
+     */
+    public ServerConfig setReplicationLogCapacity(int replicationLogCapacity) {
+        this.replicationLogCapacity = replicationLogCapacity;
+        return this;
+    }
+
+    /**
+     * Obtém o intervalo entre as rodadas de recuperação de secundários atrasados.
+     * @return O intervalo em milissegundos.
+     */
+    public long getCatchUpIntervalMillis() {
+        return catchUpIntervalMillis;
+    }
+
+    /**
+     * Define o intervalo entre as rodadas de recuperação de secundários atrasados.
+     * @param catchUpIntervalMillis O intervalo em milissegundos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setCatchUpIntervalMillis(long catchUpIntervalMillis) {
+        this.catchUpIntervalMillis = catchUpIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o número de escritas enviadas por bloco durante a recuperação.
+     * @return O tamanho do bloco.
+     */
+    public int getCatchUpChunkSize() {
+        return catchUpChunkSize;
+    }
+
+    /**
+     * Define o número de escritas enviadas por bloco durante a recuperação.
+     * @param catchUpChunkSize O tamanho do bloco.
+     * @return Esta configuração.
+     */
+    public ServerConfig setCatchUpChunkSize(int catchUpChunkSize) {
+        this.catchUpChunkSize = catchUpChunkSize;
+        return this;
+    }
+
+    /**
+     * Obtém o intervalo entre as rodadas de anti-entropia.
+     * @return O intervalo em milissegundos, ou 0 caso estejam desativadas.
+     */
+    public long getAntiEntropyIntervalMillis() {
+        return antiEntropyIntervalMillis;
+    }
+
+    /**
+     * Define o intervalo entre as rodadas de anti-entropia.
+     * @param antiEntropyIntervalMillis O intervalo em milissegundos, ou 0 para desativá-las.
+     * @return Esta configuração.
+     */
+    public ServerConfig setAntiEntropyIntervalMillis(long antiEntropyIntervalMillis) {
+        this.antiEntropyIntervalMillis = antiEntropyIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o número de faixas de chaves comparadas na anti-entropia.
+     * @return O número de faixas.
+     */
+    public int getAntiEntropyRanges() {
+        return antiEntropyRanges;
+    }
+
+    /**
+     * Define o número de faixas de chaves comparadas na anti-entropia.
+     * @param antiEntropyRanges O número de faixas.
+     * @return Esta configuração.
+     */
+    public ServerConfig setAntiEntropyRanges(int antiEntropyRanges) {
+        this.antiEntropyRanges = antiEntropyRanges;
+        return this;
+    }
+
+    /**
+     * Obtém a injeção de latência e de falhas nos caminhos de comunicação.
+     * @return A injeção de falhas, FaultInjector.NONE por padrão.
+     */
+    public FaultInjector getFaultInjector() {
+        return faultInjector;
+    }
+
+    /**
+     * Define a injeção de latência e de falhas nos caminhos de comunicação.
+     * @param faultInjector A injeção de falhas.
+     * @return Esta configuração.
+     */
+    public ServerConfig setFaultInjector(FaultInjector faultInjector) {
+        this.faultInjector = faultInjector;
+        return this;
+    }
+
+    /**
+     * Obtém a topologia do cluster particionado.
+     * @return A topologia, ou null caso todas as chaves pertençam a um único grupo de replicação.
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Define a topologia do cluster particionado.
+     * @param topology A topologia, ou null para um único grupo de replicação.
+     * @return Esta configuração.
+     */
+    public ServerConfig setTopology(Topology topology) {
+        this.topology = topology;
+        return this;
+    }
+
+    /**
+     * Obtém o endereço em que o servidor escuta as conexões.
+     * @return O endereço IP:porta, ou null caso deva ser lido da entrada padrão.
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Define o endereço em que o servidor escuta as conexões.
+     * @param address O endereço IP:porta.
+     * @return Esta configuração.
+     */
+    public ServerConfig setAddress(String address) {
+        this.address = address;
+        return this;
+    }
+
+    /**
+     * Obtém o endereço do líder inicial do grupo de replicação.
+     * @return O endereço IP:porta, ou null caso seja o próprio servidor.
+     */
+    public String getLeader() {
+        return leader;
+    }
+
+    /**
+     * Define o endereço do líder inicial do grupo de replicação.
+     * @param leader O endereço IP:porta.
+     * @return Esta configuração.
+     */
+    public ServerConfig setLeader(String leader) {
+        this.leader = leader;
+        return this;
+    }
+
+    /**
+     * Obtém os endereços dos secundários conhecidos pelo líder na inicialização.
+     * @return Os endereços IP:porta.
+     */
+    public List<String> getSecondaries() {
+        return secondaries;
+    }
+
+    /**
+     * Define os endereços dos secundários conhecidos pelo líder na inicialização.
+     * @param secondaries Os endereços IP:porta.
+     * @return Esta configuração.
+     */
+    public ServerConfig setSecondaries(List<String> secondaries) {
+        this.secondaries = new ArrayList<>(secondaries);
+        return this;
+    }
+
+    /**
+     * Obtém o servidor de um grupo em execução pelo qual este servidor pede a sua entrada (JOIN).
+     * @return O endereço IP:porta, ou null caso o servidor faça parte do grupo desde a inicialização.
+     */
+    public String getJoin() {
+        return join;
+    }
+
+    /**
+     * Define o servidor de um grupo em execução pelo qual este servidor pede a sua entrada (JOIN).
+     * @param join O endereço IP:porta de qualquer servidor do grupo.
+     * @return Esta configuração.
+     */
+    public ServerConfig setJoin(String join) {
+        this.join = join;
+        return this;
+    }
+
+    /**
+     * Obtém a porta do endpoint HTTP de métricas, aberto apenas no endereço de loopback.
+     * @return A porta, ou 0 caso o endpoint esteja desativado.
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Define a porta do endpoint HTTP de métricas.
+     * @param metricsPort A porta, ou 0 para desativar o endpoint.
+     * @return Esta configuração.
+     */
+    public ServerConfig setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+        return this;
+    }
+
+    /**
+     * Obtém o tempo sem notícias do líder após o qual um secundário se candidata. O prazo de cada
+     * servidor é sorteado entre este tempo e o seu dobro, para que os candidatos não empatem.
+     * @return O tempo em milissegundos, ou 0 caso a eleição esteja desativada e o líder seja fixo.
+     */
+    public long getElectionTimeoutMillis() {
+        return electionTimeoutMillis;
+    }
+
+    /**
+     * Define o tempo sem notícias do líder após o qual um secundário se candidata.
+     * @param electionTimeoutMillis O tempo em milissegundos, ou 0 para desativar a eleição e manter o líder fixo.
+     * @return Esta configuração.
+     */
+    public ServerConfig setElectionTimeoutMillis(long electionTimeoutMillis) {
+        this.electionTimeoutMillis = electionTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Obtém o intervalo entre os HEARTBEATs do líder.
+     * @return O intervalo em milissegundos.
+     */
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    /**
+     * Define o intervalo entre os HEARTBEATs do líder. Deve ser bem menor que o tempo de eleição.
+     * @param heartbeatIntervalMillis O intervalo em milissegundos.
+     * @return Esta configuração.
+     */
+    public ServerConfig setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Obtém a duração das concessões de leitura que o líder dá aos secundários. Enquanto a concessão
+     * vale, o secundário atende leituras lineares sem consultar o líder, e cada escrita aguarda a
+     * confirmação dos secundários com concessão ou o fim das suas concessões.
+     * @return A duração em milissegundos, ou 0 caso as concessões estejam desativadas.
+     */
+    public long getReadLeaseMillis() {
+        return readLeaseMillis;
+    }
+
+    /**
+     * Define a duração das concessões de leitura que o líder dá aos secundários.
+     * @param readLeaseMillis A duração em milissegundos, ou 0 para desativar as concessões.
+     * @return Esta configuração.
+     */
+    public ServerConfig setReadLeaseMillis(long readLeaseMillis) {
+        this.readLeaseMillis = readLeaseMillis;
+        return this;
+    }
+
+    /**
+     * Obtém por quanto tempo uma leitura em um secundário aguarda a replicação alcançar a posição
+     * exigida antes de ser recusada com TRY_OTHER_SERVER_OR_LATER.
+     * @return O tempo em milissegundos.
+     */
+    public long getReadWaitMillis() {
+        return readWaitMillis;
+    }
+
+    /**
+     * Define por quanto tempo uma leitura em um secundário aguarda a replicação alcançar a posição exigida.
+     * @param readWaitMillis O tempo em milissegundos, ou 0 para recusar a leitura imediatamente.
+     * @return Esta configuração.
+     */
+    public ServerConfig setReadWaitMillis(long readWaitMillis) {
+        this.readWaitMillis = readWaitMillis;
+        return this;
+    }
+}
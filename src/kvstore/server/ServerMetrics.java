@@ -0,0 +1,179 @@
+package kvstore.server;
+
+import kvstore.log.Log;
+import kvstore.metrics.Histogram;
+import kvstore.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas do servidor: contadores e latências por comando, latência do encaminhamento ao líder,
+ * latência e atraso da replicação por secundário e conexões abertas. As métricas de cada comando
+ * são criadas antecipadamente, para que o registro de uma requisição seja apenas um incremento.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+class ServerMetrics {
+    /** Comandos com contadores próprios; os demais são contados como OTHER. */
+    private static final String[] COMMANDS = {"GET", "PUT", "REPLICATION", "SYNC_REQUEST", "LEADER", "TOPOLOGY",
+            "TOPOLOGY_UPDATE", "MIGRATE", "DIGEST", "HEARTBEAT", "VOTE_REQUEST", "GET_AT", "SCAN", "LEASE", "JOIN", "LEAVE",
+            "DELETE", "CAS"};
+    /** Comandos com histograma de latência. */
+    private static final String[] TIMED_COMMANDS = {"GET", "PUT", "REPLICATION", "GET_AT", "SCAN", "DELETE", "CAS"};
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final LongSupplier lastLogIndex;
+    private final Map<String, LongAdder> requests = new HashMap<>();
+    private final Map<String, LongAdder> errors = new HashMap<>();
+    private final Map<String, Histogram> durations = new HashMap<>();
+    private final Histogram forwardDuration;
+    private final LongAdder forwardErrors;
+    private final LongAdder rejected;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Map<String, Follower> followers = new ConcurrentHashMap<>();
+
+    /**
+     * Construtor da classe ServerMetrics.
+     * @param lastLogIndex A última posição do log de replicação, usada no atraso dos secundários.
+     */
+    ServerMetrics(LongSupplier lastLogIndex) {
+        this.lastLogIndex = lastLogIndex;
+        for (String command : COMMANDS) {
+            requests.put(command, registry.counter("kvstore_requests_total", "Requisições recebidas por comando.", "command", command));
+            errors.put(command, registry.counter("kvstore_request_errors_total", "Requisições respondidas com erro por comando.", "command", command));
+        }
+        requests.put("OTHER", registry.counter("kvstore_requests_total", "Requisições recebidas por comando.", "command", "OTHER"));
+        errors.put("OTHER", registry.counter("kvstore_request_errors_total", "Requisições respondidas com erro por comando.", "command", "OTHER"));
+        for (String command : TIMED_COMMANDS) {
+            durations.put(command, registry.histogram("kvstore_request_duration_seconds",
+                    "Tempo entre a chegada da requisição e a resposta, incluindo a espera por um worker.", "command", command));
+        }
+        forwardDuration = registry.histogram("kvstore_forward_duration_seconds", "Tempo de ida e volta dos PUTs encaminhados ao líder.");
+        forwardErrors = registry.counter("kvstore_forward_errors_total", "PUTs que não puderam ser encaminhados ao líder.");
+        rejected = registry.counter("kvstore_rejected_total", "Requisições recusadas com SERVER_BUSY por falta de workers.");
+        registry.gauge("kvstore_connections", "Conexões de clientes e servidores abertas.", connections::get);
+        registry.counter("kvstore_log_dropped_total", "Mensagens de registro descartadas com a fila cheia.", Log::getDropped);
+    }
+
+    /**
+     * Obtém o registro com todas as métricas do servidor.
+     * @return O registro.
+     */
+    MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Registra uma requisição atendida.
+     * @param command O comando da requisição.
+     * @param nanos O tempo entre a chegada e a resposta.
+     * @param error Indica se a resposta foi um erro.
+     */
+    void recordRequest(String command, long nanos, boolean error) {
+        String key = requests.containsKey(command) ? command : "OTHER";
+        requests.get(key).increment();
+        if (error) {
+            errors.get(key).increment();
+        }
+        Histogram duration = durations.get(key);
+        if (duration != null) {
+            duration.record(nanos);
+        }
+    }
+
+    /**
+     * Registra uma requisição recusada por falta de workers.
+     */
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Registra um encaminhamento ao líder.
+     * @param nanos O tempo de ida e volta.
+     * @param success Indica se o líder respondeu.
+     */
+    void recordForward(long nanos, boolean success) {
+        forwardDuration.record(nanos);
+        if (!success) {
+            forwardErrors.increment();
+        }
+    }
+
+    /**
+     * Registra uma replicação enviada a um secundário.
+     * @param follower O endereço do secundário.
+     * @param nanos O tempo de ida e volta.
+     * @param lastIndex A última posição do log contida na replicação.
+     * @param success Indica se o secundário confirmou a replicação.
+     */
+    void recordReplication(String follower, long nanos, long lastIndex, boolean success) {
+        Follower state = follower(follower);
+        state.duration.record(nanos);
+        if (success) {
+            state.ackedIndex.accumulateAndGet(lastIndex, Math::max);
+        } else {
+            state.failures.increment();
+        }
+    }
+
+    /**
+     * Registra que um secundário confirmou todas as posições do log até a indicada, por exemplo ao
+     * final de uma recuperação.
+     * @param follower O endereço do secundário.
+     * @param index A última posição confirmada.
+     */
+    void recordFollowerIndex(String follower, long index) {
+        follower(follower).ackedIndex.accumulateAndGet(index, Math::max);
+    }
+
+    /**
+     * Obtém as métricas de um secundário, criando-as no primeiro uso.
+     */
+    private Follower follower(String address) {
+        return followers.computeIfAbsent(address, ignored -> {
+            Follower state = new Follower(registry.histogram("kvstore_replication_duration_seconds",
+                    "Tempo de ida e volta das replicações por secundário.", "follower", address),
+                    registry.counter("kvstore_replication_errors_total", "Replicações não confirmadas por secundário.", "follower", address));
+            registry.gauge("kvstore_replication_lag_entries", "Posições do log de replicação ainda não confirmadas por secundário.",
+                    () -> Math.max(0, lastLogIndex.getAsLong() - state.ackedIndex.get()), "follower", address);
+            return state;
+        });
+    }
+
+    /**
+     * Registra a abertura de uma conexão.
+     */
+    void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    /**
+     * Registra o fechamento de uma conexão.
+     */
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * Métricas de replicação de um secundário.
+     */
+    private static class Follower {
+        private final Histogram duration;
+        private final LongAdder failures;
+        private final AtomicLong ackedIndex = new AtomicLong();
+
+        private Follower(Histogram duration, LongAdder failures) {
+            this.duration = duration;
+            this.failures = failures;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package kvstore.server;
+
+import kvstore.message.BinaryCodec;
+import kvstore.message.Message;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Agrupa as escritas concorrentes recebidas pelo líder. As requisições PUT e DELETE são reunidas
+ * durante uma janela curta ou até um tamanho máximo, e cada lote é aplicado e replicado como uma
+ * unidade. Cada cliente em espera recebe individualmente sua resposta quando o lote é confirmado.
+ *
+ * As escritas condicionais (CAS e EXPIRE) são resolvidas na thread que forma os lotes, na ordem
+ * de chegada: a condição é verificada contra o estado local, que já contém todos os lotes
+ * anteriores, e vira uma escrita comum ou uma resposta imediata. Para que a condição veja também
+ * as escritas anteriores do mesmo lote, o lote é dividido antes de uma escrita condicional cuja
+ * chave já esteja nele.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+class WriteBatcher {
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Function<List<Message>, CompletableFuture<Boolean>> commit;
+    private final Function<Message, Message> resolve;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final Thread thread;
+
+    /**
+     * Construtor da classe WriteBatcher. Inicia a thread que forma os lotes.
+     * @param commit A função que aplica e replica um lote, completada com true caso o lote seja confirmado.
+     * @param resolve A função que resolve uma escrita condicional: devolve a escrita PUT ou DELETE a
+     * confirmar, ou a resposta a enviar sem escrever, por exemplo CAS_FAILED.
+     * @param maxBatchSize O número máximo de escritas por lote.
+     * @param windowMicros O tempo máximo de espera por novas escritas depois da primeira de um lote.
+     */
+    WriteBatcher(Function<List<Message>, CompletableFuture<Boolean>> commit, Function<Message, Message> resolve,
+                 int maxBatchSize, long windowMicros) {
+        this.commit = commit;
+        this.resolve = resolve;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+
+        thread = new Thread(this::run, "kvstore-write-batcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Enfileira uma escrita para o próximo lote.
+     * @param request A requisição PUT, DELETE, CAS ou EXPIRE.
+     * @return Um futuro completado com a confirmação (o comando da requisição seguido de _OK), com a
+     * resposta de uma condição não satisfeita ou com PUT_ERROR quando o lote da escrita for concluído.
+     */
+    CompletableFuture<Message> submit(Message request) {
+        PendingWrite write = new PendingWrite(request);
+        queue.add(write);
+        return write.result;
+    }
+
+    /**
+     * Obtém o número de escritas aguardando a formação de um lote.
+     * @return O número de escritas na fila.
+     */
+    int pending() {
+        return queue.size();
+    }
+
+    /**
+     * Encerra a formação de lotes. As escritas ainda não agrupadas não são confirmadas.
+     */
+    void close() {
+        thread.interrupt();
+    }
+
+    /**
+     * Forma os lotes continuamente. A confirmação de um lote não bloqueia a formação do próximo,
+     * de modo que vários lotes podem estar em replicação ao mesmo tempo.
+     */
+    private void run() {
+        while (true) {
+            List<PendingWrite> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+
+                while (batch.size() < maxBatchSize) {
+                    // Primeiro aproveita o que já está na fila, depois espera até o fim da janela.
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            commitInOrder(batch);
+        }
+    }
+
+    /**
+     * Resolve as escritas condicionais de um lote e confirma o restante, dividindo o lote quando uma
+     * condição depende de uma escrita anterior do próprio lote.
+     */
+    private void commitInOrder(List<PendingWrite> writes) {
+        boolean conditional = false;
+        for (PendingWrite write : writes) {
+            conditional |= isConditional(write.request);
+        }
+        if (!conditional) {
+            commitBatch(writes);
+            return;
+        }
+
+        List<PendingWrite> batch = new ArrayList<>(writes.size());
+        Set<String> keys = new HashSet<>();
+        for (PendingWrite write : writes) {
+            String key = write.request.getKey();
+            if (isConditional(write.request)) {
+                if (keys.contains(key)) {
+                    // A escrita anterior da chave precisa estar aplicada antes da verificação.
+                    commitBatch(batch);
+                    batch = new ArrayList<>(writes.size());
+                    keys.clear();
+                }
+                Message resolved;
+                try {
+                    resolved = resolve.apply(write.request);
+                } catch (RuntimeException e) {
+                    resolved = new Message("PUT_ERROR", key, null, write.request.getTimestamp());
+                }
+                if (!isWrite(resolved)) {
+                    write.result.complete(resolved);
+                    continue;
+                }
+                write.write = resolved;
+            }
+            batch.add(write);
+            keys.add(key);
+        }
+        if (!batch.isEmpty()) {
+            commitBatch(batch);
+        }
+    }
+
+    private static boolean isWrite(Message message) {
+        return "PUT".equals(message.getCommand()) || "DELETE".equals(message.getCommand());
+    }
+
+    private static boolean isConditional(Message request) {
+        return !isWrite(request);
+    }
+
+    private void commitBatch(List<PendingWrite> batch) {
+        List<Message> requests = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            requests.add(write.write);
+        }
+
+        CompletableFuture<Boolean> committed;
+        try {
+            committed = commit.apply(requests);
+        } catch (RuntimeException e) {
+            committed = CompletableFuture.failedFuture(e);
+        }
+
+        committed.whenComplete((ok, error) -> {
+            boolean success = error == null && ok;
+            for (PendingWrite write : batch) {
+                Message request = write.write;
+                String command = success ? write.request.getCommand() + "_OK" : "PUT_ERROR";
+                // O valor é ecoado sem ser convertido novamente; os valores grandes não voltam ao cliente.
+                // O timestamp é o da escrita confirmada, que nas escritas condicionais é a nova versão.
+                byte[] value = request.getValueBytes();
+                Message response = value != null && value.length >= BinaryCodec.LARGE_VALUE_SIZE
+                        ? new Message(command, request.getKey(), null, request.getTimestamp())
+                        : request.withCommand(command);
+                response.setLogIndex(request.getLogIndex()); // Posição da escrita no log de replicação
+                write.result.complete(response);
+            }
+        });
+    }
+
+    /**
+     * Escrita aguardando a confirmação do seu lote.
+     */
+    private static class PendingWrite {
+        private final Message request;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+        private Message write; // A escrita confirmada: a própria requisição ou a condicional resolvida
+
+        PendingWrite(Message request) {
+            this.request = request;
+            this.write = request;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package kvstore.storage;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Cache em memória, limitado em bytes, na frente de outro motor de armazenamento, normalmente o
+ * {@link LogStructuredStorage}. As leituras que não encontram a chave no cache buscam a entrada no
+ * motor de baixo e a guardam no cache; as escritas aplicadas atualizam o cache e o motor de baixo.
+ *
+ * A substituição é LRU segmentado (SLRU): uma entrada nova entra no segmento de experiência e só passa
+ * ao segmento protegido, com 80% do espaço, se for lida de novo. Assim uma varredura de chaves lidas
+ * uma única vez não expulsa as chaves frequentes. Para reduzir a disputa entre threads, o cache é
+ * dividido em partes pelo hash da chave, cada uma com o seu lock e a sua fração do limite.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class CachedStorage implements Storage, Closeable {
+    private static final int STRIPES = 16;
+    private static final double PROTECTED_RATIO = 0.8;
+    /** Custo estimado de uma entrada no cache além do texto da chave e do valor. */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Storage delegate;
+    private final long maxBytes;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Construtor da classe CachedStorage.
+     * @param delegate O motor que mantém todas as entradas.
+     * @param maxBytes O tamanho máximo estimado do cache em bytes.
+     */
+    public CachedStorage(Storage delegate, long maxBytes) {
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxBytes / STRIPES);
+        }
+    }
+
+    @Override
+    public Entry get(String key) {
+        Stripe stripe = stripe(key);
+        long version;
+        synchronized (stripe) {
+            Entry cached = stripe.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            version = stripe.version;
+        }
+
+        misses.increment();
+        Entry entry = delegate.get(key);
+        if (entry != null) {
+            synchronized (stripe) {
+                // Uma escrita concorrente na mesma parte pode ter tornado a entrada lida obsoleta.
+                if (stripe.version == version) {
+                    evictions.add(stripe.admit(key, entry));
+                }
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean put(String key, String value, long timestamp) {
+        return put(key, new Entry(value, timestamp));
+    }
+
+    @Override
+    public boolean put(String key, Entry entry) {
+        if (!delegate.put(key, entry)) {
+            return false;
+        }
+        update(key, entry, true);
+        return true;
+    }
+
+    @Override
+    public int putAll(Collection<Map.Entry<String, Entry>> writes) {
+        int applied = delegate.putAll(writes);
+        // O motor de baixo não informa quais escritas do lote venceram. Uma entrada em cache é sempre a
+        // versão atual do motor de baixo, então só as chaves em cache são atualizadas, se a escrita a vencer.
+        for (Map.Entry<String, Entry> write : writes) {
+            update(write.getKey(), write.getValue(), false);
+        }
+        return applied;
+    }
+
+    @Override
+    public boolean remove(String key, long timestamp) {
+        boolean removed = delegate.remove(key, timestamp);
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.version++;
+            stripe.invalidate(key);
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Entry> action) {
+        delegate.forEach(action);
+    }
+
+    /**
+     * Obtém o número de leituras atendidas pelo cache.
+     * @return O número de acertos.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Obtém o número de leituras que precisaram do motor de baixo.
+     * @return O número de faltas.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Obtém o número de entradas expulsas do cache por falta de espaço.
+     * @return O número de expulsões.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Obtém o tamanho estimado das entradas no cache.
+     * @return O número de bytes em uso.
+     */
+    public long getCachedBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.probationBytes + stripe.protectedBytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Guarda no cache uma escrita aplicada, caso ela vença a entrada em cache pela regra de
+     * {@link Entry#supersedes(Entry)}.
+     * @param allocate Indica se a escrita deve entrar no cache mesmo que a chave não esteja nele.
+     */
+    private void update(String key, Entry entry, boolean allocate) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.version++;
+            Entry cached = stripe.peek(key);
+            if (cached == null ? allocate : entry.supersedes(cached)) {
+                evictions.add(stripe.admit(key, entry));
+            }
+        }
+    }
+
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static long weight(String key, Entry entry) {
+        String value = entry.getValue();
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length() + (value == null ? 0 : 2L * value.length());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        long total = getHits() + getMisses();
+        return String.format("cache: %d acertos, %d faltas (%.1f%% de acerto), %d expulsões, %d de %d MB",
+                getHits(), getMisses(), total == 0 ? 0.0 : 100.0 * getHits() / total, getEvictions(),
+                getCachedBytes() / (1024 * 1024), maxBytes / (1024 * 1024));
+    }
+
+    /**
+     * Uma parte do cache, com os segmentos de experiência e protegido em ordem de uso, do menos
+     * para o mais recente. Todos os métodos devem ser chamados com o lock da parte.
+     */
+    private static final class Stripe {
+        private final long maxBytes;
+        private final long maxProtectedBytes;
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>();
+        private long probationBytes;
+        private long protectedBytes;
+        /** Incrementada a cada escrita, para descartar leituras do motor de baixo feitas antes dela. */
+        private long version;
+
+        private Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = (long) (maxBytes * PROTECTED_RATIO);
+        }
+
+        /**
+         * Obtém uma entrada registrando o acesso; uma entrada em experiência lida de novo é protegida.
+         */
+        private Entry get(String key) {
+            Entry entry = protectedSegment.remove(key);
+            if (entry != null) {
+                protectedSegment.put(key, entry); // Passa a ser a mais recente
+                return entry;
+            }
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            long weight = weight(key, entry);
+            probationBytes -= weight;
+            protectedSegment.put(key, entry);
+            protectedBytes += weight;
+
+            // O segmento protegido cheio devolve as entradas menos recentes para a experiência.
+            Iterator<Map.Entry<String, Entry>> oldest = protectedSegment.entrySet().iterator();
+            while (protectedBytes > maxProtectedBytes && oldest.hasNext()) {
+                Map.Entry<String, Entry> demoted = oldest.next();
+                oldest.remove();
+                long demotedWeight = weight(demoted.getKey(), demoted.getValue());
+                protectedBytes -= demotedWeight;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationBytes += demotedWeight;
+            }
+            return entry;
+        }
+
+        /**
+         * Obtém uma entrada sem registrar o acesso.
+         */
+        private Entry peek(String key) {
+            Entry entry = protectedSegment.get(key);
+            return entry != null ? entry : probation.get(key);
+        }
+
+        /**
+         * Guarda uma entrada, substituindo a anterior no mesmo segmento, e expulsa as menos recentes
+         * da experiência até caber no limite.
+         * @return O número de entradas expulsas.
+         */
+        private int admit(String key, Entry entry) {
+            long weight = weight(key, entry);
+            Entry previous = protectedSegment.get(key);
+            if (previous != null) {
+                protectedSegment.put(key, entry);
+                protectedBytes += weight - weight(key, previous);
+            } else {
+                previous = probation.put(key, entry);
+                probationBytes += weight - (previous != null ? weight(key, previous) : 0);
+            }
+
+            int evicted = 0;
+            Iterator<Map.Entry<String, Entry>> oldest = probation.entrySet().iterator();
+            while (probationBytes + protectedBytes > maxBytes && oldest.hasNext()) {
+                Map.Entry<String, Entry> victim = oldest.next();
+                oldest.remove();
+                probationBytes -= weight(victim.getKey(), victim.getValue());
+                evicted++;
+            }
+            // Uma entrada maior que toda a parte não fica no cache.
+            oldest = protectedSegment.entrySet().iterator();
+            while (probationBytes + protectedBytes > maxBytes && oldest.hasNext()) {
+                Map.Entry<String, Entry> victim = oldest.next();
+                oldest.remove();
+                protectedBytes -= weight(victim.getKey(), victim.getValue());
+                evicted++;
+            }
+            return evicted;
+        }
+
+        private void invalidate(String key) {
+            Entry entry = protectedSegment.remove(key);
+            if (entry != null) {
+                protectedBytes -= weight(key, entry);
+            }
+            entry = probation.remove(key);
+            if (entry != null) {
+                probationBytes -= weight(key, entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package kvstore.storage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Implementação padrão do armazenamento sobre um ConcurrentHashMap. As leituras não usam locks
+ * e as escritas usam compare-and-set sobre a entrada atual, de modo que uma replicação atrasada
+ * nunca sobrescreve um valor mais novo.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class ConcurrentStorage implements Storage {
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public boolean put(String key, String value, long timestamp) {
+        return put(key, new Entry(value, timestamp));
+    }
+
+    @Override
+    public boolean put(String key, Entry update) {
+        while (true) {
+            Entry current = entries.get(key);
+            if (current == null) {
+                if (entries.putIfAbsent(key, update) == null) {
+                    return true;
+                }
+            } else if (!update.supersedes(current)) {
+                // Última escrita vence: uma versão mais nova, ou que vence o desempate, já está armazenada.
+                return false;
+            } else if (entries.replace(key, current, update)) {
+                return true;
+            }
+            // Outra thread alterou a entrada entre a leitura e a escrita; tenta novamente.
+        }
+    }
+
+    @Override
+    public boolean remove(String key, long timestamp) {
+        while (true) {
+            Entry current = entries.get(key);
+            // Uma remoção vence o desempate com uma entrada do mesmo timestamp, como uma lápide.
+            if (current == null || current.getTimestamp() > timestamp) {
+                return false;
+            }
+            if (entries.remove(key, current)) {
+                return true;
+            }
+            // Outra thread alterou a entrada entre a leitura e a remoção; tenta novamente.
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Entry> action) {
+        entries.forEach(action);
+    }
+}
@@ -0,0 +1,352 @@
+package kvstore.storage;
+
+import kvstore.log.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Armazenamento durável: envolve outro motor de armazenamento, registrando cada escrita em um log
+ * de escrita antecipada antes de aplicá-la e compactando o log periodicamente em snapshots. Uma
+ * escrita só fica visível nas leituras depois de durável, de modo que nenhuma leitura observa um
+ * valor que uma queda do servidor poderia desfazer.
+ * Na inicialização, carrega o último snapshot e reaplica apenas os segmentos do log posteriores a ele.
+ * 
+ * Como as escritas seguem a regra "última escrita vence", reaplicar um registro já contido no
+ * snapshot não altera o resultado, e reaplicar um registro que perdeu para uma versão mais nova
+ * também não. Isso permite tirar o snapshot sem bloquear as escritas: o log é rotacionado primeiro
+ * e o snapshot cobre, no mínimo, tudo o que estava nos segmentos fechados. A rotação espera as
+ * escritas em andamento serem aplicadas, para que nenhum registro de um segmento fechado falte ao snapshot.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class DurableStorage implements Storage, Closeable {
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+    private static final int SNAPSHOT_MAGIC = 0x4B56534E; // "KVSN"
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 8;
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final Storage delegate;
+    private final Path directory;
+    private final long snapshotLogBytes;
+    private final WriteAheadLog log;
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    // As escritas dividem a leitura entre o registro no log e a aplicação; a rotação do log usa a escrita.
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService snapshotter;
+
+    /**
+     * Construtor da classe DurableStorage. Recupera o estado salvo no diretório antes de aceitar escritas.
+     * @param delegate O motor que mantém os dados em memória.
+     * @param directory O diretório do log e dos snapshots.
+     * @param fsync Indica se as escritas devem ser sincronizadas com o disco antes de serem confirmadas.
+     * @param snapshotLogBytes O tamanho do segmento atual do log que dispara um novo snapshot.
+     * @param snapshotIntervalMillis O intervalo entre snapshots periódicos, ou 0 para desativá-los.
+     * @throws IOException Caso não seja possível ler o estado salvo ou abrir o log.
+     */
+    public DurableStorage(Storage delegate, Path directory, boolean fsync, long snapshotLogBytes,
+                          long snapshotIntervalMillis) throws IOException {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.snapshotLogBytes = snapshotLogBytes;
+
+        Files.createDirectories(directory);
+        recover();
+        this.log = new WriteAheadLog(directory, fsync);
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kvstore-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotIntervalMillis > 0) {
+            snapshotter.scheduleWithFixedDelay(() -> {
+                if (log.currentSegmentBytes() > 0) {
+                    requestSnapshot();
+                }
+            }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Entry get(String key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public Entry get(String key, long timestamp) {
+        return delegate.get(key, timestamp);
+    }
+
+    @Override
+    public boolean put(String key, String value, long timestamp) {
+        return put(key, new Entry(value, timestamp));
+    }
+
+    @Override
+    public boolean put(String key, Entry entry) {
+        if (loses(key, entry)) {
+            return false; // Evita registrar no log uma escrita que já perdeu
+        }
+
+        boolean applied;
+        rotationLock.readLock().lock();
+        try {
+            // A escrita só é aplicada depois de durável; threads concorrentes dividem o mesmo fsync.
+            log.sync(log.append(key, entry));
+            applied = delegate.put(key, entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no log de escrita antecipada", e);
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+
+        if (log.currentSegmentBytes() >= snapshotLogBytes) {
+            requestSnapshot();
+        }
+        return applied;
+    }
+
+    @Override
+    public int putAll(Collection<Map.Entry<String, Entry>> writes) {
+        List<Map.Entry<String, Entry>> pending = new ArrayList<>(writes.size());
+        for (Map.Entry<String, Entry> write : writes) {
+            if (!loses(write.getKey(), write.getValue())) {
+                pending.add(write);
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        int applied;
+        rotationLock.readLock().lock();
+        try {
+            long position = -1;
+            for (Map.Entry<String, Entry> write : pending) {
+                position = log.append(write.getKey(), write.getValue());
+            }
+            // Um único fsync torna o lote inteiro durável, antes de qualquer escrita dele ser aplicada.
+            log.sync(position);
+            applied = delegate.putAll(pending);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no log de escrita antecipada", e);
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+
+        if (log.currentSegmentBytes() >= snapshotLogBytes) {
+            requestSnapshot();
+        }
+        return applied;
+    }
+
+    @Override
+    public boolean remove(String key, long timestamp) {
+        Entry current = delegate.get(key);
+        if (current == null || current.getTimestamp() > timestamp) {
+            return false;
+        }
+
+        rotationLock.readLock().lock();
+        try {
+            log.sync(log.appendRemoval(key, timestamp));
+            return delegate.remove(key, timestamp);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no log de escrita antecipada", e);
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Entry> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public List<Map.Entry<String, Entry>> scan(String prefix, String afterKey, long timestamp, int limit) {
+        return delegate.scan(prefix, afterKey, timestamp, limit);
+    }
+
+    /**
+     * Indica se uma escrita perde para a entrada atual da chave. Uma escrita concorrente pode mudar a
+     * entrada depois da verificação; nesse caso o registro no log é apenas redundante, pois perde
+     * novamente ao ser reaplicado.
+     */
+    private boolean loses(String key, Entry entry) {
+        Entry current = delegate.get(key);
+        return current != null && !entry.supersedes(current);
+    }
+
+    /**
+     * Agenda um snapshot em segundo plano, caso nenhum esteja em andamento.
+     */
+    public void requestSnapshot() {
+        if (snapshotRunning.compareAndSet(false, true)) {
+            snapshotter.execute(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    Log.error("Falha ao gravar o snapshot em " + directory, e);
+                } finally {
+                    snapshotRunning.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Grava um snapshot de todas as entradas e apaga os segmentos do log cobertos por ele.
+     * O snapshot é escrito em um arquivo temporário e renomeado atomicamente ao final.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    private void snapshot() throws IOException {
+        long start = System.nanoTime();
+        long sealedSegment;
+        rotationLock.writeLock().lock();
+        try {
+            sealedSegment = log.rotate();
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+
+        long[] entries = {0};
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putLong(sealedSegment);
+
+            IOException[] failure = {null};
+            delegate.forEach((key, entry) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    ByteBuffer record = LogRecords.encode(key, entry);
+                    if (record.remaining() > buffer.remaining()) {
+                        drain(channel, buffer);
+                    }
+                    if (record.remaining() > buffer.remaining()) {
+                        LogRecords.write(channel, record, buffer); // Usa o buffer direto, já vazio, em partes
+                    } else {
+                        buffer.put(record);
+                    }
+                    entries[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.deleteSegmentsUpTo(sealedSegment);
+        Log.info("Snapshot com " + entries[0] + " entradas gravado em "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Carrega o snapshot e reaplica os segmentos do log posteriores a ele, informando o tempo gasto.
+     * @throws IOException Caso ocorra um erro de leitura.
+     */
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        long coveredSegment = 0;
+        long snapshotEntries = 0;
+        long bytes = 0;
+
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+                while (header.hasRemaining() && channel.read(header) >= 0) {
+                    // Lê o cabeçalho completo
+                }
+                header.flip();
+                if (header.remaining() < SNAPSHOT_HEADER_SIZE || header.getInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Snapshot inválido: " + snapshot);
+                }
+                coveredSegment = header.getLong();
+                snapshotEntries = LogRecords.readAll(channel, SNAPSHOT_HEADER_SIZE,
+                        (key, value, timestamp, expiresAt) -> delegate.put(key, new Entry(value, timestamp, expiresAt)));
+                bytes += channel.size();
+            }
+        }
+
+        long logRecords = 0;
+        for (long id : WriteAheadLog.segmentIds(directory)) {
+            if (id <= coveredSegment) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(WriteAheadLog.segmentPath(directory, id), StandardOpenOption.READ)) {
+                logRecords += LogRecords.readAll(channel, 0, new LogRecords.Visitor() {
+                    @Override
+                    public void accept(String key, String value, long timestamp, long expiresAt) {
+                        delegate.put(key, new Entry(value, timestamp, expiresAt));
+                    }
+
+                    @Override
+                    public void remove(String key, long timestamp) {
+                        delegate.remove(key, timestamp);
+                    }
+                });
+                bytes += channel.size();
+            }
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Log.info("Recuperação concluída em " + elapsedMillis + " ms: " + snapshotEntries
+                + " entradas do snapshot, " + logRecords + " registros do log, " + (bytes / (1024 * 1024)) + " MB lidos");
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+}
@@ -0,0 +1,99 @@
+package kvstore.storage;
+
+/**
+ * Entrada imutável do armazenamento, contendo um valor e o timestamp da escrita que o gerou.
+ * Uma entrada sem valor é a lápide de uma chave apagada, mantida para que a remoção vença as
+ * escritas mais antigas que ainda cheguem por replicação. Uma entrada pode ter um instante de
+ * expiração, a partir do qual é tratada como apagada.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public final class Entry {
+    private final String value;
+    private final long timestamp;
+    private final long expiresAt;
+
+    /**
+     * Construtor da classe Entry, para uma entrada sem expiração.
+     * @param value O valor armazenado, ou null para uma lápide.
+     * @param timestamp O timestamp da escrita.
+     */
+    public Entry(String value, long timestamp) {
+        this(value, timestamp, 0);
+    }
+
+    /**
+     * Construtor da classe Entry.
+     * @param value O valor armazenado, ou null para uma lápide.
+     * @param timestamp O timestamp da escrita.
+     * @param expiresAt O instante de expiração em milissegundos, ou 0 caso a entrada não expire.
+     */
+    public Entry(String value, long timestamp, long expiresAt) {
+        this.value = value;
+        this.timestamp = timestamp;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Obtém o valor armazenado.
+     * @return O valor, ou null caso a entrada seja uma lápide.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Obtém o timestamp da escrita.
+     * @return O timestamp.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Obtém o instante de expiração.
+     * @return O instante em milissegundos, ou 0 caso a entrada não expire.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Indica se a entrada é a lápide de uma chave apagada.
+     * @return true caso a entrada não tenha valor.
+     */
+    public boolean isTombstone() {
+        return value == null;
+    }
+
+    /**
+     * Indica se a entrada é visível em um instante: não é uma lápide e ainda não expirou.
+     * @param now O instante em milissegundos.
+     * @return true caso a chave exista no instante.
+     */
+    public boolean isLive(long now) {
+        return value != null && (expiresAt == 0 || now < expiresAt);
+    }
+
+    /**
+     * Indica se esta entrada vence outra da mesma chave pela regra da última escrita: vence a de maior
+     * timestamp. Com timestamps iguais, a ordem de chegada varia entre as réplicas e não pode decidir,
+     * então o desempate é feito pelo conteúdo: a lápide vence o valor, entre dois valores vence o maior
+     * na ordem lexicográfica e, com valores iguais, o maior instante de expiração. Uma entrada também
+     * vence uma igual a ela, de modo que reaplicar uma escrita não a recusa.
+     * @param other A entrada atual da chave.
+     * @return true caso esta entrada deva substituir a outra.
+     */
+    public boolean supersedes(Entry other) {
+        if (timestamp != other.timestamp) {
+            return timestamp > other.timestamp;
+        }
+        if (value == null || other.value == null) {
+            return value == null;
+        }
+        int order = value.compareTo(other.value);
+        return order != 0 ? order > 0 : expiresAt >= other.expiresAt;
+    }
+}
@@ -0,0 +1,310 @@
+package kvstore.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Formato binário dos registros usados pelo log de escrita antecipada e pelos snapshots.
+ * Cada registro tem o tamanho do conteúdo, o CRC32 do conteúdo e o conteúdo em si
+ * (timestamp, chave e valor em UTF-8). Um valor nulo (lápide) é gravado com tamanho -1 e a remoção
+ * de uma chave, sem valor, com tamanho -2. Um valor com expiração é gravado com o marcador -3,
+ * seguido do instante de expiração (8 bytes), do tamanho e do valor.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+final class LogRecords {
+    static final int HEADER_SIZE = 8;
+    static final int MAX_RECORD_SIZE = 256 * 1024 * 1024;
+    /**
+     * Tamanho máximo de cada escrita ou leitura no arquivo. Uma escrita ou leitura com um buffer do
+     * heap passa por um buffer direto temporário do mesmo tamanho, guardado em cache pela thread;
+     * limitar o tamanho evita que registros grandes fixem essa memória em cada thread.
+     */
+    static final int IO_CHUNK_SIZE = 256 * 1024;
+    private static final int READ_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int NULL_VALUE = -1;
+    private static final int REMOVED = -2;
+    private static final int EXPIRING = -3;
+
+    /**
+     * Ação executada para cada registro lido.
+     */
+    interface Visitor {
+        void accept(String key, String value, long timestamp, long expiresAt);
+
+        /**
+         * Ação executada antes de cada registro, com a sua posição e o seu tamanho no arquivo;
+         * por padrão, a posição é ignorada.
+         */
+        default void position(long offset, int size) {
+        }
+
+        /**
+         * Ação executada para cada registro de remoção; por padrão, os registros de remoção são ignorados.
+         */
+        default void remove(String key, long timestamp) {
+        }
+
+        /**
+         * Indica se a ação usa os valores. Quando não usa, os valores não são decodificados e
+         * {@link #accept} recebe null no lugar deles, inclusive nos registros com valor; por padrão,
+         * os valores são decodificados.
+         */
+        default boolean needsValues() {
+            return true;
+        }
+    }
+
+    private LogRecords() {
+    }
+
+    /**
+     * Codifica um registro pronto para ser escrito.
+     * @param key A chave.
+     * @param value O valor, ou null.
+     * @param timestamp O timestamp da escrita.
+     * @return Um buffer com o registro completo, posicionado no início.
+     */
+    static ByteBuffer encode(String key, String value, long timestamp) {
+        return encode(key, value, timestamp, 0, value == null ? NULL_VALUE : 0);
+    }
+
+    /**
+     * Codifica o registro de uma entrada, com a sua expiração.
+     * @param key A chave.
+     * @param entry A entrada.
+     * @return Um buffer com o registro completo, posicionado no início.
+     */
+    static ByteBuffer encode(String key, Entry entry) {
+        String value = entry.getValue();
+        return encode(key, value, entry.getTimestamp(), value != null ? entry.getExpiresAt() : 0, value == null ? NULL_VALUE : 0);
+    }
+
+    /**
+     * Codifica o registro da remoção de uma chave.
+     * @param key A chave.
+     * @param timestamp O timestamp da versão removida.
+     * @return Um buffer com o registro completo, posicionado no início.
+     */
+    static ByteBuffer encodeRemoval(String key, long timestamp) {
+        return encode(key, null, timestamp, 0, REMOVED);
+    }
+
+    private static ByteBuffer encode(String key, String value, long timestamp, long expiresAt, int nullMarker) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int payloadSize = 8 + 4 + keyBytes.length + 4 + (valueBytes == null ? 0 : valueBytes.length)
+                + (expiresAt != 0 ? 12 : 0);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buffer.putInt(payloadSize);
+        buffer.putInt(0); // CRC preenchido após o conteúdo
+        buffer.putLong(timestamp);
+        buffer.putInt(keyBytes.length);
+        buffer.put(keyBytes);
+        if (valueBytes == null) {
+            buffer.putInt(nullMarker);
+        } else {
+            if (expiresAt != 0) {
+                buffer.putInt(EXPIRING);
+                buffer.putLong(expiresAt);
+            }
+            buffer.putInt(valueBytes.length);
+            buffer.put(valueBytes);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, payloadSize);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Escreve um registro na posição atual do canal, passando por um buffer direto reutilizável em
+     * partes do tamanho dele, sem o buffer direto temporário do JDK. Deixa o buffer direto vazio.
+     * @param channel O canal do arquivo.
+     * @param record O registro.
+     * @param direct O buffer direto, usado por uma única thread de cada vez.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    static void write(FileChannel channel, ByteBuffer record, ByteBuffer direct) throws IOException {
+        while (record.hasRemaining()) {
+            fill(direct, record);
+            while (direct.hasRemaining()) {
+                channel.write(direct);
+            }
+        }
+        direct.clear();
+    }
+
+    /**
+     * Escreve um registro em uma posição do canal, passando por um buffer direto reutilizável.
+     * @param channel O canal do arquivo.
+     * @param record O registro.
+     * @param position A posição no arquivo.
+     * @param direct O buffer direto, usado por uma única thread de cada vez.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    static void write(FileChannel channel, ByteBuffer record, long position, ByteBuffer direct) throws IOException {
+        while (record.hasRemaining()) {
+            fill(direct, record);
+            while (direct.hasRemaining()) {
+                position += channel.write(direct, position);
+            }
+        }
+        direct.clear();
+    }
+
+    private static void fill(ByteBuffer direct, ByteBuffer record) {
+        direct.clear();
+        ByteBuffer part = record.duplicate();
+        part.limit(part.position() + Math.min(direct.remaining(), record.remaining()));
+        direct.put(part);
+        direct.flip();
+        record.position(part.position());
+    }
+
+    /**
+     * Lê bytes de uma posição do canal para um buffer do heap, em partes de no máximo {@link #IO_CHUNK_SIZE}.
+     * @param channel O canal do arquivo.
+     * @param buffer O buffer de destino.
+     * @param position A posição no arquivo.
+     * @return O número de bytes lidos, ou -1 no fim do arquivo.
+     * @throws IOException Caso ocorra um erro de leitura.
+     */
+    static int read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        ByteBuffer part = buffer.duplicate();
+        part.limit(part.position() + Math.min(part.remaining(), IO_CHUNK_SIZE));
+        int read = channel.read(part, position);
+        if (read > 0) {
+            buffer.position(part.position());
+        }
+        return read;
+    }
+
+    /**
+     * Decodifica um único registro completo, lido da posição informada por {@link Visitor#position}.
+     * @param record Um buffer com o registro inteiro, posicionado no início.
+     * @return A entrada com o valor, o timestamp e a expiração do registro.
+     * @throws IOException Caso o registro esteja corrompido ou seja um registro de remoção.
+     */
+    static Entry decode(ByteBuffer record) throws IOException {
+        int start = record.position();
+        int payloadSize = record.getInt(start);
+        if (payloadSize < 16 || record.remaining() != HEADER_SIZE + payloadSize) {
+            throw new IOException("Registro com tamanho inválido: " + payloadSize);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), record.arrayOffset() + start + HEADER_SIZE, payloadSize);
+        if ((int) crc.getValue() != record.getInt(start + 4)) {
+            throw new IOException("Registro corrompido");
+        }
+
+        record.position(start + HEADER_SIZE);
+        long timestamp = record.getLong();
+        int keySize = record.getInt();
+        record.position(record.position() + keySize);
+        int valueSize = record.getInt();
+        if (valueSize == REMOVED) {
+            throw new IOException("Registro de remoção não contém valor");
+        }
+        long expiresAt = 0;
+        if (valueSize == EXPIRING) {
+            expiresAt = record.getLong();
+            valueSize = record.getInt();
+        }
+        String value = null;
+        if (valueSize >= 0) {
+            value = new String(record.array(), record.arrayOffset() + record.position(), valueSize, StandardCharsets.UTF_8);
+        }
+        return new Entry(value, timestamp, expiresAt);
+    }
+
+    /**
+     * Lê os registros de um canal a partir de uma posição até o fim ou até o primeiro registro
+     * incompleto ou corrompido, que indica uma escrita interrompida.
+     * @param channel O canal do arquivo.
+     * @param position A posição inicial.
+     * @param visitor A ação executada para cada registro válido.
+     * @return O número de registros lidos.
+     * @throws IOException Caso ocorra um erro de leitura.
+     */
+    static long readAll(FileChannel channel, long position, Visitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        boolean values = visitor.needsValues();
+        long count = 0;
+        boolean endOfFile = false;
+
+        while (!endOfFile) {
+            int read = read(channel, buffer, position + buffer.position());
+            endOfFile = read < 0;
+            buffer.flip();
+
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int payloadSize = buffer.getInt(start);
+                if (payloadSize < 16 || payloadSize > MAX_RECORD_SIZE) {
+                    return count; // Registro corrompido
+                }
+                if (buffer.remaining() < HEADER_SIZE + payloadSize) {
+                    if (HEADER_SIZE + payloadSize > buffer.capacity()) {
+                        // Registro maior que o buffer: aumenta o buffer mantendo os bytes já lidos.
+                        ByteBuffer larger = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+                        larger.put(buffer);
+                        larger.flip();
+                        buffer = larger;
+                        position += start;
+                    }
+                    break;
+                }
+
+                crc.reset();
+                crc.update(buffer.array(), start + HEADER_SIZE, payloadSize);
+                if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+                    return count; // Escrita interrompida no meio do registro
+                }
+
+                visitor.position(position + start, HEADER_SIZE + payloadSize);
+                buffer.position(start + HEADER_SIZE);
+                long timestamp = buffer.getLong();
+                int keySize = buffer.getInt();
+                String key = new String(buffer.array(), buffer.position(), keySize, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + keySize);
+                int valueSize = buffer.getInt();
+                long expiresAt = 0;
+                if (valueSize == EXPIRING) {
+                    expiresAt = buffer.getLong();
+                    valueSize = buffer.getInt();
+                }
+                String value = null;
+                if (valueSize >= 0) {
+                    if (values) {
+                        value = new String(buffer.array(), buffer.position(), valueSize, StandardCharsets.UTF_8);
+                    }
+                    buffer.position(buffer.position() + valueSize);
+                }
+
+                if (valueSize == REMOVED) {
+                    visitor.remove(key, timestamp);
+                } else {
+                    visitor.accept(key, value, timestamp, expiresAt);
+                }
+                count++;
+            }
+
+            position += buffer.position();
+            buffer.compact();
+            if (endOfFile && buffer.position() > 0) {
+                return count; // Registro incompleto no fim do arquivo
+            }
+        }
+        return count;
+    }
+}
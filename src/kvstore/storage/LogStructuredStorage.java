@@ -0,0 +1,542 @@
+package kvstore.storage;
+
+import kvstore.log.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Armazenamento com os valores em disco, em um log de registros dividido em segmentos (hash indexado
+ * sobre um log, no estilo do Bitcask). Em memória fica apenas o índice de cada chave para a posição
+ * do seu registro mais recente, de modo que os dados podem ser muito maiores que o heap; cada leitura
+ * custa uma leitura posicional no arquivo. Normalmente é usado por trás de um {@link CachedStorage}.
+ *
+ * As escritas são anexadas ao segmento atual com fsync em grupo, como no {@link WriteAheadLog}, e os
+ * registros substituídos viram lixo. Quando o lixo passa da metade do espaço em disco, a compactação
+ * copia os registros ainda vivos dos segmentos fechados para o segmento atual com
+ * {@link FileChannel#transferTo}, sem trazê-los para a memória, e apaga os fechados.
+ * Na inicialização, o índice é reconstruído lendo os segmentos em ordem, com a regra
+ * "última escrita vence".
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class LogStructuredStorage implements Storage, Closeable {
+    private static final String SEGMENT_PREFIX = "data-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** Fração de lixo no disco que dispara a compactação. */
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final long segmentBytes;
+    private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, FileChannel> segments = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final AtomicLong durable = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicLong garbageBytes = new AtomicLong();
+    private final AtomicBoolean compactionRunning = new AtomicBoolean();
+    private final ExecutorService compactor;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(LogRecords.IO_CHUNK_SIZE); // Protegido pelo writeLock
+
+    private FileChannel active;
+    private long activeId;
+    private long activeBytes;
+    private long written;
+
+    /**
+     * Construtor da classe LogStructuredStorage. Reconstrói o índice a partir dos segmentos existentes.
+     * @param directory O diretório dos segmentos.
+     * @param fsync Indica se as escritas devem ser sincronizadas com o disco antes de serem confirmadas.
+     * @param segmentBytes O tamanho a partir do qual um segmento é fechado e outro é aberto.
+     * @throws IOException Caso não seja possível ler os segmentos existentes ou criar um novo.
+     */
+    public LogStructuredStorage(Path directory, boolean fsync, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.segmentBytes = segmentBytes;
+
+        Files.createDirectories(directory);
+        long lastId = recover();
+        activeId = lastId + 1;
+        active = openSegment(activeId);
+
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kvstore-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Entry get(String key) {
+        while (true) {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            try {
+                return LogRecords.decode(read(location));
+            } catch (ClosedChannelException e) {
+                // O segmento foi apagado pela compactação; o índice já aponta para a nova cópia.
+            } catch (IOException e) {
+                throw new UncheckedIOException("Falha ao ler o valor de [" + key + "]", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean put(String key, String value, long timestamp) {
+        return put(key, new Entry(value, timestamp));
+    }
+
+    @Override
+    public boolean put(String key, Entry entry) {
+        long timestamp = entry.getTimestamp();
+        boolean applied;
+        try {
+            if (loses(key, index.get(key), entry)) {
+                return false;
+            }
+            Location location = append(LogRecords.encode(key, entry), timestamp);
+            applied = install(key, location);
+            sync(location.written);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no armazenamento em disco", e);
+        }
+        maybeCompact();
+        return applied;
+    }
+
+    @Override
+    public int putAll(Collection<Map.Entry<String, Entry>> writes) {
+        int applied = 0;
+        Location last = null;
+        try {
+            for (Map.Entry<String, Entry> write : writes) {
+                Entry entry = write.getValue();
+                if (loses(write.getKey(), index.get(write.getKey()), entry)) {
+                    continue;
+                }
+                last = append(LogRecords.encode(write.getKey(), entry), entry.getTimestamp());
+                if (install(write.getKey(), last)) {
+                    applied++;
+                }
+            }
+            // Um único fsync torna o lote inteiro durável.
+            if (last != null) {
+                sync(last.written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no armazenamento em disco", e);
+        }
+        maybeCompact();
+        return applied;
+    }
+
+    @Override
+    public boolean remove(String key, long timestamp) {
+        while (true) {
+            Location current = index.get(key);
+            if (current == null || current.timestamp > timestamp) {
+                return false;
+            }
+            if (index.remove(key, current)) {
+                garbageBytes.addAndGet(current.size);
+                break;
+            }
+            // Outra thread alterou a entrada entre a leitura e a remoção; tenta novamente.
+        }
+
+        try {
+            // O registro de remoção só é necessário até a próxima compactação.
+            Location removal = append(LogRecords.encodeRemoval(key, timestamp), timestamp);
+            garbageBytes.addAndGet(removal.size);
+            sync(removal.written);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao gravar no armazenamento em disco", e);
+        }
+        maybeCompact();
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Entry> action) {
+        for (String key : index.keySet()) {
+            Entry entry = get(key);
+            if (entry != null) {
+                action.accept(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Obtém o espaço ocupado pelos segmentos em disco.
+     * @return O número de bytes em disco.
+     */
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    /**
+     * Obtém o espaço ocupado por registros substituídos ou removidos, recuperado pela compactação.
+     * @return O número de bytes de lixo.
+     */
+    public long getGarbageBytes() {
+        return garbageBytes.get();
+    }
+
+    /**
+     * Indica se uma escrita perde para a versão indexada da chave pela regra de
+     * {@link Entry#supersedes(Entry)}. O valor atual só é lido do disco quando os timestamps empatam.
+     */
+    private boolean loses(String key, Location current, Entry entry) {
+        if (current == null) {
+            return false;
+        }
+        if (current.timestamp != entry.getTimestamp()) {
+            return current.timestamp > entry.getTimestamp();
+        }
+        Entry stored = get(key);
+        return stored != null && !entry.supersedes(stored);
+    }
+
+    /**
+     * Atualiza o índice com um registro recém-gravado, caso ele seja a versão mais nova da chave.
+     * O registro que perde para a versão mais nova vira lixo.
+     */
+    private boolean install(String key, Location location) {
+        boolean[] installed = {false};
+        index.compute(key, (ignored, current) -> {
+            if (current != null && current.timestamp > location.timestamp) {
+                garbageBytes.addAndGet(location.size);
+                return current;
+            }
+            if (current != null) {
+                garbageBytes.addAndGet(current.size);
+            }
+            installed[0] = true;
+            return location;
+        });
+        return installed[0];
+    }
+
+    /**
+     * Anexa um registro ao segmento atual, abrindo um novo segmento quando o atual está cheio.
+     */
+    private Location append(ByteBuffer record, long timestamp) throws IOException {
+        int size = record.remaining();
+
+        synchronized (writeLock) {
+            if (activeBytes > 0 && activeBytes + size > segmentBytes) {
+                rotate();
+            }
+            long offset = activeBytes;
+            LogRecords.write(active, record, offset, writeBuffer);
+            return appended(offset, size, timestamp);
+        }
+    }
+
+    /**
+     * Copia um registro de um segmento fechado para o fim do segmento atual diretamente entre os
+     * arquivos, sem passar pelo heap.
+     */
+    private Location transfer(Location location) throws IOException {
+        FileChannel source = segments.get(location.segment);
+        if (source == null) {
+            throw new ClosedChannelException();
+        }
+
+        synchronized (writeLock) {
+            if (activeBytes > 0 && activeBytes + location.size > segmentBytes) {
+                rotate();
+            }
+            long offset = activeBytes;
+            active.position(offset);
+            long copied = 0;
+            while (copied < location.size) {
+                long transferred = source.transferTo(location.offset + copied, location.size - copied, active);
+                if (transferred <= 0) {
+                    throw new EOFException("Registro incompleto no segmento " + location.segment);
+                }
+                copied += transferred;
+            }
+            return appended(offset, location.size, location.timestamp);
+        }
+    }
+
+    /**
+     * Contabiliza um registro anexado ao segmento atual. Deve ser chamado com o writeLock.
+     */
+    private Location appended(long offset, int size, long timestamp) {
+        activeBytes += size;
+        written += size;
+        diskBytes.addAndGet(size);
+        return new Location(activeId, offset, size, timestamp, written);
+    }
+
+    /**
+     * Fecha o segmento atual e passa a escrever em um novo. Deve ser chamado com o writeLock.
+     * @return O identificador do segmento fechado.
+     */
+    private long rotate() throws IOException {
+        if (fsync) {
+            active.force(false);
+        }
+        durable.accumulateAndGet(written, Math::max);
+
+        long sealed = activeId;
+        activeId++;
+        activeBytes = 0;
+        active = openSegment(activeId);
+        return sealed;
+    }
+
+    /**
+     * Garante que as escritas estejam duráveis até a posição indicada. Assim como no
+     * {@link WriteAheadLog}, uma única sincronização cobre as escritas de todas as threads que aguardam.
+     */
+    private void sync(long position) throws IOException {
+        if (!fsync || durable.get() >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durable.get() >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (writeLock) {
+                target = written;
+                current = active;
+            }
+            try {
+                current.force(false);
+            } catch (ClosedChannelException e) {
+                // O segmento foi fechado pela rotação, que já o sincronizou.
+            }
+            durable.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    private ByteBuffer read(Location location) throws IOException {
+        FileChannel channel = segments.get(location.segment);
+        if (channel == null) {
+            throw new ClosedChannelException();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(location.size);
+        while (buffer.hasRemaining()) {
+            if (LogRecords.read(channel, buffer, location.offset + buffer.position()) < 0) {
+                throw new EOFException("Registro incompleto no segmento " + location.segment);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Agenda uma compactação em segundo plano caso o lixo tenha passado do limite.
+     */
+    private void maybeCompact() {
+        long disk = diskBytes.get();
+        if (disk <= segmentBytes || garbageBytes.get() < disk * COMPACTION_GARBAGE_RATIO) {
+            return;
+        }
+        if (compactionRunning.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    Log.error("Falha na compactação de " + directory, e);
+                } finally {
+                    compactionRunning.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Copia os registros vivos dos segmentos fechados para o segmento atual e apaga os fechados.
+     * Uma cópia só substitui a posição no índice se a chave não foi alterada durante a compactação.
+     */
+    private void compact() throws IOException {
+        long start = System.nanoTime();
+        long sealed;
+        synchronized (writeLock) {
+            sealed = rotate();
+        }
+
+        long copied = 0;
+        Location last = null;
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segment > sealed) {
+                continue;
+            }
+            Location copy = transfer(location);
+            if (index.replace(entry.getKey(), location, copy)) {
+                garbageBytes.addAndGet(location.size);
+                copied++;
+            } else {
+                garbageBytes.addAndGet(copy.size);
+            }
+            last = copy;
+        }
+        if (last != null) {
+            sync(last.written);
+        }
+
+        long freed = 0;
+        for (long id : segmentIds(directory)) {
+            if (id > sealed) {
+                continue;
+            }
+            FileChannel channel = segments.remove(id);
+            long size = channel != null ? channel.size() : 0;
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(segmentPath(directory, id));
+            diskBytes.addAndGet(-size);
+            garbageBytes.addAndGet(-size);
+            freed += size;
+        }
+        Log.info("Compactação concluída em " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms: " + copied + " registros copiados, " + (freed / (1024 * 1024)) + " MB liberados");
+    }
+
+    /**
+     * Reconstrói o índice lendo todos os segmentos em ordem.
+     * @return O identificador do último segmento existente, ou 0 caso não haja nenhum.
+     */
+    private long recover() throws IOException {
+        long start = System.nanoTime();
+        long lastId = 0;
+        long records = 0;
+
+        for (long id : segmentIds(directory)) {
+            FileChannel channel = FileChannel.open(segmentPath(directory, id), StandardOpenOption.READ);
+            segments.put(id, channel);
+            diskBytes.addAndGet(channel.size());
+            long[] record = new long[2];
+            records += LogRecords.readAll(channel, 0, new LogRecords.Visitor() {
+                @Override
+                public void position(long offset, int size) {
+                    record[0] = offset;
+                    record[1] = size;
+                }
+
+                @Override
+                public void accept(String key, String value, long timestamp, long expiresAt) {
+                    index.merge(key, new Location(id, record[0], (int) record[1], timestamp, 0),
+                            (current, update) -> current.timestamp > update.timestamp ? current : update);
+                }
+
+                @Override
+                public void remove(String key, long timestamp) {
+                    index.computeIfPresent(key, (ignored, current) -> current.timestamp > timestamp ? current : null);
+                }
+
+                @Override
+                public boolean needsValues() {
+                    return false; // O índice guarda apenas a posição de cada registro
+                }
+            });
+            lastId = id;
+        }
+
+        long live = 0;
+        for (Location location : index.values()) {
+            live += location.size;
+        }
+        garbageBytes.set(diskBytes.get() - live);
+        Log.info("Índice reconstruído em " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms: " + index.size() + " chaves, " + records + " registros, " + (diskBytes.get() / (1024 * 1024)) + " MB em disco");
+        return lastId;
+    }
+
+    private static List<Long> segmentIds(Path directory) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> ids.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private static Path segmentPath(Path directory, long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(directory, id),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, channel);
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                active.force(false);
+                for (FileChannel channel : segments.values()) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Posição do registro mais recente de uma chave.
+     */
+    private static final class Location {
+        private final long segment;
+        private final long offset;
+        private final int size;
+        private final long timestamp;
+        /** Posição lógica do log após o registro, usada na sincronização com o disco. */
+        private final long written;
+
+        private Location(long segment, long offset, int size, long timestamp, long written) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.timestamp = timestamp;
+            this.written = written;
+        }
+    }
+}
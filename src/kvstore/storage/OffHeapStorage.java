@@ -0,0 +1,476 @@
+package kvstore.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Armazenamento em memória fora do heap. Chaves, valores e timestamps ficam em UTF-8 em buffers
+ * diretos, e o índice é uma tabela de endereçamento aberto, também fora do heap, com o hash e o
+ * endereço do registro de cada chave. Assim o coletor de lixo não precisa percorrer milhões de
+ * Strings e entradas, e o custo por chave cai para o tamanho dos bytes mais algumas dezenas de bytes.
+ *
+ * O armazenamento é dividido em partes pelo hash da chave, cada uma com o seu lock, a sua tabela e a
+ * sua área de registros. A chave e o valor são convertidos para UTF-8 em buffers reaproveitados por
+ * thread, de modo que a busca e a escrita não criam objetos; apenas o resultado de uma leitura é
+ * convertido de volta em String. Um valor reescrito com o mesmo tamanho é atualizado no lugar; nos
+ * demais casos o registro antigo vira lixo, e a área é compactada quando o lixo passa da metade.
+ *
+ * O espaço fora do heap é limitado por -XX:MaxDirectMemorySize, que por padrão é igual ao heap máximo.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class OffHeapStorage implements Storage {
+    private static final int SEGMENTS = 64;
+    private static final int SEGMENT_SHIFT = 26; // Os 6 bits mais altos do hash escolhem a parte
+    private static final int INITIAL_SLOTS = 1024;
+    private static final double MAX_LOAD = 0.7;
+    private static final int CHUNK_BYTES = 1024 * 1024;
+
+    /** Cada posição da tabela guarda o hash da chave e o endereço do registro. */
+    private static final int SLOT_BYTES = 16;
+    private static final long EMPTY = 0;
+    private static final long REMOVED = -1;
+
+    /**
+     * Cada registro guarda o tamanho da chave, o tamanho do valor (-1 para nulo), o timestamp, o
+     * instante de expiração (0 caso não expire), a chave e o valor.
+     */
+    private static final int RECORD_HEADER = 24;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Construtor da classe OffHeapStorage.
+     */
+    public OffHeapStorage() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public Entry get(String key) {
+        Scratch scratch = SCRATCH.get();
+        int keyLength = scratch.encodeKey(key);
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+        synchronized (segment) {
+            int slot = segment.find(scratch.key, keyLength, hash);
+            return slot < 0 ? null : segment.read(segment.address(slot), scratch);
+        }
+    }
+
+    @Override
+    public boolean put(String key, String value, long timestamp) {
+        return put(key, new Entry(value, timestamp));
+    }
+
+    @Override
+    public boolean put(String key, Entry entry) {
+        Scratch scratch = SCRATCH.get();
+        int keyLength = scratch.encodeKey(key);
+        int valueLength = scratch.encodeValue(entry.getValue());
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+        synchronized (segment) {
+            Entry tied = segment.tied(scratch, keyLength, hash, entry.getTimestamp());
+            if (tied != null) {
+                // Mesmo timestamp: o desempate compara as entradas. A leitura reutiliza o buffer do valor.
+                if (!entry.supersedes(tied)) {
+                    return false;
+                }
+                valueLength = scratch.encodeValue(entry.getValue());
+            }
+            return segment.put(scratch, keyLength, valueLength, hash, entry.getTimestamp(), entry.getExpiresAt());
+        }
+    }
+
+    @Override
+    public boolean remove(String key, long timestamp) {
+        Scratch scratch = SCRATCH.get();
+        int keyLength = scratch.encodeKey(key);
+        int hash = hash(key);
+        Segment segment = segments[hash >>> SEGMENT_SHIFT];
+        synchronized (segment) {
+            return segment.remove(scratch.key, keyLength, hash, timestamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.live;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Percorre as entradas de uma parte por vez. As entradas de cada parte são copiadas para o heap
+     * antes de a ação ser executada, para que a ação não seja executada com o lock da parte.
+     */
+    @Override
+    public void forEach(BiConsumer<String, Entry> action) {
+        for (Segment segment : segments) {
+            List<Map.Entry<String, Entry>> entries;
+            synchronized (segment) {
+                entries = segment.entries();
+            }
+            for (Map.Entry<String, Entry> entry : entries) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Obtém a memória fora do heap reservada pelas tabelas e pelas áreas de registros.
+     * @return O número de bytes reservados.
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.arenaBytes + (long) segment.slots.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Uma parte do armazenamento. Todos os métodos devem ser chamados com o lock da parte.
+     */
+    private static final class Segment {
+        private ByteBuffer slots = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_BYTES);
+        private int mask = INITIAL_SLOTS - 1;
+        private int used; // Posições ocupadas, incluindo as removidas
+        private int live;
+
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private ByteBuffer current;
+        private long arenaBytes;
+        private long garbageBytes;
+
+        private long address(int slot) {
+            return slots.getLong(slot * SLOT_BYTES + 8);
+        }
+
+        private ByteBuffer chunk(long address) {
+            return chunks.get((int) (address >>> 32) - 1);
+        }
+
+        private static int offset(long address) {
+            return (int) address;
+        }
+
+        /**
+         * Procura a posição da chave na tabela por sondagem linear.
+         * @return A posição, ou -1 caso a chave não exista.
+         */
+        private int find(byte[] key, int keyLength, int hash) {
+            int slot = hash & mask;
+            while (true) {
+                long address = address(slot);
+                if (address == EMPTY) {
+                    return -1;
+                }
+                if (address != REMOVED && slots.getInt(slot * SLOT_BYTES) == hash && keyEquals(address, key, keyLength)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private boolean keyEquals(long address, byte[] key, int keyLength) {
+            ByteBuffer chunk = chunk(address);
+            int offset = offset(address);
+            if (chunk.getInt(offset) != keyLength) {
+                return false;
+            }
+            for (int i = 0; i < keyLength; i++) {
+                if (chunk.get(offset + RECORD_HEADER + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Entry read(long address, Scratch scratch) {
+            ByteBuffer chunk = chunk(address);
+            int offset = offset(address);
+            int keyLength = chunk.getInt(offset);
+            int valueLength = chunk.getInt(offset + 4);
+            long timestamp = chunk.getLong(offset + 8);
+            long expiresAt = chunk.getLong(offset + 16);
+            if (valueLength < 0) {
+                return new Entry(null, timestamp, expiresAt);
+            }
+            byte[] value = scratch.value(valueLength);
+            copy(chunk, offset + RECORD_HEADER + keyLength, value, valueLength);
+            return new Entry(new String(value, 0, valueLength, StandardCharsets.UTF_8), timestamp, expiresAt);
+        }
+
+        /**
+         * Obtém a entrada armazenada da chave caso ela tenha o timestamp informado.
+         * @return A entrada, ou null caso a chave não exista ou tenha outro timestamp.
+         */
+        private Entry tied(Scratch scratch, int keyLength, int hash, long timestamp) {
+            int slot = find(scratch.key, keyLength, hash);
+            if (slot < 0) {
+                return null;
+            }
+            long address = address(slot);
+            return chunk(address).getLong(offset(address) + 8) == timestamp ? read(address, scratch) : null;
+        }
+
+        /**
+         * Copia bytes de um buffer direto usando a leitura em bloco, preservando a posição do buffer,
+         * que é o ponto de escrita da área atual.
+         */
+        private static void copy(ByteBuffer chunk, int offset, byte[] target, int length) {
+            int position = chunk.position();
+            chunk.position(offset);
+            chunk.get(target, 0, length);
+            chunk.position(position);
+        }
+
+        private static int recordSize(ByteBuffer chunk, int offset) {
+            return RECORD_HEADER + chunk.getInt(offset) + Math.max(0, chunk.getInt(offset + 4));
+        }
+
+        private boolean put(Scratch scratch, int keyLength, int valueLength, int hash, long timestamp, long expiresAt) {
+            int slot = find(scratch.key, keyLength, hash);
+            if (slot >= 0) {
+                long address = address(slot);
+                ByteBuffer chunk = chunk(address);
+                int offset = offset(address);
+                if (chunk.getLong(offset + 8) > timestamp) {
+                    // Última escrita vence: uma versão mais nova já está armazenada.
+                    return false;
+                }
+                if (chunk.getInt(offset + 4) == valueLength) {
+                    // Mesmo tamanho: atualiza o registro no lugar, sem gerar lixo.
+                    chunk.putLong(offset + 8, timestamp);
+                    chunk.putLong(offset + 16, expiresAt);
+                    int position = chunk.position();
+                    chunk.position(offset + RECORD_HEADER + keyLength);
+                    chunk.put(scratch.value, 0, Math.max(0, valueLength));
+                    chunk.position(position);
+                    return true;
+                }
+                garbageBytes += recordSize(chunk, offset);
+                slots.putLong(slot * SLOT_BYTES + 8, append(scratch, keyLength, valueLength, timestamp, expiresAt));
+                compactIfNeeded();
+                return true;
+            }
+
+            if (used + 1 > (mask + 1) * MAX_LOAD) {
+                resize();
+            }
+            slot = hash & mask;
+            while (address(slot) != EMPTY && address(slot) != REMOVED) {
+                slot = (slot + 1) & mask;
+            }
+            if (address(slot) == EMPTY) {
+                used++;
+            }
+            live++;
+            slots.putInt(slot * SLOT_BYTES, hash);
+            slots.putLong(slot * SLOT_BYTES + 8, append(scratch, keyLength, valueLength, timestamp, expiresAt));
+            return true;
+        }
+
+        private boolean remove(byte[] key, int keyLength, int hash, long timestamp) {
+            int slot = find(key, keyLength, hash);
+            if (slot < 0) {
+                return false;
+            }
+            long address = address(slot);
+            if (chunk(address).getLong(offset(address) + 8) > timestamp) {
+                return false;
+            }
+            garbageBytes += recordSize(chunk(address), offset(address));
+            slots.putLong(slot * SLOT_BYTES + 8, REMOVED);
+            live--;
+            compactIfNeeded();
+            return true;
+        }
+
+        /**
+         * Anexa um registro à área atual, abrindo uma nova quando não há espaço.
+         * @return O endereço do registro: o número da área (a partir de 1) e a posição dentro dela.
+         */
+        private long append(Scratch scratch, int keyLength, int valueLength, long timestamp, long expiresAt) {
+            int size = RECORD_HEADER + keyLength + Math.max(0, valueLength);
+            if (current == null || current.remaining() < size) {
+                current = ByteBuffer.allocateDirect(Math.max(CHUNK_BYTES, size));
+                chunks.add(current);
+                arenaBytes += current.capacity();
+            }
+            int offset = current.position();
+            current.putInt(keyLength);
+            current.putInt(valueLength);
+            current.putLong(timestamp);
+            current.putLong(expiresAt);
+            current.put(scratch.key, 0, keyLength);
+            if (valueLength > 0) {
+                current.put(scratch.value, 0, valueLength);
+            }
+            return ((long) chunks.size() << 32) | offset;
+        }
+
+        /**
+         * Dobra a tabela, ou apenas descarta as posições removidas caso elas sejam a maior parte da ocupação.
+         */
+        private void resize() {
+            int capacity = live + 1 > (mask + 1) * MAX_LOAD / 2 ? (mask + 1) * 2 : mask + 1;
+            ByteBuffer old = slots;
+            int oldCapacity = mask + 1;
+            slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+            mask = capacity - 1;
+            used = live;
+            for (int i = 0; i < oldCapacity; i++) {
+                long address = old.getLong(i * SLOT_BYTES + 8);
+                if (address == EMPTY || address == REMOVED) {
+                    continue;
+                }
+                int hash = old.getInt(i * SLOT_BYTES);
+                int slot = hash & mask;
+                while (address(slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots.putInt(slot * SLOT_BYTES, hash);
+                slots.putLong(slot * SLOT_BYTES + 8, address);
+            }
+        }
+
+        /**
+         * Copia os registros vivos para novas áreas quando o lixo passa da metade da área reservada.
+         * As áreas antigas são liberadas quando o coletor descarta os seus buffers.
+         */
+        private void compactIfNeeded() {
+            if (arenaBytes <= 4L * CHUNK_BYTES || garbageBytes < arenaBytes / 2) {
+                return;
+            }
+            List<ByteBuffer> oldChunks = new ArrayList<>(chunks);
+            chunks.clear();
+            current = null;
+            arenaBytes = 0;
+            garbageBytes = 0;
+
+            for (int slot = 0; slot <= mask; slot++) {
+                long address = address(slot);
+                if (address == EMPTY || address == REMOVED) {
+                    continue;
+                }
+                ByteBuffer chunk = oldChunks.get((int) (address >>> 32) - 1);
+                int offset = offset(address);
+                int size = recordSize(chunk, offset);
+                if (current == null || current.remaining() < size) {
+                    current = ByteBuffer.allocateDirect(Math.max(CHUNK_BYTES, size));
+                    chunks.add(current);
+                    arenaBytes += current.capacity();
+                }
+                long moved = ((long) chunks.size() << 32) | current.position();
+                ByteBuffer record = chunk.duplicate();
+                record.limit(offset + size).position(offset);
+                current.put(record);
+                slots.putLong(slot * SLOT_BYTES + 8, moved);
+            }
+        }
+
+        private List<Map.Entry<String, Entry>> entries() {
+            List<Map.Entry<String, Entry>> entries = new ArrayList<>(live);
+            Scratch scratch = SCRATCH.get();
+            for (int slot = 0; slot <= mask; slot++) {
+                long address = address(slot);
+                if (address == EMPTY || address == REMOVED) {
+                    continue;
+                }
+                ByteBuffer chunk = chunk(address);
+                int offset = offset(address);
+                int keyLength = chunk.getInt(offset);
+                byte[] key = new byte[keyLength];
+                copy(chunk, offset + RECORD_HEADER, key, keyLength);
+                entries.add(Map.entry(new String(key, StandardCharsets.UTF_8), read(address, scratch)));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Buffers de cada thread para a conversão de chaves e valores em UTF-8 sem criar objetos.
+     */
+    private static final class Scratch {
+        private byte[] key = new byte[256];
+        private byte[] value = new byte[1024];
+
+        private int encodeKey(String text) {
+            if (key.length < text.length() * 3) {
+                key = new byte[text.length() * 3];
+            }
+            return encode(text, key);
+        }
+
+        /**
+         * @return O número de bytes do valor, ou -1 caso o valor seja nulo.
+         */
+        private int encodeValue(String text) {
+            if (text == null) {
+                return -1;
+            }
+            value(text.length() * 3);
+            return encode(text, value);
+        }
+
+        private byte[] value(int length) {
+            if (value.length < length) {
+                value = new byte[Math.max(length, value.length * 2)];
+            }
+            return value;
+        }
+
+        /**
+         * Codifica o texto em UTF-8, como String.getBytes, mas no buffer informado.
+         */
+        private static int encode(String text, byte[] target) {
+            int length = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    target[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    target[length++] = (byte) (0xC0 | (c >> 6));
+                    target[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    target[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    target[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    target[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    target[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    target[length++] = '?'; // Surrogate isolado, como no String.getBytes
+                } else {
+                    target[length++] = (byte) (0xE0 | (c >> 12));
+                    target[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    target[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return length;
+        }
+    }
+}
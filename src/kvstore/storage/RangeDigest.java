@@ -0,0 +1,80 @@
+package kvstore.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Resumo do conteúdo de um armazenamento dividido em faixas pelo hash da chave. Cada faixa guarda
+ * a soma dos hashes das suas entradas (chave, valor e timestamp), que não depende da ordem de
+ * iteração. Dois servidores comparam os resumos e trocam apenas as entradas das faixas divergentes.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public final class RangeDigest {
+
+    private RangeDigest() {
+    }
+
+    /**
+     * Calcula o resumo de um armazenamento.
+     * @param storage O armazenamento.
+     * @param ranges O número de faixas.
+     * @return O hash de cada faixa.
+     */
+    public static long[] compute(Storage storage, int ranges) {
+        long[] hashes = new long[ranges];
+        storage.forEach((key, entry) -> hashes[range(key, ranges)] += hash(key, entry));
+        return hashes;
+    }
+
+    /**
+     * Obtém a faixa de uma chave.
+     * @param key A chave.
+     * @param ranges O número de faixas.
+     * @return O índice da faixa.
+     */
+    public static int range(String key, int ranges) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), ranges);
+    }
+
+    /**
+     * Converte um resumo em bytes para transmissão.
+     * @param hashes O hash de cada faixa.
+     * @return Os bytes do resumo.
+     */
+    public static byte[] toBytes(long[] hashes) {
+        ByteBuffer buffer = ByteBuffer.allocate(hashes.length * 8);
+        for (long hash : hashes) {
+            buffer.putLong(hash);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Converte bytes recebidos em um resumo.
+     * @param bytes Os bytes do resumo.
+     * @return O hash de cada faixa.
+     */
+    public static long[] fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long[] hashes = new long[bytes.length / 8];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = buffer.getLong();
+        }
+        return hashes;
+    }
+
+    private static long hash(String key, Entry entry) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= (entry.getValue() == null ? 0 : entry.getValue().hashCode()) * 0xC2B2AE3D27D4EB4FL;
+        h ^= entry.getTimestamp() * 0x165667B19E3779F9L;
+        h ^= entry.getExpiresAt() * 0x27D4EB2F165667C5L;
+        // Mistura final para que entradas parecidas não se cancelem na soma.
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
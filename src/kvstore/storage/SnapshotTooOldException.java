@@ -0,0 +1,22 @@
+package kvstore.storage;
+
+/**
+ * Indica que a versão de uma chave visível em um instante já foi descartada pelo armazenamento,
+ * de modo que a leitura nesse instante não pode ser respondida de forma consistente.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class SnapshotTooOldException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construtor da classe SnapshotTooOldException.
+     * @param key A chave cuja versão foi descartada.
+     * @param timestamp O instante da leitura.
+     */
+    public SnapshotTooOldException(String key, long timestamp) {
+        super("Versão da chave " + key + " no instante " + timestamp + " já descartada");
+    }
+}
@@ -0,0 +1,139 @@
+package kvstore.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Motor de armazenamento chave-valor usado pelo servidor. Cada chave guarda o valor e o timestamp
+ * juntos em uma única entrada, e as escritas seguem a regra "última escrita vence" pelo timestamp.
+ * Uma chave apagada guarda uma lápide (entrada sem valor) até ser descartada com {@link #remove}.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public interface Storage {
+
+    /**
+     * Obtém a entrada associada à chave.
+     * @param key A chave procurada.
+     * @return A entrada com valor e timestamp, ou null caso a chave não exista.
+     */
+    Entry get(String key);
+
+    /**
+     * Obtém a versão da chave visível em um instante: a escrita mais nova com timestamp menor ou
+     * igual ao instante. Motores que guardam apenas a última versão só respondem instantes
+     * posteriores a ela.
+     * @param key A chave procurada.
+     * @param timestamp O instante da leitura.
+     * @return A entrada visível, ou null caso a chave não existisse no instante.
+     * @throws SnapshotTooOldException Caso a versão visível no instante já tenha sido descartada.
+     */
+    default Entry get(String key, long timestamp) {
+        Entry entry = get(key);
+        if (entry != null && entry.getTimestamp() > timestamp) {
+            throw new SnapshotTooOldException(key, timestamp);
+        }
+        return entry;
+    }
+
+    /**
+     * Armazena o valor caso ele vença a entrada atual pela regra de {@link Entry#supersedes(Entry)}:
+     * o timestamp mais novo vence e, com timestamps iguais, o desempate não depende da ordem de chegada.
+     * @param key A chave.
+     * @param value O valor associado à chave.
+     * @param timestamp O timestamp da escrita.
+     * @return true caso a escrita tenha sido aplicada, false caso uma versão mais nova já exista.
+     */
+    boolean put(String key, String value, long timestamp);
+
+    /**
+     * Armazena uma entrada, com o seu instante de expiração, seguindo a mesma regra de
+     * {@link #put(String, String, long)}. A implementação padrão descarta a expiração; os motores
+     * do projeto a sobrescrevem.
+     * @param key A chave.
+     * @param entry A entrada, com valor (ou null para uma lápide), timestamp e expiração.
+     * @return true caso a escrita tenha sido aplicada, false caso uma versão mais nova já exista.
+     */
+    default boolean put(String key, Entry entry) {
+        return put(key, entry.getValue(), entry.getTimestamp());
+    }
+
+    /**
+     * Armazena um lote de escritas como uma unidade, seguindo a mesma regra de {@link #put}.
+     * Motores duráveis podem sobrescrever este método para sincronizar o lote inteiro com o disco de uma só vez.
+     * @param writes Os pares de chave e entrada a serem armazenados.
+     * @return O número de escritas aplicadas.
+     */
+    default int putAll(Collection<Map.Entry<String, Entry>> writes) {
+        int applied = 0;
+        for (Map.Entry<String, Entry> write : writes) {
+            if (put(write.getKey(), write.getValue())) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Descarta a chave caso a versão armazenada não seja mais nova que o timestamp informado.
+     * Usado quando a chave passa a pertencer a outro servidor e para descartar lápides antigas. A
+     * remoção equivale a uma lápide no timestamp informado, que vence qualquer entrada com o mesmo
+     * timestamp pela regra de {@link Entry#supersedes(Entry)}.
+     * @param key A chave.
+     * @param timestamp O timestamp da versão que pode ser descartada.
+     * @return true caso a chave tenha sido descartada.
+     */
+    boolean remove(String key, long timestamp);
+
+    /**
+     * Obtém o número de chaves armazenadas.
+     * @return O número de chaves.
+     */
+    int size();
+
+    /**
+     * Percorre todas as entradas armazenadas. A iteração não bloqueia as escritas concorrentes
+     * e pode ou não refletir escritas feitas durante o percurso.
+     * @param action A ação executada para cada chave e sua entrada.
+     */
+    void forEach(BiConsumer<String, Entry> action);
+
+    /**
+     * Lê, em ordem de chave, as entradas visíveis em um instante cujas chaves começam com um prefixo.
+     * Chamadas sucessivas com o mesmo instante, cada uma a partir da última chave da anterior,
+     * percorrem o mesmo estado, mesmo com escritas concorrentes. A implementação padrão percorre
+     * todas as entradas a cada chamada; motores com um índice ordenado a sobrescrevem.
+     * @param prefix O prefixo das chaves, ou uma string vazia para todas as chaves.
+     * @param afterKey A última chave já lida, ou null para começar do início.
+     * @param timestamp O instante da leitura.
+     * @param limit O número máximo de entradas.
+     * @return As entradas encontradas, em ordem de chave.
+     * @throws SnapshotTooOldException Caso a versão de alguma chave no instante já tenha sido descartada.
+     */
+    default List<Map.Entry<String, Entry>> scan(String prefix, String afterKey, long timestamp, int limit) {
+        TreeMap<String, Entry> page = new TreeMap<>();
+        forEach((key, entry) -> {
+            if (key.startsWith(prefix) && (afterKey == null || key.compareTo(afterKey) > 0)
+                    && (page.size() < limit || key.compareTo(page.lastKey()) < 0)) {
+                page.put(key, entry);
+                if (page.size() > limit) {
+                    page.pollLastEntry();
+                }
+            }
+        });
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(page.size());
+        for (String key : page.keySet()) {
+            Entry visible = get(key, timestamp);
+            if (visible != null) {
+                entries.add(Map.entry(key, visible));
+            }
+        }
+        return entries;
+    }
+}
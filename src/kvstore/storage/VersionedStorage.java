@@ -0,0 +1,189 @@
+package kvstore.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Armazenamento multiversão no heap. Cada chave guarda as suas versões mais recentes, identificadas
+ * pelo timestamp da escrita, de modo que uma leitura em um instante passado é respondida com a
+ * versão visível naquele instante. Uma versão é descartada quando a chave já tem o número máximo
+ * de versões ou quando foi substituída há mais que o tempo de retenção; a versão atual nunca é descartada.
+ *
+ * As versões ficam em um ConcurrentHashMap, com leituras sem locks e escritas por compare-and-set
+ * como no ConcurrentStorage, e as chaves também ficam em um índice ordenado sem locks, percorrido
+ * pelas leituras por faixa sem bloquear as escritas.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+public class VersionedStorage implements Storage {
+    /** Número padrão de versões mantidas por chave. */
+    public static final int DEFAULT_MAX_VERSIONS = 8;
+    /** Tempo padrão de retenção das versões substituídas, em milissegundos. */
+    public static final long DEFAULT_RETENTION_MILLIS = 60_000;
+
+    private final ConcurrentMap<String, Versions> versions = new ConcurrentHashMap<>();
+    private final NavigableSet<String> index = new ConcurrentSkipListSet<>();
+    private final int maxVersions;
+    private final long retentionMillis;
+
+    /**
+     * Construtor da classe VersionedStorage com o número de versões e a retenção padrão.
+     */
+    public VersionedStorage() {
+        this(DEFAULT_MAX_VERSIONS, DEFAULT_RETENTION_MILLIS);
+    }
+
+    /**
+     * Construtor da classe VersionedStorage.
+     * @param maxVersions O número máximo de versões mantidas por chave, incluindo a atual.
+     * @param retentionMillis Por quanto tempo uma versão substituída continua disponível, em milissegundos.
+     */
+    public VersionedStorage(int maxVersions, long retentionMillis) {
+        if (maxVersions < 1) {
+            throw new IllegalArgumentException("Número de versões inválido: " + maxVersions);
+        }
+        this.maxVersions = maxVersions;
+        this.retentionMillis = retentionMillis;
+    }
+
+    @Override
+    public Entry get(String key) {
+        Versions current = versions.get(key);
+        return current != null ? current.entries[0] : null;
+    }
+
+    @Override
+    public Entry get(String key, long timestamp) {
+        Versions current = versions.get(key);
+        return current != null ? current.visible(key, timestamp) : null;
+    }
+
+    @Override
+    public boolean put(String key, String value, long timestamp) {
+        return put(key, new Entry(value, timestamp));
+    }
+
+    @Override
+    public boolean put(String key, Entry update) {
+        while (true) {
+            Versions current = versions.get(key);
+            if (current == null) {
+                if (versions.putIfAbsent(key, new Versions(new Entry[]{update}, false)) == null) {
+                    index.add(key);
+                    return true;
+                }
+            } else if (!update.supersedes(current.entries[0])) {
+                // Última escrita vence: uma versão mais nova, ou que vence o desempate, já está armazenada.
+                return false;
+            } else if (versions.replace(key, current, current.add(update, maxVersions, System.currentTimeMillis() - retentionMillis))) {
+                return true;
+            }
+            // Outra thread alterou as versões entre a leitura e a escrita; tenta novamente.
+        }
+    }
+
+    @Override
+    public boolean remove(String key, long timestamp) {
+        while (true) {
+            Versions current = versions.get(key);
+            // Uma remoção vence o desempate com uma versão do mesmo timestamp, como uma lápide.
+            if (current == null || current.entries[0].getTimestamp() > timestamp) {
+                return false;
+            }
+            if (versions.remove(key, current)) {
+                index.remove(key);
+                if (versions.containsKey(key)) {
+                    index.add(key); // Reescrita concorrente depois da remoção
+                }
+                return true;
+            }
+            // Outra thread alterou as versões entre a leitura e a remoção; tenta novamente.
+        }
+    }
+
+    @Override
+    public int size() {
+        return versions.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Entry> action) {
+        versions.forEach((key, current) -> action.accept(key, current.entries[0]));
+    }
+
+    @Override
+    public List<Map.Entry<String, Entry>> scan(String prefix, String afterKey, long timestamp, int limit) {
+        NavigableSet<String> keys = afterKey != null && afterKey.compareTo(prefix) >= 0
+                ? index.tailSet(afterKey, false) : index.tailSet(prefix, true);
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(Math.min(limit, 1024));
+        for (String key : keys) {
+            if (entries.size() >= limit || !key.startsWith(prefix)) {
+                break;
+            }
+            Entry visible = get(key, timestamp);
+            if (visible != null) {
+                entries.add(Map.entry(key, visible));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Versões imutáveis de uma chave, da mais nova para a mais antiga.
+     */
+    private static final class Versions {
+        private final Entry[] entries;
+        private final boolean truncated; // Alguma versão anterior à mais antiga já foi descartada
+
+        private Versions(Entry[] entries, boolean truncated) {
+            this.entries = entries;
+            this.truncated = truncated;
+        }
+
+        /**
+         * Obtém a versão mais nova com timestamp menor ou igual ao instante.
+         */
+        private Entry visible(String key, long timestamp) {
+            for (Entry entry : entries) {
+                if (entry.getTimestamp() <= timestamp) {
+                    return entry;
+                }
+            }
+            if (truncated) {
+                throw new SnapshotTooOldException(key, timestamp);
+            }
+            return null;
+        }
+
+        /**
+         * Cria as versões com uma nova versão atual, descartando as que excedem o número máximo ou
+         * foram substituídas antes do horizonte de retenção. Uma escrita com o mesmo timestamp da
+         * versão atual a substitui caso vença o desempate de {@link Entry#supersedes(Entry)}; caso
+         * contrário, as versões não mudam.
+         */
+        private Versions add(Entry update, int maxVersions, long horizon) {
+            if (!update.supersedes(entries[0])) {
+                return this;
+            }
+            int start = entries[0].getTimestamp() == update.getTimestamp() ? 1 : 0;
+            int kept = 1;
+            long successor = update.getTimestamp();
+            while (kept < maxVersions && start + kept - 1 < entries.length && successor >= horizon) {
+                successor = entries[start + kept - 1].getTimestamp();
+                kept++;
+            }
+            Entry[] next = new Entry[kept];
+            next[0] = update;
+            System.arraycopy(entries, start, next, 1, kept - 1);
+            return new Versions(next, truncated || start + kept - 1 < entries.length);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package kvstore.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Log de escrita antecipada dividido em segmentos. As escritas são anexadas ao segmento atual
+ * por um FileChannel, e o fsync é feito em grupo: uma única chamada a force() torna duráveis
+ * todas as escritas anexadas até aquele momento, de modo que escritores concorrentes dividem
+ * o custo da sincronização com o disco.
+ * 
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ * 
+ * @author Lucas Henrique Gois de Campos
+ */
+public class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(LogRecords.IO_CHUNK_SIZE); // Protegido pelo writeLock
+
+    private FileChannel channel;
+    private long segmentId;
+    private long segmentBytes;
+    private long written;
+    private long durable;
+
+    /**
+     * Construtor da classe WriteAheadLog. Abre um novo segmento, posterior a todos os existentes.
+     * @param directory O diretório dos segmentos.
+     * @param fsync Indica se as escritas devem ser sincronizadas com o disco.
+     * @throws IOException Caso não seja possível criar o segmento.
+     */
+    public WriteAheadLog(Path directory, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        List<Long> existing = segmentIds(directory);
+        this.segmentId = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        this.channel = openSegment(segmentId);
+    }
+
+    /**
+     * Anexa uma escrita ao segmento atual, sem esperar a sincronização com o disco.
+     * @param key A chave.
+     * @param value O valor.
+     * @param timestamp O timestamp da escrita.
+     * @return A posição lógica do log após a escrita, usada em {@link #sync(long)}.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    public long append(String key, String value, long timestamp) throws IOException {
+        return append(LogRecords.encode(key, value, timestamp));
+    }
+
+    /**
+     * Anexa uma escrita, com a sua expiração, ao segmento atual, sem esperar a sincronização com o disco.
+     * @param key A chave.
+     * @param entry A entrada escrita.
+     * @return A posição lógica do log após a escrita, usada em {@link #sync(long)}.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    public long append(String key, Entry entry) throws IOException {
+        return append(LogRecords.encode(key, entry));
+    }
+
+    /**
+     * Anexa a remoção de uma chave ao segmento atual, sem esperar a sincronização com o disco.
+     * @param key A chave.
+     * @param timestamp O timestamp da versão removida.
+     * @return A posição lógica do log após a escrita, usada em {@link #sync(long)}.
+     * @throws IOException Caso ocorra um erro de escrita.
+     */
+    public long appendRemoval(String key, long timestamp) throws IOException {
+        return append(LogRecords.encodeRemoval(key, timestamp));
+    }
+
+    private long append(ByteBuffer record) throws IOException {
+        int size = record.remaining();
+
+        synchronized (writeLock) {
+            LogRecords.write(channel, record, writeBuffer);
+            segmentBytes += size;
+            written += size;
+            return written;
+        }
+    }
+
+    /**
+     * Garante que o log esteja durável até a posição indicada. Se outra thread já sincronizou
+     * além dessa posição, retorna imediatamente; caso contrário, uma única sincronização cobre
+     * também as escritas das threads que aguardam.
+     * @param position A posição lógica devolvida por {@link #append(String, String, long)}.
+     * @throws IOException Caso ocorra um erro ao sincronizar.
+     */
+    public void sync(long position) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durable >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (writeLock) {
+                target = written;
+                current = channel;
+            }
+            current.force(false);
+            durable = Math.max(durable, target);
+        }
+    }
+
+    /**
+     * Fecha o segmento atual e passa a escrever em um novo.
+     * @return O identificador do segmento fechado; ele e os anteriores podem ser apagados após um snapshot.
+     * @throws IOException Caso não seja possível criar o novo segmento.
+     */
+    public long rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                channel.force(false);
+                channel.close();
+                durable = written;
+
+                long sealed = segmentId;
+                segmentId++;
+                segmentBytes = 0;
+                channel = openSegment(segmentId);
+                return sealed;
+            }
+        }
+    }
+
+    /**
+     * Obtém o tamanho do segmento atual.
+     * @return O número de bytes escritos no segmento atual.
+     */
+    public long currentSegmentBytes() {
+        synchronized (writeLock) {
+            return segmentBytes;
+        }
+    }
+
+    /**
+     * Apaga os segmentos com identificador menor ou igual ao indicado.
+     * @param lastSegmentId O identificador do último segmento a ser apagado.
+     * @throws IOException Caso não seja possível apagar algum segmento.
+     */
+    public void deleteSegmentsUpTo(long lastSegmentId) throws IOException {
+        for (long id : segmentIds(directory)) {
+            if (id <= lastSegmentId) {
+                Files.deleteIfExists(segmentPath(directory, id));
+            }
+        }
+    }
+
+    /**
+     * Lista os identificadores dos segmentos existentes em ordem crescente.
+     * @param directory O diretório dos segmentos.
+     * @return Os identificadores dos segmentos.
+     * @throws IOException Caso não seja possível listar o diretório.
+     */
+    static List<Long> segmentIds(Path directory) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> ids.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    /**
+     * Obtém o caminho do arquivo de um segmento.
+     * @param directory O diretório dos segmentos.
+     * @param id O identificador do segmento.
+     * @return O caminho do segmento.
+     */
+    static Path segmentPath(Path directory, long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        return FileChannel.open(segmentPath(directory, id),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package kvstore.server;
+
+import kvstore.client.ClientConfig;
+import kvstore.client.KVClient;
+import kvstore.client.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Testes de falha do líder: param o líder de um cluster local de três servidores, com confirmação
+ * pela maioria, e verificam a eleição do novo líder, a permanência das escritas confirmadas e a
+ * volta do servidor reiniciado como secundário.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+@Timeout(value = 60, unit = TimeUnit.SECONDS)
+class FailoverTest {
+    private static final int KEYS = 50;
+    private static final long ELECTION_TIMEOUT_MILLIS = 300;
+
+    private LocalCluster cluster;
+    private KVClient client;
+
+    @BeforeEach
+    void startCluster() throws Exception {
+        ServerConfig config = new ServerConfig()
+                .setAckPolicy(AckPolicy.MAJORITY)
+                .setElectionTimeoutMillis(ELECTION_TIMEOUT_MILLIS)
+                .setHeartbeatIntervalMillis(50);
+        cluster = LocalCluster.start(3, config);
+        client = new KVClient(new ClientConfig().setServers(cluster.getAddresses()));
+    }
+
+    @AfterEach
+    void stopCluster() {
+        if (client != null) {
+            client.close();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    @Test
+    void electsANewLeaderWhenTheLeaderStops() {
+        int oldLeader = cluster.leaderIndex();
+        cluster.stop(oldLeader);
+
+        String newLeader = cluster.awaitLeader(ELECTION_TIMEOUT_MILLIS * 20);
+        assertNotEquals(cluster.getAddresses().get(oldLeader), newLeader);
+        assertNotEquals(oldLeader, cluster.leaderIndex());
+    }
+
+    @Test
+    void acknowledgedWritesSurviveTheLeaderFailure() throws Exception {
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals("PUT_OK", client.put("chave-" + i, "valor-" + i).get().getCommand());
+        }
+
+        cluster.stop(cluster.leaderIndex());
+        cluster.awaitLeader(ELECTION_TIMEOUT_MILLIS * 20);
+
+        for (int i = 0; i < KEYS; i++) {
+            Response response = client.get("chave-" + i).get();
+            assertEquals("GET", response.getCommand(), "chave-" + i);
+            assertEquals("valor-" + i, response.getValue());
+        }
+        // O novo líder também aceita escritas.
+        assertEquals("PUT_OK", client.put("depois", "da-falha").get().getCommand());
+        assertEquals("da-falha", client.get("depois").get().getValue());
+    }
+
+    @Test
+    void restartedLeaderRejoinsAsAFollower() throws Exception {
+        assertEquals("PUT_OK", client.put("antes", "da-falha").get().getCommand());
+        int oldLeader = cluster.leaderIndex();
+        cluster.stop(oldLeader);
+        String newLeader = cluster.awaitLeader(ELECTION_TIMEOUT_MILLIS * 20);
+
+        cluster.restart(oldLeader);
+        // O servidor reiniciado passa a seguir o líder eleito na sua ausência, sem derrubá-lo:
+        // awaitLeader só retorna quando todos os servidores ativos, inclusive ele, conhecem o líder.
+        assertEquals(newLeader, cluster.awaitLeader(ELECTION_TIMEOUT_MILLIS * 20));
+        assertEquals(newLeader, cluster.getAddresses().get(cluster.leaderIndex()));
+
+        // O grupo completo continua aceitando escritas, e o servidor continua secundário depois delas.
+        assertEquals("PUT_OK", client.put("depois", "do-reinicio").get().getCommand());
+        assertEquals("da-falha", client.get("antes").get().getValue());
+        assertEquals(newLeader, cluster.awaitLeader(ELECTION_TIMEOUT_MILLIS * 20));
+    }
+}
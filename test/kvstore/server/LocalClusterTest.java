@@ -0,0 +1,79 @@
+package kvstore.server;
+
+import kvstore.client.ClientConfig;
+import kvstore.client.KVClient;
+import kvstore.client.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Testes de fumaça: iniciam um cluster local de três servidores e fazem escritas e leituras por
+ * meio do cliente, como uma aplicação faria.
+ *
+ * Projeto realizado para a disciplina Sistemas Distribuídos - UFABC
+ *
+ * @author Lucas Henrique Gois de Campos
+ */
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class LocalClusterTest {
+    private LocalCluster cluster;
+    private KVClient client;
+
+    @BeforeEach
+    void startCluster() throws Exception {
+        cluster = LocalCluster.start(3, new ServerConfig());
+        client = new KVClient(new ClientConfig().setServers(cluster.getAddresses()));
+    }
+
+    @AfterEach
+    void stopCluster() {
+        if (client != null) {
+            client.close();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    @Test
+    void electsALeader() {
+        assertNotNull(cluster.getLeaderAddress());
+        assertEquals(cluster.getLeaderAddress(), cluster.awaitLeader(1000));
+    }
+
+    @Test
+    void getReturnsThePutValue() throws Exception {
+        assertEquals("PUT_OK", client.put("chave", "valor").get().getCommand());
+
+        Response response = client.get("chave").get();
+        assertEquals("GET", response.getCommand());
+        assertEquals("valor", response.getValue());
+    }
+
+    @Test
+    void getSeesTheLastPut() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("PUT_OK", client.put("contador", String.valueOf(i)).get().getCommand());
+        }
+        assertEquals("9", client.get("contador").get().getValue());
+    }
+
+    @Test
+    void getOfAMissingKeyReturnsNull() throws Exception {
+        assertEquals("NULL", client.get("inexistente").get().getCommand());
+    }
+
+    @Test
+    void getAfterDeleteReturnsNull() throws Exception {
+        assertEquals("PUT_OK", client.put("apagada", "valor").get().getCommand());
+        assertEquals("DELETE_OK", client.delete("apagada").get().getCommand());
+        assertEquals("NULL", client.get("apagada").get().getCommand());
+    }
+}